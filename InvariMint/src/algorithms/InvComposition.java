@@ -1,8 +1,14 @@
 package algorithms;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.logging.Logger;
 
+import model.DenseDFA;
+import model.EventTypeEncodings;
 import model.InvModel;
 import model.InvsModel;
 
@@ -16,10 +22,18 @@ public class InvComposition {
         logger = Logger.getLogger("InvComposition");
     }
 
+    // The pool on which the invariant DFAs are intersected.
+    private static final ForkJoinPool pool = new ForkJoinPool();
+
     /**
      * Constructs an InvsModel by intersecting InvModels for each of the given
-     * temporal invariants.
-     * 
+     * temporal invariants. The dense transition tables of the InvModels are
+     * intersected with each other as a balanced binary tree, in parallel, and
+     * every intermediate intersection is minimized. This keeps the
+     * intermediate automata small -- intersecting the invariants into the
+     * model one at a time tends to create large intermediate automata. The
+     * result of the tree is then intersected with model.
+     *
      * @param invariants
      *            a set of TemporalInvariants
      * @param minimize
@@ -31,35 +45,72 @@ public class InvComposition {
             TemporalInvariantSet invariants, boolean minimizeDFAIntersections,
             InvsModel model) throws IOException {
 
-        // Intersect invariants into model.
-        int total = invariants.numInvariants();
-        int numDone = 0;
-
-        // How many times to intersect before we minimize.
-        int minimizeEveryX = 20;
+        if (invariants.numInvariants() == 0) {
+            return model;
+        }
 
+        // Build the invariant DFAs and their tables -- the leaves of the tree.
+        // This is done sequentially, since the encodings are shared (and might
+        // be extended by building a DFA), and since dk.brics automata must
+        // only be built by one thread (State ids are allocated from an
+        // unsynchronized static counter). The tree only works on tables.
+        EventTypeEncodings encodings = model.getEventEncodings();
+        List<InvModel> invDFAs = new ArrayList<InvModel>();
+        List<DenseDFA> tables = new ArrayList<DenseDFA>();
         for (ITemporalInvariant invariant : invariants) {
-            // logger.info("Create new invDFA instance, remaining" + remaining);
-            InvModel invDFA = new InvModel(invariant, model.getEventEncodings());
-            model.intersectWith(invDFA);
-            invDFA = null;
-
-            numDone += 1;
-
-            // Optimize by minimizing the model every 20 intersections.
-            if ((numDone % minimizeEveryX == 0) && minimizeDFAIntersections) {
-                logger.info("Intersected " + numDone + " / " + total
-                        + " invariants.");
-                model.minimize();
-            }
+            InvModel invDFA = new InvModel(invariant, encodings);
+            invDFAs.add(invDFA);
+            tables.add(invDFA.getTable());
         }
 
-        // Minimize one more time, at the end, but only if the current model
-        // hasn't been minimized in the above loop.
-        if ((numDone % minimizeEveryX != 0) && minimizeDFAIntersections) {
+        logger.info("Intersecting " + invDFAs.size() + " invariants.");
+        DenseDFA intersection = pool.invoke(new IntersectionTask(tables, 0,
+                tables.size()));
+        logger.info("Intersected " + invDFAs.size() + " invariants.");
+
+        InvsModel invsModel = new InvsModel(encodings);
+        invsModel.setIntersection(invDFAs, intersection);
+        model.intersectWith(invsModel);
+
+        if (minimizeDFAIntersections) {
             model.minimize();
         }
 
         return model;
     }
+
+    /**
+     * Intersects the tables in tables[lo, hi) by recursively intersecting the
+     * two halves of the range, and minimizes the result. The tasks only build
+     * new tables, and never modify the tables of the leaves.
+     */
+    private static final class IntersectionTask extends
+            RecursiveTask<DenseDFA> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<DenseDFA> tables;
+        private final int lo;
+        private final int hi;
+
+        IntersectionTask(List<DenseDFA> tables, int lo, int hi) {
+            assert hi > lo;
+            this.tables = tables;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected DenseDFA compute() {
+            if (hi - lo == 1) {
+                return tables.get(lo);
+            }
+
+            int mid = (lo + hi) >>> 1;
+            IntersectionTask left = new IntersectionTask(tables, lo, mid);
+            IntersectionTask right = new IntersectionTask(tables, mid, hi);
+            left.fork();
+            DenseDFA ret = right.compute();
+            return DenseDFA.product(left.join(), ret).minimize();
+        }
+    }
 }
@@ -75,13 +75,33 @@ public abstract class PGraphInvariMint {
         return stdAlgName;
     }
 
-    /** Removes spurious edges from the model. */
-    public void removeSpuriousEdges() {
+    /**
+     * Removes spurious edges from the model, by replaying the trace graph or,
+     * with streamLogs, by streaming the input logs through the model.
+     */
+    public void removeSpuriousEdges() throws Exception {
         assert initialEvent != null;
         assert terminalEvent != null;
 
         logger.info("Removing spurious edges");
-        TraceFiltering.removeSpuriousEdges(invMintModel, traceGraph, encodings, initialEvent, terminalEvent);
+        if (opts.streamLogs) {
+            TraceParser parser = new TraceParser(opts.regExps, opts.partitionRegExp, opts.separatorRegExp,
+                    opts.dateFormat);
+            TraceFiltering.removeSpuriousEdges(invMintModel, parser, opts.logFilenames, encodings, initialEvent,
+                    terminalEvent);
+        } else {
+            assert traceGraph != null;
+            TraceFiltering.removeSpuriousEdges(invMintModel, traceGraph, encodings, initialEvent, terminalEvent);
+        }
+    }
+
+    /**
+     * Releases the trace graph, once the model is mined, so that it can be
+     * garbage-collected. Spurious edges must then be removed with streamLogs,
+     * and the standard algorithm cannot be run.
+     */
+    public void releaseTraceGraph() {
+        traceGraph = null;
     }
 
     /** Exports the partition graph inferred by the standard algorithm. */
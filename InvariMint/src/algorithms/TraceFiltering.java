@@ -1,32 +1,40 @@
 package algorithms;
 
+import java.io.File;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
+import model.DenseDFA;
 import model.EncodedAutomaton;
 import model.EventTypeEncodings;
-import dk.brics.automaton.State;
-import dk.brics.automaton.StatePair;
-import dk.brics.automaton.Transition;
 
+import synoptic.main.AbstractMain;
+import synoptic.main.parser.IEventNodeListener;
+import synoptic.main.parser.ParseException;
+import synoptic.main.parser.TraceParser;
 import synoptic.model.ChainsTraceGraph;
 import synoptic.model.EventNode;
 import synoptic.model.event.EventType;
+import synoptic.util.resource.AbstractResource;
 
 public class TraceFiltering {
 
     /**
      * Removes edges from the provided dfa that cannot be mapped to any trace in
-     * the input trace graph g.
+     * the input trace graph g. The traces are replayed on the dense transition
+     * table of dfa, so each event is a single table lookup. The used
+     * transitions are recorded in a bitset over (state, event id) pairs.
      */
     public static void removeSpuriousEdges(EncodedAutomaton dfa,
             ChainsTraceGraph g, EventTypeEncodings encodings,
             EventType initialEvent, EventType terminalEvent) {
-        // TODO: just build the new dfa -- no seen map
-
-        Map<StatePair, Set<Character>> seenTransitions = new HashMap<StatePair, Set<Character>>();
+        DenseDFA table = dfa.getTable();
+        BitSet usedTransitions = new BitSet();
+        int initialId = encodings.getEventId(initialEvent);
+        int terminalId = encodings.getEventId(terminalEvent);
         EventNode initNode = g.getDummyInitialNode();
 
         // Iterate through all the traces -- each transition from the INITIAL
@@ -34,18 +42,19 @@ public class TraceFiltering {
         for (EventNode curNode : initNode.getAllSuccessors()) {
             // Set curState to the state immediately following the INITIAL
             // transition.
-            State curState = dfa.getInitialState();
-            curState = fetchDestination(curState, encodings, initialEvent,
-                    seenTransitions);
+            int curState = fetchDestination(table, table.getInitialState(),
+                    initialId, usedTransitions);
 
             while (curNode.getAllTransitions().size() != 0) {
 
-                curState = fetchDestination(curState, encodings,
-                        curNode.getEType(), seenTransitions);
+                curState = fetchDestination(table, curState,
+                        encodings.getEventId(curNode.getEType()),
+                        usedTransitions);
 
-                if (curState == null) {
+                if (curState == DenseDFA.NONE) {
                     throw new IllegalStateException(
-                            "Unable to fetch valid destination for ");
+                            "Unable to fetch valid destination for "
+                                    + curNode.getEType());
                 }
 
                 // Move on to the next node in the trace.
@@ -53,70 +62,132 @@ public class TraceFiltering {
                 curNode = curNode.getAllTransitions().get(0).getTarget();
             }
 
-            fetchDestination(curState, encodings, terminalEvent,
-                    seenTransitions);
+            fetchDestination(table, curState, terminalId, usedTransitions);
         }
 
-        dfa.setInitialState(replicate(seenTransitions, dfa.getInitialState(),
-                new HashMap<State, State>(), encodings));
+        dfa.setTable(table.restrict(usedTransitions));
 
         // dfa.minimize();
     }
 
     /**
-     * Given a State and an EventType, returns the State to which the source
-     * state would transition given the Event if such a state exists. Also
-     * updates the seenTransitions map with the transition used to find the
-     * destination.
+     * Removes edges from the provided dfa that cannot be mapped to any trace in
+     * the given log files, which are streamed through parser rather than
+     * parsed into a trace graph. Only the current DFA state of each trace is
+     * kept while streaming, so the memory used does not grow with the length
+     * of the traces. The events of each trace must appear in the log in the
+     * order of their times.
+     * 
+     * @throws ParseException
+     *             if the logs cannot be parsed, or if the events of a trace are
+     *             out of order
      */
-    private static State fetchDestination(State source,
-            EventTypeEncodings encodings, EventType currentEvent,
-            Map<StatePair, Set<Character>> seenTransitions) {
-
-        for (Transition t : source.getTransitions()) {
-            for (char c = t.getMin(); c <= t.getMax(); c++) {
-                if (currentEvent.toString().equals(encodings.getString(c))) {
-                    StatePair curTransition = new StatePair(source, t.getDest());
-                    if (!seenTransitions.containsKey(curTransition)) {
-                        seenTransitions.put(curTransition,
-                                new HashSet<Character>());
-                    }
-                    seenTransitions.get(curTransition).add(new Character(c));
-                    return t.getDest();
-                }
+    public static void removeSpuriousEdges(EncodedAutomaton dfa,
+            TraceParser parser, List<String> logFilenames,
+            EventTypeEncodings encodings, EventType initialEvent,
+            EventType terminalEvent) throws Exception {
+        DenseDFA table = dfa.getTable();
+        StreamingReplay replay = new StreamingReplay(table, encodings,
+                encodings.getEventId(initialEvent));
+
+        for (String fileArg : logFilenames) {
+            File[] files = AbstractMain.getFiles(fileArg);
+            if (files.length == 0) {
+                throw new ParseException(
+                        "The set of input files is empty. Please specify a set of existing files to parse.");
+            }
+            for (File file : files) {
+                parser.streamTraceFile(file, replay);
             }
         }
-        return null;
+
+        // End all the traces with the TERMINAL event.
+        int terminalId = encodings.getEventId(terminalEvent);
+        for (int i = 0; i < replay.numTraces; i++) {
+            fetchDestination(table, replay.states[i], terminalId,
+                    replay.usedTransitions);
+        }
+
+        dfa.setTable(table.restrict(replay.usedTransitions));
     }
 
     /**
-     * Recursively replicates the given automata starting from the current state
-     * but eliminates transitions that were not 'seen'.
+     * Replays the events of the traces of a streamed log on a DFA, as they are
+     * parsed. Keeps the current DFA state and the time of the last event of
+     * each trace.
      */
-    private static State replicate(
-            Map<StatePair, Set<Character>> seenTransitions, State current,
-            Map<State, State> visited, EventTypeEncodings encodings) {
-
-        if (visited.containsKey(current)) {
-            return visited.get(current);
+    private static final class StreamingReplay implements IEventNodeListener {
+        private final DenseDFA table;
+        private final EventTypeEncodings encodings;
+        private final int initialId;
+
+        final BitSet usedTransitions = new BitSet();
+
+        // Maps the trace ids of the parser to indices into states and
+        // lastTimes.
+        private final Map<Integer, Integer> traceIndices = new HashMap<Integer, Integer>();
+        int numTraces = 0;
+        int[] states = new int[16];
+        private AbstractResource[] lastTimes = new AbstractResource[16];
+
+        StreamingReplay(DenseDFA table, EventTypeEncodings encodings,
+                int initialId) {
+            this.table = table;
+            this.encodings = encodings;
+            this.initialId = initialId;
         }
 
-        State replica = new State();
-        replica.setAccept(current.isAccept());
-        visited.put(current, replica);
-
-        for (Transition t : current.getTransitions()) {
-            for (char c = t.getMin(); c <= t.getMax(); c++) {
-                StatePair curTransition = new StatePair(current, t.getDest());
-                if (seenTransitions.containsKey(curTransition)
-                        && seenTransitions.get(curTransition).contains(
-                                new Character(c))) {
-                    replica.addTransition(new Transition(c, replicate(
-                            seenTransitions, t.getDest(), visited, encodings)));
+        @Override
+        public void eventNodeParsed(EventNode node) throws ParseException {
+            Integer index = traceIndices.get(node.getTraceID());
+            if (index == null) {
+                // A new trace: start it with the INITIAL event.
+                index = numTraces++;
+                traceIndices.put(node.getTraceID(), index);
+                if (index == states.length) {
+                    states = Arrays.copyOf(states, 2 * index);
+                    lastTimes = Arrays.copyOf(lastTimes, 2 * index);
                 }
+                states[index] = fetchDestination(table,
+                        table.getInitialState(), initialId, usedTransitions);
             }
+
+            AbstractResource time = node.getTime();
+            if (lastTimes[index] != null && time.lessThan(lastTimes[index])) {
+                throw new ParseException("The events of trace "
+                        + node.getTraceID()
+                        + " are out of order in the log, at " + node
+                        + ": streaming requires ordered traces.");
+            }
+            lastTimes[index] = time;
+
+            int curState = fetchDestination(table, states[index],
+                    encodings.getEventId(node.getEType()), usedTransitions);
+            if (curState == DenseDFA.NONE) {
+                throw new IllegalStateException(
+                        "Unable to fetch valid destination for "
+                                + node.getEType());
+            }
+            states[index] = curState;
+        }
+    }
+
+    /**
+     * Given a state and an event id, returns the state to which the source
+     * state would transition given the event, or DenseDFA.NONE if there is no
+     * such state. Also records the transition used to find the destination in
+     * usedTransitions.
+     */
+    private static int fetchDestination(DenseDFA table, int source,
+            int eventId, BitSet usedTransitions) {
+        if (source == DenseDFA.NONE) {
+            return DenseDFA.NONE;
+        }
+        int dest = table.step(source, eventId);
+        if (dest != DenseDFA.NONE) {
+            usedTransitions.set(source * table.getNumSymbols() + eventId);
         }
-        return replica;
+        return dest;
     }
 
 }
@@ -92,6 +92,13 @@ public class InvariMintMain {
         // This sets the invmintDfa instance.
         runAlg(false);
 
+        // The streamed logs replace the trace graph, unless the standard
+        // algorithm needs it.
+        if (opts.streamLogs && !opts.exportStdAlgPGraph
+                && !opts.exportStdAlgDFA && !opts.compareToStandardAlg) {
+            invMintAlg.releaseTraceGraph();
+        }
+
         // Optionally remove paths from the model not found in any input trace.
         if (opts.removeSpuriousEdges) {
             invMintAlg.removeSpuriousEdges();
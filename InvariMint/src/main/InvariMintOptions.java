@@ -199,6 +199,16 @@ public class InvariMintOptions extends Options {
     @Option(value = "Remove spurious edges from InvariMint model")
     public boolean removeSpuriousEdges = false;
 
+    /**
+     * Whether to remove spurious edges by streaming the input logs through the
+     * model, instead of replaying the in-memory trace graph. The trace graph
+     * is then released once the invariants are mined, unless the standard
+     * algorithm needs it. The events of each trace must appear in the logs in
+     * time order.
+     */
+    @Option(value = "Remove spurious edges by streaming the logs through the model (traces must be in time order)")
+    public boolean streamLogs = false;
+
     /**
      * Whether to minimize every intermediate model during invariant
      * intersections.
@@ -0,0 +1,604 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import dk.brics.automaton.Automaton;
+import dk.brics.automaton.State;
+import dk.brics.automaton.Transition;
+
+/**
+ * A deterministic finite automaton over the event types of an
+ * EventTypeEncodings, represented as a dense transition table. The states are
+ * the ints [0, getNumStates()), and state 0 is the initial state. The symbols
+ * are the event ids [0, getNumSymbols()) of the encodings (see
+ * EventTypeEncodings.getEventId). The transition of state s on symbol a is
+ * delta[s][a], or NONE if there is no such transition (which rejects).
+ * <p>
+ * Stepping through the DFA on an event is an array access, rather than a scan
+ * of the char ranges of a dk.brics.automaton.State. The product and
+ * minimization operations also work on the tables directly. Tables are
+ * converted to and from dk.brics Automata with toAutomaton() and
+ * fromAutomaton().
+ * </p>
+ */
+public class DenseDFA {
+
+    /** The (rejecting) destination of a missing transition. */
+    public static final int NONE = -1;
+
+    // The product of two DFAs indexes the pairs of states in an array, rather
+    // than a map, if there are at most this many pairs.
+    private static final long MAX_DENSE_PAIRS = 1 << 22;
+
+    // The number of symbols, i.e., the length of each row of delta.
+    private final int numSymbols;
+
+    private int numStates = 0;
+
+    // delta[s] is the row of transitions of state s, for s < numStates.
+    private int[][] delta = new int[4][];
+
+    private boolean[] accept = new boolean[4];
+
+    /**
+     * Creates a DFA without any states over the symbols [0, numSymbols).
+     */
+    public DenseDFA(int numSymbols) {
+        this.numSymbols = numSymbols;
+    }
+
+    // //////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Adds a state without any transitions and returns its id. The first state
+     * added is the initial state.
+     */
+    public int addState(boolean isAccept) {
+        if (numStates == delta.length) {
+            delta = Arrays.copyOf(delta, 2 * numStates);
+            accept = Arrays.copyOf(accept, 2 * numStates);
+        }
+        int[] row = new int[numSymbols];
+        Arrays.fill(row, NONE);
+        delta[numStates] = row;
+        accept[numStates] = isAccept;
+        return numStates++;
+    }
+
+    /**
+     * Sets the transition of state s on symbol to t. Does nothing if symbol is
+     * not one of the symbols of this DFA.
+     */
+    public void setTransition(int s, int symbol, int t) {
+        if (symbol >= 0 && symbol < numSymbols) {
+            delta[s][symbol] = t;
+        }
+    }
+
+    /**
+     * Sets the transitions of state s on all the symbols except those in
+     * except to t.
+     */
+    public void setTransitionsExcept(int s, int t, int... except) {
+        int[] row = delta[s];
+        for (int a = 0; a < numSymbols; a++) {
+            row[a] = t;
+        }
+        for (int a : except) {
+            if (a >= 0 && a < numSymbols) {
+                row[a] = NONE;
+            }
+        }
+    }
+
+    public int getNumStates() {
+        return numStates;
+    }
+
+    public int getNumSymbols() {
+        return numSymbols;
+    }
+
+    public int getInitialState() {
+        return 0;
+    }
+
+    public boolean isAccept(int s) {
+        return accept[s];
+    }
+
+    /**
+     * Returns the state that s transitions to on symbol, or NONE if there is no
+     * such transition (or if symbol is not one of the symbols of this DFA).
+     */
+    public int step(int s, int symbol) {
+        if (symbol < 0 || symbol >= numSymbols) {
+            return NONE;
+        }
+        return delta[s][symbol];
+    }
+
+    /**
+     * Returns true if this DFA accepts the given sequence of symbols.
+     */
+    public boolean run(int[] symbols) {
+        int s = 0;
+        for (int a : symbols) {
+            s = step(s, a);
+            if (s == NONE) {
+                return false;
+            }
+        }
+        return accept[s];
+    }
+
+    /**
+     * Returns true if this DFA does not accept any sequence.
+     */
+    public boolean isEmpty() {
+        // The initial state is live exactly when the trimmed DFA accepts the
+        // empty sequence or has a transition from the initial state.
+        DenseDFA trimmed = trim();
+        if (trimmed.accept[0]) {
+            return false;
+        }
+        for (int t : trimmed.delta[0]) {
+            if (t != NONE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // //////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Returns a DFA for the same language that only has the states that are
+     * reachable from the initial state and from which an accepting state is
+     * reachable. The states are numbered in breadth-first order from the
+     * initial state. The initial state is always kept, so the DFA for the
+     * empty language is a single rejecting state without transitions.
+     */
+    public DenseDFA trim() {
+        // Find the states that reach an accepting state, over the reverse
+        // transitions.
+        int[] revStart = new int[numStates + 1];
+        for (int s = 0; s < numStates; s++) {
+            for (int t : delta[s]) {
+                if (t != NONE) {
+                    revStart[t + 1]++;
+                }
+            }
+        }
+        for (int s = 0; s < numStates; s++) {
+            revStart[s + 1] += revStart[s];
+        }
+        int[] rev = new int[revStart[numStates]];
+        int[] fill = Arrays.copyOf(revStart, numStates);
+        for (int s = 0; s < numStates; s++) {
+            for (int t : delta[s]) {
+                if (t != NONE) {
+                    rev[fill[t]++] = s;
+                }
+            }
+        }
+
+        boolean[] live = new boolean[numStates];
+        int[] stack = new int[numStates];
+        int top = 0;
+        for (int s = 0; s < numStates; s++) {
+            if (accept[s]) {
+                live[s] = true;
+                stack[top++] = s;
+            }
+        }
+        while (top > 0) {
+            int t = stack[--top];
+            for (int i = revStart[t]; i < revStart[t + 1]; i++) {
+                int s = rev[i];
+                if (!live[s]) {
+                    live[s] = true;
+                    stack[top++] = s;
+                }
+            }
+        }
+
+        // Copy the live states that are reachable from the initial state,
+        // renumbering them in the order in which they are reached.
+        int[] newIds = new int[numStates];
+        Arrays.fill(newIds, NONE);
+        int[] oldIds = new int[numStates];
+        DenseDFA ret = new DenseDFA(numSymbols);
+        newIds[0] = ret.addState(accept[0]);
+        oldIds[0] = 0;
+        for (int i = 0; i < ret.numStates; i++) {
+            int[] row = delta[oldIds[i]];
+            int[] newRow = ret.delta[i];
+            for (int a = 0; a < numSymbols; a++) {
+                int t = row[a];
+                if (t == NONE || !live[t]) {
+                    continue;
+                }
+                if (newIds[t] == NONE) {
+                    newIds[t] = ret.addState(accept[t]);
+                    oldIds[newIds[t]] = t;
+                }
+                newRow[a] = newIds[t];
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Returns a trimmed DFA that accepts the sequences accepted by both a and
+     * b, constructed from the pairs of states of a and b that are reachable
+     * from the pair of initial states.
+     */
+    public static DenseDFA product(DenseDFA a, DenseDFA b) {
+        DenseDFA ret = new DenseDFA(Math.max(a.numSymbols, b.numSymbols));
+        int k = Math.min(a.numSymbols, b.numSymbols);
+
+        // The ids of the pairs of states, in a dense array (indexed by sa *
+        // b.numStates + sb), or in a map if there are too many pairs.
+        long numPairs = (long) a.numStates * b.numStates;
+        int[] densePairIds = null;
+        Map<Long, Integer> pairIds = null;
+        if (numPairs <= MAX_DENSE_PAIRS) {
+            densePairIds = new int[(int) numPairs];
+            Arrays.fill(densePairIds, NONE);
+        } else {
+            pairIds = new HashMap<Long, Integer>();
+        }
+
+        // The pair of states of each state of ret.
+        int[] firsts = new int[16];
+        int[] seconds = new int[16];
+
+        ret.addState(a.accept[0] && b.accept[0]);
+        if (densePairIds != null) {
+            densePairIds[0] = 0;
+        } else {
+            pairIds.put(0L, 0);
+        }
+        for (int s = 0; s < ret.numStates; s++) {
+            int[] rowA = a.delta[firsts[s]];
+            int[] rowB = b.delta[seconds[s]];
+            int[] row = ret.delta[s];
+            for (int sym = 0; sym < k; sym++) {
+                int ta = rowA[sym];
+                int tb = rowB[sym];
+                if (ta == NONE || tb == NONE) {
+                    continue;
+                }
+                long pair = (long) ta * b.numStates + tb;
+                int t;
+                if (densePairIds != null) {
+                    t = densePairIds[(int) pair];
+                } else {
+                    Integer id = pairIds.get(pair);
+                    t = (id == null) ? NONE : id;
+                }
+                if (t == NONE) {
+                    t = ret.addState(a.accept[ta] && b.accept[tb]);
+                    if (t == firsts.length) {
+                        firsts = Arrays.copyOf(firsts, 2 * t);
+                        seconds = Arrays.copyOf(seconds, 2 * t);
+                    }
+                    firsts[t] = ta;
+                    seconds[t] = tb;
+                    if (densePairIds != null) {
+                        densePairIds[(int) pair] = t;
+                    } else {
+                        pairIds.put(pair, t);
+                    }
+                }
+                row[sym] = t;
+            }
+        }
+        return ret.trim();
+    }
+
+    /**
+     * Returns the minimal trimmed DFA for the language of this DFA, using
+     * Hopcroft's partition refinement algorithm. The missing transitions are
+     * treated as transitions to an explicit sink state, which ends up in a
+     * block of its own and is then dropped again.
+     */
+    public DenseDFA minimize() {
+        DenseDFA dfa = trim();
+        int k = numSymbols;
+        int n = dfa.numStates + 1;
+        int sink = dfa.numStates;
+
+        // The reverse transitions of the complete DFA, indexed by (target *
+        // k + symbol).
+        int[] revStart = new int[n * k + 1];
+        for (int s = 0; s < n; s++) {
+            for (int a = 0; a < k; a++) {
+                revStart[dfa.target(s, a, sink) * k + a + 1]++;
+            }
+        }
+        for (int i = 0; i < n * k; i++) {
+            revStart[i + 1] += revStart[i];
+        }
+        int[] rev = new int[n * k];
+        int[] fill = Arrays.copyOf(revStart, n * k);
+        for (int s = 0; s < n; s++) {
+            for (int a = 0; a < k; a++) {
+                rev[fill[dfa.target(s, a, sink) * k + a]++] = s;
+            }
+        }
+
+        // The blocks of the partition are ranges [blockStart, blockEnd) of
+        // elems, and loc is the inverse of elems. The marked states of a block
+        // are kept at the beginning of its range.
+        int[] elems = new int[n];
+        int[] loc = new int[n];
+        int[] blockOf = new int[n];
+        int[] blockStart = new int[n];
+        int[] blockEnd = new int[n];
+        int[] marked = new int[n];
+        int numBlocks = 0;
+
+        // Initially, the accepting and the rejecting states are split.
+        int numAccepting = 0;
+        for (int s = 0; s < sink; s++) {
+            if (dfa.accept[s]) {
+                numAccepting++;
+            }
+        }
+        int nextAccepting = 0;
+        int nextRejecting = numAccepting;
+        for (int s = 0; s < n; s++) {
+            int i = (s != sink && dfa.accept[s]) ? nextAccepting++
+                    : nextRejecting++;
+            elems[i] = s;
+            loc[s] = i;
+        }
+
+        int[] work = new int[n];
+        int workSize = 0;
+        if (numAccepting > 0) {
+            blockStart[numBlocks] = 0;
+            blockEnd[numBlocks] = numAccepting;
+            work[workSize++] = numBlocks++;
+        }
+        blockStart[numBlocks] = numAccepting;
+        blockEnd[numBlocks] = n;
+        work[workSize++] = numBlocks++;
+        for (int b = 0; b < numBlocks; b++) {
+            for (int i = blockStart[b]; i < blockEnd[b]; i++) {
+                blockOf[elems[i]] = b;
+            }
+        }
+
+        int[] splitter = new int[n];
+        int[] touched = new int[n];
+        while (workSize > 0) {
+            int b = work[--workSize];
+            int splitterSize = blockEnd[b] - blockStart[b];
+            System.arraycopy(elems, blockStart[b], splitter, 0, splitterSize);
+
+            for (int a = 0; a < k; a++) {
+                // Mark the states that transition into the splitter on a.
+                int numTouched = 0;
+                for (int i = 0; i < splitterSize; i++) {
+                    int t = splitter[i] * k + a;
+                    for (int j = revStart[t]; j < revStart[t + 1]; j++) {
+                        int s = rev[j];
+                        int c = blockOf[s];
+                        int m = blockStart[c] + marked[c];
+                        int pos = loc[s];
+                        if (pos < m) {
+                            // Already marked.
+                            continue;
+                        }
+                        if (marked[c] == 0) {
+                            touched[numTouched++] = c;
+                        }
+                        int other = elems[m];
+                        elems[m] = s;
+                        loc[s] = m;
+                        elems[pos] = other;
+                        loc[other] = pos;
+                        marked[c]++;
+                    }
+                }
+
+                // Split the touched blocks into their marked and unmarked
+                // states. The smaller part becomes a new block, which is
+                // added to the work list: if c is in the work list then both
+                // parts must be, and otherwise the smaller part suffices.
+                for (int i = 0; i < numTouched; i++) {
+                    int c = touched[i];
+                    int size = blockEnd[c] - blockStart[c];
+                    int m = marked[c];
+                    marked[c] = 0;
+                    if (m == size) {
+                        continue;
+                    }
+                    int nb = numBlocks++;
+                    if (m <= size - m) {
+                        blockStart[nb] = blockStart[c];
+                        blockEnd[nb] = blockStart[c] + m;
+                        blockStart[c] += m;
+                    } else {
+                        blockStart[nb] = blockStart[c] + m;
+                        blockEnd[nb] = blockEnd[c];
+                        blockEnd[c] = blockStart[c] + m;
+                    }
+                    for (int j = blockStart[nb]; j < blockEnd[nb]; j++) {
+                        blockOf[elems[j]] = nb;
+                    }
+                    work[workSize++] = nb;
+                }
+            }
+        }
+
+        // Build the DFA of the blocks, dropping the block of the sink (all the
+        // other states of the trimmed DFA are live, so they are not in it).
+        int sinkBlock = blockOf[sink];
+        DenseDFA ret = new DenseDFA(numSymbols);
+        if (blockOf[0] == sinkBlock) {
+            ret.addState(false);
+            return ret;
+        }
+        int[] newIds = new int[numBlocks];
+        Arrays.fill(newIds, NONE);
+        int[] blocks = new int[numBlocks];
+        newIds[blockOf[0]] = ret.addState(dfa.accept[0]);
+        blocks[0] = blockOf[0];
+        for (int i = 0; i < ret.numStates; i++) {
+            int rep = elems[blockStart[blocks[i]]];
+            int[] row = ret.delta[i];
+            for (int a = 0; a < k; a++) {
+                int t = dfa.delta[rep][a];
+                if (t == NONE) {
+                    continue;
+                }
+                int c = blockOf[t];
+                if (newIds[c] == NONE) {
+                    newIds[c] = ret.addState(dfa.accept[t]);
+                    blocks[newIds[c]] = c;
+                }
+                row[a] = newIds[c];
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * The transition of s on a in the DFA completed with the given sink state.
+     */
+    private int target(int s, int a, int sink) {
+        if (s == sink) {
+            return sink;
+        }
+        int t = delta[s][a];
+        return (t == NONE) ? sink : t;
+    }
+
+    /**
+     * Returns a trimmed DFA that only has the transitions of this DFA that are
+     * in used. The transition of state s on symbol a is the bit s *
+     * getNumSymbols() + a.
+     */
+    public DenseDFA restrict(BitSet used) {
+        DenseDFA ret = new DenseDFA(numSymbols);
+        for (int s = 0; s < numStates; s++) {
+            // addState may grow ret.delta, so the row is read after it.
+            int newState = ret.addState(accept[s]);
+            int[] row = ret.delta[newState];
+            int base = s * numSymbols;
+            for (int a = 0; a < numSymbols; a++) {
+                if (used.get(base + a)) {
+                    row[a] = delta[s][a];
+                }
+            }
+        }
+        return ret.trim();
+    }
+
+    // //////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Converts a dk.brics Automaton over the characters of an
+     * EventTypeEncodings into a DenseDFA over the first numSymbols event ids.
+     * The automaton is determinized (on a copy) if it is not deterministic.
+     */
+    public static DenseDFA fromAutomaton(Automaton model, int numSymbols) {
+        if (model.isDeterministic()) {
+            DenseDFA ret = fromDeterministicAutomaton(model, numSymbols);
+            if (ret != null) {
+                return ret;
+            }
+        }
+        Automaton dfa = model.clone();
+        dfa.setDeterministic(false);
+        dfa.determinize();
+        return fromDeterministicAutomaton(dfa, numSymbols);
+    }
+
+    /**
+     * Converts model into a DenseDFA, or returns null if two transitions of a
+     * state overlap (i.e., if model is not actually deterministic).
+     */
+    private static DenseDFA fromDeterministicAutomaton(Automaton model,
+            int numSymbols) {
+        DenseDFA ret = new DenseDFA(numSymbols);
+        Map<State, Integer> ids = new HashMap<State, Integer>();
+        List<State> states = new ArrayList<State>();
+
+        State initial = model.getInitialState();
+        ids.put(initial, ret.addState(initial.isAccept()));
+        states.add(initial);
+        for (int s = 0; s < states.size(); s++) {
+            for (Transition t : states.get(s).getTransitions()) {
+                int min = Math.max(t.getMin()
+                        - EventTypeEncodings.FIRST_ENCODING, 0);
+                int max = Math.min(t.getMax()
+                        - EventTypeEncodings.FIRST_ENCODING, numSymbols - 1);
+                if (min > max) {
+                    continue;
+                }
+                State dest = t.getDest();
+                Integer d = ids.get(dest);
+                if (d == null) {
+                    d = ret.addState(dest.isAccept());
+                    ids.put(dest, d);
+                    states.add(dest);
+                }
+                int[] row = ret.delta[s];
+                for (int a = min; a <= max; a++) {
+                    if (row[a] != NONE && row[a] != d) {
+                        return null;
+                    }
+                    row[a] = d;
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Converts this DFA into a deterministic dk.brics Automaton over the
+     * characters of an EventTypeEncodings. Consecutive symbols with the same
+     * destination are merged into a single transition.
+     */
+    public Automaton toAutomaton() {
+        State[] states = new State[numStates];
+        for (int s = 0; s < numStates; s++) {
+            states[s] = new State();
+            states[s].setAccept(accept[s]);
+        }
+        for (int s = 0; s < numStates; s++) {
+            int[] row = delta[s];
+            int a = 0;
+            while (a < numSymbols) {
+                int t = row[a];
+                if (t == NONE) {
+                    a++;
+                    continue;
+                }
+                int end = a;
+                while (end + 1 < numSymbols && row[end + 1] == t) {
+                    end++;
+                }
+                states[s].addTransition(new Transition(
+                        (char) (EventTypeEncodings.FIRST_ENCODING + a),
+                        (char) (EventTypeEncodings.FIRST_ENCODING + end),
+                        states[t]));
+                a = end + 1;
+            }
+        }
+        Automaton model = new Automaton();
+        model.setInitialState(states[0]);
+        model.setDeterministic(true);
+        return model;
+    }
+}
@@ -13,7 +13,6 @@ import java.util.logging.Logger;
 
 import dk.brics.automaton.Automaton;
 import dk.brics.automaton.BasicOperations;
-import dk.brics.automaton.MinimizationOperations;
 import dk.brics.automaton.RegExp;
 import dk.brics.automaton.SpecialOperations;
 import dk.brics.automaton.State;
@@ -39,6 +38,11 @@ public class EncodedAutomaton {
     // The encoding scheme for the Automaton.
     protected EventTypeEncodings encodings;
 
+    // The dense transition table of model, and the model that it was built
+    // from. The table is rebuilt if model has been replaced since.
+    private DenseDFA table;
+    private Automaton tableModel;
+
     /**
      * Constructs a new EncodedAutomaton using the given encodings. The initial
      * model accepts any sequence of EventTypes made up of EventTypes encoded in
@@ -65,20 +69,49 @@ public class EncodedAutomaton {
 
     /**
      * Returns true if the given sequence of Strings are accepted by this model.
+     * Each event is a single step in the dense transition table of the model.
      */
     public boolean run(List<EventType> events) {
-        StringBuilder builder = new StringBuilder();
+        DenseDFA dfa = getTable();
+        int s = dfa.getInitialState();
         for (EventType e : events) {
-            builder.append(encodings.getEncoding(e));
+            s = dfa.step(s, encodings.getEventId(e));
+            if (s == DenseDFA.NONE) {
+                return false;
+            }
         }
-        return model.run(builder.toString());
+        return dfa.isAccept(s);
     }
 
     /**
-     * Performs Hopcroft's algorithm to minimize this Automaton.
+     * Performs Hopcroft's algorithm to minimize this Automaton, on its dense
+     * transition table.
      */
     public void minimize() {
-        MinimizationOperations.minimizeHopcroft(model);
+        setTable(getTable().minimize());
+    }
+
+    /**
+     * Returns the dense transition table of this model (which is determinized
+     * first, if necessary). The table is cached until the model changes, and
+     * must not be modified.
+     */
+    public DenseDFA getTable() {
+        if (table == null || tableModel != model) {
+            table = DenseDFA.fromAutomaton(model, encodings.getNumEncodings());
+            tableModel = model;
+        }
+        return table;
+    }
+
+    /**
+     * Sets this model to the DFA with the given dense transition table. The
+     * table must not be modified afterwards.
+     */
+    public void setTable(DenseDFA dfa) {
+        model = dfa.toAutomaton();
+        table = dfa;
+        tableModel = model;
     }
 
     /**
@@ -102,8 +135,13 @@ public class EncodedAutomaton {
      *             string, exception contains the errorHint message
      */
     public void intersectWithRE(String re, String errorHint) {
-        model = BasicOperations.intersection(model,
-                new RegExp(re).toAutomaton());
+        Automaton reModel = new RegExp(re).toAutomaton();
+        if (model.isDeterministic() && reModel.isDeterministic()) {
+            setTable(DenseDFA.product(getTable(), DenseDFA.fromAutomaton(
+                    reModel, encodings.getNumEncodings())));
+        } else {
+            model = BasicOperations.intersection(model, reModel);
+        }
         checkEmptyLanguage(errorHint);
     }
 
@@ -150,8 +188,13 @@ public class EncodedAutomaton {
             throw new IllegalArgumentException(
                     "Cannot intersect Automata using different encoding schemes");
         }
-        // logger.info("Performing NFA intersection");
-        model = BasicOperations.intersection(model, other.model);
+        if (model.isDeterministic() && other.model.isDeterministic()) {
+            // The product of the dense tables of two DFAs.
+            setTable(DenseDFA.product(getTable(), other.getTable()));
+        } else {
+            // logger.info("Performing NFA intersection");
+            model = BasicOperations.intersection(model, other.model);
+        }
 
         // logger.info("Checking empty language");
         checkEmptyLanguage(errorHint);
@@ -180,7 +223,7 @@ public class EncodedAutomaton {
      * Throws an IllegalStateException if model is empty, attaches errorHint to
      * the exception if errorHint != null
      */
-    private void checkEmptyLanguage(String errorHint) {
+    protected void checkEmptyLanguage(String errorHint) {
         if (model.isEmpty()) {
             throw new IllegalStateException(
                     "DFA intersection generated the empty language"
@@ -277,6 +320,7 @@ public class EncodedAutomaton {
      * been manipulated manually. Visible for testing.
      */
     public void setInitialState(State initial) {
+        table = null;
         model.setInitialState(initial);
         model.setDeterministic(false);
         model.restoreInvariant();
@@ -1,5 +1,6 @@
 package model;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
@@ -17,9 +18,17 @@ import synoptic.model.event.EventType;
  */
 public class EventTypeEncodings {
 
+    /**
+     * The character of the first encoded EventType. The characters are
+     * assigned consecutively, so the event id of a character c is c -
+     * FIRST_ENCODING.
+     */
+    public static final char FIRST_ENCODING = 1000;
+
     private Map<String, Character> eventEncodings;
     private Map<Character, String> charEncodings;
     private RegExp alphabet;
+    private char[] alphabetChars;
     private char cur;
 
     public EventTypeEncodings(Set<EventType> events) {
@@ -29,13 +38,20 @@ public class EventTypeEncodings {
         /** The reverse eventEncodings map -- always maintained up to date. */
         charEncodings = new HashMap<Character, String>();
 
-        cur = 1000;
+        cur = FIRST_ENCODING;
         for (EventType e : events) {
             addEncoding(e, cur);
             cur++;
         }
 
         // Defines the alphabet available to Automata using this Encoding.
+        alphabetChars = new char[charEncodings.size()];
+        int i = 0;
+        for (Character c : charEncodings.keySet()) {
+            alphabetChars[i++] = c;
+        }
+        Arrays.sort(alphabetChars);
+
         StringBuilder chars = new StringBuilder();
         for (Character c : charEncodings.keySet()) {
             chars.append("|" + c);
@@ -71,6 +87,34 @@ public class EventTypeEncodings {
         return eventEncodings.get(e.toString());
     }
 
+    /**
+     * Returns the event id of the given EventType -- the index of its
+     * character among the encoded characters -- or -1 if the EventType has no
+     * encoding. Unlike getEncoding, does not assign a new character.
+     */
+    public int getEventId(EventType e) {
+        Character c = eventEncodings.get(e.toString());
+        if (c == null) {
+            return -1;
+        }
+        return c - FIRST_ENCODING;
+    }
+
+    /**
+     * Returns the number of encoded EventTypes, i.e., the number of event ids.
+     */
+    public int getNumEncodings() {
+        return charEncodings.size();
+    }
+
+    /**
+     * Returns the number of event ids in the alphabet available to Automata
+     * using this Encoding. These are the ids [0, getAlphabetSize()).
+     */
+    public int getAlphabetSize() {
+        return alphabetChars.length;
+    }
+
     public String getString(char c) {
         if (!charEncodings.containsKey(c)) {
             throw new IllegalArgumentException(
@@ -86,4 +130,13 @@ public class EventTypeEncodings {
     protected Automaton getInitialModel() {
         return alphabet.toAutomaton();
     }
+
+    /**
+     * Returns the characters of the alphabet available to Automata using this
+     * Encoding (i.e., those accepted by the initial model), in increasing
+     * order. The returned array must not be modified.
+     */
+    protected char[] getAlphabet() {
+        return alphabetChars;
+    }
 }
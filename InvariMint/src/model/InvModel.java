@@ -1,16 +1,24 @@
 package model;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
+import synoptic.invariants.AlwaysFollowedInvariant;
+import synoptic.invariants.AlwaysPrecedesInvariant;
 import synoptic.invariants.BinaryInvariant;
 import synoptic.invariants.ITemporalInvariant;
+import synoptic.invariants.InterruptedByInvariant;
 import synoptic.invariants.KTailInvariant;
+import synoptic.invariants.NeverFollowedInvariant;
+import synoptic.invariants.NeverImmediatelyFollowedInvariant;
+import synoptic.invariants.TOInitialTerminalInvariant;
 import synoptic.model.event.EventType;
 
 /**
  * Extends the EncodedAutomaton class to encode a single ITemporalInvariant.
- * 
+ *
  */
 public class InvModel extends EncodedAutomaton {
 
@@ -19,14 +27,25 @@ public class InvModel extends EncodedAutomaton {
 
     /**
      * Generates an EncodedAutomaton for the given invariant. Encodes the names
-     * of both EventTypes composing the invariant and constructs the Automaton
-     * by using those characters in a regex representing the invariant.
+     * of both EventTypes composing the invariant and constructs the dense
+     * transition table of the DFA directly, over the alphabet of the
+     * encodings. For invariant types that do not have a direct construction,
+     * the Automaton is constructed by using those characters in a regex
+     * representing the invariant.
      */
     public InvModel(ITemporalInvariant invariant, EventTypeEncodings encodings) {
-        super(encodings);
+        super(null, encodings);
 
         this.inv = invariant;
 
+        DenseDFA dfa = buildDFA(invariant, encodings);
+        if (dfa != null) {
+            setTable(dfa);
+            checkEmptyLanguage("Intersecting model with " + invariant);
+            return;
+        }
+        model = encodings.getInitialModel();
+
         // Construct an encoded regex for the given invariant.
         String re = "";
         if (invariant instanceof BinaryInvariant) {
@@ -61,4 +80,172 @@ public class InvModel extends EncodedAutomaton {
     public ITemporalInvariant getInvariant() {
         return inv;
     }
+
+    // //////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Returns a trimmed DFA that accepts the strings over the alphabet of
+     * encodings that satisfy invariant -- the same language as the
+     * intersection of the initial model with the invariant's regex. Returns
+     * null if there is no direct construction for the type of invariant.
+     */
+    private static DenseDFA buildDFA(ITemporalInvariant invariant,
+            EventTypeEncodings encodings) {
+        if (invariant instanceof KTailInvariant) {
+            KTailInvariant tail = (KTailInvariant) invariant;
+            if (tail.getTailEvents().isEmpty()) {
+                return null;
+            }
+            int[] tailIds = new int[tail.getTailEvents().size()];
+            for (int i = 0; i < tailIds.length; i++) {
+                tailIds[i] = eventId(tail.getTailEvents().get(i), encodings);
+            }
+            Set<Integer> follows = new HashSet<Integer>();
+            for (EventType event : tail.getFollowEvents()) {
+                follows.add(eventId(event, encodings));
+            }
+            return buildKTailDFA(tailIds, follows, encodings).trim();
+        }
+
+        if (!(invariant instanceof BinaryInvariant)) {
+            return null;
+        }
+        BinaryInvariant binv = (BinaryInvariant) invariant;
+        int a = eventId(binv.getFirst(), encodings);
+        int b = eventId(binv.getSecond(), encodings);
+
+        // The DFAs below are written so that they are also correct when a ==
+        // b, by excluding both a and b from the default transitions where it
+        // matters. A missing transition rejects, and events outside the
+        // alphabet have no transitions.
+        DenseDFA dfa = new DenseDFA(encodings.getAlphabetSize());
+        if (invariant instanceof AlwaysFollowedInvariant) {
+            // ([^a]*|(a[^b]*b))*
+            int s0 = dfa.addState(true);
+            int s1 = dfa.addState(false);
+            dfa.setTransitionsExcept(s0, s0, a);
+            dfa.setTransition(s0, a, s1);
+            dfa.setTransitionsExcept(s1, s1, b);
+            dfa.setTransition(s1, b, s0);
+
+        } else if (invariant instanceof AlwaysPrecedesInvariant
+                || invariant instanceof InterruptedByInvariant) {
+            // [^b]*(a.*)?
+            int s0 = dfa.addState(true);
+            int s1 = dfa.addState(true);
+            dfa.setTransitionsExcept(s0, s0, a, b);
+            dfa.setTransition(s0, a, s1);
+            dfa.setTransitionsExcept(s1, s1);
+
+        } else if (invariant instanceof NeverFollowedInvariant) {
+            // [^a]*(a[^b]*)?
+            int s0 = dfa.addState(true);
+            int s1 = dfa.addState(true);
+            dfa.setTransitionsExcept(s0, s0, a);
+            dfa.setTransition(s0, a, s1);
+            dfa.setTransitionsExcept(s1, s1, b);
+
+        } else if (invariant instanceof NeverImmediatelyFollowedInvariant) {
+            // ([^a]|a(a)*[^ba])*a*, or ([^a]|a[^a])*a? when a == b.
+            int s0 = dfa.addState(true);
+            int s1 = dfa.addState(true);
+            dfa.setTransitionsExcept(s0, s0, a);
+            dfa.setTransition(s0, a, s1);
+            dfa.setTransitionsExcept(s1, s0, a, b);
+            if (a != b) {
+                dfa.setTransition(s1, a, s1);
+            }
+
+        } else if (invariant instanceof TOInitialTerminalInvariant) {
+            // a[^ab]*b
+            int s0 = dfa.addState(false);
+            int s1 = dfa.addState(false);
+            int s2 = dfa.addState(true);
+            dfa.setTransition(s0, a, s1);
+            dfa.setTransitionsExcept(s1, s1, a, b);
+            dfa.setTransition(s1, b, s2);
+
+        } else {
+            return null;
+        }
+        return dfa.trim();
+    }
+
+    /**
+     * Builds the DFA for a kTail invariant, which rejects the strings that
+     * contain tail followed by an event that is not in follows, or that end
+     * with tail. The states of the DFA track the length of the longest prefix
+     * of tail that is a suffix of the input (as in Knuth-Morris-Pratt string
+     * matching).
+     */
+    private static DenseDFA buildKTailDFA(int[] tail, Set<Integer> follows,
+            EventTypeEncodings encodings) {
+        int k = tail.length;
+
+        // fail[j] is the length of the longest proper prefix of tail[0..j)
+        // that is also a suffix of tail[0..j).
+        int[] fail = new int[k + 1];
+        for (int j = 2; j <= k; j++) {
+            int f = fail[j - 1];
+            while (f > 0 && tail[f] != tail[j - 1]) {
+                f = fail[f];
+            }
+            fail[j] = (tail[f] == tail[j - 1]) ? f + 1 : 0;
+        }
+
+        Set<Integer> tailSet = new HashSet<Integer>();
+        for (int c : tail) {
+            tailSet.add(c);
+        }
+        int[] tailIds = new int[tailSet.size()];
+        int i = 0;
+        for (int c : tailSet) {
+            tailIds[i++] = c;
+        }
+
+        DenseDFA dfa = new DenseDFA(encodings.getAlphabetSize());
+        for (int j = 0; j <= k; j++) {
+            dfa.addState(j < k);
+        }
+        for (int j = 0; j <= k; j++) {
+            if (j < k) {
+                dfa.setTransitionsExcept(j, 0, tailIds);
+            } else {
+                for (int c : follows) {
+                    if (!tailSet.contains(c)) {
+                        dfa.setTransition(j, c, 0);
+                    }
+                }
+            }
+            for (int c : tailIds) {
+                if (j == k && !follows.contains(c)) {
+                    continue;
+                }
+                dfa.setTransition(j, c, nextKTailState(tail, fail, j, c));
+            }
+        }
+        return dfa;
+    }
+
+    /** The KMP transition from the state j on c. */
+    private static int nextKTailState(int[] tail, int[] fail, int j, int c) {
+        while (true) {
+            if (j < tail.length && tail[j] == c) {
+                return j + 1;
+            }
+            if (j == 0) {
+                return 0;
+            }
+            j = fail[j];
+        }
+    }
+
+    /**
+     * Returns the event id of event, assigning it an encoding if it does not
+     * have one yet (in which case the id is outside of the alphabet).
+     */
+    private static int eventId(EventType event, EventTypeEncodings encodings) {
+        encodings.getEncoding(event);
+        return encodings.getEventId(event);
+    }
 }
@@ -48,6 +48,17 @@ public class InvsModel extends EncodedAutomaton {
         super.intersectWith(other, "Intersecting two InvsModels");
     }
 
+    /**
+     * Sets this model to the DFA with the given dense transition table, which
+     * is the intersection of the DFAs of invs (e.g., computed in parallel, see
+     * InvComposition), and adds each of invs to this model's list of
+     * invariants. This model must still accept all strings.
+     */
+    public void setIntersection(List<InvModel> invs, DenseDFA table) {
+        invariants.addAll(invs);
+        setTable(table);
+    }
+
     /**
      * Intersects this InvsModel with the given InvModel and adds the invariant
      * to this model's list of invariants.
@@ -73,4 +73,32 @@ public class EndToEndMainTests extends InvariMintTest {
         assertTrue(expectedDfa.subsetOf(dfa));
         assertTrue(dfa.subsetOf(expectedDfa));
     }
+
+    /**
+     * Tests that removing spurious edges by streaming the log yields the model
+     * of removing them with the trace graph, on the simple-model example.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void streamLogsTest() throws Exception {
+        String tPath = ".." + File.separator + "traces" + File.separator;
+        String simpleModelPath = tPath + "abstract" + File.separator
+                + "simple-model" + File.separator;
+
+        String[] args = new String[] { "-r",
+                "^(?<DTYPE>.+)(?<nodename>)(?<TYPE>)$", "-m", "\\k<nodename>",
+                "-o", testOutputDir + "simple-model-example",
+                "-invMintSynoptic=true", "--removeSpuriousEdges=true",
+                simpleModelPath + "trace.txt" };
+        EncodedAutomaton dfa = runInvariMintWithArgs(args);
+
+        String[] streamArgs = new String[args.length + 1];
+        System.arraycopy(args, 0, streamArgs, 0, args.length);
+        streamArgs[args.length] = "--streamLogs=true";
+        EncodedAutomaton streamedDfa = runInvariMintWithArgs(streamArgs);
+
+        assertTrue(streamedDfa.subsetOf(dfa));
+        assertTrue(dfa.subsetOf(streamedDfa));
+    }
 }
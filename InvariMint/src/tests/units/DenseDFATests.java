@@ -0,0 +1,138 @@
+package tests.units;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import model.DenseDFA;
+
+import org.junit.Test;
+
+import dk.brics.automaton.Automaton;
+import dk.brics.automaton.BasicOperations;
+import dk.brics.automaton.MinimizationOperations;
+
+/**
+ * Tests for the DenseDFA class, which compare its operations to those of
+ * dk.brics on random DFAs.
+ */
+public class DenseDFATests {
+
+    private static final int NUM_SYMBOLS = 3;
+
+    /**
+     * Returns a random DFA with at most maxStates states, in which each
+     * transition is missing with probability 1/4.
+     */
+    private static DenseDFA randomDFA(Random r, int maxStates) {
+        DenseDFA dfa = new DenseDFA(NUM_SYMBOLS);
+        int numStates = 1 + r.nextInt(maxStates);
+        for (int s = 0; s < numStates; s++) {
+            dfa.addState(r.nextInt(3) == 0);
+        }
+        for (int s = 0; s < numStates; s++) {
+            for (int a = 0; a < NUM_SYMBOLS; a++) {
+                if (r.nextInt(4) != 0) {
+                    dfa.setTransition(s, a, r.nextInt(numStates));
+                }
+            }
+        }
+        return dfa;
+    }
+
+    @Test
+    public void testRun() {
+        // Accepts the sequences of 0s and 1s that end with 1.
+        DenseDFA dfa = new DenseDFA(NUM_SYMBOLS);
+        int s0 = dfa.addState(false);
+        int s1 = dfa.addState(true);
+        dfa.setTransition(s0, 0, s0);
+        dfa.setTransition(s0, 1, s1);
+        dfa.setTransition(s1, 0, s0);
+        dfa.setTransition(s1, 1, s1);
+
+        assertFalse(dfa.run(new int[] {}));
+        assertTrue(dfa.run(new int[] { 1 }));
+        assertTrue(dfa.run(new int[] { 0, 0, 1 }));
+        assertFalse(dfa.run(new int[] { 1, 0 }));
+        assertFalse(dfa.run(new int[] { 1, 2 }));
+        assertFalse(dfa.run(new int[] { 1, NUM_SYMBOLS }));
+        assertEquals(DenseDFA.NONE, dfa.step(s0, -1));
+    }
+
+    @Test
+    public void testProductAndMinimize() {
+        Random r = new Random(7);
+        for (int i = 0; i < 200; i++) {
+            DenseDFA a = randomDFA(r, 6);
+            DenseDFA b = randomDFA(r, 6);
+            Automaton aModel = a.toAutomaton();
+            Automaton bModel = b.toAutomaton();
+
+            // The round trip through dk.brics keeps the language.
+            assertTrue(DenseDFA.fromAutomaton(aModel, NUM_SYMBOLS)
+                    .toAutomaton().equals(aModel));
+
+            DenseDFA product = DenseDFA.product(a, b);
+            Automaton expected = BasicOperations.intersection(aModel, bModel);
+            assertTrue(product.toAutomaton().equals(expected));
+            assertEquals(expected.isEmpty(), product.isEmpty());
+
+            // The minimal DFA has as many states as the one of dk.brics.
+            DenseDFA minimal = product.minimize();
+            MinimizationOperations.minimizeHopcroft(expected);
+            assertTrue(minimal.toAutomaton().equals(expected));
+            if (!minimal.isEmpty()) {
+                assertEquals(expected.getNumberOfStates(),
+                        minimal.getNumStates());
+            }
+        }
+    }
+
+    @Test
+    public void testRestrict() {
+        // A DFA that accepts any sequence of 0s and 1s.
+        DenseDFA dfa = new DenseDFA(NUM_SYMBOLS);
+        int s0 = dfa.addState(true);
+        dfa.setTransition(s0, 0, s0);
+        dfa.setTransition(s0, 1, s0);
+
+        BitSet used = new BitSet();
+        used.set(s0 * NUM_SYMBOLS + 1);
+        DenseDFA restricted = dfa.restrict(used);
+        assertTrue(restricted.run(new int[] { 1, 1 }));
+        assertFalse(restricted.run(new int[] { 0 }));
+        assertEquals(1, restricted.getNumStates());
+
+        // Without any used transitions, only the empty sequence is accepted.
+        restricted = dfa.restrict(new BitSet());
+        assertTrue(restricted.run(new int[] {}));
+        assertFalse(restricted.run(new int[] { 1 }));
+    }
+
+    /**
+     * Tests restricting a DFA with more states than the initial capacity of
+     * the transition table.
+     */
+    @Test
+    public void testRestrictManyStates() {
+        // A DFA that accepts the sequences of up to 9 0s.
+        DenseDFA dfa = new DenseDFA(NUM_SYMBOLS);
+        BitSet used = new BitSet();
+        int prev = dfa.addState(true);
+        for (int i = 0; i < 9; i++) {
+            int s = dfa.addState(true);
+            dfa.setTransition(prev, 0, s);
+            used.set(prev * NUM_SYMBOLS);
+            prev = s;
+        }
+
+        DenseDFA restricted = dfa.restrict(used);
+        assertEquals(10, restricted.getNumStates());
+        assertTrue(restricted.run(new int[] { 0, 0, 0, 0, 0, 0, 0, 0, 0 }));
+        assertFalse(restricted.run(new int[] { 0, 0, 0, 0, 0, 0, 0, 0, 0, 0 }));
+    }
+}
@@ -6,8 +6,11 @@ import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
+import model.EncodedAutomaton;
 import model.EventTypeEncodings;
 import model.InvModel;
 
@@ -16,8 +19,13 @@ import org.junit.Test;
 
 import synoptic.invariants.AlwaysFollowedInvariant;
 import synoptic.invariants.AlwaysPrecedesInvariant;
+import synoptic.invariants.BinaryInvariant;
 import synoptic.invariants.ITemporalInvariant;
+import synoptic.invariants.InterruptedByInvariant;
+import synoptic.invariants.KTailInvariant;
 import synoptic.invariants.NeverFollowedInvariant;
+import synoptic.invariants.NeverImmediatelyFollowedInvariant;
+import synoptic.invariants.TOInitialTerminalInvariant;
 import synoptic.model.event.EventType;
 
 /**
@@ -84,4 +92,72 @@ public class InvModelTests {
         assertSame(inv, model.getInvariant());
         assertNotSame(inv2, model.getInvariant());
     }
+
+    /**
+     * Checks that the DFA constructed for an invariant accepts the same
+     * language as the invariant's regex, over the alphabet of the encodings.
+     */
+    private void checkMatchesRegex(ITemporalInvariant inv, String re) {
+        InvModel model = new InvModel(inv, encodings);
+        EncodedAutomaton reModel = new EncodedAutomaton(encodings);
+        reModel.intersectWithRE(re);
+        assertTrue(inv.toString(), model.subsetOf(reModel));
+        assertTrue(inv.toString(), reModel.subsetOf(model));
+    }
+
+    private void checkMatchesRegex(BinaryInvariant inv) {
+        checkMatchesRegex(inv, inv.getRegex(
+                encodings.getEncoding(inv.getFirst()),
+                encodings.getEncoding(inv.getSecond())));
+    }
+
+    @Test
+    public void testDirectDFAs() {
+        String[][] pairs = { { "a", "b" }, { "b", "a" }, { "a", "a" } };
+        for (String[] p : pairs) {
+            checkMatchesRegex(new AlwaysFollowedInvariant(p[0], p[1], "t"));
+            if (!p[0].equals(p[1])) {
+                checkMatchesRegex(new AlwaysPrecedesInvariant(p[0], p[1], "t"));
+            }
+            checkMatchesRegex(new NeverFollowedInvariant(p[0], p[1], "t"));
+            checkMatchesRegex(new NeverImmediatelyFollowedInvariant(p[0],
+                    p[1], "t"));
+            checkMatchesRegex(new TOInitialTerminalInvariant(
+                    EncodingTests.aEvent, p[1].equals("a") ? EncodingTests.aEvent
+                            : EncodingTests.bEvent, "t"));
+        }
+        checkMatchesRegex(new InterruptedByInvariant("a", "b", "t"));
+
+        // kTails with overlapping tails, and an empty follow set.
+        EventType a = EncodingTests.aEvent;
+        EventType b = EncodingTests.bEvent;
+        EventType c = EncodingTests.cEvent;
+        EventType[][] tails = { { a }, { a, b }, { a, a }, { a, b, a },
+                { a, b, a, b } };
+        EventType[][] followSets = { {}, { a }, { b, c }, { a, b, c } };
+        for (EventType[] tail : tails) {
+            for (EventType[] follows : followSets) {
+                List<EventType> tailList = new ArrayList<EventType>();
+                List<Character> tailChars = new ArrayList<Character>();
+                for (EventType e : tail) {
+                    tailList.add(e);
+                    tailChars.add(encodings.getEncoding(e));
+                }
+                Set<EventType> followSet = new HashSet<EventType>();
+                List<Character> followChars = new ArrayList<Character>();
+                for (EventType e : follows) {
+                    followSet.add(e);
+                    followChars.add(encodings.getEncoding(e));
+                }
+                KTailInvariant inv = new KTailInvariant(tailList, followSet);
+                // Use the follow order of the invariant in the regex.
+                followChars.clear();
+                for (EventType e : inv.getFollowEvents()) {
+                    followChars.add(encodings.getEncoding(e));
+                }
+                checkMatchesRegex(inv,
+                        KTailInvariant.getRegex(tailChars, followChars));
+            }
+        }
+    }
 }
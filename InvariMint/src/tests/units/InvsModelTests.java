@@ -9,6 +9,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import algorithms.InvComposition;
+
 import model.EventTypeEncodings;
 import model.InvModel;
 import model.InvsModel;
@@ -17,8 +19,10 @@ import org.junit.Before;
 import org.junit.Test;
 
 import synoptic.invariants.AlwaysFollowedInvariant;
+import synoptic.invariants.AlwaysPrecedesInvariant;
 import synoptic.invariants.ITemporalInvariant;
 import synoptic.invariants.NeverFollowedInvariant;
+import synoptic.invariants.TemporalInvariantSet;
 import synoptic.model.event.EventType;
 
 /**
@@ -81,4 +85,35 @@ public class InvsModelTests {
         sequence.add(EncodingTests.bEvent);
         assertTrue(model.run(sequence));
     }
+
+    @Test
+    public void testIntersectModelWithInvs() throws Exception {
+        Set<ITemporalInvariant> invariants = new HashSet<ITemporalInvariant>();
+        String[] events = { "a", "b", "c", "d" };
+        for (String first : events) {
+            for (String second : events) {
+                if (first.compareTo(second) < 0) {
+                    invariants.add(new AlwaysFollowedInvariant(first, second,
+                            "t"));
+                    invariants.add(new AlwaysPrecedesInvariant(first, second,
+                            "t"));
+                } else if (first.compareTo(second) > 0) {
+                    invariants.add(new NeverFollowedInvariant(first, second,
+                            "t"));
+                }
+            }
+        }
+        InvsModel expected = generateModel(invariants);
+
+        TemporalInvariantSet invSet = new TemporalInvariantSet();
+        invSet.addAll(invariants);
+        for (boolean minimize : new boolean[] { false, true }) {
+            InvsModel model = InvComposition.intersectModelWithInvs(invSet,
+                    minimize, new InvsModel(encodings));
+
+            assertEquals(invariants.size(), model.getInvariants().size());
+            assertTrue(model.subsetOf(expected));
+            assertTrue(expected.subsetOf(model));
+        }
+    }
 }
@@ -0,0 +1,148 @@
+package tests.units;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import model.EventTypeEncodings;
+import model.InvModel;
+import model.InvsModel;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import algorithms.TraceFiltering;
+
+import synoptic.invariants.NeverFollowedInvariant;
+import synoptic.main.AbstractMain;
+import synoptic.main.SynopticMain;
+import synoptic.main.options.AbstractOptions;
+import synoptic.main.options.SynopticOptions;
+import synoptic.main.parser.ParseException;
+import synoptic.main.parser.TraceParser;
+import synoptic.model.ChainsTraceGraph;
+import synoptic.model.EventNode;
+import synoptic.model.event.EventType;
+import synoptic.model.event.StringEventType;
+import synoptic.model.export.DotExportFormatter;
+
+import tests.InvariMintTest;
+
+/**
+ * Tests for TraceFiltering, which compare removing spurious edges with a trace
+ * graph to removing them while streaming the log.
+ */
+public class TraceFilteringTests extends InvariMintTest {
+
+    private EventType initialEvent;
+    private EventType terminalEvent;
+    private EventTypeEncodings encodings;
+
+    @Override
+    @Before
+    public void setUp() throws ParseException {
+        AbstractMain.instance = null;
+        new SynopticMain(new SynopticOptions().toAbstractOptions(),
+                new DotExportFormatter());
+
+        initialEvent = StringEventType.newInitialStringEventType();
+        terminalEvent = StringEventType.newTerminalStringEventType();
+        Set<EventType> events = new HashSet<EventType>();
+        events.add(initialEvent);
+        events.add(terminalEvent);
+        events.add(EncodingTests.aEvent);
+        events.add(EncodingTests.bEvent);
+        events.add(EncodingTests.cEvent);
+        encodings = new EventTypeEncodings(events);
+    }
+
+    private static File writeLog(String log) throws IOException {
+        File file = File.createTempFile("trace-filtering", ".txt");
+        file.deleteOnExit();
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(log);
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    private static TraceParser newParser(String regex) throws ParseException {
+        return new TraceParser(Arrays.asList(regex),
+                AbstractOptions.partitionRegExpDefault, "--",
+                "dd/MMM/yyyy:HH:mm:ss");
+    }
+
+    /** Returns a model of c NFby a, which accepts any trace of the log. */
+    private InvsModel newModel() {
+        InvsModel model = new InvsModel(encodings);
+        model.intersectWith(new InvModel(new NeverFollowedInvariant(
+                EncodingTests.cEvent, EncodingTests.aEvent, "t"), encodings));
+        return model;
+    }
+
+    private List<EventType> sequence(EventType... events) {
+        List<EventType> ret = new ArrayList<EventType>();
+        ret.add(initialEvent);
+        ret.addAll(Arrays.asList(events));
+        ret.add(terminalEvent);
+        return ret;
+    }
+
+    /**
+     * Tests that streaming a log removes the same edges as replaying the trace
+     * graph of the log.
+     */
+    @Test
+    public void streamingMatchesTraceGraphTest() throws Exception {
+        File log = writeLog("a\nb\n--\na\nc\nb\n--\nc\n");
+        String regex = "(?<TYPE>.+)";
+
+        TraceParser parser = newParser(regex);
+        List<EventNode> events = parser.parseTraceFile(log, -1);
+        ChainsTraceGraph g = parser.generateDirectTORelation(events);
+        InvsModel inMemory = newModel();
+        TraceFiltering.removeSpuriousEdges(inMemory, g, encodings,
+                initialEvent, terminalEvent);
+
+        InvsModel streamed = newModel();
+        TraceFiltering.removeSpuriousEdges(streamed, newParser(regex),
+                Arrays.asList(log.getAbsolutePath()), encodings,
+                initialEvent, terminalEvent);
+
+        assertTrue(inMemory.subsetOf(streamed));
+        assertTrue(streamed.subsetOf(inMemory));
+
+        // The traces of the log are still accepted.
+        assertTrue(streamed.run(sequence(EncodingTests.aEvent,
+                EncodingTests.bEvent)));
+        assertTrue(streamed.run(sequence(EncodingTests.cEvent)));
+        // No trace has a c after a c.
+        assertTrue(newModel().run(
+                sequence(EncodingTests.cEvent, EncodingTests.cEvent)));
+        assertFalse(streamed.run(
+                sequence(EncodingTests.cEvent, EncodingTests.cEvent)));
+    }
+
+    /**
+     * Tests that streaming a log in which the events of a trace are out of
+     * order fails.
+     */
+    @Test(expected = ParseException.class)
+    public void streamingOutOfOrderTest() throws Exception {
+        File log = writeLog("2 a\n1 b\n");
+        TraceFiltering.removeSpuriousEdges(newModel(),
+                newParser("(?<TIME>\\d+) (?<TYPE>.+)"),
+                Arrays.asList(log.getAbsolutePath()), encodings,
+                initialEvent, terminalEvent);
+    }
+}
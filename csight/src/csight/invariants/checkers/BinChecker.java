@@ -48,6 +48,11 @@ public abstract class BinChecker<State> {
         this.s = otherChecker.s;
     }
 
+    /** Returns the current (immutable) state of this checker. */
+    public State getState() {
+        return s;
+    }
+
     // ////////////////////////////////////////////////////////////////
 
     /** @return whether or not the new state is an accepting state. */
@@ -11,6 +11,7 @@ import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -39,7 +40,9 @@ import csight.invariants.EventuallyHappens;
 import csight.invariants.NeverFollowedBy;
 import csight.mc.MC;
 import csight.mc.MCResult;
+import csight.mc.MCResultCache;
 import csight.mc.MCcExample;
+import csight.mc.explicit.ExplicitMC;
 import csight.mc.mcscm.McScM;
 import csight.mc.parallelizer.InvariantTimeoutPair;
 import csight.mc.parallelizer.McScMParallelizer;
@@ -149,6 +152,10 @@ public class CSightMain {
     // the McScM verify binary or Spin.
     private MC mc = null;
 
+    // Model checking results for CFSM/invariant combinations that have already
+    // been checked.
+    private MCResultCache mcResultCache = null;
+
     // The channels associated with this CSight execution. These are parsed in
     // checkOptions().
     private List<ChannelId> channelIds = null;
@@ -207,7 +214,7 @@ public class CSightMain {
             throw new OptionException(err);
         }
 
-        if (optns.mcPath == null) {
+        if (optns.mcPath == null && !optns.mcType.equals("explicit")) {
             err = "Specify path of the McScM model checker to use for verification:\n\t" + opts.getOptDesc("mcPath");
             throw new OptionException(err);
         }
@@ -222,6 +229,12 @@ public class CSightMain {
             throw new OptionException(err);
         }
 
+        if (opts.mcResultCacheSize < 0) {
+            err = "Invalid model checking result cache size: " + opts.mcResultCacheSize;
+            throw new OptionException(err);
+        }
+        mcResultCache = new MCResultCache(opts.mcResultCacheSize);
+
         // Determine the model checker type.
         if (optns.mcType.equals("spin")) {
             mc = new Spin(opts.mcPath);
@@ -235,6 +248,17 @@ public class CSightMain {
             }
         } else if (optns.mcType.equals("mcscm")) {
             mc = new McScM(opts.mcPath);
+        } else if (optns.mcType.equals("explicit")) {
+            if (opts.explicitChannelCapacity <= 0) {
+                err = "Invalid channel capacity for use with the explicit model checker: "
+                        + opts.explicitChannelCapacity;
+                throw new OptionException(err);
+            }
+            if (opts.runParallel) {
+                err = "Parallel model checking not supported for the explicit model checker (it always uses numParallel threads)";
+                throw new OptionException(err);
+            }
+            mc = new ExplicitMC(opts.explicitChannelCapacity, opts.numParallel);
         } else {
             err = "Invalid model checker type '" + opts.mcType + "'";
             throw new OptionException(err);
@@ -386,7 +410,7 @@ public class CSightMain {
             assert traces.size() == 1;
 
             logger.info("Finding invalidated invariants in the observed fifo system.");
-            Set<BinaryInvariant> faultyInvs = traces.get(0).findInvalidatedInvariants(dynInvs);
+            Set<BinaryInvariant> faultyInvs = traces.get(0).findInvalidatedInvariants(dynInvs, opts.numParallel);
             if (!faultyInvs.isEmpty()) {
                 logger.warning("Input traces are incomplete --- some mined invariants cannot be satisfied: "
                         + faultyInvs.toString());
@@ -403,6 +427,7 @@ public class CSightMain {
         logger.info("Generating the initial partition graph (GFSM)...");
         GFSM pGraph;
         pGraph = new GFSM(traces, opts.topKElements);
+        pGraph.setIncrementalCFSM(opts.incrementalCFSM);
 
         // Order dynInvs so that the eventually invariants are at the front (the
         // assumption is that they are faster to model check).
@@ -660,6 +685,36 @@ public class CSightMain {
         return dynInvs;
     }
 
+    /**
+     * Returns the input of the model checker mc for checking curInv in cfsm,
+     * augmenting cfsm with curInv for McScM. Returns null for the explicit
+     * model checker, which is prepared to explore cfsm directly.
+     */
+    private String prepareMCInput(CFSM cfsm, BinaryInvariant curInv) throws Exception {
+        if (mc instanceof McScM) {
+            // Model check the CFSM using the McScM model checker.
+
+            // Augment the CFSM with synthetic states/events to check
+            // curInv (only fone for McScM).
+            cfsm.augmentWithInvTracing(curInv);
+
+            return cfsm.toScmString("checking_scm_" + curInv.getConnectorString());
+        } else if (mc instanceof Spin) {
+            List<BinaryInvariant> curInvs = Util.newList();
+            curInvs.add(curInv);
+            return cfsm.toPromelaString(curInvs, opts.spinChannelCapacity);
+
+        } else if (mc instanceof ExplicitMC) {
+            // The explicit model checker explores the CFSM directly, and
+            // does not need it to be augmented or serialized.
+            ((ExplicitMC) mc).prepare(cfsm, curInv);
+            return null;
+
+        } else {
+            throw new RuntimeException("Model checker is not properly specified.");
+        }
+    }
+
     /**
      * Implements the (model check - refine loop). Check each invariant in
      * dynInvs in the pGraph model, and refine pGraph as needed until all
@@ -743,58 +798,52 @@ public class CSightMain {
 
             // Get the CFSM corresponding to the partition graph.
             CFSM cfsm = pGraph.getCFSM(opts.minimize);
-
-            String mcInputStr;
-            if (mc instanceof McScM) {
-                // Model check the CFSM using the McScM model checker.
-
-                // Augment the CFSM with synthetic states/events to check
-                // curInv (only fone for McScM).
-                cfsm.augmentWithInvTracing(curInv);
-
-                mcInputStr = cfsm.toScmString("checking_scm_" + curInv.getConnectorString());
-            } else if (mc instanceof Spin) {
-                List<BinaryInvariant> curInvs = Util.newList();
-                curInvs.add(curInv);
-                mcInputStr = cfsm.toPromelaString(curInvs, opts.spinChannelCapacity);
-
-            } else {
-                throw new RuntimeException("Model checker is not properly specified.");
-            }
+            String resultKey = MCResultCache.key(MCResultCache.cfsmKey(cfsm), curInv);
 
             logger.info("*******************************************************");
             logger.info("Checking ... " + curInv.toString() + ". Inv " + invsCounter + " / " + totalInvs
                     + ", refinements so far: " + gfsmCounter + ". Timeout = " + curTimeout + ".");
             logger.info("*******************************************************");
 
-            try {
-                mc.verify(mcInputStr, curTimeout);
-            } catch (TimeoutException e) {
-                // The model checker timed out. First, record the timed-out
-                // invariant so that we are not stuck re-checking it.
-                invsToSatisfy.remove(0);
-                timedOutInvs.add(curInv);
+            MCResult result = mcResultCache.get(resultKey);
+            if (result != null) {
+                logger.info("Re-using the cached result of checking this invariant in an identical CFSM.");
+            } else {
+                // The model checker input is only generated on a cache miss,
+                // since generating it is the expensive part of checking.
+                String mcInputStr = prepareMCInput(cfsm, curInv);
+                try {
+                    mc.verify(mcInputStr, curTimeout);
+                } catch (TimeoutException e) {
+                    // The model checker timed out. First, record the timed-out
+                    // invariant so that we are not stuck re-checking it.
+                    invsToSatisfy.remove(0);
+                    timedOutInvs.add(curInv);
 
-                logger.info("Timed out in checking invariant: " + curInv.toString());
+                    logger.info("Timed out in checking invariant: " + curInv.toString());
 
-                // No invariants are left to try -- increase the timeout value,
-                // unless we reached the timeout limit, in which case we throw
-                // an exception.
-                if (invsToSatisfy.isEmpty()) {
-                    curTimeout = reAddTimedOutInvs(invsToSatisfy, timedOutInvs, timeoutDelta, maxTimeout, curTimeout);
+                    // No invariants are left to try -- increase the timeout value,
+                    // unless we reached the timeout limit, in which case we throw
+                    // an exception.
+                    if (invsToSatisfy.isEmpty()) {
+                        curTimeout = reAddTimedOutInvs(invsToSatisfy, timedOutInvs, timeoutDelta, maxTimeout,
+                                curTimeout);
+                    }
+
+                    // Try the first invariant (perhaps again, but with a higher
+                    // timeout value).
+                    curInv = invsToSatisfy.get(0);
+                    continue;
+                } catch (InterruptedException e) {
+                    // The CSightMain Thread was interrupted. Stop model checking
+                    // and terminate with InterruptedException.
+                    throw new InterruptedException("CSightMain was interrupted.");
                 }
 
-                // Try the first invariant (perhaps again, but with a higher
-                // timeout value).
-                curInv = invsToSatisfy.get(0);
-                continue;
-            } catch (InterruptedException e) {
-                // The CSightMain Thread was interrupted. Stop model checking
-                // and terminate with InterruptedException.
-                throw new InterruptedException("CSightMain was interrupted.");
+                result = mc.getVerifyResult(cfsm.getChannelIds());
+                mcResultCache.put(resultKey, result);
             }
 
-            MCResult result = mc.getVerifyResult(cfsm.getChannelIds());
             logger.info(result.toRawString());
             logger.info(result.toString());
 
@@ -910,6 +959,16 @@ public class CSightMain {
         // gfsm.
         int mcCounter = 0;
 
+        /**
+         * The key of the CFSM of the current pGraph, and the oldest refinement
+         * counter since which the CFSM has had this key. Results of model
+         * checking runs started at or after validSince are of the current
+         * CFSM. These provide mutability, and are not for concurrent access.
+         */
+        AtomicReference<String> cfsmKey = new AtomicReference<String>(
+                MCResultCache.cfsmKey(pGraph.getCFSM(opts.minimize)));
+        AtomicInteger validSince = new AtomicInteger(0);
+
         exportIntermediateModels(pGraph, invsToSatisfy.get(0).getInv(), gfsmCounter.get(), opts.outputPathPrefix);
 
         if (pGraph.isSingleton()) {
@@ -924,7 +983,7 @@ public class CSightMain {
         final BlockingQueue<ParallelizerResult> resultsChannel = new LinkedBlockingQueue<ParallelizerResult>();
 
         Thread parallelizer = new Thread(
-                new McScMParallelizer(opts.numParallel, opts.mcPath, taskChannel, resultsChannel));
+                new McScMParallelizer(opts.numParallel, opts.mcPath, mcResultCache, taskChannel, resultsChannel));
 
         parallelizer.start();
         parallelizerStartK(invsToSatisfy, curInvs, pGraph, gfsmCounter.get(), totalInvs, taskChannel);
@@ -934,7 +993,7 @@ public class CSightMain {
             assert curInvs.size() <= opts.numParallel;
             assert maxTimedOutInvs.size() + satisfiedInvs.size() + invsToSatisfy.size() + curInvs.size() == totalInvs;
 
-            ParallelizerResult result = waitForResult(gfsmCounter.get(), resultsChannel);
+            ParallelizerResult result = waitForResult(validSince.get(), resultsChannel);
             mcCounter++;
 
             logger.info("Obtained result from parallelizer (refinement: " + gfsmCounter + ")");
@@ -964,7 +1023,7 @@ public class CSightMain {
                 // Add the invariant back to beginning of queue checking to
                 // check again.
                 invsToSatisfy.add(0, resultPair);
-                parallelizerStartOne(invsToSatisfy, curInvs, pGraph, mcCounter, taskChannel);
+                parallelizerStartOne(invsToSatisfy, curInvs, pGraph, gfsmCounter.get(), taskChannel);
 
                 // Continue to wait for next result.
                 continue;
@@ -997,7 +1056,7 @@ public class CSightMain {
             }
 
             if (processUnsafeModelResult(pGraph, invsToSatisfy, maxTimedOutInvs, curInvs, totalInvs, gfsmCounter,
-                    opts.outputPathPrefix, taskChannel, resultsChannel, resultPair, mcResult)) {
+                    cfsmKey, validSince, opts.outputPathPrefix, taskChannel, resultPair, mcResult)) {
                 parallelizer.interrupt();
                 return mcCounter;
             }
@@ -1007,12 +1066,15 @@ public class CSightMain {
     }
 
     /**
-     * Stops all model checking process and clears curInvs, then refines the
-     * GFSM model given an invariant that returned unsafe. All maxTimedOutInvs
-     * are added back to invsToSatisfy, and the gfsmCounter is updated. Then,
-     * restarts the model checking processes if the new model is not a singleton
-     * and returns false. If the model is a singleton, no more model checking is
-     * necessary, and returns true.
+     * Refines the GFSM model given an invariant that returned unsafe, and then
+     * stops the model checking processes that check a CFSM that differs from
+     * the refined CFSM. The invariants of the stopped processes are moved from
+     * curInvs back to invsToSatisfy, while the other processes continue to run
+     * as their results remain valid. All maxTimedOutInvs are added back to
+     * invsToSatisfy, and the gfsmCounter is updated. Then, starts new model
+     * checking processes if the new model is not a singleton and returns false.
+     * If the model is a singleton, no more model checking is necessary, and
+     * returns true.
      * 
      * @param pGraph
      *            the model to check
@@ -1026,9 +1088,13 @@ public class CSightMain {
      *            the total number of invariants
      * @param gfsmCounter
      *            the refinement counter
+     * @param cfsmKey
+     *            the key of the CFSM of pGraph, updated after refinement
+     * @param validSince
+     *            the oldest refinement counter of valid results, updated if
+     *            the refinement changes the CFSM
      * @param gfsmPrefixFilename
      * @param taskChannel
-     * @param resultsChannel
      * @param resultPair
      *            the invariant and its corresponding timeout that just returned
      * @param mcResult
@@ -1040,26 +1106,38 @@ public class CSightMain {
      */
     private boolean processUnsafeModelResult(GFSM pGraph, List<InvariantTimeoutPair> invsToSatisfy,
             Set<InvariantTimeoutPair> maxTimedOutInvs, Set<InvariantTimeoutPair> curInvs, int totalInvs,
-            AtomicInteger gfsmCounter, String gfsmPrefixFilename, final BlockingQueue<ParallelizerTask> taskChannel,
-            final BlockingQueue<ParallelizerResult> resultsChannel, InvariantTimeoutPair resultPair, MCResult mcResult)
-            throws InterruptedException, Exception, IOException {
+            AtomicInteger gfsmCounter, AtomicReference<String> cfsmKey, AtomicInteger validSince,
+            String gfsmPrefixFilename, final BlockingQueue<ParallelizerTask> taskChannel,
+            InvariantTimeoutPair resultPair, MCResult mcResult) throws InterruptedException, Exception, IOException {
         // Increment the number of refinements:
         gfsmCounter.addAndGet(1);
 
-        taskChannel.clear();
-        taskChannel.put(new ParallelizerTask(ParallelizerCommands.STOP_ALL, null, gfsmCounter.get()));
-        resultsChannel.clear();
+        // Refine the pGraph in an attempt to eliminate the counter
+        // example. Processes of the current CFSM continue to run meanwhile.
+        refineCExample(pGraph, mcResult.getCExample());
+
+        String newCfsmKey = MCResultCache.cfsmKey(pGraph.getCFSM(opts.minimize));
+        if (!newCfsmKey.equals(cfsmKey.get())) {
+            // The refinement changed the CFSM, so none of the running
+            // processes (which all check the previous CFSM) remain valid.
+            // Pending START commands are out-dated as well.
+            taskChannel.clear();
+
+            // Add the invariants that didn't return back to invariants to
+            // satisfy.
+            invsToSatisfy.addAll(0, curInvs);
+            curInvs.clear();
+
+            cfsmKey.set(newCfsmKey);
+            validSince.set(gfsmCounter.get());
+        } else {
+            logger.info("Refinement did not change the CFSM: the running model checking processes continue.");
+        }
+        taskChannel.put(new ParallelizerTask(ParallelizerCommands.STOP_CHANGED, null, gfsmCounter.get(), newCfsmKey));
 
-        // Add the invariants that didn't return back to invariants to
-        // satisfy.
-        invsToSatisfy.addAll(0, curInvs);
         // Add the unsatisfied invariant back to invariants to satisfy.
         invsToSatisfy.add(0, resultPair);
 
-        // Refine the pGraph in an attempt to eliminate the counter
-        // example.
-        refineCExample(pGraph, mcResult.getCExample());
-
         exportIntermediateModels(pGraph, invsToSatisfy.get(0).getInv(), gfsmCounter.get(), gfsmPrefixFilename);
 
         // Model changed through refinement. Therefore, forget any
@@ -1198,24 +1276,25 @@ public class CSightMain {
 
     /**
      * Waits and returns the first valid ParallelizerResult. Valid results are
-     * either of the current refinement counter, or an exception. There will
-     * always be at least one process running of the current refinement counter.
+     * either of a refinement counter at or after validSince (since when the
+     * CFSM has not changed), or an exception. There will always be at least one
+     * valid process running.
      * 
-     * @param refinementCounter
-     *            The current refinement counter
+     * @param validSince
+     *            The oldest refinement counter with the current CFSM
      * @param resultsChannel
      *            The results channel
      * @return
      * @throws InterruptedException
      */
-    private ParallelizerResult waitForResult(int refinementCounter, BlockingQueue<ParallelizerResult> resultsChannel)
+    private ParallelizerResult waitForResult(int validSince, BlockingQueue<ParallelizerResult> resultsChannel)
             throws InterruptedException {
         logger.info("Waiting for model checking result from Parallelizer...");
 
         while (true) {
             ParallelizerResult result = resultsChannel.take();
 
-            if (result.getRefinementCounter() == refinementCounter || result.isException()) {
+            if (result.getRefinementCounter() >= validSince || result.isException()) {
                 return result;
             }
         }
@@ -1247,12 +1326,14 @@ public class CSightMain {
         List<ParallelizerInput> inputs = new ArrayList<ParallelizerInput>();
 
         // Run K processes as number of invariants to check may be less than
-        // parallelization factor
-        int numLeftToCheck = Math.min(opts.numParallel, invsToSatisfy.size());
+        // parallelization factor, and processes that were not stopped by the
+        // last refinement may still be running
+        int numLeftToCheck = Math.min(opts.numParallel - curInvs.size(), invsToSatisfy.size());
         for (int i = 0; i < numLeftToCheck; i++) {
             InvariantTimeoutPair invTimeoutToCheck = invsToSatisfy.remove(0);
 
-            ParallelizerInput input = new ParallelizerInput(invTimeoutToCheck, pGraph.getCFSM(opts.minimize));
+            CFSM cfsm = pGraph.getCFSM(opts.minimize);
+            ParallelizerInput input = new ParallelizerInput(invTimeoutToCheck, cfsm, MCResultCache.cfsmKey(cfsm));
             inputs.add(input);
             curInvs.add(invTimeoutToCheck);
         }
@@ -1282,7 +1363,8 @@ public class CSightMain {
 
         InvariantTimeoutPair invTimeoutToCheck = invsToSatisfy.remove(0);
 
-        ParallelizerInput input = new ParallelizerInput(invTimeoutToCheck, pGraph.getCFSM(opts.minimize));
+        CFSM cfsm = pGraph.getCFSM(opts.minimize);
+        ParallelizerInput input = new ParallelizerInput(invTimeoutToCheck, cfsm, MCResultCache.cfsmKey(cfsm));
         inputs.add(input);
         curInvs.add(invTimeoutToCheck);
 
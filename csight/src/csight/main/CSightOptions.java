@@ -166,13 +166,17 @@ public class CSightOptions extends Options {
     public String mcPath = null;
 
     @Option(
-            value = "Model checker type to use. Must be either 'spin' or 'mcscm'.")
+            value = "Model checker type to use. Must be one of 'spin', 'mcscm', or 'explicit' (the built-in explicit-state checker).")
     public String mcType = "mcscm";
 
     @Option(
             value = "Default channel capacity to use when using the spin model checker.")
     public int spinChannelCapacity = 8;
 
+    @Option(
+            value = "Channel capacity to use when using the explicit model checker.")
+    public int explicitChannelCapacity = 8;
+
     @Option(
             value = "-p Run model checking processes in parallel. (Only available for McScM)")
     public boolean runParallel = false;
@@ -190,6 +194,14 @@ public class CSightOptions extends Options {
             aliases = { "-pFactor" })
     public int numParallel = Runtime.getRuntime().availableProcessors();
 
+    @Option(
+            value = "Maximum number of model checking results to cache across refinements (0 disables the cache).")
+    public int mcResultCacheSize = 1024;
+
+    @Option(
+            value = "Re-use the process FSMs derived from the GFSM across refinements, re-computing only the parts affected by each refinement")
+    public boolean incrementalCFSM = true;
+
     /**
      * The base timeout that is used to time out invocations of verification
      * (which may run indefinitely).
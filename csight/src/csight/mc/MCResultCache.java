@@ -0,0 +1,120 @@
+package csight.mc;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import csight.invariants.BinaryInvariant;
+import csight.model.fifosys.cfsm.CFSM;
+
+/**
+ * <p>
+ * A thread-safe cache of model checking results, keyed by a digest of the
+ * canonical text of the checked (non-augmented) CFSM and the checked invariant.
+ * Model checking an invariant in the same CFSM twice yields the same result,
+ * so once an invariant has been checked in a CFSM it never needs to be
+ * re-checked, even across refinement iterations. This matters because a
+ * refinement of the GFSM does not necessarily change the CFSM derived from it
+ * (e.g., when the FSMs are minimized).
+ * </p>
+ * <p>
+ * Only completed (safe or unsafe) results should be cached -- timeouts depend
+ * on the timeout value and are not a property of the input. The cache holds
+ * at most maxEntries results, and evicts the least recently used result when
+ * it is full.
+ * </p>
+ */
+public class MCResultCache {
+
+    private final Map<String, MCResult> results;
+
+    private int hits = 0;
+    private int misses = 0;
+
+    /**
+     * @param maxEntries
+     *            maximum number of results to keep; 0 disables caching
+     */
+    public MCResultCache(final int maxEntries) {
+        assert maxEntries >= 0;
+
+        results = new LinkedHashMap<String, MCResult>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, MCResult> e) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    // //////////////////////////////////////////////////////////////////
+
+    /**
+     * Returns a key that identifies the CFSM cfsm, which must not be augmented
+     * with invariant tracing yet.
+     */
+    public static String cfsmKey(CFSM cfsm) {
+        return digest(cfsm.toCanonicalString());
+    }
+
+    /**
+     * Returns the key for checking inv in the CFSM with the key cfsmKey.
+     */
+    public static String key(String cfsmKey, BinaryInvariant inv) {
+        return digest(inv.toString() + "\n" + cfsmKey);
+    }
+
+    /** Returns the hex SHA-1 digest of text. */
+    public static String digest(String text) {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-1");
+            md.update(text.getBytes("UTF-8"));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+
+        StringBuilder ret = new StringBuilder();
+        for (byte b : md.digest()) {
+            ret.append(String.format("%02x", b));
+        }
+        return ret.toString();
+    }
+
+    // //////////////////////////////////////////////////////////////////
+
+    /** Returns the cached result for key, or null if there is none. */
+    public synchronized MCResult get(String key) {
+        MCResult ret = results.get(key);
+        if (ret == null) {
+            misses += 1;
+        } else {
+            hits += 1;
+        }
+        return ret;
+    }
+
+    public synchronized void put(String key, MCResult result) {
+        assert result != null;
+        results.put(key, result);
+    }
+
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    public synchronized int getMisses() {
+        return misses;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "MCResultCache[size=" + results.size() + ", hits=" + hits
+                + ", misses=" + misses + "]";
+    }
+}
@@ -0,0 +1,345 @@
+package csight.mc.explicit;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import csight.invariants.BinaryInvariant;
+import csight.invariants.checkers.BinChecker;
+import csight.model.fifosys.cfsm.CFSM;
+import csight.model.fifosys.cfsm.fsm.FSM;
+import csight.model.fifosys.cfsm.fsm.FSMState;
+import csight.util.Util;
+
+import synoptic.model.event.DistEventType;
+
+/**
+ * <p>
+ * A compiled, integer-indexed form of a CFSM and of the checker for a single
+ * invariant, used by ExplicitMC to enumerate the configurations of the CFSM
+ * without creating any intermediate objects.
+ * </p>
+ * <p>
+ * A configuration of the CFSM is encoded as an int[] vector with the layout:
+ *
+ * <pre>
+ * [ s_0, ..., s_{n-1}, m, len_0, ..., len_{k-1}, msgs_0 ..., msgs_{k-1} ... ]
+ * </pre>
+ *
+ * where s_i is the index of the current state of process i, m is the state of
+ * the invariant checker, len_j is the number of messages in channel j, and
+ * msgs_j are the (per-channel) message ids in channel j, oldest first.
+ * </p>
+ */
+public class ExplicitCFSM {
+    // Event kinds.
+    static final int LOCAL = 0;
+    static final int SEND = 1;
+    static final int RECV = 2;
+    // A synthetic event that was added by CFSM.augmentWithInvTracing(). These
+    // are treated as internal, and are not reported in counter-examples.
+    static final int SYNTH = 3;
+
+    private final int numProcesses;
+    private final int numChannels;
+    private final int channelCapacity;
+
+    // Index of the checker state and the first channel length in the vector.
+    private final int monitorIndex;
+    private final int lenIndex;
+    private final int headerLen;
+
+    // Per pid, per state: whether the state is accepting.
+    private final boolean[][] accept;
+    // Per pid: the initial states.
+    private final int[][] initStates;
+    // Per pid, per state: the event ids and target states of transitions.
+    private final int[][][] txEvents;
+    private final int[][][] txTargets;
+
+    // Per event id: the event, its kind, channel index, and message id.
+    private final DistEventType[] events;
+    private final int[] eventKind;
+    private final int[] eventChannel;
+    private final int[] eventMsg;
+
+    // The invariant checker, compiled into a DFA over event ids.
+    private final int[][] monitorNext;
+    private final boolean[] monitorFail;
+
+    public ExplicitCFSM(CFSM cfsm, BinaryInvariant inv, int channelCapacity) {
+        assert channelCapacity > 0;
+
+        this.numProcesses = cfsm.getNumProcesses();
+        this.numChannels = cfsm.getChannelIds().size();
+        this.channelCapacity = channelCapacity;
+        this.monitorIndex = numProcesses;
+        this.lenIndex = numProcesses + 1;
+        this.headerLen = lenIndex + numChannels;
+
+        List<FSM> fsms = cfsm.getFSMs();
+
+        // Assign dense ids to events, and to message types per channel.
+        Map<DistEventType, Integer> eventIds = Util.newMap();
+        List<Map<String, Integer>> msgIds = Util.newList(numChannels);
+        for (int i = 0; i < numChannels; i++) {
+            Map<String, Integer> m = Util.newMap();
+            msgIds.add(m);
+        }
+        List<DistEventType> eventsList = Util.newList();
+
+        // FSMState.hashCode() is constant, so index states by identity.
+        List<Map<FSMState, Integer>> stateIds = Util.newList(numProcesses);
+        List<List<FSMState>> statesLists = Util.newList(numProcesses);
+        for (int pid = 0; pid < numProcesses; pid++) {
+            Map<FSMState, Integer> ids = new IdentityHashMap<FSMState, Integer>();
+            List<FSMState> states = Util.newList();
+            for (FSMState s : fsms.get(pid).getStates()) {
+                ids.put(s, states.size());
+                states.add(s);
+            }
+            stateIds.add(ids);
+            statesLists.add(states);
+        }
+
+        accept = new boolean[numProcesses][];
+        initStates = new int[numProcesses][];
+        txEvents = new int[numProcesses][][];
+        txTargets = new int[numProcesses][][];
+
+        for (int pid = 0; pid < numProcesses; pid++) {
+            List<FSMState> states = statesLists.get(pid);
+            Map<FSMState, Integer> ids = stateIds.get(pid);
+
+            accept[pid] = new boolean[states.size()];
+            txEvents[pid] = new int[states.size()][];
+            txTargets[pid] = new int[states.size()][];
+
+            Set<FSMState> inits = fsms.get(pid).getInitStates();
+            initStates[pid] = new int[inits.size()];
+            int i = 0;
+            for (FSMState s : inits) {
+                initStates[pid][i++] = ids.get(s);
+            }
+
+            for (int sIndex = 0; sIndex < states.size(); sIndex++) {
+                FSMState s = states.get(sIndex);
+                accept[pid][sIndex] = s.isAccept();
+
+                List<Integer> evs = Util.newList();
+                List<Integer> targets = Util.newList();
+                for (DistEventType e : s.getTransitioningEvents()) {
+                    Integer eId = eventIds.get(e);
+                    if (eId == null) {
+                        eId = eventsList.size();
+                        eventIds.put(e, eId);
+                        eventsList.add(e);
+                    }
+                    for (FSMState next : s.getNextStates(e)) {
+                        evs.add(eId);
+                        targets.add(ids.get(next));
+                    }
+                }
+                txEvents[pid][sIndex] = toIntArray(evs);
+                txTargets[pid][sIndex] = toIntArray(targets);
+            }
+        }
+
+        int numEvents = eventsList.size();
+        events = eventsList.toArray(new DistEventType[numEvents]);
+        eventKind = new int[numEvents];
+        eventChannel = new int[numEvents];
+        eventMsg = new int[numEvents];
+        for (int i = 0; i < numEvents; i++) {
+            DistEventType e = events[i];
+            if (e.isSynthSendEvent()) {
+                eventKind[i] = SYNTH;
+                eventChannel[i] = -1;
+            } else if (e.isCommEvent()) {
+                eventKind[i] = e.isSendEvent() ? SEND : RECV;
+                int ch = e.getChannelId().getScmId();
+                Map<String, Integer> chMsgs = msgIds.get(ch);
+                Integer msg = chMsgs.get(e.getEType());
+                if (msg == null) {
+                    msg = chMsgs.size();
+                    chMsgs.put(e.getEType(), msg);
+                }
+                eventChannel[i] = ch;
+                eventMsg[i] = msg;
+            } else {
+                eventKind[i] = LOCAL;
+                eventChannel[i] = -1;
+            }
+        }
+
+        // Compile the invariant checker into a DFA over the event ids. Checker
+        // states are identified by the (immutable) state objects they hold.
+        Map<Object, Integer> monitorIds = Util.newMap();
+        List<BinChecker<?>> monitorStates = Util.newList();
+        List<int[]> nextList = Util.newList();
+        BinChecker<?> init = inv.newChecker();
+        monitorIds.put(init.getState(), 0);
+        monitorStates.add(init);
+        for (int m = 0; m < monitorStates.size(); m++) {
+            int[] next = new int[numEvents];
+            for (int i = 0; i < numEvents; i++) {
+                BinChecker<?> c = monitorStates.get(m).getClone();
+                if (eventKind[i] != SYNTH) {
+                    c.transition(events[i]);
+                }
+                Integer id = monitorIds.get(c.getState());
+                if (id == null) {
+                    id = monitorStates.size();
+                    monitorIds.put(c.getState(), id);
+                    monitorStates.add(c);
+                }
+                next[i] = id;
+            }
+            nextList.add(next);
+        }
+        monitorNext = nextList.toArray(new int[nextList.size()][]);
+        monitorFail = new boolean[monitorStates.size()];
+        for (int m = 0; m < monitorStates.size(); m++) {
+            monitorFail[m] = monitorStates.get(m).isFail();
+        }
+    }
+
+    // //////////////////////////////////////////////////////////////////
+
+    /** Returns the encodings of all the initial configurations. */
+    public List<int[]> getInitVectors() {
+        List<int[]> ret = Util.newList();
+        ret.add(new int[headerLen]);
+        for (int pid = 0; pid < numProcesses; pid++) {
+            List<int[]> extended = Util.newList();
+            for (int[] v : ret) {
+                for (int s : initStates[pid]) {
+                    int[] v2 = v.clone();
+                    v2[pid] = s;
+                    extended.add(v2);
+                }
+            }
+            ret = extended;
+        }
+        // The checker starts in state 0, and all channels are empty.
+        return ret;
+    }
+
+    /**
+     * Whether the configuration v is a bad state: all processes are in
+     * accepting states, all channels are empty, and the checker rejects.
+     */
+    public boolean isBad(int[] v) {
+        if (!monitorFail[v[monitorIndex]]) {
+            return false;
+        }
+        if (v.length != headerLen) {
+            // Some channel is not empty.
+            return false;
+        }
+        for (int pid = 0; pid < numProcesses; pid++) {
+            if (!accept[pid][v[pid]]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the number of transitions out of the current state of pid. */
+    public int numTransitions(int[] v, int pid) {
+        return txEvents[pid][v[pid]].length;
+    }
+
+    /** Returns the event id of the k'th transition of pid in v. */
+    public int transitionEvent(int[] v, int pid, int k) {
+        return txEvents[pid][v[pid]][k];
+    }
+
+    /**
+     * Fires the k'th transition out of the current state of pid in the
+     * configuration v.
+     *
+     * @return the resulting configuration, or null if the transition is not
+     *         enabled in v (an empty or mismatched queue on a receive, or a
+     *         full queue on a send).
+     */
+    public int[] fire(int[] v, int pid, int k) {
+        int eId = txEvents[pid][v[pid]][k];
+        int[] ret;
+
+        switch (eventKind[eId]) {
+        case SEND: {
+            int ch = eventChannel[eId];
+            int len = v[lenIndex + ch];
+            if (len >= channelCapacity) {
+                return null;
+            }
+            int end = channelOffset(v, ch) + len;
+            ret = new int[v.length + 1];
+            System.arraycopy(v, 0, ret, 0, end);
+            ret[end] = eventMsg[eId];
+            System.arraycopy(v, end, ret, end + 1, v.length - end);
+            ret[lenIndex + ch] = len + 1;
+            break;
+        }
+        case RECV: {
+            int ch = eventChannel[eId];
+            int len = v[lenIndex + ch];
+            if (len == 0) {
+                return null;
+            }
+            int head = channelOffset(v, ch);
+            if (v[head] != eventMsg[eId]) {
+                return null;
+            }
+            ret = new int[v.length - 1];
+            System.arraycopy(v, 0, ret, 0, head);
+            System.arraycopy(v, head + 1, ret, head, v.length - head - 1);
+            ret[lenIndex + ch] = len - 1;
+            break;
+        }
+        default:
+            ret = v.clone();
+            break;
+        }
+
+        ret[pid] = txTargets[pid][v[pid]][k];
+        ret[monitorIndex] = monitorNext[v[monitorIndex]][eId];
+        return ret;
+    }
+
+    /**
+     * Returns the event with id eId, or null if this is a synthetic event that
+     * should not be part of a counter-example.
+     */
+    public DistEventType getCExampleEvent(int eId) {
+        if (eventKind[eId] == SYNTH) {
+            return null;
+        }
+        return events[eId];
+    }
+
+    public int getNumProcesses() {
+        return numProcesses;
+    }
+
+    // //////////////////////////////////////////////////////////////////
+
+    /** Returns the index in v of the oldest message in channel ch. */
+    private int channelOffset(int[] v, int ch) {
+        int offset = headerLen;
+        for (int i = 0; i < ch; i++) {
+            offset += v[lenIndex + i];
+        }
+        return offset;
+    }
+
+    private static int[] toIntArray(List<Integer> list) {
+        int[] ret = new int[list.size()];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = list.get(i);
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,340 @@
+package csight.mc.explicit;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import csight.invariants.BinaryInvariant;
+import csight.mc.MC;
+import csight.mc.MCResult;
+import csight.mc.MCcExample;
+import csight.model.fifosys.cfsm.CFSM;
+import csight.util.Util;
+
+import synoptic.model.channelid.ChannelId;
+import synoptic.model.event.DistEventType;
+
+/**
+ * <p>
+ * An in-JVM, explicit-state, bounded model checker for CFSMs. Unlike McScM and
+ * Spin, this checker does not serialize the CFSM or start an external process.
+ * Instead, it enumerates the configurations of the CFSM directly, with each
+ * channel bounded to channelCapacity messages, and runs the invariant's
+ * BinChecker alongside the processes. A configuration in which all processes
+ * are accepting, all channels are empty, and the checker rejects is a bad
+ * state, and the events along the path to it form the counter-example.
+ * </p>
+ * <p>
+ * The state space is explored breadth-first, so the returned counter-examples
+ * are as short as possible. Visited configurations are recorded as 64-bit
+ * fingerprints in a HashCompactSet. Large BFS frontiers are expanded in
+ * parallel by numThreads worker threads.
+ * </p>
+ * <p>
+ * Usage: call prepare() with the (non-augmented) CFSM and the invariant to
+ * check, then verify() and getVerifyResult(). The input string to verify() is
+ * ignored.
+ * </p>
+ */
+public class ExplicitMC extends MC {
+
+    static Logger logger = Logger.getLogger("ExplicitMC");
+
+    // Frontiers smaller than this are expanded on the calling thread.
+    private static final int MIN_PARALLEL_FRONTIER = 2048;
+
+    // How often (in expanded configurations) workers check for a timeout.
+    private static final int TIMEOUT_CHECK_PERIOD = 1024;
+
+    /** The maximum number of messages in any one channel. */
+    private final int channelCapacity;
+
+    /** The number of threads that expand a frontier concurrently. */
+    private final int numThreads;
+
+    // Lazily created pool of (daemon) worker threads.
+    private ExecutorService pool = null;
+
+    // The compiled model and invariant to check next.
+    private ExplicitCFSM model = null;
+    private BinaryInvariant inv = null;
+
+    // The outcome of the last verify() run.
+    private MCcExample cExample = null;
+    private List<String> summaryLines = null;
+
+    public ExplicitMC(int channelCapacity, int numThreads) {
+        super(null);
+        assert channelCapacity > 0;
+        assert numThreads > 0;
+
+        this.channelCapacity = channelCapacity;
+        this.numThreads = numThreads;
+    }
+
+    /**
+     * Sets the CFSM and the invariant to check with the next call to verify().
+     * The CFSM must not be augmented with invariant tracing.
+     */
+    public void prepare(CFSM cfsm, BinaryInvariant invariant) {
+        this.model = new ExplicitCFSM(cfsm, invariant, channelCapacity);
+        this.inv = invariant;
+    }
+
+    /**
+     * Explores the CFSM set by the last call to prepare(). The input string is
+     * ignored.
+     */
+    @Override
+    public void verify(String input, int timeoutSecs) throws IOException,
+            InterruptedException, TimeoutException {
+        assert model != null;
+
+        long startTime = System.currentTimeMillis();
+        long deadline = startTime + timeoutSecs * 1000L;
+
+        cExample = null;
+        summaryLines = null;
+
+        HashCompactSet visited = new HashCompactSet();
+        List<SearchNode> frontier = Util.newList();
+        SearchNode badNode = null;
+
+        for (int[] v : model.getInitVectors()) {
+            if (!visited.add(HashCompactSet.fingerprint(v, v.length))) {
+                continue;
+            }
+            SearchNode n = new SearchNode(v, null, -1);
+            if (model.isBad(v)) {
+                badNode = n;
+                break;
+            }
+            frontier.add(n);
+        }
+
+        int depth = 0;
+        while (badNode == null && !frontier.isEmpty()) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException("ExplicitMC was interrupted.");
+            }
+            if (System.currentTimeMillis() > deadline) {
+                throw new TimeoutException("ExplicitMC timed out after "
+                        + timeoutSecs + " seconds at depth " + depth);
+            }
+
+            Expansion exp;
+            if (numThreads == 1 || frontier.size() < MIN_PARALLEL_FRONTIER) {
+                exp = new Expansion(frontier, 0, frontier.size(), visited,
+                        deadline, 0, new AtomicInteger(Integer.MAX_VALUE));
+                exp.call();
+            } else {
+                exp = expandInParallel(frontier, visited, deadline);
+            }
+            if (exp.timedOut) {
+                throw new TimeoutException("ExplicitMC timed out after "
+                        + timeoutSecs + " seconds at depth " + depth);
+            }
+            badNode = exp.badNode;
+            frontier = exp.next;
+            depth += 1;
+        }
+
+        summaryLines = Util.newList();
+        summaryLines.add("ExplicitMC: checked " + inv.toString());
+        summaryLines.add("ExplicitMC: visited " + visited.size()
+                + " configurations, max depth " + depth + ", in "
+                + (System.currentTimeMillis() - startTime) + "ms");
+        if (badNode == null) {
+            summaryLines.add("Result: Model is safe.");
+        } else {
+            cExample = buildCExample(badNode);
+            summaryLines.add("Result: Model is unsafe.");
+        }
+    }
+
+    @Override
+    public MCResult getVerifyResult(List<ChannelId> cids) throws IOException {
+        assert summaryLines != null;
+
+        logger.info("ExplicitMC returned: " + summaryLines.toString());
+        return new ExplicitMCResult(summaryLines, cids, cExample);
+    }
+
+    // //////////////////////////////////////////////////////////////////
+
+    /**
+     * Splits the frontier into chunks and expands them on the worker pool. The
+     * next frontier is the concatenation of the chunk results in chunk order,
+     * and the reported bad state is the one found in the lowest chunk. The
+     * chunks share the visited set, so a configuration reachable from two
+     * chunks is claimed by whichever chunk reaches it first. The set of
+     * configurations at each depth, and so the verdict and the length of the
+     * counter-example, are the same as in a sequential expansion. But the bad
+     * state that is reported, and the path to it, may differ between runs.
+     */
+    private Expansion expandInParallel(List<SearchNode> frontier,
+            HashCompactSet visited, long deadline) throws InterruptedException {
+        if (pool == null) {
+            pool = Executors.newFixedThreadPool(numThreads,
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "ExplicitMC-worker");
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+        }
+
+        int numChunks = numThreads * 4;
+        int chunkSize = (frontier.size() + numChunks - 1) / numChunks;
+        AtomicInteger minBadChunk = new AtomicInteger(Integer.MAX_VALUE);
+
+        List<Expansion> chunks = Util.newList(numChunks);
+        for (int i = 0, start = 0; start < frontier.size(); i++, start += chunkSize) {
+            int end = Math.min(start + chunkSize, frontier.size());
+            chunks.add(new Expansion(frontier, start, end, visited, deadline,
+                    i, minBadChunk));
+        }
+
+        List<Future<Expansion>> futures;
+        try {
+            futures = pool.invokeAll(chunks);
+        } catch (InterruptedException e) {
+            throw new InterruptedException("ExplicitMC was interrupted.");
+        }
+
+        Expansion ret = new Expansion(frontier, 0, 0, visited, deadline, 0,
+                minBadChunk);
+        for (Future<Expansion> f : futures) {
+            Expansion exp;
+            try {
+                exp = f.get();
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+            ret.timedOut |= exp.timedOut;
+            if (ret.badNode == null && exp.badNode != null) {
+                ret.badNode = exp.badNode;
+            }
+            ret.next.addAll(exp.next);
+        }
+        return ret;
+    }
+
+    /** Reconstructs the counter-example events along the path to badNode. */
+    private MCcExample buildCExample(SearchNode badNode) {
+        List<DistEventType> events = Util.newList();
+        for (SearchNode n = badNode; n.parent != null; n = n.parent) {
+            DistEventType e = model.getCExampleEvent(n.eventId);
+            if (e != null) {
+                events.add(e);
+            }
+        }
+        Collections.reverse(events);
+
+        MCcExample ret = new MCcExample();
+        for (DistEventType e : events) {
+            ret.addScmEventStrToPath(e);
+        }
+        return ret;
+    }
+
+    // //////////////////////////////////////////////////////////////////
+
+    /** A configuration reached during the search, with its BFS parent. */
+    private static final class SearchNode {
+        final int[] vec;
+        final SearchNode parent;
+        // Id of the event that led from parent to this configuration.
+        final int eventId;
+
+        SearchNode(int[] vec, SearchNode parent, int eventId) {
+            this.vec = vec;
+            this.parent = parent;
+            this.eventId = eventId;
+        }
+    }
+
+    /** Expands the frontier nodes in [start, end) by one BFS level. */
+    private final class Expansion implements Callable<Expansion> {
+        final List<SearchNode> frontier;
+        final int start, end;
+        final HashCompactSet visited;
+        final long deadline;
+        final int chunkIndex;
+        final AtomicInteger minBadChunk;
+
+        final List<SearchNode> next = Util.newList();
+        SearchNode badNode = null;
+        boolean timedOut = false;
+
+        Expansion(List<SearchNode> frontier, int start, int end,
+                HashCompactSet visited, long deadline, int chunkIndex,
+                AtomicInteger minBadChunk) {
+            this.frontier = frontier;
+            this.start = start;
+            this.end = end;
+            this.visited = visited;
+            this.deadline = deadline;
+            this.chunkIndex = chunkIndex;
+            this.minBadChunk = minBadChunk;
+        }
+
+        @Override
+        public Expansion call() {
+            int numProcesses = model.getNumProcesses();
+            for (int i = start; i < end; i++) {
+                if ((i - start) % TIMEOUT_CHECK_PERIOD == 0) {
+                    if (System.currentTimeMillis() > deadline) {
+                        timedOut = true;
+                        return this;
+                    }
+                    // A lower chunk already has a bad state for this level.
+                    if (minBadChunk.get() < chunkIndex) {
+                        return this;
+                    }
+                }
+
+                SearchNode n = frontier.get(i);
+                for (int pid = 0; pid < numProcesses; pid++) {
+                    int numTxs = model.numTransitions(n.vec, pid);
+                    for (int k = 0; k < numTxs; k++) {
+                        int[] v = model.fire(n.vec, pid, k);
+                        if (v == null
+                                || !visited.add(HashCompactSet.fingerprint(v,
+                                        v.length))) {
+                            continue;
+                        }
+                        SearchNode child = new SearchNode(v, n,
+                                model.transitionEvent(n.vec, pid, k));
+                        if (model.isBad(v)) {
+                            badNode = child;
+                            recordBadChunk();
+                            return this;
+                        }
+                        next.add(child);
+                    }
+                }
+            }
+            return this;
+        }
+
+        private void recordBadChunk() {
+            int cur = minBadChunk.get();
+            while (chunkIndex < cur
+                    && !minBadChunk.compareAndSet(cur, chunkIndex)) {
+                cur = minBadChunk.get();
+            }
+        }
+    }
+}
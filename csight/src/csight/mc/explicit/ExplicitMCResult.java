@@ -0,0 +1,29 @@
+package csight.mc.explicit;
+
+import java.util.List;
+
+import csight.mc.MCResult;
+import csight.mc.MCcExample;
+
+import synoptic.model.channelid.ChannelId;
+
+/**
+ * The result of an ExplicitMC run. Unlike the results of the external model
+ * checkers, nothing needs to be parsed: the checker constructs the safety
+ * verdict and the counter-example directly.
+ */
+public class ExplicitMCResult extends MCResult {
+
+    /**
+     * @param summaryLines
+     *            human-readable summary of the run, returned by toRawString()
+     * @param cExample
+     *            the counter-example, or null if the model is safe
+     */
+    public ExplicitMCResult(List<String> summaryLines, List<ChannelId> cids,
+            MCcExample cExample) {
+        super(summaryLines, cids);
+        this.modelIsSafe = (cExample == null);
+        this.cExample = cExample;
+    }
+}
@@ -0,0 +1,121 @@
+package csight.mc.explicit;
+
+/**
+ * <p>
+ * A thread-safe set of 64-bit state fingerprints, used by ExplicitMC to record
+ * the visited CFSM configurations. Only the fingerprint of a configuration is
+ * stored (hash-compaction), so two distinct configurations that hash to the
+ * same fingerprint are (wrongly) considered to be the same. With 64-bit
+ * fingerprints this is exceedingly rare in practice.
+ * </p>
+ * <p>
+ * The set is split into a fixed number of segments, each of which is an
+ * open-addressing table of primitive longs that is guarded by its own lock.
+ * This keeps contention low when several explorer threads insert at once,
+ * without boxing each fingerprint.
+ * </p>
+ */
+public class HashCompactSet {
+    // The value 0 marks an empty slot, so a fingerprint that happens to be 0
+    // is remapped to this value.
+    private static final long ZERO_FINGERPRINT = 0x9E3779B97F4A7C15L;
+
+    private static final int NUM_SEGMENTS = 64;
+
+    private final Segment[] segments;
+
+    public HashCompactSet() {
+        segments = new Segment[NUM_SEGMENTS];
+        for (int i = 0; i < NUM_SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * Adds the fingerprint to the set.
+     *
+     * @return true if the fingerprint was not previously in the set.
+     */
+    public boolean add(long fingerprint) {
+        if (fingerprint == 0) {
+            fingerprint = ZERO_FINGERPRINT;
+        }
+        // The low bits select the slot within a segment, so use the high bits
+        // to select the segment.
+        Segment seg = segments[(int) (fingerprint >>> 58) & (NUM_SEGMENTS - 1)];
+        synchronized (seg) {
+            return seg.add(fingerprint);
+        }
+    }
+
+    /** Returns the number of fingerprints in the set. */
+    public long size() {
+        long ret = 0;
+        for (Segment seg : segments) {
+            synchronized (seg) {
+                ret += seg.size;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Computes a 64-bit fingerprint of the first len entries of vec.
+     */
+    public static long fingerprint(int[] vec, int len) {
+        long h = 0xCBF29CE484222325L ^ len;
+        for (int i = 0; i < len; i++) {
+            h ^= vec[i];
+            h *= 0x100000001B3L;
+            h ^= h >>> 29;
+        }
+        // Final avalanche (from MurmurHash3's fmix64).
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    // //////////////////////////////////////////////////////////////////
+
+    /** A linear-probing table of non-zero longs. */
+    private static final class Segment {
+        long[] table = new long[1024];
+        int size = 0;
+
+        boolean add(long fingerprint) {
+            int mask = table.length - 1;
+            int i = (int) fingerprint & mask;
+            while (table[i] != 0) {
+                if (table[i] == fingerprint) {
+                    return false;
+                }
+                i = (i + 1) & mask;
+            }
+            table[i] = fingerprint;
+            size += 1;
+            if (size * 2 > table.length) {
+                grow();
+            }
+            return true;
+        }
+
+        private void grow() {
+            long[] old = table;
+            table = new long[old.length * 2];
+            int mask = table.length - 1;
+            for (long f : old) {
+                if (f == 0) {
+                    continue;
+                }
+                int i = (int) f & mask;
+                while (table[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                table[i] = f;
+            }
+        }
+    }
+}
@@ -1,13 +1,19 @@
 package csight.mc.parallelizer;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Logger;
 
+import csight.mc.MCResult;
+import csight.mc.MCResultCache;
 import csight.mc.mcscm.McScM;
 import csight.mc.parallelizer.ParallelizerTask.ParallelizerCommands;
 import csight.model.fifosys.cfsm.CFSM;
@@ -40,9 +46,20 @@ import csight.model.fifosys.cfsm.CFSM;
  * the task is expected to be of size 1.<br />
  * 3) STOP_ALL: Stop all model checking processes and their results will be
  * discarded. Corresponding inputs sent in the task is expected to be null.<br />
+ * 4) STOP_CHANGED: Stop the model checking processes that check a CFSM that
+ * differs from the refined CFSM, whose key is sent with the task. Processes
+ * that check a CFSM with the same key continue to run, and their results
+ * remain valid. Corresponding inputs sent in the task is expected to be null.<br />
  * The refinement counter will act as a guard to prevent out-dated model
- * checking runs from executing. STOP_ALL is expected to be associated with the
- * new refinementCounter.
+ * checking runs from executing. STOP_ALL and STOP_CHANGED are expected to be
+ * associated with the new refinementCounter.
+ * </p>
+ * <p>
+ * The worker threads are kept for the lifetime of the McScMParallelizer: a
+ * stop command cancels the individual runs, rather than the thread pool. Each
+ * completed result is recorded in an MCResultCache, and a run whose
+ * CFSM/invariant combination was already checked returns the cached result
+ * without starting McScM.
  * </p>
  * <p>
  * QUEUE2 (resultsChannel): An unbounded BlockingQueue that provides completed
@@ -55,32 +72,30 @@ import csight.model.fifosys.cfsm.CFSM;
 public class McScMParallelizer implements Runnable {
 
     /**
-     * Volatile to provide concurrent access as each model checking process will
-     * access numRunning and decrement it after model checking completes.
-     * Represents the total number of processes running with the current
-     * refinementCount.
+     * The model checking runs that have been started, and that have not yet
+     * returned a result or been cancelled. The size of this set is the number
+     * of processes that are currently running (numRunning). Runs are added by
+     * startOne() and cancelled by stopAll()/stopChanged() while holding the
+     * write lock, and removed by writeResult() while holding the read lock.
      */
-    private volatile int numRunning;
+    private final Set<RunningCheck> running;
 
     /**
      * The current refinement count as provided by CSightMain via task channel.
-     * Volatile to provide concurrent access as each model checking process will
-     * access refinementCount and make sure no out-dated results are returned
-     * and numRunning is not incorrectly decremented when out-dated processes
-     * finish executing.
+     * Used to check that start commands are not out-dated.
      */
-    private volatile int refinementCount;
+    private int refinementCount;
 
     /**
      * Lock when results from being written to resultChannel. Race condition can
-     * occur with stopAll(), and writeResult() such that numRunning will be
-     * decremented and results will be written after stopAll() has set
-     * numRunning to 0, causing numRunning to become negative. Race condition
-     * can occur with startOne(), and writeResult() such that CSightMain may
-     * receive the result and startOne() may begin execution before
-     * writeResult() have decremented numRunning, causing numRunning to exceed
-     * numParallel. stopAll() will obtain a writeLock to block writeResult()
-     * from executing concurrently while processes are being stopped.
+     * occur with stopAll(), and writeResult() such that a result will be
+     * written after stopAll() has cancelled the run that produced it. Race
+     * condition can occur with startOne(), and writeResult() such that
+     * CSightMain may receive the result and startOne() may begin execution
+     * before writeResult() has removed the run from running, causing
+     * numRunning to exceed numParallel. stopAll() will obtain a writeLock to
+     * block writeResult() from executing concurrently while processes are
+     * being stopped.
      * writeResult() will obtain a readLock to not block writeResult() from
      * executing concurrently, but block stopAll() from executing concurrently.
      */
@@ -96,30 +111,37 @@ public class McScMParallelizer implements Runnable {
     protected final String mcPath;
     protected final Logger logger;
 
+    /** Completed model checking results, shared with CSightMain. */
+    private final MCResultCache resultCache;
+
     /**
      * Executes the model checking processes concurrently in a fixed thread pool
      * size. ExecutorService will handle starting and terminating of threads for
-     * us.
+     * us. The pool is only shut down when the McScMParallelizer terminates.
      */
-    private ExecutorService eService;
+    private final ExecutorService eService;
 
     /**
      * Creates a new Parallelizer to run in a thread.
      * 
      * @param numParallel
      * @param mcPath
+     * @param resultCache
      * @param taskChannel
      * @param resultsChannel
      */
     public McScMParallelizer(int numParallel, String mcPath,
+            MCResultCache resultCache,
             BlockingQueue<ParallelizerTask> taskChannel,
             BlockingQueue<ParallelizerResult> resultsChannel) {
         this.numParallel = numParallel;
         this.mcPath = mcPath;
+        this.resultCache = resultCache;
         this.taskChannel = taskChannel;
         this.resultsChannel = resultsChannel;
 
-        numRunning = 0;
+        running = Collections
+                .newSetFromMap(new ConcurrentHashMap<RunningCheck, Boolean>());
         resultsLock = new ReentrantReadWriteLock();
 
         logger = Logger.getLogger("McScM Parallelizer");
@@ -135,7 +157,7 @@ public class McScMParallelizer implements Runnable {
                 ParallelizerTask task = taskChannel.take();
                 if (task.cmd == ParallelizerCommands.START_K) {
                     assert (task.refinementCounter == refinementCount);
-                    assert (task.inputs.size() <= numParallel);
+                    assert (running.size() + task.inputs.size() <= numParallel);
                     startK(task.inputs, task.refinementCounter);
 
                 } else if (task.cmd == ParallelizerCommands.START_ONE) {
@@ -147,20 +169,18 @@ public class McScMParallelizer implements Runnable {
                     assert (task.refinementCounter > refinementCount);
 
                     stopAll(task.refinementCounter);
+
+                } else if (task.cmd == ParallelizerCommands.STOP_CHANGED) {
+                    assert (task.refinementCounter > refinementCount);
+
+                    stopChanged(task.refinementCounter, task.cfsmKey);
                 }
             }
         } catch (InterruptedException e) {
-            boolean success;
-            do {
-                // Result may occasionally fail to enqueue into the results
-                // channel, so attempts are made until the result is
-                // successfully written into the queue. If a limit of how
-                // many attempts are introduced, we need to introduce a
-                // timeout in CSightMain.waitForResult() as there may be no
-                // result returned through the queue.
-                success = writeResult(ParallelizerResult.exceptionResult(e));
-            } while (!success);
+            eService.shutdownNow();
 
+            // The results channel is unbounded, so this cannot fail.
+            resultsChannel.offer(ParallelizerResult.exceptionResult(e));
         }
     }
 
@@ -175,15 +195,18 @@ public class McScMParallelizer implements Runnable {
      */
     private boolean startOne(final ParallelizerInput input,
             final int refinementCounter) throws InterruptedException {
-        // An optimization to stop starting new processes when STOP_ALL is sent
-        // while starting N processes.
-        if (checkIfStopAll()) {
+        // An optimization to stop starting new processes when a stop command
+        // is sent while starting N processes.
+        if (checkIfStop(input.cfsmKey)) {
             return true;
         }
 
         // Get the CFSM corresponding to the partition graph.
         final CFSM cfsm = input.cfsm;
         final InvariantTimeoutPair invTimeoutPair = input.invTimeoutPair;
+        final RunningCheck run = new RunningCheck(input.cfsmKey);
+        final String resultKey = MCResultCache.key(input.cfsmKey,
+                invTimeoutPair.getInv());
 
         Runnable runnable = new Runnable() {
 
@@ -192,6 +215,16 @@ public class McScMParallelizer implements Runnable {
                 ParallelizerResult result;
 
                 try {
+                    MCResult cached = resultCache.get(resultKey);
+                    if (cached != null) {
+                        logger.fine("Re-using cached result for "
+                                + invTimeoutPair.getInv().toString());
+                        result = ParallelizerResult.verificationResult(
+                                invTimeoutPair, cached, refinementCounter);
+                        writeResultUntilSuccess(run, result);
+                        return;
+                    }
+
                     cfsm.augmentWithInvTracing(invTimeoutPair.getInv());
 
                     String mcInputStr = cfsm.toScmString("checking_scm_"
@@ -208,10 +241,11 @@ public class McScMParallelizer implements Runnable {
                     McScM mcscm = new McScM(mcPath);
 
                     mcscm.verify(mcInputStr, invTimeoutPair.getTimeout());
+                    MCResult mcResult = mcscm.getVerifyResult(cfsm
+                            .getChannelIds());
+                    resultCache.put(resultKey, mcResult);
                     result = ParallelizerResult.verificationResult(
-                            invTimeoutPair,
-                            mcscm.getVerifyResult(cfsm.getChannelIds()),
-                            refinementCounter);
+                            invTimeoutPair, mcResult, refinementCounter);
 
                 } catch (TimeoutException e) {
                     // Model checking timed out.
@@ -228,16 +262,7 @@ public class McScMParallelizer implements Runnable {
                             refinementCounter);
                 }
 
-                boolean success;
-                do {
-                    // Result may occasionally fail to enqueue into the results
-                    // channel, so attempts are made until the result is
-                    // successfully written into the queue. If a limit of how
-                    // many attempts are introduced, we need to introduce a
-                    // timeout in CSightMain.waitForResult() as there may be no
-                    // result returned through the queue.
-                    success = McScMParallelizer.this.writeResult(result);
-                } while (!success);
+                writeResultUntilSuccess(run, result);
             }
 
         };
@@ -245,11 +270,10 @@ public class McScMParallelizer implements Runnable {
         try {
             // Gets a write lock to block writeResult(). @see resultsLock
             resultsLock.writeLock().lockInterruptibly();
-            eService.submit(runnable);
-            numRunning++;
+            running.add(run);
+            run.future = eService.submit(runnable);
 
-            assert (numRunning >= 0);
-            assert (numRunning <= numParallel);
+            assert (running.size() <= numParallel);
 
             return false;
         } finally {
@@ -266,14 +290,39 @@ public class McScMParallelizer implements Runnable {
      */
     private void stopAll(int refinementCounter) throws InterruptedException {
         logger.info("Stopping all model checking processes...");
-        eService.shutdownNow();
+        stopChanged(refinementCounter, "");
+    }
 
+    /**
+     * Stops the model checking processes that are checking a CFSM with a key
+     * other than cfsmKey, and prepares for new tasks. This method will always
+     * run non-concurrently with itself, and startOne()
+     * 
+     * @param refinementCounter
+     * @param cfsmKey
+     *            the key of the CFSM after refinement
+     * @throws InterruptedException
+     */
+    private void stopChanged(int refinementCounter, String cfsmKey)
+            throws InterruptedException {
         try {
             // Gets a write lock to block writeResult(). @see resultsLock
             resultsLock.writeLock().lockInterruptibly();
             refinementCount = refinementCounter;
-            eService = Executors.newFixedThreadPool(numParallel);
-            numRunning = 0;
+
+            int numStopped = 0;
+            for (RunningCheck run : running) {
+                if (!run.cfsmKey.equals(cfsmKey)) {
+                    run.cancelled = true;
+                    // Interrupts the thread, which stops the McScM process.
+                    run.future.cancel(true);
+                    running.remove(run);
+                    numStopped++;
+                }
+            }
+            logger.info("Stopped " + numStopped
+                    + " model checking processes, " + running.size()
+                    + " continue to run.");
         } finally {
             resultsLock.writeLock().unlock();
         }
@@ -288,8 +337,6 @@ public class McScMParallelizer implements Runnable {
      */
     private void startK(List<ParallelizerInput> inputs, int refinementCounter)
             throws InterruptedException {
-        assert (numRunning == 0);
-
         for (ParallelizerInput input : inputs) {
             if (startOne(input, refinementCounter)) {
                 return;
@@ -298,59 +345,80 @@ public class McScMParallelizer implements Runnable {
     }
 
     /**
-     * Returns true if a STOP_ALL command has been sent by CSightMain. This is
-     * an optimization to stop results and starting processes as soon as
-     * STOP_ALL command is sent.
+     * Returns true if a STOP_ALL command, or a STOP_CHANGED command for a CFSM
+     * other than the one with key cfsmKey, has been sent by CSightMain. This is
+     * an optimization to stop results and starting processes as soon as such a
+     * command is sent.
      * 
+     * @param cfsmKey
      * @return
      */
-    private boolean checkIfStopAll() {
+    private boolean checkIfStop(String cfsmKey) {
         ParallelizerTask command = taskChannel.peek();
         if (command != null) {
             if (command.cmd == ParallelizerCommands.STOP_ALL) {
                 return true;
             }
+            if (command.cmd == ParallelizerCommands.STOP_CHANGED
+                    && !command.cfsmKey.equals(cfsmKey)) {
+                return true;
+            }
         }
         return false;
     }
 
     /**
-     * Writes a ParallelizerResult to the results channel if the result is not
-     * out-dated, and decrement numRunning to mark termination of a model
-     * checking process.
+     * Writes the result of run, retrying until the result is enqueued.
+     */
+    private void writeResultUntilSuccess(RunningCheck run,
+            ParallelizerResult result) {
+        boolean success;
+        do {
+            // Result may occasionally fail to enqueue into the results
+            // channel, so attempts are made until the result is
+            // successfully written into the queue. If a limit of how
+            // many attempts are introduced, we need to introduce a
+            // timeout in CSightMain.waitForResult() as there may be no
+            // result returned through the queue.
+            success = writeResult(run, result);
+        } while (!success);
+    }
+
+    /**
+     * Writes the ParallelizerResult of run to the results channel if run was
+     * not cancelled, and removes run from the running set to mark termination
+     * of a model checking process.
      * 
+     * @param run
      * @param result
      * @return False iff exception occurred when writing to results Channel,
      *         else true
      */
-    protected boolean writeResult(ParallelizerResult result) {
+    private boolean writeResult(RunningCheck run, ParallelizerResult result) {
         try {
             // Gets a write lock to block startOne() and stopAll(). @see
             // resultsLock
             resultsLock.readLock().lockInterruptibly();
             /**
-             * Java's ExecutorService.shutDownNow() does not guarantee
-             * termination of threads, causing race condition. No results should
-             * be written to resultsChannel if model checking is stopped.
-             * checkIfStopAll() is an optimization. RefinementCounter check is
-             * necessary to prevent out-dated processes from returning a result
-             * and decrementing numRunning, as this would incorrectly decrease
-             * numRunning to below the number of processes of the correct
-             * refinement counter that are currently being ran.
+             * Future.cancel() does not guarantee termination of threads,
+             * causing race condition. No results should be written to
+             * resultsChannel if the run was stopped. checkIfStop() is an
+             * optimization. The cancelled check is necessary to prevent
+             * stopped processes from returning a result, as the run has
+             * already been removed from the running set.
              */
-            if (checkIfStopAll()
-                    || refinementCount != result.getRefinementCounter()) {
-                // Model checking for this refinement already stopped. Don't
-                // return any more results and don't decrement numRunning.
+            if (run.cancelled || checkIfStop(run.cfsmKey)) {
+                // This run was (or is about to be) stopped. Don't return
+                // any more results and don't remove the run.
                 return true;
             }
 
             logger.fine("Parallelizer returned a result. Refinement: "
                     + result.getRefinementCounter());
             resultsChannel.put(result);
-            numRunning--;
+            boolean removed = running.remove(run);
 
-            assert (numRunning >= 0);
+            assert (removed);
 
             return true;
         } catch (InterruptedException e) {
@@ -362,4 +430,20 @@ public class McScMParallelizer implements Runnable {
             resultsLock.readLock().unlock();
         }
     }
+
+    /**
+     * A model checking run that has been started, along with the key of the
+     * CFSM that it checks.
+     */
+    private static final class RunningCheck {
+        final String cfsmKey;
+        // Set once, while holding the write lock, before the run is started.
+        Future<?> future;
+        // Set while holding the write lock, read while holding the read lock.
+        boolean cancelled = false;
+
+        RunningCheck(String cfsmKey) {
+            this.cfsmKey = cfsmKey;
+        }
+    }
 }
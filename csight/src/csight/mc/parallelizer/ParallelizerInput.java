@@ -5,14 +5,18 @@ import csight.model.fifosys.cfsm.CFSM;
 /**
  * Inputs to the Parallelizer that are sent with ParallelizerCommands through
  * the ParallelizerTask channel. An input contains the invariant to check, the
- * model to check the invariant against, and the timeout in seconds.
+ * model to check the invariant against, the key of the model (as computed by
+ * MCResultCache.cfsmKey()), and the timeout in seconds.
  */
 public class ParallelizerInput {
     protected final InvariantTimeoutPair invTimeoutPair;
     protected final CFSM cfsm;
+    protected final String cfsmKey;
 
-    public ParallelizerInput(InvariantTimeoutPair invTimeoutPair, CFSM cfsm) {
+    public ParallelizerInput(InvariantTimeoutPair invTimeoutPair, CFSM cfsm,
+            String cfsmKey) {
         this.invTimeoutPair = invTimeoutPair;
         this.cfsm = cfsm;
+        this.cfsmKey = cfsmKey;
     }
 }
\ No newline at end of file
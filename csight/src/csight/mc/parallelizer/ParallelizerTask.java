@@ -7,20 +7,28 @@ import java.util.List;
  * corresponding inputs, and the current refinement counter in CSightMain. The
  * START_K command should have inputs of size K = min{numParallel,
  * invsToCheck.size()}. The START_ONE command should have inputs of size = 1.
- * The STOP_ALL command should have corresponding input of null.
+ * The STOP_ALL and STOP_CHANGED commands should have corresponding input of
+ * null. The STOP_CHANGED command also carries the key of the refined CFSM.
  */
 public class ParallelizerTask {
 
     public enum ParallelizerCommands {
-        START_K, START_ONE, STOP_ALL;
+        START_K, START_ONE, STOP_ALL, STOP_CHANGED;
     }
 
     protected final ParallelizerCommands cmd;
     protected final List<ParallelizerInput> inputs;
     protected final int refinementCounter;
+    protected final String cfsmKey;
 
     public ParallelizerTask(ParallelizerCommands cmd,
             List<ParallelizerInput> inputs, int refinementCounter) {
+        this(cmd, inputs, refinementCounter, null);
+    }
+
+    public ParallelizerTask(ParallelizerCommands cmd,
+            List<ParallelizerInput> inputs, int refinementCounter,
+            String cfsmKey) {
         if (cmd.equals(ParallelizerCommands.START_K)) {
             assert (inputs.size() > 0);
         } else if (cmd.equals(ParallelizerCommands.START_ONE)) {
@@ -28,10 +36,12 @@ public class ParallelizerTask {
         } else {
             assert (inputs == null);
         }
+        assert (cmd.equals(ParallelizerCommands.STOP_CHANGED) == (cfsmKey != null));
 
         this.cmd = cmd;
         this.inputs = inputs;
         this.refinementCounter = refinementCounter;
+        this.cfsmKey = cfsmKey;
     }
 
 }
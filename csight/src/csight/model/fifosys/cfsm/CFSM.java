@@ -459,6 +459,28 @@ public class CFSM extends FifoSys<CFSMState, DistEventType> {
         return ret;
     }
 
+    /**
+     * Generates a canonical representation of this (non-augmented) CFSM, which
+     * is the same for CFSMs that are derived from the same, or from an
+     * isomorphic, GFSM. Unlike toScmString(), this does not modify the CFSM.
+     *
+     * @see FSM#toCanonicalString()
+     */
+    public String toCanonicalString() {
+        assert unSpecifiedPids == 0;
+        assert invs.isEmpty();
+
+        StringBuilder ret = new StringBuilder();
+        for (ChannelId chId : channelIds) {
+            ret.append("channel ").append(chId.toString()).append("\n");
+        }
+        for (int pid = 0; pid < numProcesses; pid++) {
+            ret.append("automaton p").append(pid).append(" :\n");
+            ret.append(fsms.get(pid).toCanonicalString());
+        }
+        return ret.toString();
+    }
+
     /**
      * Generate SCM representation of this CFSM, with bad states if this CFSM
      * was augmented with any invariants.
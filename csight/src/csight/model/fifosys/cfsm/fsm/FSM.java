@@ -2,6 +2,8 @@ package csight.model.fifosys.cfsm.fsm;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -325,6 +327,138 @@ public class FSM extends AbsFSM<FSMState, DistEventType> {
         return ret;
     }
 
+    /**
+     * Generates a representation of this FSM that does not depend on the scm
+     * ids of the states, or on the iteration order of the state sets. States
+     * are renumbered in breadth-first order from the initial states, visiting
+     * the transitions out of each state in event string order, and ordering
+     * the states reached on the same event by their structure (see
+     * getCanonicalColors). Two FSMs with the same canonical string are
+     * isomorphic (though, because of ties in this ordering, two isomorphic FSMs
+     * may have different canonical strings). MCResultCache.cfsmKey() digests
+     * this string, so each such tie costs a model checker run that the cache
+     * could have answered.
+     */
+    public String toCanonicalString() {
+        assert !initStates.isEmpty();
+
+        Map<FSMState, Integer> ids = new IdentityHashMap<FSMState, Integer>();
+        List<FSMState> order = Util.newList();
+
+        final Map<FSMState, Integer> colors = getCanonicalColors();
+        Comparator<FSMState> canonicalOrder = new Comparator<FSMState>() {
+            @Override
+            public int compare(FSMState s1, FSMState s2) {
+                return colors.get(s1).compareTo(colors.get(s2));
+            }
+        };
+
+        List<FSMState> inits = Util.newList(initStates);
+        Collections.sort(inits, canonicalOrder);
+        for (FSMState s : inits) {
+            ids.put(s, order.size());
+            order.add(s);
+        }
+
+        StringBuilder ret = new StringBuilder();
+        ret.append("initial : ").append(inits.size()).append("\n");
+        for (int i = 0; i < order.size(); i++) {
+            FSMState s = order.get(i);
+            ret.append("state ").append(i);
+            if (s.isAccept()) {
+                ret.append(" accept");
+            }
+            ret.append(" :\n");
+
+            for (DistEventType e : sortedEvents(s)) {
+                // Number the states that have not been visited yet, and then
+                // output the transitions in the order of the state numbers.
+                List<FSMState> nexts = Util.newList(s.getNextStates(e));
+                Collections.sort(nexts, canonicalOrder);
+                List<Integer> nextIds = Util.newList(nexts.size());
+                for (FSMState next : nexts) {
+                    Integer id = ids.get(next);
+                    if (id == null) {
+                        id = order.size();
+                        ids.put(next, id);
+                        order.add(next);
+                    }
+                    nextIds.add(id);
+                }
+                Collections.sort(nextIds);
+                for (int id : nextIds) {
+                    ret.append("to ").append(id).append(" : ")
+                            .append(e.toString()).append("\n");
+                }
+            }
+        }
+        return ret.toString();
+    }
+
+    /**
+     * Colors the states by their structure, for toCanonicalString(). Initially,
+     * states are colored by their accept property and transitioning events.
+     * The colors are then repeatedly refined with the colors of the states
+     * reached along each event, until the number of colors stops growing. The
+     * colors are numbered in the order of the signatures that define them, so
+     * that the colors do not depend on the scm ids of the states.
+     */
+    private Map<FSMState, Integer> getCanonicalColors() {
+        Map<FSMState, Integer> colors = new IdentityHashMap<FSMState, Integer>();
+        Map<FSMState, String> signatures = new IdentityHashMap<FSMState, String>();
+        for (FSMState s : states) {
+            signatures.put(s, (s.isAccept() ? "A" : "N")
+                    + sortedEvents(s).toString());
+        }
+
+        int numColors = 0;
+        while (true) {
+            // Number the distinct signatures in order.
+            Map<String, Integer> sigColors = Util.newMap();
+            for (String sig : signatures.values()) {
+                sigColors.put(sig, 0);
+            }
+            List<String> sigs = Util.newList(sigColors.keySet());
+            Collections.sort(sigs);
+            for (int i = 0; i < sigs.size(); i++) {
+                sigColors.put(sigs.get(i), i);
+            }
+            for (FSMState s : states) {
+                colors.put(s, sigColors.get(signatures.get(s)));
+            }
+            if (sigs.size() == numColors) {
+                return colors;
+            }
+            numColors = sigs.size();
+
+            // Refine each state's signature with the colors of its successors.
+            for (FSMState s : states) {
+                StringBuilder sig = new StringBuilder();
+                sig.append(colors.get(s));
+                for (DistEventType e : sortedEvents(s)) {
+                    List<Integer> nextColors = Util.newList();
+                    for (FSMState next : s.getNextStates(e)) {
+                        nextColors.add(colors.get(next));
+                    }
+                    Collections.sort(nextColors);
+                    sig.append(" ").append(e.toString()).append(nextColors);
+                }
+                signatures.put(s, sig.toString());
+            }
+        }
+    }
+
+    private static List<DistEventType> sortedEvents(FSMState s) {
+        List<DistEventType> ret = Util.newList(s.getTransitioningEvents());
+        Collections.sort(ret, new Comparator<DistEventType>() {
+            @Override
+            public int compare(DistEventType e1, DistEventType e2) {
+                return e1.toString().compareTo(e2.toString());
+            }
+        });
+        return ret;
+    }
+
     /**
      * Generate a Promela representation of this FSM.
      * 
@@ -55,12 +55,28 @@ public class GFSM extends FifoSys<GFSMState, DistEventType> {
 
     public static Logger logger = Logger.getLogger("GFSM");
 
-    /** Used when converting GFSM to a CFSM representation. */
-    private int nextScmId = 0;
-
     /** Used when converting GFSM to a CFSM representation. */
     private int nextFsmStateId = 0;
 
+    /**
+     * Used when converting GFSM to a CFSM representation: the per-process
+     * projections of this GFSM, which are maintained across refinements.
+     */
+    private final List<ProcessFSMCache> fsmCaches = Util.newList();
+
+    /**
+     * The partitions that have been touched by refinements since the last
+     * conversion to a CFSM.
+     */
+    private final Set<GFSMState> touchedStates = Util.newSet();
+
+    /**
+     * Whether to re-use the per-process projections from the previous
+     * conversion to a CFSM, re-computing just the parts affected by the
+     * refinements since then.
+     */
+    private boolean incrementalCFSM = true;
+
     /** Creates an empty GFSM. */
     public GFSM(int numProcesses, List<ChannelId> channelIds) {
         super(numProcesses, channelIds);
@@ -228,6 +244,7 @@ public class GFSM extends FifoSys<GFSMState, DistEventType> {
 
         states.addAll(newStates);
         recomputeAlphabet();
+        clearFSMCaches();
     }
 
     /** Adds a new partition/state s to this GFSM. */
@@ -236,6 +253,7 @@ public class GFSM extends FifoSys<GFSMState, DistEventType> {
 
         states.add(s);
         recomputeAlphabet();
+        clearFSMCaches();
     }
 
     /** Removes the partition/state s from this GFSM. */
@@ -244,6 +262,7 @@ public class GFSM extends FifoSys<GFSMState, DistEventType> {
 
         states.remove(s);
         recomputeAlphabet();
+        clearFSMCaches();
     }
 
     /**
@@ -315,6 +334,16 @@ public class GFSM extends FifoSys<GFSMState, DistEventType> {
         this.refine(part, setRight);
     }
 
+    /**
+     * Sets whether getCFSM re-uses the per-process projections computed by the
+     * previous call, re-computing just the parts that were affected by the
+     * refinements since then. If not, the projections are re-computed from
+     * scratch on each call.
+     */
+    public void setIncrementalCFSM(boolean incremental) {
+        this.incrementalCFSM = incremental;
+    }
+
     /**
      * Constructs a CFSM from a GFSM. It performs the necessary traversal of the
      * GFSM to construct/specify all the process FSMs that should be part of the
@@ -331,175 +360,52 @@ public class GFSM extends FifoSys<GFSMState, DistEventType> {
 
         logger.finest("GFSM -> CFSM: " + this.toString() + "\n");
 
-        Set<FSMState> initFSMStates = Util.newSet();
-        Set<FSMState> acceptFSMStates = Util.newSet();
-        Set<GFSMState> nonPidTxClosureStates = Util.newSet();
-        Map<GFSMState, FSMState> stateMap = Util.newMap();
-
-        Set<GFSMState> gvisited = Util.newSet();
-
-        Set<FSMState> txClosure = Util.newSet();
-        Set<FSMState> fvisited = Util.newSet();
+        if (!incrementalCFSM) {
+            clearFSMCaches();
+        }
+        while (fsmCaches.size() < numProcesses) {
+            fsmCaches.add(new ProcessFSMCache(fsmCaches.size()));
+        }
 
         // Create an FSM per pid.
         for (int pid = 0; pid < numProcesses; pid++) {
             logger.info("Building FSM for pid " + pid);
-            // States in each FSM have to be uniquely numbered in the scm
-            // output.
-            nextScmId = 0;
-
-            // Create a new FSM state corresponding to each GFSMState.
-            for (GFSMState gstate : states) {
-                // NOTE: FSMState accept flag is further computed below.
-                FSMState fstate = new FSMState(gstate.isAcceptForPid(pid),
-                        gstate.isInitForPid(pid), pid, nextScmId);
-                if (fstate.isInitial()) {
-                    initFSMStates.add(fstate);
-                }
-                nextScmId += 1;
-                stateMap.put(gstate, fstate);
-            }
-
-            logger.finest("GFSMState->FSMState[pid=" + pid + "] stateMap : "
-                    + stateMap.toString());
-
-            // Create transitions between FSMState instances based on
-            // corresponding GFSMState transitions, as well as the non-pid
-            // transition transitive closure for each GFSMState.
-            for (GFSMState gstate : states) {
-                // Find the states that can be reached through non-pid
-                // transitions (we treat them as epsilon transitions).
-                nonPidTxClosureStates.clear();
-                gvisited.clear();
-                // TODO: cache reachability for explored states and re-use this
-                // information.
-                AbsFSMState.findNonPidTransitiveClosure(pid, gstate, gvisited,
-                        nonPidTxClosureStates);
-
-                nonPidTxClosureStates.add(gstate);
-
-                FSMState fstate = stateMap.get(gstate);
-
-                for (GFSMState g : nonPidTxClosureStates) {
-                    // Accept computation: If we can reach an accepting g from
-                    // gstate using non-pid (epsilon) transitions, then this
-                    // process can terminate at gstate, or equivalently, at the
-                    // corresponding fstate.
-                    if (g.isAcceptForPid(pid)) {
-                        fstate.setAccept();
-                        acceptFSMStates.add(fstate);
-                    }
-
-                    // Add the GFSMState transitions to fstate.
-                    for (DistEventType e : g.getTransitioningEvents()) {
-                        // Only create this pid's event transitions.
-                        if (e.getPid() != pid) {
-                            continue;
-                        }
-                        for (GFSMState gNext : g.getNextStates(e)) {
-                            FSMState fNext = stateMap.get(gNext);
-                            fstate.addTransition(e, fNext);
-                        }
-                    }
-                }
-            }
-
-            // Remove any non-reachable FSM states.
-
-            // 1. Build the transitive closure of state from all initial states.
-            for (FSMState istate : initFSMStates) {
-                fvisited.clear();
-                AbsFSMState.findTransitiveClosure(istate, fvisited, txClosure);
-            }
-
-            // 2. Remove those FSM states that are not reachable from any
-            // initial state -- that are not in txClosure -- from stateMap.
-            Set<GFSMState> keySet = stateMap.keySet();
-            Iterator<GFSMState> keyItr = keySet.iterator();
-            while (keyItr.hasNext()) {
-                GFSMState gstate = keyItr.next();
-                FSMState fstate = stateMap.get(gstate);
-                // Skip states that are initial -- we can always reach these.
-                if (fstate.isInitial()) {
-                    continue;
-                }
-
-                if (!txClosure.contains(fstate)) {
-                    // Remove from stateMap, as well as accepting set of states.
-                    keyItr.remove();
-                    acceptFSMStates.remove(fstate);
-                }
-            }
-
-            // We want to create the smallest possible FSM for efficiency (McScM
-            // runs faster on smaller models) and so that the models are simple
-            // to inspect.
-
-            // 1. Merge any FSM states that are bisimular --- if their behavior
-            // is indistinguishable.
-            boolean merged = false;
-            do {
-                merged = false;
-                keySet = stateMap.keySet();
-                keyItr = keySet.iterator();
-                while (keyItr.hasNext()) {
-                    GFSMState gstate = keyItr.next();
-                    GFSMState gstate2 = findBisimularFSMState(gstate, stateMap);
-
-                    // Did not find a corresponding gstate2 that maps to fstate2
-                    // that is bisimular to fstate.
-                    if (gstate2 == null) {
-                        continue;
-                    }
-
-                    FSMState fstate = stateMap.get(gstate);
-                    FSMState fstate2 = stateMap.get(gstate2);
-
-                    // Merges fstate INTO fstate2.
-                    remapPredTxns(fstate, fstate2, stateMap);
-
-                    // Remove gstate/fstate from the stateMap, and remove
-                    // fstate from accepting set
-                    keyItr.remove();
-                    acceptFSMStates.remove(fstate);
-                    initFSMStates.remove(fstate);
-                    merged = true;
-                    break;
-                }
-                // Re-try all possible n^2 merges if we've just merged two
-                // states, since this might induce further state equivalence and
-                // merging.
-            } while (merged);
-
-            // 2. Remove states when there is a state that simulates it --
-            // TODO: INCOMPLETE.
-            // mergeSimulatingStates(initFSMStates, acceptFSMStates, stateMap);
-
-            assert !acceptFSMStates.isEmpty();
-            assert !initFSMStates.isEmpty();
-
-            // Create the FSM for this pid.
-            FSM fsm = new FSM(pid, initFSMStates, acceptFSMStates,
-                    stateMap.values(), nextScmId);
-
-            // 3. Check if after bisimulation merging above the FSM is
-            // now a DFA and we can use standard minimization to further
-            // minimize the FSM.
-            if (minimize && fsm.isDeterministic()) {
-                fsm.minimize();
-            }
+            ProcessFSMCache fsmCache = fsmCaches.get(pid);
+
+            // Bring the projection of the GFSM onto pid up to date. This
+            // creates the transitions for each GFSMState from the GFSMState
+            // transitions, as well as the non-pid transition transitive
+            // closure for each GFSMState.
+            fsmCache.update(states, touchedStates);
+
+            // Create the FSM for this pid from the projection. We want to
+            // create the smallest possible FSM for efficiency (McScM runs
+            // faster on smaller models) and so that the models are simple to
+            // inspect. So, the FSM omits non-reachable states, and merges
+            // bisimular states.
+            //
+            // TODO: Remove states when there is a state that simulates it --
+            // see mergeSimulatingStates, which is INCOMPLETE.
+            FSM fsm = fsmCache.getFSM(minimize);
 
             // Add FSM to the CFSM.
             cfsm.addFSM(fsm);
-
-            stateMap.clear();
-            initFSMStates.clear();
-            acceptFSMStates.clear();
-            txClosure.clear();
         }
+        touchedStates.clear();
         return cfsm;
     }
 
+    /**
+     * Removes the per-process projections of this GFSM, so that these are
+     * re-computed from scratch by the next call to getCFSM.
+     */
+    private void clearFSMCaches() {
+        for (ProcessFSMCache fsmCache : fsmCaches) {
+            fsmCache.clear();
+        }
+        touchedStates.clear();
+    }
+
     /**
      * Incomplete, see TODO below.
      * 
@@ -622,57 +528,6 @@ public class GFSM extends FifoSys<GFSMState, DistEventType> {
         return true;
     }
 
-    /**
-     * Attempts to find an FSM state, fstate2, that is bisimular (behaviorally
-     * indistinguishable) from the FSM state stateMap[gstate]. Returns gstate2
-     * such that fstate2 = stateMap[gstate2]. If no such fstate2 exists, then
-     * returns null.
-     */
-    private GFSMState findBisimularFSMState(GFSMState gstate,
-            Map<GFSMState, FSMState> stateMap) {
-        FSMState fstate = stateMap.get(gstate);
-
-        for (GFSMState gstate2 : stateMap.keySet()) {
-            if (gstate == gstate2) {
-                continue;
-            }
-            FSMState fstate2 = stateMap.get(gstate2);
-
-            // States must have identical initial/accept properties
-            // to be mergeable.
-            if (fstate.isInitial() != fstate2.isInitial()) {
-                continue;
-            }
-            if (fstate.isAccept() != fstate2.isAccept()) {
-                continue;
-            }
-
-            // Compare transitions of fstate and fstate2
-            Set<DistEventType> txns1 = fstate.getTransitioningEvents();
-            Set<DistEventType> txns2 = fstate2.getTransitioningEvents();
-            if (!txns1.equals(txns2)) {
-                continue;
-            }
-
-            boolean txns_identical = true;
-            for (DistEventType tx : txns1) {
-                if (!fstate.getNextStates(tx).equals(fstate2.getNextStates(tx))) {
-                    // States reachable along tx are different,
-                    // therefore fstate and fstate2 are not
-                    // bisimular.
-                    txns_identical = false;
-                    break;
-                }
-            }
-            if (!txns_identical) {
-                continue;
-            }
-
-            return gstate2;
-        }
-        return null;
-    }
-
     public Set<GFSMPath> getCExamplePaths(MCcExample cExample, int pid) {
         Set<GFSMPath> paths = Util.newSet();
 
@@ -890,25 +745,55 @@ public class GFSM extends FifoSys<GFSMState, DistEventType> {
 
         Set<ObsFifoSysState> obsToCheck = null;
         if (CSightMain.assertsOn) {
-            obsToCheck = part.getObservedStates();
+            obsToCheck = Util.newSet(part.getObservedStates());
+        }
+
+        // We need to update the inter-partition transitions of partitions
+        // that contain ObsFifoSysState instances that precede setExtract,
+        // since these transitions have to point to the new GFSMState created
+        // below. Rather than re-creating all the transitions of all the
+        // partitions that transition to part, we follow the transitions into
+        // setExtract back to the preceding observations -- whose partitions
+        // are found through their parent links -- and update just these
+        // transitions. Transitions between two observations in setExtract are
+        // updated along with the rest of the transitions of setExtract below.
+        Set<GFSMState> predParts = Util.newSet();
+        for (ObsFifoSysState obs : setExtract) {
+            for (DistEventType e : obs.getPrevTransitioningEvents()) {
+                for (ObsFifoSysState prev : obs.getPrevStates(e)) {
+                    GFSMState prevPart = prev.getParent();
+                    // Skip observations that are not part of this GFSM.
+                    if (prevPart == null || setExtract.contains(prev)) {
+                        continue;
+                    }
+                    prevPart.removeObsTransition(e, part);
+                    predParts.add(prevPart);
+                }
+            }
         }
 
         part.removeAllObs(setExtract);
-        states.add(new GFSMState(numProcesses, setExtract));
-
-        part.recreateCachedTransitions();
-
-        // We need to reset inter-partition transitions that contain preceding
-        // ObsFifoSysState instances to setExtract. Unfortunately, there is no
-        // way to do this in a targeted way -- we have to re-create all
-        // transitions if any are suspected of being stale (i.e., need to point
-        // to the new GFSMState created above).
-        for (GFSMState s : states) {
-            if (s != part && s.getNextStates().contains(part)) {
-                s.recreateCachedTransitions();
+        GFSMState newPart = new GFSMState(numProcesses, setExtract);
+        states.add(newPart);
+
+        for (ObsFifoSysState obs : setExtract) {
+            for (DistEventType e : obs.getPrevTransitioningEvents()) {
+                for (ObsFifoSysState prev : obs.getPrevStates(e)) {
+                    GFSMState prevPart = prev.getParent();
+                    if (prevPart == null || prevPart == newPart) {
+                        continue;
+                    }
+                    prevPart.addObsTransition(e, newPart);
+                }
             }
         }
 
+        // Record the partitions touched by the refinement, so that the next
+        // conversion to a CFSM updates just the affected process states.
+        touchedStates.add(part);
+        touchedStates.add(newPart);
+        touchedStates.addAll(predParts);
+
         // Check consistency of just the observations that belong to the
         // original (unrefined) partition.
         if (CSightMain.assertsOn) {
@@ -33,8 +33,15 @@ public class GFSMState extends AbsMultiFSMState<GFSMState, DistEventType> {
     private final Set<ObsFifoSysState> observedStates;
 
     // CACHE optimization: the set of abstract transitions induced by the
-    // concrete transitions. This is a cache of the ground truth.
-    private final Map<DistEventType, Set<GFSMState>> transitions;
+    // concrete transitions. This is a cache of the ground truth. Each abstract
+    // transition is mapped to the number of concrete transitions that induce
+    // it, so that the cache can be updated as observations move between
+    // partitions.
+    private final Map<DistEventType, Map<GFSMState, Integer>> transitions;
+
+    // Whether transitions is up to date. If not, then it is re-created from
+    // scratch on the next access.
+    private boolean transitionsValid;
 
     public GFSMState(int numProcesses) {
         this(numProcesses, Util.<ObsFifoSysState> newSet());
@@ -49,6 +56,7 @@ public class GFSMState extends AbsMultiFSMState<GFSMState, DistEventType> {
         // NOTE: we do not create a new set for observed states.
         this.observedStates = observedStates;
         this.transitions = Util.newMap();
+        this.transitionsValid = false;
 
         for (ObsFifoSysState obs : this.observedStates) {
             if (CSightMain.assertsOn) {
@@ -115,7 +123,7 @@ public class GFSMState extends AbsMultiFSMState<GFSMState, DistEventType> {
 
     @Override
     public Set<DistEventType> getTransitioningEvents() {
-        if (this.transitions.isEmpty()) {
+        if (!transitionsValid) {
             recreateCachedTransitions();
         }
         return transitions.keySet();
@@ -123,13 +131,13 @@ public class GFSMState extends AbsMultiFSMState<GFSMState, DistEventType> {
 
     @Override
     public Set<GFSMState> getNextStates(DistEventType event) {
-        if (this.transitions.isEmpty()) {
+        if (!transitionsValid) {
             recreateCachedTransitions();
         }
 
         assert transitions.containsKey(event);
 
-        return transitions.get(event);
+        return transitions.get(event).keySet();
     }
 
     public Set<GFSMState> getNextStates(ObsDistEventType event) {
@@ -157,9 +165,10 @@ public class GFSMState extends AbsMultiFSMState<GFSMState, DistEventType> {
         ret += ((isInitial()) ? "_i" : "");
         ret += ((isAccept()) ? "_t" : "");
         recreateCachedTransitions();
-        for (Entry<DistEventType, Set<GFSMState>> tx : transitions.entrySet()) {
+        for (Entry<DistEventType, Map<GFSMState, Integer>> tx : transitions
+                .entrySet()) {
             ret += "\n\t -- " + tx.getKey().toString() + " --> [";
-            for (GFSMState child : tx.getValue()) {
+            for (GFSMState child : tx.getValue().keySet()) {
                 ret += child.toString() + ", ";
             }
             ret += "]";
@@ -186,7 +195,9 @@ public class GFSMState extends AbsMultiFSMState<GFSMState, DistEventType> {
 
         obs.setParent(this);
         observedStates.add(obs);
-        cacheObservedParentTransitions(obs);
+        if (transitionsValid) {
+            cacheObservedParentTransitions(obs);
+        }
     }
 
     /** Adds a new observed state to this partition. */
@@ -201,16 +212,15 @@ public class GFSMState extends AbsMultiFSMState<GFSMState, DistEventType> {
         assert observedStates.contains(s);
         assert s.getParent() == this;
 
+        if (transitionsValid) {
+            uncacheObservedParentTransitions(s);
+        }
         observedStates.remove(s);
         s.setParent(null);
-        // We cannot re-create the cached transitions at this point since the
-        // other GFSMStates might be in indeterminate state.
-        transitions.clear();
 
-        // TODO: ideally we would also clear transitions of partitions that
-        // contain ObsFifoSysState instances that precede s. However, currently,
-        // we only maintain children of ObsFifoSysState instances, and not their
-        // parents.
+        // NOTE: the transitions of partitions that contain ObsFifoSysState
+        // instances that precede s are not updated here. GFSM.refine() updates
+        // these once s is assigned to its new partition.
     }
 
     /** Removes an observed state from this partition. */
@@ -219,8 +229,21 @@ public class GFSMState extends AbsMultiFSMState<GFSMState, DistEventType> {
         // after we remove the toRemove observations.
         assert observedStates.size() > toRemove.size();
 
+        // Update the cached transitions before any of the observations are
+        // removed, since the observations in toRemove might transition to each
+        // other.
+        if (transitionsValid) {
+            for (ObsFifoSysState s : toRemove) {
+                assert observedStates.contains(s);
+                uncacheObservedParentTransitions(s);
+            }
+        }
         for (ObsFifoSysState s : toRemove) {
-            this.removeObs(s);
+            assert observedStates.contains(s);
+            assert s.getParent() == this;
+
+            observedStates.remove(s);
+            s.setParent(null);
         }
     }
 
@@ -247,6 +270,7 @@ public class GFSMState extends AbsMultiFSMState<GFSMState, DistEventType> {
     /** Creates the transitions cache from scratch. */
     public void recreateCachedTransitions() {
         transitions.clear();
+        transitionsValid = true;
 
         // Update the cached transitions for each observed state in this
         // partition.
@@ -262,6 +286,28 @@ public class GFSMState extends AbsMultiFSMState<GFSMState, DistEventType> {
         return observedStates.size() == 1;
     }
 
+    /**
+     * Records that an observation in this partition transitions on e to an
+     * observation in nextPartition. Used to update the cached transitions when
+     * the observation that this partition transitions to moves to a different
+     * partition.
+     */
+    void addObsTransition(DistEventType e, GFSMState nextPartition) {
+        if (transitionsValid) {
+            incrTransition(e, nextPartition);
+        }
+    }
+
+    /**
+     * Records that an observation in this partition no longer transitions on e
+     * to an observation in nextPartition.
+     */
+    void removeObsTransition(DistEventType e, GFSMState nextPartition) {
+        if (transitionsValid) {
+            decrTransition(e, nextPartition);
+        }
+    }
+
     // //////////////////////////////////////////////////////////////////
 
     /** Updates the cached transitions for a particular observed state. */
@@ -270,14 +316,43 @@ public class GFSMState extends AbsMultiFSMState<GFSMState, DistEventType> {
             GFSMState nextPartition = s.getNextState(e).getParent();
             assert nextPartition != null;
 
-            Set<GFSMState> partitions;
-            if (!transitions.containsKey(e)) {
-                partitions = Util.newSet();
-                transitions.put(e, partitions);
-            } else {
-                partitions = transitions.get(e);
+            incrTransition(e, nextPartition);
+        }
+    }
+
+    /** Removes the cached transitions of a particular observed state. */
+    private void uncacheObservedParentTransitions(ObsFifoSysState s) {
+        for (DistEventType e : s.getTransitioningEvents()) {
+            GFSMState nextPartition = s.getNextState(e).getParent();
+            assert nextPartition != null;
+
+            decrTransition(e, nextPartition);
+        }
+    }
+
+    private void incrTransition(DistEventType e, GFSMState nextPartition) {
+        Map<GFSMState, Integer> partitions = transitions.get(e);
+        if (partitions == null) {
+            partitions = Util.newMap();
+            transitions.put(e, partitions);
+        }
+        Integer count = partitions.get(nextPartition);
+        partitions.put(nextPartition, (count == null) ? 1 : count + 1);
+    }
+
+    private void decrTransition(DistEventType e, GFSMState nextPartition) {
+        Map<GFSMState, Integer> partitions = transitions.get(e);
+        assert partitions != null;
+        Integer count = partitions.get(nextPartition);
+        assert count != null;
+
+        if (count > 1) {
+            partitions.put(nextPartition, count - 1);
+        } else {
+            partitions.remove(nextPartition);
+            if (partitions.isEmpty()) {
+                transitions.remove(e);
             }
-            partitions.add(nextPartition);
         }
     }
 }
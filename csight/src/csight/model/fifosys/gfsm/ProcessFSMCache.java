@@ -0,0 +1,352 @@
+package csight.model.fifosys.gfsm;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import csight.model.AbsFSMState;
+import csight.model.fifosys.cfsm.fsm.FSM;
+import csight.model.fifosys.cfsm.fsm.FSMState;
+import csight.util.Util;
+
+import synoptic.model.event.DistEventType;
+
+/**
+ * <p>
+ * Maintains the projection of a GFSM onto a single process, from which the FSM
+ * for the process in the CFSM representation of the GFSM is derived.
+ * </p>
+ * <p>
+ * The projection has a row per GFSMState. A row records whether the process is
+ * initial/accepting at the GFSMState, and the process transitions out of the
+ * GFSMState, which include the process transitions out of all the GFSMStates
+ * that can be reached from it through non-pid transitions (the non-pid
+ * transitive closure). Computing these closures is the expensive part of the
+ * GFSM to CFSM conversion. So, the rows are cached across refinements of the
+ * GFSM, and when a refinement touches some GFSMStates, only the rows of the
+ * GFSMStates whose closure includes a touched GFSMState are re-computed.
+ * </p>
+ */
+public class ProcessFSMCache {
+    static Logger logger = Logger.getLogger("ProcessFSMCache");
+
+    /** A row of the projection of a GFSMState onto the process. */
+    private static final class Row {
+        boolean isInit;
+        boolean isAccept;
+
+        // The non-pid transitive closure of the GFSMState, including itself.
+        final Set<GFSMState> closure = Util.newSet();
+
+        // The pid transitions from states in closure.
+        final Map<DistEventType, Set<GFSMState>> transitions = Util.newMap();
+    }
+
+    private final int pid;
+
+    private final Map<GFSMState, Row> rows;
+
+    // Maps a GFSMState g to the GFSMStates whose rows depend on g -- those
+    // whose closure includes g.
+    private final Map<GFSMState, Set<GFSMState>> closureUsers;
+
+    public ProcessFSMCache(int pid) {
+        this.pid = pid;
+        this.rows = Util.newMap();
+        this.closureUsers = Util.newMap();
+    }
+
+    // //////////////////////////////////////////////////////////////////
+
+    /** Removes all the cached rows. */
+    public void clear() {
+        rows.clear();
+        closureUsers.clear();
+    }
+
+    /**
+     * Brings the cached rows up to date with the GFSMStates in states, given
+     * that only the GFSMStates in touched (and GFSMStates that are not yet
+     * cached) have changed since the last update. A touched state is one that
+     * was created, or whose observations, or transitions changed.
+     *
+     * @return the number of re-computed rows
+     */
+    public int update(Collection<GFSMState> states, Set<GFSMState> touched) {
+        Set<GFSMState> stale = Util.newSet();
+        for (GFSMState g : touched) {
+            Set<GFSMState> users = closureUsers.get(g);
+            if (users != null) {
+                stale.addAll(users);
+            }
+        }
+        for (GFSMState g : states) {
+            if (!rows.containsKey(g) || touched.contains(g)) {
+                stale.add(g);
+            }
+        }
+
+        Set<GFSMState> gvisited = Util.newSet();
+        for (GFSMState g : stale) {
+            updateRow(g, gvisited);
+        }
+
+        assert rows.size() == states.size();
+        logger.info("Re-computed " + stale.size() + " of " + rows.size()
+                + " rows for pid " + pid);
+        return stale.size();
+    }
+
+    /**
+     * Builds the FSM for the process from the cached rows. Only the rows that
+     * are reachable from the initial rows are included, and FSM states that
+     * are behaviorally indistinguishable are merged.
+     *
+     * @param minimize
+     *            - whether to minimize the FSM, if it is deterministic
+     */
+    public FSM getFSM(boolean minimize) {
+        Set<FSMState> initFSMStates = Util.newSet();
+        Set<FSMState> acceptFSMStates = Util.newSet();
+        Map<GFSMState, FSMState> stateMap = Util.newMap();
+        List<FSMState> fstates = Util.newList();
+        List<GFSMState> gstates = Util.newList();
+
+        // Create FSM states for the rows that are reachable from the initial
+        // rows. The scm id of an FSM state is its index in fstates.
+        Deque<GFSMState> toVisit = new ArrayDeque<GFSMState>();
+        for (Map.Entry<GFSMState, Row> entry : rows.entrySet()) {
+            if (entry.getValue().isInit) {
+                getFSMState(entry.getKey(), stateMap, fstates, gstates,
+                        toVisit);
+            }
+        }
+        while (!toVisit.isEmpty()) {
+            GFSMState gstate = toVisit.poll();
+            FSMState fstate = stateMap.get(gstate);
+            for (Map.Entry<DistEventType, Set<GFSMState>> tx : rows
+                    .get(gstate).transitions.entrySet()) {
+                for (GFSMState gNext : tx.getValue()) {
+                    fstate.addTransition(tx.getKey(), getFSMState(gNext,
+                            stateMap, fstates, gstates, toVisit));
+                }
+            }
+        }
+
+        // Merge any FSM states that are bisimular --- if their behavior is
+        // indistinguishable.
+        boolean[] merged = mergeBisimularStates(fstates);
+
+        for (int i = 0; i < fstates.size(); i++) {
+            FSMState fstate = fstates.get(i);
+            if (merged[i]) {
+                stateMap.remove(gstates.get(i));
+                continue;
+            }
+            if (fstate.isInitial()) {
+                initFSMStates.add(fstate);
+            }
+            if (fstate.isAccept()) {
+                acceptFSMStates.add(fstate);
+            }
+        }
+
+        assert !acceptFSMStates.isEmpty();
+        assert !initFSMStates.isEmpty();
+
+        FSM fsm = new FSM(pid, initFSMStates, acceptFSMStates,
+                stateMap.values(), fstates.size());
+
+        // Check if after bisimulation merging above the FSM is now a DFA and we
+        // can use standard minimization to further minimize the FSM.
+        if (minimize && fsm.isDeterministic()) {
+            fsm.minimize();
+        }
+        return fsm;
+    }
+
+    // //////////////////////////////////////////////////////////////////
+
+    /** Re-computes the row of gstate. */
+    private void updateRow(GFSMState gstate, Set<GFSMState> gvisited) {
+        Row row = rows.get(gstate);
+        if (row == null) {
+            row = new Row();
+            rows.put(gstate, row);
+        } else {
+            for (GFSMState g : row.closure) {
+                closureUsers.get(g).remove(gstate);
+            }
+            row.closure.clear();
+            row.transitions.clear();
+        }
+
+        // Find the states that can be reached through non-pid transitions (we
+        // treat them as epsilon transitions).
+        gvisited.clear();
+        AbsFSMState.findNonPidTransitiveClosure(pid, gstate, gvisited,
+                row.closure);
+        row.closure.add(gstate);
+
+        row.isInit = gstate.isInitForPid(pid);
+        row.isAccept = false;
+        for (GFSMState g : row.closure) {
+            Set<GFSMState> users = closureUsers.get(g);
+            if (users == null) {
+                users = Util.newSet();
+                closureUsers.put(g, users);
+            }
+            users.add(gstate);
+
+            // Accept computation: If we can reach an accepting g from gstate
+            // using non-pid (epsilon) transitions, then this process can
+            // terminate at gstate.
+            if (!row.isAccept && g.isAcceptForPid(pid)) {
+                row.isAccept = true;
+            }
+
+            // Add the GFSMState transitions of g.
+            for (DistEventType e : g.getTransitioningEvents()) {
+                // Only create this pid's event transitions.
+                if (e.getPid() != pid) {
+                    continue;
+                }
+                Set<GFSMState> next = row.transitions.get(e);
+                if (next == null) {
+                    next = Util.newSet();
+                    row.transitions.put(e, next);
+                }
+                next.addAll(g.getNextStates(e));
+            }
+        }
+    }
+
+    /**
+     * Returns the FSM state for gstate, creating it (and scheduling gstate to
+     * be visited) if it does not exist yet.
+     */
+    private FSMState getFSMState(GFSMState gstate,
+            Map<GFSMState, FSMState> stateMap, List<FSMState> fstates,
+            List<GFSMState> gstates, Deque<GFSMState> toVisit) {
+        FSMState fstate = stateMap.get(gstate);
+        if (fstate == null) {
+            Row row = rows.get(gstate);
+            fstate = new FSMState(row.isAccept, row.isInit, pid,
+                    fstates.size());
+            stateMap.put(gstate, fstate);
+            fstates.add(fstate);
+            gstates.add(gstate);
+            toVisit.add(gstate);
+        }
+        return fstate;
+    }
+
+    /**
+     * Repeatedly merges pairs of FSM states that have identical initial/accept
+     * properties and identical transitions, until no such pair remains. The
+     * states are hashed on these properties, so that a state is compared only
+     * against the states with the same signature. When a state is merged into
+     * another, the transitions of its predecessors change, and so these are
+     * re-hashed.
+     *
+     * @param fstates
+     *            the FSM states, indexed by their scm ids
+     * @return which of fstates were merged into (and replaced by) another state
+     */
+    private static boolean[] mergeBisimularStates(List<FSMState> fstates) {
+        int n = fstates.size();
+        boolean[] merged = new boolean[n];
+
+        // Predecessors of each state, by scm id.
+        List<Set<Integer>> preds = Util.newList(n);
+        for (int i = 0; i < n; i++) {
+            Set<Integer> s = Util.newSet();
+            preds.add(s);
+        }
+        for (FSMState f : fstates) {
+            for (FSMState fNext : f.getNextStates()) {
+                preds.get(fNext.getStateId()).add(f.getStateId());
+            }
+        }
+
+        Map<List<Object>, Integer> signatures = Util.newMap();
+        Deque<Integer> toCheck = new ArrayDeque<Integer>();
+        boolean[] queued = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            toCheck.add(i);
+        }
+        Arrays.fill(queued, true);
+
+        while (!toCheck.isEmpty()) {
+            int id = toCheck.poll();
+            queued[id] = false;
+            if (merged[id]) {
+                continue;
+            }
+
+            FSMState fstate = fstates.get(id);
+            List<Object> sig = signature(fstate);
+            Integer id2 = signatures.get(sig);
+            // An entry is stale if that state changed (or was merged) since it
+            // was hashed.
+            if (id2 == null || id2 == id || merged[id2]
+                    || !sig.equals(signature(fstates.get(id2)))) {
+                signatures.put(sig, id);
+                continue;
+            }
+
+            // Merge fstate INTO fstate2, by changing the transitions from all
+            // the predecessors of fstate to transition instead to fstate2.
+            FSMState fstate2 = fstates.get(id2);
+            merged[id] = true;
+            for (FSMState fNext : fstate.getNextStates()) {
+                preds.get(fNext.getStateId()).remove(id);
+            }
+            for (int predId : preds.get(id)) {
+                if (predId == id) {
+                    continue;
+                }
+                FSMState fPred = fstates.get(predId);
+                for (DistEventType e : Util.newSet(fPred
+                        .getTransitioningEvents())) {
+                    if (fPred.getNextStates(e).contains(fstate)) {
+                        fPred.rmTransition(e, fstate);
+                        fPred.addTransition(e, fstate2);
+                    }
+                }
+                preds.get(id2).add(predId);
+                if (!queued[predId]) {
+                    queued[predId] = true;
+                    toCheck.add(predId);
+                }
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Returns a value that is equal for two FSM states if and only if their
+     * initial/accept properties and transitions are identical.
+     */
+    private static List<Object> signature(FSMState fstate) {
+        Map<DistEventType, Set<Integer>> txns = Util.newMap();
+        for (DistEventType e : fstate.getTransitioningEvents()) {
+            Set<Integer> ids = Util.newSet();
+            for (FSMState fNext : fstate.getNextStates(e)) {
+                ids.add(fNext.getStateId());
+            }
+            txns.put(e, ids);
+        }
+
+        List<Object> sig = Util.newList(3);
+        sig.add(fstate.isInitial());
+        sig.add(fstate.isAccept());
+        sig.add(txns);
+        return sig;
+    }
+}
@@ -8,8 +8,6 @@ import java.util.Set;
 import java.util.logging.Logger;
 
 import csight.invariants.BinaryInvariant;
-import csight.invariants.checkers.BinChecker;
-import csight.invariants.checkers.BinChecker.Validity;
 import csight.model.fifosys.FifoSys;
 import csight.model.fifosys.gfsm.observed.ObsFSMState;
 import csight.model.fifosys.gfsm.observed.dag.ObsDAG;
@@ -401,87 +399,34 @@ public class ObsFifoSys extends FifoSys<ObsFifoSysState, DistEventType> {
      * This method model checks ObsFifoSys against minedInvs and returns the set
      * of invariants that are violated by the ObsFifoSys. The model checking is
      * simplistic: (1) since ObsFifoSys is a DAG, we don't have to worry about
-     * cycles and re-visiting nodes, (2) we only care about removing stitching,
-     * and not the complete path -- once we find a violation, we percolate up
-     * until we see that there is a stitching edge (with a different trace id),
-     * (3) we only care about the three basic invariant types.
+     * cycles, (2) we only care about the basic invariant types, for which
+     * checkers exist.
      * 
+     * @see ObsFifoSysInvValidator
      * @param minedInvs
      */
     public Set<BinaryInvariant> findInvalidatedInvariants(
-            List<BinaryInvariant> minedInvs) {
-        // The set of invariants that do _not_ hold, which we will return.
-        Set<BinaryInvariant> ret = Util.newSet();
-
-        // Visited keeps track of which states have been visited during
-        // invariant checking.
-        Set<ObsFifoSysState> visited = Util.newSet();
-
-        ObsFifoSysState initS = this.getInitState();
-        for (BinaryInvariant inv : minedInvs) {
-            logger.info("-> Checking " + inv.toString() + " for invalidation.");
-            BinChecker<?> invChecker = inv.newChecker();
-            if (!checkInvariant(invChecker, initS, visited)) {
-                logger.info("--> INVALID.");
-                ret.add(inv);
-            }
-            visited.clear();
-        }
-        return ret;
+            List<BinaryInvariant> minedInvs) throws InterruptedException {
+        return findInvalidatedInvariants(minedInvs, 1);
     }
 
     /**
-     * Runs the invChecker over this instance of observed fifo sys to check if
-     * it satisfied the corresponding invariant.
+     * Same as findInvalidatedInvariants(minedInvs), but checks the invariants
+     * on numThreads threads.
+     * 
+     * @param minedInvs
+     * @param numThreads
      */
-    private <State> boolean checkInvariant(BinChecker<State> invChecker,
-            ObsFifoSysState curState, Set<ObsFifoSysState> visited) {
-        // Don't re-visit states.
-        if (visited.contains(curState)) {
-            // If we visited this state before and return false, then we would
-            // have not returned to this state. Therefore, the invariant is
-            // valid for this state and for all the branches below it.
-            return true;
-        }
-        visited.add(curState);
-
-        if (curState.isAccept()) {
-            // Return whether or not the invariant holds.
-            if (invChecker.isFail()) {
-                return false;
-            }
-            // Note: even though curState may be accepting, there may be more
-            // transitions from this state that we need to explore.
-        }
-
-        Set<DistEventType> nextEvents = curState.getTransitioningEvents();
-
-        // Create a copy of the checker state to use if we have more than
-        // sub-branch to explore.
-        BinChecker<State> clonedOrig = null;
-        if (nextEvents.size() > 1) {
-            clonedOrig = invChecker.getClone();
-        }
-
-        for (DistEventType e : nextEvents) {
-            Validity mcResult = invChecker.transition(e);
-            if (mcResult == Validity.PERM_FAIL) {
-                return false;
-            } else if (mcResult == Validity.PERM_SUCCESS) {
-                // The e sub-branch checks out, move on to other sub-branches.
-                continue;
-            }
-            if (!checkInvariant(invChecker, curState.getNextState(e), visited)) {
-                return false;
-            }
-
-            // Update the copy of the invChecker with state from the original.
-            if (clonedOrig != null) {
-                invChecker.inheritState(clonedOrig);
-            }
+    public Set<BinaryInvariant> findInvalidatedInvariants(
+            List<BinaryInvariant> minedInvs, int numThreads)
+            throws InterruptedException {
+        List<ObsFifoSys> systems = Util.newList(1);
+        systems.add(this);
+        Set<BinaryInvariant> ret = ObsFifoSysInvValidator
+                .findInvalidatedInvariants(systems, minedInvs, numThreads);
+        for (BinaryInvariant inv : ret) {
+            logger.info("-> " + inv.toString() + " is INVALID.");
         }
-        // If we got here then all of the sub-branches we've explored above
-        // returned true, so the invariant holds in this sub-tree.
-        return true;
+        return ret;
     }
 }
@@ -0,0 +1,310 @@
+package csight.model.fifosys.gfsm.observed.fifosys;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+import csight.invariants.BinaryInvariant;
+import csight.invariants.checkers.BinChecker;
+import csight.invariants.checkers.BinChecker.Validity;
+import csight.util.Util;
+
+import synoptic.model.event.DistEventType;
+
+/**
+ * <p>
+ * Finds the invariants that do not hold in observed fifo systems. An invariant
+ * does not hold if there is a path from the initial state to an accepting
+ * state along which the invariant's checker ends in a rejecting state (or
+ * permanently fails).
+ * </p>
+ * <p>
+ * Rather than traversing a system once per invariant, a set of invariants is
+ * checked in a single traversal that advances a vector of checkers (one per
+ * invariant) along each path. The traversal is iterative, with an explicit
+ * work stack, so its depth is not limited by the call stack. A state is
+ * re-visited by an invariant only with a checker state that this invariant
+ * has not yet had at that state, and an invariant is dropped from the vector
+ * as soon as it is found to be invalid, or is permanently successful along a
+ * path.
+ * </p>
+ * <p>
+ * The invariants are split into chunks, and each (system, chunk) pair is
+ * checked by an independent traversal. These traversals run concurrently on
+ * numThreads threads.
+ * </p>
+ */
+public class ObsFifoSysInvValidator {
+
+    private static Logger logger = Logger.getLogger("ObsFifoSysInvValidator");
+
+    // The maximum number of invariants checked by a single traversal.
+    private static final int MAX_CHUNK_SIZE = 256;
+
+    /**
+     * Returns the invariants in invs that do not hold in at least one of the
+     * systems, checking (system, invariant chunk) pairs in parallel on
+     * numThreads threads.
+     */
+    public static Set<BinaryInvariant> findInvalidatedInvariants(
+            List<ObsFifoSys> systems, List<BinaryInvariant> invs,
+            int numThreads) throws InterruptedException {
+        assert numThreads > 0;
+
+        // Use at least one chunk per thread, if there are enough invariants.
+        int chunkSize = (invs.size() + numThreads - 1) / numThreads;
+        chunkSize = Math.max(1, Math.min(MAX_CHUNK_SIZE, chunkSize));
+
+        List<Traversal> traversals = Util.newList();
+        for (ObsFifoSys sys : systems) {
+            for (int i = 0; i < invs.size(); i += chunkSize) {
+                traversals.add(new Traversal(sys.getInitState(), invs.subList(
+                        i, Math.min(i + chunkSize, invs.size()))));
+            }
+        }
+
+        logger.info("Checking " + invs.size() + " invariants in "
+                + systems.size() + " systems with " + traversals.size()
+                + " traversals.");
+
+        if (numThreads == 1 || traversals.size() == 1) {
+            for (Traversal t : traversals) {
+                t.call();
+            }
+        } else {
+            ExecutorService eService = Executors.newFixedThreadPool(Math.min(
+                    numThreads, traversals.size()));
+            try {
+                for (Future<List<BinaryInvariant>> f : eService
+                        .invokeAll(traversals)) {
+                    f.get();
+                }
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            } finally {
+                eService.shutdownNow();
+            }
+        }
+
+        Set<BinaryInvariant> ret = Util.newSet();
+        for (Traversal t : traversals) {
+            ret.addAll(t.invalidated);
+        }
+        return ret;
+    }
+
+    // //////////////////////////////////////////////////////////////////
+
+    /**
+     * A traversal of a system that checks a chunk of invariants.
+     * <p>
+     * The checkers are compiled on the fly into a single transition table over
+     * "monitor" ids. A monitor id identifies an invariant together with a state
+     * of its checker, and the table maps a monitor id and an event id to the
+     * next monitor id, or to PERM_SUCCESS_ID/PERM_FAIL_ID. A vector of checkers
+     * is represented by the monitor ids of the invariants that are still being
+     * checked along the path.
+     * </p>
+     */
+    private static final class Traversal implements
+            Callable<List<BinaryInvariant>> {
+
+        private static final int UNKNOWN_ID = -1;
+        private static final int PERM_SUCCESS_ID = -2;
+        private static final int PERM_FAIL_ID = -3;
+
+        private final ObsFifoSysState initState;
+        private final List<BinaryInvariant> invs;
+
+        // Dense ids for the events in the system.
+        private final Map<DistEventType, Integer> eventIds = Util.newMap();
+        private final List<DistEventType> events = Util.newList();
+
+        // Per invariant: checker state -> monitor id.
+        private final List<Map<Object, Integer>> monitorIds;
+
+        // Per monitor id: the invariant index, a checker in the corresponding
+        // state, whether the state is rejecting, and the transition table row.
+        private final List<Integer> monitorInv = Util.newList();
+        private final List<BinChecker<?>> monitorCheckers = Util.newList();
+        private final BitSet monitorFail = new BitSet();
+        private final List<int[]> monitorNext = Util.newList();
+
+        // Per invariant index: whether the invariant was found to be invalid.
+        private final boolean[] invalid;
+        private int numInvalid = 0;
+
+        // Per system state: the monitor ids that have reached the state.
+        private final Map<ObsFifoSysState, BitSet> visited = Util.newMap();
+
+        // The invariants that do not hold, which is the result.
+        final List<BinaryInvariant> invalidated = Util.newList();
+
+        Traversal(ObsFifoSysState initState, List<BinaryInvariant> invs) {
+            this.initState = initState;
+            this.invs = invs;
+            this.invalid = new boolean[invs.size()];
+            this.monitorIds = Util.newList(invs.size());
+            for (int i = 0; i < invs.size(); i++) {
+                Map<Object, Integer> m = Util.newMap();
+                monitorIds.add(m);
+            }
+        }
+
+        @Override
+        public List<BinaryInvariant> call() {
+            // The explicit work stack: each system state is paired with the
+            // vector of monitor ids with which it is to be explored.
+            Deque<ObsFifoSysState> stateStack = new ArrayDeque<ObsFifoSysState>();
+            Deque<int[]> vectorStack = new ArrayDeque<int[]>();
+
+            int[] initVector = new int[invs.size()];
+            for (int i = 0; i < invs.size(); i++) {
+                initVector[i] = getMonitorId(i, invs.get(i).newChecker());
+            }
+            stateStack.push(initState);
+            vectorStack.push(initVector);
+
+            while (!stateStack.isEmpty() && numInvalid < invs.size()) {
+                ObsFifoSysState curState = stateStack.pop();
+                int[] vector = filterVisited(curState, vectorStack.pop());
+                if (vector.length == 0) {
+                    continue;
+                }
+
+                if (curState.isAccept()) {
+                    // Note: even though curState may be accepting, there may
+                    // be more transitions from this state that we need to
+                    // explore.
+                    for (int m : vector) {
+                        if (monitorFail.get(m)) {
+                            setInvalid(monitorInv.get(m));
+                        }
+                    }
+                }
+
+                for (DistEventType e : curState.getTransitioningEvents()) {
+                    int eId = getEventId(e);
+                    int[] next = new int[vector.length];
+                    int nextLen = 0;
+                    for (int m : vector) {
+                        int inv = monitorInv.get(m);
+                        if (invalid[inv]) {
+                            continue;
+                        }
+                        int nextM = transition(m, eId);
+                        if (nextM == PERM_FAIL_ID) {
+                            setInvalid(inv);
+                        } else if (nextM != PERM_SUCCESS_ID) {
+                            next[nextLen++] = nextM;
+                        }
+                        // PERM_SUCCESS_ID: the invariant holds along any
+                        // extension of this path, so stop checking it.
+                    }
+                    if (nextLen > 0) {
+                        stateStack.push(curState.getNextState(e));
+                        vectorStack.push(Arrays.copyOf(next, nextLen));
+                    }
+                }
+            }
+            return invalidated;
+        }
+
+        /**
+         * Returns the monitor ids in vector with which curState was not yet
+         * explored, and that belong to invariants that are not yet known to be
+         * invalid. Records these ids as visited at curState.
+         */
+        private int[] filterVisited(ObsFifoSysState curState, int[] vector) {
+            BitSet seen = visited.get(curState);
+            if (seen == null) {
+                seen = new BitSet();
+                visited.put(curState, seen);
+            }
+
+            int[] ret = new int[vector.length];
+            int len = 0;
+            for (int m : vector) {
+                if (invalid[monitorInv.get(m)] || seen.get(m)) {
+                    // If we visited this state before with the same checker
+                    // state, then the invariant has been (or is being)
+                    // checked for all the branches below this state.
+                    continue;
+                }
+                seen.set(m);
+                ret[len++] = m;
+            }
+            return len == vector.length ? ret : Arrays.copyOf(ret, len);
+        }
+
+        /** Returns the monitor that m transitions to on the event eId. */
+        private int transition(int m, int eId) {
+            int[] row = monitorNext.get(m);
+            if (eId >= row.length) {
+                int oldLen = row.length;
+                row = Arrays.copyOf(row, Math.max(events.size(), eId + 1));
+                Arrays.fill(row, oldLen, row.length, UNKNOWN_ID);
+                monitorNext.set(m, row);
+            }
+
+            if (row[eId] == UNKNOWN_ID) {
+                BinChecker<?> checker = monitorCheckers.get(m).getClone();
+                Validity v = checker.transition(events.get(eId));
+                if (v == Validity.PERM_FAIL) {
+                    row[eId] = PERM_FAIL_ID;
+                } else if (v == Validity.PERM_SUCCESS) {
+                    row[eId] = PERM_SUCCESS_ID;
+                } else {
+                    row[eId] = getMonitorId(monitorInv.get(m), checker);
+                }
+            }
+            return row[eId];
+        }
+
+        /**
+         * Returns the monitor id of the invariant inv in the state of checker,
+         * creating a new monitor if necessary.
+         */
+        private int getMonitorId(int inv, BinChecker<?> checker) {
+            Map<Object, Integer> ids = monitorIds.get(inv);
+            Integer m = ids.get(checker.getState());
+            if (m == null) {
+                m = monitorInv.size();
+                ids.put(checker.getState(), m);
+                monitorInv.add(inv);
+                monitorCheckers.add(checker);
+                monitorFail.set(m, checker.isFail());
+                monitorNext.add(new int[0]);
+            }
+            return m;
+        }
+
+        private int getEventId(DistEventType e) {
+            Integer eId = eventIds.get(e);
+            if (eId == null) {
+                eId = events.size();
+                eventIds.put(e, eId);
+                events.add(e);
+            }
+            return eId;
+        }
+
+        private void setInvalid(int inv) {
+            if (!invalid[inv]) {
+                invalid[inv] = true;
+                numInvalid += 1;
+                invalidated.add(invs.get(inv));
+            }
+        }
+    }
+}
@@ -113,6 +113,11 @@ public class ObsFifoSysState extends
     // Concrete/observed transitions for each abstract dist event type.
     private final Map<DistEventType, ObsDistEventType> concTransitions;
 
+    // Reverse abstract transitions: the states that transition to this state,
+    // for each abstract dist event type. Used to find the partitions whose
+    // transitions change when this state moves to a different partition.
+    private final Map<DistEventType, Set<ObsFifoSysState>> absPrevTransitions;
+
     // A unique int identifier for this ObsFifoSysState. Also used by
     // hashCode().
     private final int stateId;
@@ -142,6 +147,7 @@ public class ObsFifoSysState extends
         this.channelStates = channelStates;
         this.absTransitions = Util.newMap();
         this.concTransitions = Util.newMap();
+        this.absPrevTransitions = Util.newMap();
     }
 
     // //////////////////////////////////////////////////////////////////
@@ -266,6 +272,16 @@ public class ObsFifoSysState extends
         return absTransitions.get(event.getDistEType());
     }
 
+    /** Returns the abstract event types on which states transition to this. */
+    public Set<DistEventType> getPrevTransitioningEvents() {
+        return absPrevTransitions.keySet();
+    }
+
+    /** Returns the states that transition to this on an ABSTRACT event type. */
+    public Set<ObsFifoSysState> getPrevStates(DistEventType event) {
+        return absPrevTransitions.get(event);
+    }
+
     /**
      * Returns the OBSERVED event type correspond to an input ABSTRACT event
      * type. We guarantee that there is just _one_ just OBSERVED event type for
@@ -297,6 +313,13 @@ public class ObsFifoSysState extends
 
         this.absTransitions.put(eType, s);
         this.concTransitions.put(eType, e);
+
+        Set<ObsFifoSysState> prevStates = s.absPrevTransitions.get(eType);
+        if (prevStates == null) {
+            prevStates = Util.newSet();
+            s.absPrevTransitions.put(eType, prevStates);
+        }
+        prevStates.add(this);
     }
 
 }
@@ -0,0 +1,119 @@
+package csight.mc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import csight.CSightTest;
+import csight.invariants.AlwaysFollowedBy;
+import csight.invariants.NeverFollowedBy;
+import csight.mc.explicit.ExplicitMCResult;
+import csight.model.fifosys.cfsm.CFSM;
+import csight.model.fifosys.cfsm.fsm.FSM;
+import csight.model.fifosys.cfsm.fsm.FSMState;
+import csight.util.Util;
+
+import synoptic.model.channelid.ChannelId;
+import synoptic.model.event.DistEventType;
+
+public class MCResultCacheTests extends CSightTest {
+
+    ChannelId cid = new ChannelId(0, 1, 0);
+    DistEventType p0Sm = DistEventType.SendEvent("m", cid);
+    DistEventType p1Rm = DistEventType.RecvEvent("m", cid);
+
+    /**
+     * Returns a CFSM in which p0 sends m and p1 receives m. The scm ids of the
+     * initial and accepting states are initId and 1 - initId.
+     */
+    private CFSM newCFSM(int initId) {
+        List<ChannelId> channels = Util.newList(1);
+        channels.add(cid);
+        CFSM ret = new CFSM(2, channels);
+
+        DistEventType[] events = { p0Sm, p1Rm };
+        for (int pid = 0; pid < 2; pid++) {
+            FSMState init = new FSMState(false, true, pid, initId);
+            FSMState accept = new FSMState(true, false, pid, 1 - initId);
+            init.addTransition(events[pid], accept);
+
+            Set<FSMState> states = Util.newSet();
+            states.add(init);
+            states.add(accept);
+            ret.addFSM(new FSM(pid, init, accept, states, 2));
+        }
+        return ret;
+    }
+
+    private MCResult newResult() {
+        List<String> lines = Util.newList();
+        lines.add("Result: Model is safe.");
+        return new ExplicitMCResult(lines, Util.newList(newCFSM(0)
+                .getChannelIds()), null);
+    }
+
+    @Test
+    public void cfsmKeyIgnoresStateIds() {
+        assertEquals(MCResultCache.cfsmKey(newCFSM(0)),
+                MCResultCache.cfsmKey(newCFSM(1)));
+    }
+
+    @Test
+    public void cfsmKeyDependsOnStructure() {
+        CFSM cfsm = newCFSM(0);
+        String key = MCResultCache.cfsmKey(cfsm);
+
+        // Add a self-loop to the accepting state of p1.
+        FSM f1 = cfsm.getFSMs().get(1);
+        FSMState accept = f1.getAcceptStates().iterator().next();
+        accept.addTransition(p1Rm, accept);
+
+        assertFalse(key.equals(MCResultCache.cfsmKey(cfsm)));
+    }
+
+    @Test
+    public void keyDependsOnInvariant() {
+        String cfsmKey = MCResultCache.cfsmKey(newCFSM(0));
+        assertFalse(MCResultCache.key(cfsmKey,
+                new AlwaysFollowedBy(p0Sm, p1Rm)).equals(
+                MCResultCache.key(cfsmKey, new NeverFollowedBy(p0Sm, p1Rm))));
+        assertEquals(MCResultCache.key(cfsmKey, new AlwaysFollowedBy(p0Sm,
+                p1Rm)), MCResultCache.key(cfsmKey, new AlwaysFollowedBy(p0Sm,
+                p1Rm)));
+    }
+
+    @Test
+    public void getAndEvict() {
+        MCResultCache cache = new MCResultCache(2);
+        MCResult r1 = newResult();
+        MCResult r2 = newResult();
+        MCResult r3 = newResult();
+
+        assertNull(cache.get("a"));
+        cache.put("a", r1);
+        cache.put("b", r2);
+        assertTrue(cache.get("a") == r1);
+
+        // "b" is now the least recently used result.
+        cache.put("c", r3);
+        assertNull(cache.get("b"));
+        assertTrue(cache.get("a") == r1);
+        assertTrue(cache.get("c") == r3);
+
+        assertEquals(3, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void zeroSizeDisablesCache() {
+        MCResultCache cache = new MCResultCache(0);
+        cache.put("a", newResult());
+        assertNull(cache.get("a"));
+    }
+}
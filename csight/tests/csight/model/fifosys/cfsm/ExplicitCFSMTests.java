@@ -0,0 +1,90 @@
+package csight.model.fifosys.cfsm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+import csight.invariants.AlwaysFollowedBy;
+import csight.invariants.AlwaysPrecedes;
+import csight.invariants.BinaryInvariant;
+import csight.invariants.EventuallyHappens;
+import csight.invariants.NeverFollowedBy;
+import csight.mc.MCResult;
+import csight.mc.explicit.ExplicitMC;
+
+public class ExplicitCFSMTests extends CFSMTesting {
+
+    ExplicitMC mc;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        mc = new ExplicitMC(4, 2);
+    }
+
+    public MCResult verify(BinaryInvariant inv) throws IOException,
+            InterruptedException, TimeoutException {
+        mc.prepare(cfsm, inv);
+        mc.verify(null, 60);
+        MCResult result = mc.getVerifyResult(cfsm.getChannelIds());
+        logger.info(result.toRawString());
+        return result;
+    }
+
+    @Test
+    public void verifyAFby() throws Exception {
+        MCResult result = verify(new AlwaysFollowedBy(p0Sm, p1Rm));
+        assertTrue(result.modelIsSafe());
+        assertTrue(result.getCExample() == null);
+    }
+
+    @Test
+    public void verifyNFby() throws Exception {
+        MCResult result = verify(new NeverFollowedBy(p0Sm, p1Rm));
+        assertTrue(!result.modelIsSafe());
+        assertTrue(result.getCExample() != null);
+
+        // The shortest counter-example: send m and then receive m.
+        assertEquals(2, result.getCExample().getEvents().size());
+        assertEquals(p0Sm, result.getCExample().getEvents().get(0));
+        assertEquals(p1Rm, result.getCExample().getEvents().get(1));
+    }
+
+    @Test
+    public void verifyAP() throws Exception {
+        MCResult result = verify(new AlwaysPrecedes(p0Sm, p1Rm));
+        assertTrue(result.modelIsSafe());
+    }
+
+    @Test
+    public void verifyReverseAP() throws Exception {
+        MCResult result = verify(new AlwaysPrecedes(p1Rm, p0Sm));
+        assertTrue(!result.modelIsSafe());
+        assertEquals(2, result.getCExample().getEvents().size());
+    }
+
+    @Test
+    public void verifyEventually() throws Exception {
+        MCResult result = verify(new EventuallyHappens(p1Rm));
+        assertTrue(result.modelIsSafe());
+    }
+
+    /**
+     * Local events are part of the counter-example, just as with McScM.
+     */
+    @Test
+    public void verifyNFbyWithLocalEvents() throws Exception {
+        MCResult result = verify(new NeverFollowedBy(p0Le, p1Lf));
+        assertTrue(!result.modelIsSafe());
+
+        // m!, m?, e, f, m!, m? is the shortest sequence in which e is
+        // followed by f and both processes then terminate.
+        assertEquals(6, result.getCExample().getEvents().size());
+        assertTrue(result.getCExample().getEvents().contains(p0Le));
+        assertTrue(result.getCExample().getEvents().contains(p1Lf));
+    }
+}
@@ -6,6 +6,8 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 
 import org.junit.Before;
@@ -14,6 +16,7 @@ import org.junit.Test;
 import csight.CSightTest;
 import csight.model.export.GraphExporter;
 import csight.model.fifosys.cfsm.CFSM;
+import csight.model.fifosys.cfsm.fsm.FSM;
 import csight.model.fifosys.channel.channelstate.ImmutableMultiChState;
 import csight.model.fifosys.gfsm.observed.ObsDistEventType;
 import csight.model.fifosys.gfsm.observed.ObsFSMState;
@@ -152,4 +155,108 @@ public class GFSMTests extends CSightTest {
         assertFalse(g.deepEquals(notG));
         assertFalse(notG.deepEquals(g));
     }
+
+    /**
+     * Checks that after each refinement the CFSM that is incrementally derived
+     * from the GFSM is identical to the CFSM that is derived from scratch.
+     */
+    @Test
+    public void incrementalCFSMAfterRefinements() {
+        // A trace in which two processes execute 3 local events each, in all
+        // possible interleavings. Initially, all of the observations are in a
+        // single partition.
+        int n = 4;
+        List<ChannelId> cids = Util.newList();
+        ImmutableMultiChState chStates = ImmutableMultiChState
+                .fromChannelIds(cids);
+        ObsFifoSysState[][] grid = new ObsFifoSysState[n][n];
+        Set<ObsFifoSysState> states = Util.newSet();
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                List<ObsFSMState> P = Util.newList();
+                P.add(ObsFSMState.namedObsFSMState(0, "p0-" + i, i == 0,
+                        i == n - 1));
+                P.add(ObsFSMState.namedObsFSMState(1, "p1-" + j, j == 0,
+                        j == n - 1));
+                grid[i][j] = ObsFifoSysState.getFifoSysState(
+                        ObsMultFSMState.getMultiFSMState(P), chStates);
+                states.add(grid[i][j]);
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                if (i < n - 1) {
+                    grid[i][j].addTransition(new ObsDistEventType(
+                            DistEventType.LocalEvent("a" + (i % 2), 0), 0),
+                            grid[i + 1][j]);
+                }
+                if (j < n - 1) {
+                    grid[i][j].addTransition(new ObsDistEventType(
+                            DistEventType.LocalEvent("b" + (j % 2), 1), 0),
+                            grid[i][j + 1]);
+                }
+            }
+        }
+        List<ObsFifoSys> traces = Util.newList(1);
+        traces.add(new ObsFifoSys(cids, grid[0][0], grid[n - 1][n - 1],
+                states));
+
+        GFSM gfsm = new GFSM(traces, 1);
+        assertEquals(1, gfsm.getStates().size());
+        assertEquals(getCFSMFromScratch(gfsm), gfsm.getCFSM(false)
+                .toCanonicalString());
+
+        Random rand = new Random(0);
+        while (!gfsm.isSingleton()) {
+            GFSMState part = null;
+            for (GFSMState s : gfsm.getStates()) {
+                if (!s.isSingleton()) {
+                    part = s;
+                    break;
+                }
+            }
+            List<ObsFifoSysState> obs = Util.newList(part.getObservedStates());
+            int i = rand.nextInt(obs.size());
+            int j = (i + 1 + rand.nextInt(obs.size() - 1)) % obs.size();
+            Set<ObsFifoSysState> setLeft = Util.newSet();
+            Set<ObsFifoSysState> setRight = Util.newSet();
+            setLeft.add(obs.get(i));
+            setRight.add(obs.get(j));
+            gfsm.refineWithRandNonRelevantObsAssignment(part, setLeft,
+                    setRight);
+
+            String incremental = gfsm.getCFSM(false).toCanonicalString();
+
+            // The cached partition transitions must match their ground truth.
+            for (GFSMState s : gfsm.getStates()) {
+                Map<DistEventType, Set<GFSMState>> cached = Util.newMap();
+                for (DistEventType e : s.getTransitioningEvents()) {
+                    cached.put(e, Util.newSet(s.getNextStates(e)));
+                }
+                s.recreateCachedTransitions();
+                for (DistEventType e : s.getTransitioningEvents()) {
+                    assertEquals(s.getNextStates(e), cached.remove(e));
+                }
+                assertTrue(cached.isEmpty());
+            }
+
+            assertEquals(getCFSMFromScratch(gfsm), incremental);
+        }
+    }
+
+    /**
+     * Returns the canonical string of the CFSM of gfsm, derived without using
+     * any of the cached projections of gfsm.
+     */
+    private String getCFSMFromScratch(GFSM gfsm) {
+        CFSM cfsm = new CFSM(gfsm.getNumProcesses(), gfsm.getChannelIds());
+        for (int pid = 0; pid < gfsm.getNumProcesses(); pid++) {
+            ProcessFSMCache fsmCache = new ProcessFSMCache(pid);
+            assertEquals(gfsm.getStates().size(), fsmCache.update(
+                    gfsm.getStates(), Util.<GFSMState> newSet()));
+            FSM fsm = fsmCache.getFSM(false);
+            cfsm.addFSM(fsm);
+        }
+        return cfsm.toCanonicalString();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,138 @@
+package csight.model.fifosys.gfsm.observed.fifosys;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import csight.CSightTest;
+import csight.invariants.AlwaysFollowedBy;
+import csight.invariants.AlwaysPrecedes;
+import csight.invariants.BinaryInvariant;
+import csight.invariants.EventuallyHappens;
+import csight.invariants.NeverFollowedBy;
+import csight.model.fifosys.channel.channelstate.ImmutableMultiChState;
+import csight.model.fifosys.gfsm.observed.ObsDistEventType;
+import csight.model.fifosys.gfsm.observed.ObsFSMState;
+import csight.model.fifosys.gfsm.observed.ObsMultFSMState;
+import csight.util.Util;
+
+import synoptic.model.channelid.ChannelId;
+import synoptic.model.event.DistEventType;
+
+public class ObsFifoSysInvValidatorTests extends CSightTest {
+
+    List<ChannelId> cids;
+    ImmutableMultiChState chStates;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        cids = Util.newList();
+        chStates = ImmutableMultiChState.fromChannelIds(cids);
+    }
+
+    private ObsFifoSysState newState(ObsFSMState... pStates) {
+        List<ObsFSMState> P = Util.newList();
+        for (ObsFSMState p : pStates) {
+            P.add(p);
+        }
+        return ObsFifoSysState.getFifoSysState(
+                ObsMultFSMState.getMultiFSMState(P), chStates);
+    }
+
+    /**
+     * Two processes that each execute a single local event (a at p0, and b at
+     * p1), in either order.
+     */
+    @Test
+    public void checkConcurrentEvents() throws Exception {
+        ObsFSMState p0i = ObsFSMState.namedObsFSMState(0, "i0", true, false);
+        ObsFSMState p0t = ObsFSMState.namedObsFSMState(0, "t0", false, true);
+        ObsFSMState p1i = ObsFSMState.namedObsFSMState(1, "i1", true, false);
+        ObsFSMState p1t = ObsFSMState.namedObsFSMState(1, "t1", false, true);
+
+        ObsFifoSysState sII = newState(p0i, p1i);
+        ObsFifoSysState sTI = newState(p0t, p1i);
+        ObsFifoSysState sIT = newState(p0i, p1t);
+        ObsFifoSysState sTT = newState(p0t, p1t);
+
+        DistEventType a = DistEventType.LocalEvent("a", 0);
+        DistEventType b = DistEventType.LocalEvent("b", 1);
+        DistEventType c = DistEventType.LocalEvent("c", 0);
+        sII.addTransition(new ObsDistEventType(a, 0), sTI);
+        sII.addTransition(new ObsDistEventType(b, 0), sIT);
+        sTI.addTransition(new ObsDistEventType(b, 0), sTT);
+        sIT.addTransition(new ObsDistEventType(a, 0), sTT);
+
+        Set<ObsFifoSysState> states = Util.newSet();
+        states.add(sII);
+        states.add(sTI);
+        states.add(sIT);
+        states.add(sTT);
+        ObsFifoSys sys = new ObsFifoSys(cids, sII, sTT, states);
+
+        List<BinaryInvariant> invs = Util.newList();
+        invs.add(new AlwaysPrecedes(a, b));
+        invs.add(new AlwaysFollowedBy(a, b));
+        invs.add(new NeverFollowedBy(a, b));
+        invs.add(new NeverFollowedBy(b, a));
+        invs.add(new EventuallyHappens(a));
+        invs.add(new EventuallyHappens(c));
+        invs.add(new AlwaysFollowedBy(c, a));
+
+        Set<BinaryInvariant> expected = Util.newSet();
+        expected.add(invs.get(0));
+        // Along b, a the a is not followed by b. This path reaches sTT in a
+        // different checker state than a, b does, so it must be explored even
+        // though sTT was visited before.
+        expected.add(invs.get(1));
+        expected.add(invs.get(2));
+        expected.add(invs.get(3));
+        expected.add(invs.get(5));
+
+        assertEquals(expected, sys.findInvalidatedInvariants(invs));
+        assertEquals(expected, sys.findInvalidatedInvariants(invs, 4));
+    }
+
+    /**
+     * A long trace, which is deeper than a recursive traversal could handle.
+     */
+    @Test
+    public void checkLongTrace() throws Exception {
+        int len = 50000;
+        DistEventType x = DistEventType.LocalEvent("x", 0);
+        DistEventType y = DistEventType.LocalEvent("y", 0);
+        DistEventType z = DistEventType.LocalEvent("z", 0);
+
+        Set<ObsFifoSysState> states = Util.newSet();
+        ObsFifoSysState init = newState(ObsFSMState.namedObsFSMState(0, "s0",
+                true, false));
+        states.add(init);
+        ObsFifoSysState prev = init;
+        for (int i = 1; i <= len; i++) {
+            ObsFifoSysState s = newState(ObsFSMState.namedObsFSMState(0, "s"
+                    + i, false, i == len));
+            prev.addTransition(new ObsDistEventType(i % 2 == 1 ? x : y, 0), s);
+            states.add(s);
+            prev = s;
+        }
+        ObsFifoSys sys = new ObsFifoSys(cids, init, prev, states);
+
+        List<BinaryInvariant> invs = Util.newList();
+        invs.add(new AlwaysFollowedBy(x, y));
+        invs.add(new AlwaysFollowedBy(y, x));
+        invs.add(new EventuallyHappens(z));
+        invs.add(new AlwaysPrecedes(x, y));
+
+        Set<BinaryInvariant> invalid = sys.findInvalidatedInvariants(invs, 2);
+        assertEquals(2, invalid.size());
+        assertTrue(invalid.contains(invs.get(1)));
+        assertTrue(invalid.contains(invs.get(2)));
+    }
+}
@@ -11,7 +11,7 @@
 package synoptic.algorithms;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -26,8 +26,14 @@ import synoptic.algorithms.graphops.IOperation;
 import synoptic.algorithms.graphops.PartitionMerge;
 import synoptic.algorithms.graphops.PartitionMultiSplit;
 import synoptic.algorithms.graphops.PartitionSplit;
-import synoptic.benchmarks.PerformanceMetrics;
-import synoptic.benchmarks.TimedTask;
+import synoptic.algorithms.splitstrategies.ISplitStrategy;
+import synoptic.algorithms.splitstrategies.RandomSplitStrategy;
+import synoptic.algorithms.splitstrategies.SplitContext;
+import synoptic.algorithms.splitstrategies.SplitEvaluator;
+import synoptic.algorithms.splitstrategies.SplitStrategies;
+import synoptic.benchmarks.Metrics;
+import synoptic.benchmarks.Timer;
+import synoptic.invariants.BinaryInvariant;
 import synoptic.invariants.CExamplePath;
 import synoptic.invariants.ITemporalInvariant;
 import synoptic.invariants.TemporalInvariantSet;
@@ -36,6 +42,7 @@ import synoptic.main.AbstractMain;
 import synoptic.model.EventNode;
 import synoptic.model.Partition;
 import synoptic.model.PartitionGraph;
+import synoptic.model.event.EventType;
 import synoptic.model.interfaces.ITransition;
 import synoptic.util.InternalSynopticException;
 
@@ -69,10 +76,83 @@ public class Bisimulation {
      *            the partition graph to refine\split
      */
     public static void splitUntilAllInvsSatisfied(PartitionGraph pGraph) {
+        splitUntilInvsSatisfied(pGraph, pGraph.getInvariants().getSet());
+    }
+
+    /**
+     * Updates a model -- a partition graph that was refined and coarsened --
+     * with new traces, without inferring it again from all the traces. The new
+     * traces are mapped into the existing partitions (see
+     * PartitionGraph.addTraces). Then, only the invariants that may have
+     * become violated are checked, and the graph is refined until they are
+     * satisfied: the new invariants, and -- if the new traces added paths to
+     * the graph -- all of the invariants. Finally, coarsening only attempts
+     * to merge the affected partitions, the partitions created by the
+     * refinement, and the partitions whose types are in invariants that no
+     * longer hold (which may have prevented merges).
+     * 
+     * @param pGraph
+     *            the model to update
+     * @param newTraces
+     *            the new traces, which were added to the trace graph of pGraph
+     *            (see TraceParser.addTracesToTORelation)
+     * @param newInvariants
+     *            the invariants mined from all the traces, e.g., with an
+     *            IncrementalTOInvMiner
+     */
+    public static void updateModel(PartitionGraph pGraph,
+            List<List<EventNode>> newTraces, TemporalInvariantSet newInvariants) {
+        Set<ITemporalInvariant> oldInvariants = new LinkedHashSet<ITemporalInvariant>(
+                pGraph.getInvariants().getSet());
+        Set<Partition> affected = pGraph.addTraces(newTraces, newInvariants);
+
+        Set<ITemporalInvariant> invariantsToCheck = new LinkedHashSet<ITemporalInvariant>();
+        Set<ITemporalInvariant> removedInvariants = new LinkedHashSet<ITemporalInvariant>(
+                oldInvariants);
+        for (ITemporalInvariant inv : newInvariants.getSet()) {
+            removedInvariants.remove(inv);
+            if (!affected.isEmpty() || !oldInvariants.contains(inv)) {
+                invariantsToCheck.add(inv);
+            }
+        }
+        logger.fine("Updating the model: " + affected.size()
+                + " affected partitions, checking " + invariantsToCheck.size()
+                + " invariants");
+
+        Set<Partition> candidates = new LinkedHashSet<Partition>(affected);
+        Set<Partition> beforeRefinement = new HashSet<Partition>(
+                pGraph.getNodes());
+        splitUntilInvsSatisfied(pGraph, invariantsToCheck);
+        for (Partition p : pGraph.getNodes()) {
+            if (!beforeRefinement.contains(p)) {
+                candidates.add(p);
+            }
+        }
+
+        if (!removedInvariants.isEmpty()) {
+            Set<EventType> removedTypes = new HashSet<EventType>();
+            for (ITemporalInvariant inv : removedInvariants) {
+                removedTypes.addAll(inv.getPredicates());
+            }
+            for (Partition p : pGraph.getNodes()) {
+                if (removedTypes.contains(p.getEType())) {
+                    candidates.add(p);
+                }
+            }
+        }
+        candidates.retainAll(pGraph.getNodes());
+
+        mergePartitions(pGraph, newInvariants, 1, candidates);
+    }
+
+    /**
+     * Splits the partitions in {@code pGraph} until the given invariants, all
+     * of which must be in {@code pGraph.getInvariants()}, are satisfied.
+     */
+    private static void splitUntilInvsSatisfied(PartitionGraph pGraph,
+            Set<ITemporalInvariant> invariants) {
         // TODO: assert that the pGraph represents totally ordered traces.
 
-        TimedTask refinement = PerformanceMetrics.createTask("refinement",
-                false);
         AbstractMain main = AbstractMain.getInstance();
         if (main.options.dumpIntermediateStages) {
             main.exportNonInitialGraph(
@@ -83,72 +163,96 @@ public class Bisimulation {
         int prevNumSplitSteps = 0;
 
         Set<ITemporalInvariant> unsatisfiedInvariants = new LinkedHashSet<ITemporalInvariant>();
-        unsatisfiedInvariants.addAll(pGraph.getInvariants().getSet());
+        unsatisfiedInvariants.addAll(invariants);
         Set<ITemporalInvariant> satisfiedInvariants = new LinkedHashSet<ITemporalInvariant>();
 
         List<CExamplePath<Partition>> counterExampleTraces = null;
 
-        while (true) {
-            // Recompute the counter-examples for the unsatisfied invariants.
-            counterExampleTraces = new TemporalInvariantSet(
-                    unsatisfiedInvariants).getAllCounterExamples(pGraph);
-            logger.fine("Counter-examples: " + counterExampleTraces);
-
-            if (counterExampleTraces == null
-                    || counterExampleTraces.size() == 0) {
-                logger.fine("Invariants satisfied. Stopping.");
-                break;
-            }
-
-            // /////////
-            // Update the sets with satisfied/unsatisfied invariants.
-
-            // NOTE: By performing a split we might satisfy more than just the
-            // invariant the split was intended to satisfy. Therefore, by just
-            // considering these invariants we would be under-approximating the
-            // invariants we've satisfied, and over-approximating unsatisfied
-            // invariants. Instead, we re-compute counter-examples AFTER all the
-            // splits and rely on these for determining the set of
-            // satisfied/unsatisfied invariants.
-
-            unsatisfiedInvariants.clear();
-            for (CExamplePath<Partition> relPath : counterExampleTraces) {
-                unsatisfiedInvariants.add(relPath.invariant);
-            }
-            satisfiedInvariants.clear();
-            satisfiedInvariants.addAll(pGraph.getInvariants().getSet());
-            satisfiedInvariants.removeAll(unsatisfiedInvariants);
-            // /////////
-            // logger.fine("New graph size: " + pGraph.getNodes().size()
-            // + ", unsat invs remaining: " + unsatisfiedInvariants.size());
-
-            // Perform the splitting.
-            prevNumSplitSteps = numSplitSteps;
-            numSplitSteps = performSplits(numSplitSteps, pGraph,
-                    counterExampleTraces);
-
-            if (numSplitSteps == prevNumSplitSteps) {
-                // No splits were performed, which means that we could not
-                // eliminate the present counter-examples. Since this function
-                // should only be applied to totally ordered traces, this is a
-                // bug (this is known to be possible for partially ordered
-                // traces).
-
-                throw new InternalSynopticException(
-                        "Could not satisfy invariants: "
-                                + unsatisfiedInvariants);
+        ISplitStrategy strategy = getSplitStrategy();
+        SplitEvaluator evaluator = new SplitEvaluator(pGraph,
+                main.options.splitEvaluationThreads);
+        Metrics metrics = Metrics.get();
+        Timer.Context strategyTimer = metrics.timer(
+                "refinement.strategy." + strategy.getName()).start();
+        Timer roundTimer = metrics.timer("refinement.round");
+        try {
+            while (true) {
+                Timer.Context round = roundTimer.start();
+                // Recompute the counter-examples for the unsatisfied
+                // invariants.
+                counterExampleTraces = new TemporalInvariantSet(
+                        unsatisfiedInvariants).getAllCounterExamples(pGraph);
+                logger.fine("Counter-examples: " + counterExampleTraces);
+
+                if (counterExampleTraces == null
+                        || counterExampleTraces.size() == 0) {
+                    logger.fine("Invariants satisfied. Stopping.");
+                    round.stop();
+                    break;
+                }
+                metrics.counter("refinement.rounds").inc();
+                metrics.histogram("refinement.cExamplesPerRound").record(
+                        counterExampleTraces.size());
+
+                // /////////
+                // Update the sets with satisfied/unsatisfied invariants.
+
+                // NOTE: By performing a split we might satisfy more than just
+                // the invariant the split was intended to satisfy. Therefore,
+                // by just considering these invariants we would be
+                // under-approximating the invariants we've satisfied, and
+                // over-approximating unsatisfied invariants. Instead, we
+                // re-compute counter-examples AFTER all the splits and rely on
+                // these for determining the set of satisfied/unsatisfied
+                // invariants.
+
+                unsatisfiedInvariants.clear();
+                for (CExamplePath<Partition> relPath : counterExampleTraces) {
+                    unsatisfiedInvariants.add(relPath.invariant);
+                }
+                satisfiedInvariants.clear();
+                satisfiedInvariants.addAll(pGraph.getInvariants().getSet());
+                satisfiedInvariants.removeAll(unsatisfiedInvariants);
+                // /////////
+                // logger.fine("New graph size: " + pGraph.getNodes().size()
+                // + ", unsat invs remaining: " + unsatisfiedInvariants.size());
+
+                // Perform the splitting.
+                prevNumSplitSteps = numSplitSteps;
+                numSplitSteps = performSplits(numSplitSteps, pGraph,
+                        counterExampleTraces, strategy, evaluator);
+
+                if (numSplitSteps == prevNumSplitSteps) {
+                    // No splits were performed, which means that we could not
+                    // eliminate the present counter-examples. Since this
+                    // function should only be applied to totally ordered
+                    // traces, this is a bug (this is known to be possible for
+                    // partially ordered traces).
+
+                    throw new InternalSynopticException(
+                            "Could not satisfy invariants: "
+                                    + unsatisfiedInvariants);
+                }
+                metrics.counter("refinement.splits").add(
+                        numSplitSteps - prevNumSplitSteps);
+                round.stop();
             }
-
+        } finally {
+            evaluator.shutdown();
         }
 
+        long elapsedNanos = strategyTimer.stop();
+        metrics.counter("refinement.splitSteps." + strategy.getName()).add(
+                numSplitSteps);
+        logger.info("Refinement with the " + strategy.getName()
+                + " split strategy: " + numSplitSteps + " split steps in "
+                + elapsedNanos / 1000000 + "ms");
+
         if (main.options.dumpIntermediateStages) {
             main.exportNonInitialGraph(
                     main.getIntermediateDumpFilename("r", numSplitSteps),
                     pGraph);
         }
-
-        PerformanceMetrics.get().record("numOfSplitSteps", numSplitSteps);
-        refinement.stop();
     }
 
     /**
@@ -168,6 +272,32 @@ public class Bisimulation {
      */
     public static int performSplits(int numSplitSteps, PartitionGraph pGraph,
             List<CExamplePath<Partition>> counterExampleTraces) {
+        SplitEvaluator evaluator = new SplitEvaluator(pGraph, 1);
+        return performSplits(numSplitSteps, pGraph, counterExampleTraces,
+                getSplitStrategy(), evaluator);
+    }
+
+    /**
+     * Returns the split strategy selected by the splitStrategy option.
+     */
+    private static ISplitStrategy getSplitStrategy() {
+        ISplitStrategy strategy = SplitStrategies.forName(AbstractMain
+                .getInstance().options.splitStrategy);
+        if (strategy == null) {
+            return new RandomSplitStrategy();
+        }
+        return strategy;
+    }
+
+    /**
+     * Like performSplits(numSplitSteps, pGraph, counterExampleTraces), but
+     * orders the counter-examples and candidate splits with strategy, and
+     * evaluates the candidate splits with evaluator.
+     */
+    private static int performSplits(int numSplitSteps,
+            PartitionGraph pGraph,
+            List<CExamplePath<Partition>> counterExampleTraces,
+            ISplitStrategy strategy, SplitEvaluator evaluator) {
 
         // Stores all splits that cause an invariant to be satisfied, indexed by
         // partition to which they are applied.
@@ -178,10 +308,11 @@ public class Bisimulation {
             return numSplitSteps;
         }
 
-        // Permute the counter-examples, but do so deterministically for the
+        // Order the counter-examples. Random orders are deterministic for the
         // same random seed argument.
-        Collections.shuffle(counterExampleTraces,
-                AbstractMain.getInstance().random);
+        SplitContext context = new SplitContext(pGraph, counterExampleTraces,
+                AbstractMain.getInstance().random, evaluator);
+        strategy.orderCounterExamples(counterExampleTraces, context);
 
         // logger.fine("" + counterExampleTraces.size()
         // + " unsatisfied invariants and counter-examples: "
@@ -196,7 +327,8 @@ public class Bisimulation {
         IOperation arbitrarySplit;
 
         arbitrarySplit = getInvSatisfyingSplits(counterExampleTraces, pGraph,
-                splitsToDoByPartition, newlySatisfiedInvariants);
+                splitsToDoByPartition, newlySatisfiedInvariants, strategy,
+                context);
 
         // String logStr;
         if (splitsToDoByPartition.size() == 0) {
@@ -210,6 +342,7 @@ public class Bisimulation {
             // + arbitrarySplit;
 
             pGraph.apply(arbitrarySplit);
+            evaluator.graphChanged();
 
         } else {
             // We have splits that resolve invariants, perform all of them.
@@ -220,6 +353,7 @@ public class Bisimulation {
                 // split);
                 // i++;
             }
+            evaluator.graphChanged();
 
             // logStr = "split[" + numSplitSteps + "] " + "new invs satisfied: "
             // + newlySatisfiedInvariants.size();
@@ -245,7 +379,7 @@ public class Bisimulation {
      */
     public static void mergePartitions(PartitionGraph pGraph) {
         TemporalInvariantSet invariants = pGraph.getInvariants();
-        mergePartitions(pGraph, invariants, 1);
+        mergePartitions(pGraph, invariants, 1, null);
     }
 
     /**************************************************************************/
@@ -527,69 +661,55 @@ public class Bisimulation {
         return candidateSplits;
     }
 
-    /**
-     * Performs the splitOp on the pGraph to see whether or not the resulting
-     * graph has no other counter-examples for the invariant inv (i.e. whether
-     * or not the graph after the split satisfies inv).
-     * 
-     * @param inv
-     *            The invariant to check for satisfiability after the splitOp.
-     * @param pGraph
-     *            The partition graph to apply to the splitOp to.
-     * @param splitOp
-     *            The split operation to apply to pGraph
-     * @return true if the split makes the graph satisfy the invariant, and
-     *         false otherwise.
-     */
-    private static boolean splitSatisfiesInvariantGlobally(
-            ITemporalInvariant inv, PartitionGraph pGraph,
-            PartitionMultiSplit splitOp) {
-
-        // Perform the split.
-        IOperation rewindOperation = pGraph.apply(splitOp);
-
-        // See if splitting resolved the violation.
-        CExamplePath<Partition> violation = TemporalInvariantSet
-                .getCounterExample(inv, pGraph);
-
-        // Undo the split (rewind) to get back the input graph.
-        pGraph.apply(rewindOperation);
-
-        // The invariant has more violations after the split.
-        if (violation != null) {
-            return false;
-        }
-        // The split has no other violations once the split is
-        // performed.
-        return true;
-    }
-
     /**
      * Performs the splitOp on the pGraph and then checks if there is a
-     * violation of invariant inv in a specific subgraph of pGraph starting at
-     * startPart and ending at endPart. This is accomplished by localized model
-     * checking which starts at startPart (rather than the initial node) and
-     * stops at endPart (rather than the terminal node).
+     * violation of the invariant of cExample in the subgraph of pGraph where
+     * cExample violates it, which starts at the violationStart partition of
+     * cExample and ends at its violationEnd partition. This is accomplished by
+     * localized model checking which starts at the partition before the
+     * violation start (rather than the initial node) and stops at the
+     * violation end (rather than the terminal node).
      * 
-     * @param inv
-     *            The invariant to check for satisfiability after the splitOp.
+     * @param cExample
+     *            The counter-example of a constrained invariant, whose
+     *            violation subgraph is checked.
      * @param pGraph
      *            The partition graph to apply to the splitOp to.
-     * @param startPart
-     *            The partition on which to start model checking
-     * @param endPart
-     *            The partition on which to end model checking
      * @param splitOp
      *            The split operation to apply to pGraph
-     * @return true if the split makes the subgraph between startPart and
-     *         endPart satisfy the invariant, and false otherwise.
+     * @param subgraphs
+     *            The violation subgraphs computed so far in this refinement
+     *            round, by the entry, start and end partitions of the
+     *            violation. The subgraph of cExample is added to it, if
+     *            necessary.
+     * @return true if the split makes the subgraph between the violation start
+     *         and end satisfy the invariant, and false otherwise.
      */
     private static boolean splitSatisfiesInvariantLocally(
-            ITemporalInvariant inv, PartitionGraph pGraph, Partition startPart,
-            Partition endPart, PartitionMultiSplit splitOp) {
+            CExamplePath<Partition> cExample, PartitionGraph pGraph,
+            PartitionMultiSplit splitOp,
+            Map<List<Partition>, ViolationSubgraph> subgraphs) {
+        if (cExample.violationStart < 0
+                || cExample.violationEnd < cExample.violationStart) {
+            return false;
+        }
 
-        // TODO: Implement this.
-        return false;
+        // Get the start and end of the violation subgraph, and the partition
+        // from which the model checking enters it.
+        Partition startPart = cExample.path.get(cExample.violationStart);
+        Partition endPart = cExample.path.get(cExample.violationEnd);
+        Partition entryPart = cExample.path.get(Math.max(
+                cExample.violationStart - 1, 0));
+
+        List<Partition> key = Arrays.asList(entryPart, startPart, endPart);
+        ViolationSubgraph subgraph = subgraphs.get(key);
+        if (subgraph == null) {
+            subgraph = new ViolationSubgraph(pGraph, entryPart, startPart,
+                    endPart);
+            subgraphs.put(key, subgraph);
+        }
+        return subgraph.satisfiedAfter((BinaryInvariant) cExample.invariant,
+                splitOp);
     }
 
     /**
@@ -605,6 +725,12 @@ public class Bisimulation {
      *            include all splits that make the graph satisfy previously
      *            unsatisfied invariants.
      * @param newlySatisfiedInvariants
+     * @param strategy
+     *            The strategy that orders the candidate splits of each
+     *            counter-example.
+     * @param context
+     *            The context of this refinement round, which includes the
+     *            evaluator of the candidate splits.
      * @return an arbitrary split that may be useful in the case that
      *         splitsToDoByPartition is empty and there are no splits that lead
      *         to new invariant satisfaction.
@@ -613,14 +739,34 @@ public class Bisimulation {
             List<CExamplePath<Partition>> counterexampleTraces,
             PartitionGraph pGraph,
             HashMap<Partition, PartitionMultiSplit> splitsToDoByPartition,
-            Set<ITemporalInvariant> newlySatisfiedInvariants) {
+            Set<ITemporalInvariant> newlySatisfiedInvariants,
+            ISplitStrategy strategy, SplitContext context) {
 
         IOperation arbitrarySplit = null;
         AbstractMain main = AbstractMain.getInstance();
-
-        // TODO: we are considering counter-example traces in an arbitrary
-        // order. This heuristic should be turned into a customizable strategy.
-        for (CExamplePath<Partition> counterexampleTrace : counterexampleTraces) {
+        SplitEvaluator evaluator = context.getEvaluator();
+
+        // The split to record for each counter-example (or null), and whether
+        // or not it satisfies the invariant globally.
+        int numCExamples = counterexampleTraces.size();
+        PartitionSplit[] splitsToRecord = new PartitionSplit[numCExamples];
+        boolean[] satisfiesGlobally = new boolean[numCExamples];
+
+        // The counter-examples of unconstrained invariants (by index), whose
+        // candidate splits are evaluated together once all the candidates are
+        // known -- in parallel, if the evaluator has several threads.
+        List<Integer> deferred = new ArrayList<Integer>();
+        List<ITemporalInvariant> deferredInvs = new ArrayList<ITemporalInvariant>();
+        List<List<PartitionSplit>> deferredSplits = new ArrayList<List<PartitionSplit>>();
+
+        // The subgraphs in which counter-examples of constrained invariants
+        // violate them, which are reused by the local checks of all the
+        // candidate splits in this round.
+        Map<List<Partition>, ViolationSubgraph> violationSubgraphs = new HashMap<List<Partition>, ViolationSubgraph>();
+
+        for (int i = 0; i < numCExamples; i++) {
+            CExamplePath<Partition> counterexampleTrace = counterexampleTraces
+                    .get(i);
             // logger.fine("Considering counterexample: "
             // + counterexampleTrace.toString());
 
@@ -628,20 +774,13 @@ public class Bisimulation {
             // single split.
             ITemporalInvariant inv = counterexampleTrace.invariant;
 
-            // Skip to next counter-example if we have previously recorded a
-            // split that satisfies the invariant corresponding to this
-            // counter-example (and which therefore satisfies this
-            // counter-example, too).
-            if (newlySatisfiedInvariants.contains(inv)) {
-                continue;
-            }
-
             // Get the possible splits that might resolve this counter-example.
             List<PartitionSplit> candidateSplits = getSplits(
                     counterexampleTrace, pGraph);
 
-            // Permute the list of candidates.
-            Collections.shuffle(candidateSplits, main.random);
+            // Order the list of candidates.
+            strategy.orderCandidateSplits(counterexampleTrace,
+                    candidateSplits, context);
 
             // Save an arbitrary split to return to caller, if we haven't saved
             // one already.
@@ -649,14 +788,15 @@ public class Bisimulation {
                 arbitrarySplit = candidateSplits.get(0);
             }
 
-            // A split that satisfies the invariant locally (within the subgraph
-            // where the violation was found) but not globally (in the entire
-            // partition graph). Only applied if a globally-satisfying split is
-            // not found
-            PartitionMultiSplit locallySatisfyingSplit = null;
-
-            // logger.fine("candidateSplits are: " +
-            // candidateSplits.toString());
+            if (main.options.performExtraChecks) {
+                for (PartitionSplit candidateSplit : candidateSplits) {
+                    // getSplits() should never generate invalid splits.
+                    if (!candidateSplit.isValid()) {
+                        throw new InternalSynopticException(
+                                "getSplits() generated an invalid split.");
+                    }
+                }
+            }
 
             // Find a single split in candidateSplits that makes the
             // invariant corresponding to the counter-example true in the
@@ -668,93 +808,99 @@ public class Bisimulation {
             // b. If such a split exists, integrate it into whatever splits we
             // might have found earlier (for previous counter-examples).
             //
-            for (PartitionSplit candidateSplit : candidateSplits) {
-                if (main.options.performExtraChecks) {
-                    // getSplits() should never generate invalid splits.
-                    if (!candidateSplit.isValid()) {
-                        throw new InternalSynopticException(
-                                "getSplits() generated an invalid split.");
-                    }
-                }
+            // TODO: we check satisfiability of each split _independently_.
+            // This means that we are looking for very rare splits that
+            // satisfy _different_ invariants individually. A more realistic
+            // search would (1) apply each split that satisfies an
+            // invariant, and (2) continue searching for more such splits on
+            // the _mutated_ pGraph.
+            if (!(inv instanceof TempConstrainedInvariant<?>)) {
+                deferred.add(i);
+                deferredInvs.add(inv);
+                deferredSplits.add(candidateSplits);
+                continue;
+            }
 
-                PartitionMultiSplit splitOp = new PartitionMultiSplit(
-                        candidateSplit);
-                Partition partitionBeingSplit = candidateSplit.getPartition();
-
-                // TODO: we check satisfiability of each split _independently_.
-                // This means that we are looking for very rare splits that
-                // satisfy _different_ invariants individually. A more realistic
-                // search would (1) apply each split that satisfies an
-                // invariant, and (2) continue searching for more such splits on
-                // the _mutated_ pGraph.
-
-                if (splitSatisfiesInvariantGlobally(inv, pGraph, splitOp)) {
-                    // If we already have a split for that partition,
-                    // incorporate the new split into it.
-                    if (splitsToDoByPartition.containsKey(partitionBeingSplit)) {
-                        splitsToDoByPartition.get(partitionBeingSplit)
-                                .incorporate(splitOp);
-                        logger.fine("Incorporating new split by partition: "
-                                + splitOp.toString());
-                    } else {
-                        // Otherwise, record this split as the only one for this
-                        // partition
-                        splitsToDoByPartition.put(partitionBeingSplit, splitOp);
-                        logger.fine("New split by partition: "
-                                + splitOp.toString());
-                    }
+            // A split that satisfies the invariant locally (within the subgraph
+            // where the violation was found) but not globally (in the entire
+            // partition graph). Only applied if a globally-satisfying split is
+            // not found
+            PartitionSplit locallySatisfyingSplit = null;
 
-                    // Remember that we can resolve this invariant
-                    // violation.
-                    newlySatisfiedInvariants.add(inv);
+            for (PartitionSplit candidateSplit : candidateSplits) {
+                if (evaluator.satisfies(inv, candidateSplit)) {
+                    splitsToRecord[i] = candidateSplit;
+                    satisfiesGlobally[i] = true;
                     // Found the split that completely satisfies the
                     // invariant, no need to consider other splits.
                     break;
-
                 }
 
                 // Check if split satisfies the invariant locally (specifically
-                // in the subgraph where the violation was found)
-                else if (locallySatisfyingSplit == null
-                        && inv instanceof TempConstrainedInvariant<?>) {
-
-                    // Get start and end of violation subgraph
-                    Partition startPart = counterexampleTrace.path
-                            .get(counterexampleTrace.violationStart);
-                    Partition endPart = counterexampleTrace.path
-                            .get(counterexampleTrace.violationEnd);
-
-                    // Store the split if the invariant is locally satisfied
-                    if (splitSatisfiesInvariantLocally(inv, pGraph, startPart,
-                            endPart, splitOp)) {
-                        locallySatisfyingSplit = splitOp;
-                    }
+                // in the subgraph where the violation was found), and store
+                // the split if it does
+                if (locallySatisfyingSplit == null
+                        && splitSatisfiesInvariantLocally(counterexampleTrace,
+                                pGraph,
+                                new PartitionMultiSplit(candidateSplit),
+                                violationSubgraphs)) {
+                    locallySatisfyingSplit = candidateSplit;
                 }
             }
 
             // If we didn't find a globally-satisfying split but did find a
             // locally-satisfying one, record it
-            if (locallySatisfyingSplit != null) {
-
-                // Get partition to be split
-                Partition partitionBeingSplit = locallySatisfyingSplit
-                        .getPartition();
-
-                // If we already have a split for that partition, incorporate
-                // the new split into it.
-                if (splitsToDoByPartition.containsKey(partitionBeingSplit)) {
-                    splitsToDoByPartition.get(partitionBeingSplit).incorporate(
-                            locallySatisfyingSplit);
-                    logger.fine("Incorporating new locally-satisfying split by partition: "
-                            + locallySatisfyingSplit.toString());
-                } else {
-                    // Otherwise, record this split as the only one for this
-                    // partition
-                    splitsToDoByPartition.put(partitionBeingSplit,
-                            locallySatisfyingSplit);
-                    logger.fine("New split by partition: "
-                            + locallySatisfyingSplit.toString());
-                }
+            if (splitsToRecord[i] == null) {
+                splitsToRecord[i] = locallySatisfyingSplit;
+            }
+        }
+
+        // Evaluate the candidate splits of the unconstrained invariants.
+        int[] firstSatisfying = evaluator.findFirstSatisfying(deferredInvs,
+                deferredSplits);
+        for (int j = 0; j < deferred.size(); j++) {
+            if (firstSatisfying[j] != -1) {
+                int i = deferred.get(j);
+                splitsToRecord[i] = deferredSplits.get(j).get(
+                        firstSatisfying[j]);
+                satisfiesGlobally[i] = true;
+            }
+        }
+
+        // Record the splits, in the order of the counter-examples.
+        for (int i = 0; i < numCExamples; i++) {
+            if (splitsToRecord[i] == null) {
+                continue;
+            }
+            // Skip to next counter-example if we have previously recorded a
+            // split that satisfies the invariant corresponding to this
+            // counter-example (and which therefore satisfies this
+            // counter-example, too).
+            ITemporalInvariant inv = counterexampleTraces.get(i).invariant;
+            if (newlySatisfiedInvariants.contains(inv)) {
+                continue;
+            }
+            PartitionMultiSplit splitOp = new PartitionMultiSplit(
+                    splitsToRecord[i]);
+            Partition partitionBeingSplit = splitOp.getPartition();
+
+            // If we already have a split for that partition, incorporate the
+            // new split into it.
+            if (splitsToDoByPartition.containsKey(partitionBeingSplit)) {
+                splitsToDoByPartition.get(partitionBeingSplit).incorporate(
+                        splitOp);
+                logger.fine("Incorporating new split by partition: "
+                        + splitOp.toString());
+            } else {
+                // Otherwise, record this split as the only one for this
+                // partition
+                splitsToDoByPartition.put(partitionBeingSplit, splitOp);
+                logger.fine("New split by partition: " + splitOp.toString());
+            }
+
+            if (satisfiesGlobally[i]) {
+                // Remember that we can resolve this invariant violation.
+                newlySatisfiedInvariants.add(inv);
             }
         }
         return arbitrarySplit;
@@ -771,9 +917,12 @@ public class Bisimulation {
      *            the invariants to maintain during merge, can be null
      * @param k
      *            the k parameter for k-equality
+     * @param candidates
+     *            if not null, only merges of these partitions (with any
+     *            partition) are attempted
      */
     private static void mergePartitions(PartitionGraph pGraph,
-            TemporalInvariantSet invariants, int k) {
+            TemporalInvariantSet invariants, int k, Set<Partition> candidates) {
         int outerItters = 0;
 
         // The blacklist keeps a history of partitions we've attempted to merge
@@ -782,17 +931,38 @@ public class Bisimulation {
         Map<Partition, Set<Partition>> mergeBlacklist = new LinkedHashMap<Partition, Set<Partition>>();
 
         AbstractMain syn = AbstractMain.getInstance();
-        while (true) {
-            if (syn.options.dumpIntermediateStages) {
-                syn.exportNonInitialGraph(
-                        syn.getIntermediateDumpFilename("c", outerItters),
-                        pGraph);
+        Metrics metrics = Metrics.get();
+        Timer roundTimer = metrics.timer("coarsening.round");
+        MergeEvaluator evaluator = null;
+        if (MergeEvaluator.canEvaluate(invariants)) {
+            evaluator = new MergeEvaluator(pGraph, invariants,
+                    syn.options.mergeEvaluationThreads);
+        }
+        try {
+            while (true) {
+                if (syn.options.dumpIntermediateStages) {
+                    syn.exportNonInitialGraph(
+                            syn.getIntermediateDumpFilename("c", outerItters),
+                            pGraph);
+                }
+                outerItters++;
+
+                logger.fine("--------------------------------");
+                Timer.Context round = roundTimer.start();
+                boolean merged = mergePartitions(pGraph, mergeBlacklist,
+                        invariants, k, candidates, evaluator);
+                round.stop();
+                if (!merged) {
+                    break;
+                }
+                metrics.counter("coarsening.merges").inc();
+                if (evaluator != null) {
+                    evaluator.graphChanged();
+                }
             }
-            outerItters++;
-
-            logger.fine("--------------------------------");
-            if (!mergePartitions(pGraph, mergeBlacklist, invariants, k)) {
-                break;
+        } finally {
+            if (evaluator != null) {
+                evaluator.shutdown();
             }
         }
 
@@ -813,16 +983,31 @@ public class Bisimulation {
      * @param mergeBlacklist
      * @param invariants
      * @param k
+     * @param candidates
+     *            if not null, the partitions to merge into (the merged
+     *            partition is removed from the candidates)
+     * @param evaluator
+     *            if not null, evaluates batches of candidate merges on
+     *            overlays of the graph, instead of applying each merge to the
+     *            graph and rewinding it
      * @return
      */
     private static boolean mergePartitions(PartitionGraph pGraph,
             Map<Partition, Set<Partition>> mergeBlacklist,
-            TemporalInvariantSet invariants, int k) {
+            TemporalInvariantSet invariants, int k, Set<Partition> candidates,
+            MergeEvaluator evaluator) {
         ArrayList<Partition> partitions = new ArrayList<Partition>();
         partitions.addAll(pGraph.getNodes());
 
-        // Attempt to merge all pairs of partitions in the current graph.
-        for (Partition p : partitions) {
+        // Attempt to merge all pairs of partitions in the current graph, or
+        // the pairs of a candidate and a partition.
+        List<Partition> retainedPartitions = partitions;
+        if (candidates != null) {
+            retainedPartitions = new ArrayList<Partition>(candidates);
+        }
+        // The merges that are yet to be evaluated by the evaluator.
+        List<PartitionMerge> batch = new ArrayList<PartitionMerge>();
+        for (Partition p : retainedPartitions) {
             for (Partition q : partitions) {
                 // 1. Can't merge a partition with itself
                 if (p == q) {
@@ -849,6 +1034,23 @@ public class Bisimulation {
                     continue;
                 }
 
+                if (evaluator != null) {
+                    // The batch is blacklisted only once it is evaluated, so
+                    // the reverse of a pending merge is not filtered out by
+                    // the blacklist. Both merges produce the same graph.
+                    if (containsMerge(batch, q, p)) {
+                        continue;
+                    }
+                    batch.add(new PartitionMerge(p, q));
+                    if (batch.size() >= evaluator.getBatchSize()
+                            && applyFirstSatisfyingMerge(pGraph,
+                                    mergeBlacklist, candidates, evaluator,
+                                    batch)) {
+                        return true;
+                    }
+                    continue;
+                }
+
                 Set<Partition> parts = new LinkedHashSet<Partition>();
                 parts.addAll(pGraph.getNodes());
                 IOperation rewindOperation = pGraph.apply(new PartitionMerge(p,
@@ -860,6 +1062,7 @@ public class Bisimulation {
                     cExample = invariants.getFirstCounterExample(pGraph);
                 }
 
+                Metrics.get().counter("coarsening.attempts").inc();
                 if (cExample != null) {
                     // The merge created a violation. Remember this pair of
                     // partitions so that we don't try it again.
@@ -892,12 +1095,73 @@ public class Bisimulation {
                 } else {
                     logger.fine("Merge of partitions " + p.getEType()
                             + " nodes maintains invs, accepted.");
+                    if (candidates != null) {
+                        candidates.remove(q);
+                    }
                     return true;
                 }
             }
         }
 
+        if (evaluator != null && !batch.isEmpty()) {
+            return applyFirstSatisfyingMerge(pGraph, mergeBlacklist,
+                    candidates, evaluator, batch);
+        }
+
         // Unable to find any k-equivalent partitions; we're done.
         return false;
     }
+
+    /**
+     * Whether batch contains the merge that retains p and removes q.
+     */
+    private static boolean containsMerge(List<PartitionMerge> batch,
+            Partition p, Partition q) {
+        for (PartitionMerge merge : batch) {
+            if (merge.getRetained() == p && merge.getRemoved() == q) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Evaluates the merges in batch (in parallel) and, in the order of the
+     * batch, blacklists the merges that violate an invariant until it finds
+     * one that does not. This merge is applied to pGraph and true is
+     * returned. Otherwise, false is returned. This decides the same merges as
+     * trying the merges of the batch one by one. The batch is cleared.
+     */
+    private static boolean applyFirstSatisfyingMerge(PartitionGraph pGraph,
+            Map<Partition, Set<Partition>> mergeBlacklist,
+            Set<Partition> candidates, MergeEvaluator evaluator,
+            List<PartitionMerge> batch) {
+        boolean[] satisfies = evaluator.satisfies(batch);
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                PartitionMerge merge = batch.get(i);
+                Partition p = merge.getRetained();
+                Partition q = merge.getRemoved();
+                if (!satisfies[i]) {
+                    logger.fine("Merge violates an invariant.");
+                    if (!mergeBlacklist.containsKey(p)) {
+                        mergeBlacklist.put(p, new LinkedHashSet<Partition>());
+                    }
+                    mergeBlacklist.get(p).add(q);
+                    continue;
+                }
+
+                logger.fine("Merge of partitions " + p.getEType()
+                        + " nodes maintains invs, accepted.");
+                pGraph.apply(merge);
+                if (candidates != null) {
+                    candidates.remove(q);
+                }
+                return true;
+            }
+            return false;
+        } finally {
+            batch.clear();
+        }
+    }
 }
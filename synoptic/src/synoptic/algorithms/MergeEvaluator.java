@@ -0,0 +1,160 @@
+package synoptic.algorithms;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import synoptic.algorithms.graphops.PartitionMerge;
+import synoptic.benchmarks.Metrics;
+import synoptic.invariants.ITemporalInvariant;
+import synoptic.invariants.TemporalInvariantSet;
+import synoptic.invariants.constraints.TempConstrainedInvariant;
+import synoptic.model.PartitionGraph;
+import synoptic.model.PartitionGraphOverlay;
+import synoptic.util.InternalSynopticException;
+
+/**
+ * Evaluates whether candidate merges of coarsening keep a partition graph
+ * satisfying a set of invariants. Each merge is model checked on a
+ * PartitionGraphOverlay, without modifying the graph, so the merges are
+ * evaluated in parallel on a thread pool (if the evaluator has more than one
+ * thread). Only sets of unconstrained invariants can be checked on an overlay
+ * (see canEvaluate).
+ * <p>
+ * The methods of an evaluator must be called from the thread that coarsens
+ * the graph, and graphChanged must be called after the graph is modified.
+ * </p>
+ */
+class MergeEvaluator {
+    private final PartitionGraph pGraph;
+    private final TemporalInvariantSet invariants;
+    // The pool for parallel evaluation, or null to evaluate on the calling
+    // thread.
+    private final ExecutorService executor;
+    private final int numThreads;
+    private PartitionGraphOverlay.Snapshot snapshot = null;
+
+    /**
+     * Creates an evaluator of merges of pGraph against invariants, which uses
+     * numThreads threads.
+     */
+    public MergeEvaluator(PartitionGraph pGraph,
+            TemporalInvariantSet invariants, int numThreads) {
+        assert canEvaluate(invariants);
+        this.pGraph = pGraph;
+        this.invariants = invariants;
+        this.numThreads = Math.max(numThreads, 1);
+        if (numThreads > 1) {
+            executor = Executors.newFixedThreadPool(numThreads,
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "merge-evaluator");
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+        } else {
+            executor = null;
+        }
+    }
+
+    /**
+     * Whether or not merges can be evaluated against invariants on an
+     * overlay. This is not the case for constrained invariants, whose model
+     * checkers use the transitions of the partitions.
+     */
+    public static boolean canEvaluate(TemporalInvariantSet invariants) {
+        if (invariants == null) {
+            return false;
+        }
+        for (ITemporalInvariant inv : invariants) {
+            if (inv instanceof TempConstrainedInvariant<?>) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The number of merges that are worth evaluating at once.
+     */
+    public int getBatchSize() {
+        return numThreads;
+    }
+
+    /**
+     * Must be called after pGraph is modified, before the evaluator is used
+     * again.
+     */
+    public void graphChanged() {
+        snapshot = null;
+    }
+
+    /**
+     * Returns, for each merge, whether the graph satisfies all the invariants
+     * once the merge is applied to it.
+     */
+    public boolean[] satisfies(List<PartitionMerge> merges) {
+        if (snapshot == null) {
+            snapshot = new PartitionGraphOverlay.Snapshot(pGraph);
+        }
+        final PartitionGraphOverlay.Snapshot s = snapshot;
+        final boolean[] ret = new boolean[merges.size()];
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int i = 0; i < merges.size(); i++) {
+            final int index = i;
+            final PartitionMerge merge = merges.get(i);
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    Metrics.get().counter("coarsening.attempts").inc();
+                    ret[index] = invariants
+                            .getFirstCounterExample(new PartitionGraphOverlay(
+                                    s, merge)) == null;
+                    return null;
+                }
+            });
+        }
+
+        try {
+            if (executor == null) {
+                for (Callable<Void> task : tasks) {
+                    task.call();
+                }
+            } else {
+                for (Future<Void> f : executor.invokeAll(tasks)) {
+                    f.get();
+                }
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw InternalSynopticException.wrap(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw InternalSynopticException.wrap(e);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw InternalSynopticException.wrap(e);
+        }
+        return ret;
+    }
+
+    /**
+     * Stops the threads of this evaluator.
+     */
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
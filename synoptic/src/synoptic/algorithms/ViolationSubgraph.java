@@ -0,0 +1,173 @@
+package synoptic.algorithms;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+
+import synoptic.algorithms.graphops.IOperation;
+import synoptic.algorithms.graphops.PartitionMultiSplit;
+import synoptic.benchmarks.Metrics;
+import synoptic.invariants.BinaryInvariant;
+import synoptic.invariants.fsmcheck.FsmModelChecker;
+import synoptic.invariants.fsmcheck.TracingStateSet;
+import synoptic.model.EventNode;
+import synoptic.model.Partition;
+import synoptic.model.PartitionGraph;
+import synoptic.model.interfaces.IGraph;
+
+/**
+ * The subgraph of a partition graph in which a counter-example violates a
+ * constrained invariant: the partitions that are reachable from the partition
+ * where the violation starts and from which the partition where the violation
+ * ends is reachable, and the partition before the start of the violation
+ * (where the model checking enters the subgraph). The subgraph is computed
+ * once, and used to check many candidate splits locally (see
+ * satisfiedAfter), as long as the partitions of the graph do not change.
+ */
+public class ViolationSubgraph implements IGraph<Partition> {
+    private final PartitionGraph pGraph;
+    private final Partition entry;
+    private final Partition end;
+
+    /** The partitions of the subgraph (including entry). */
+    private final Set<Partition> baseNodes;
+
+    /**
+     * The partitions of the subgraph while a split is applied to the graph,
+     * which includes the partitions created by the split.
+     */
+    private Set<Partition> nodes;
+
+    /**
+     * Computes the subgraph of pGraph between start and end, which is entered
+     * from entry.
+     */
+    public ViolationSubgraph(PartitionGraph pGraph, Partition entry,
+            Partition start, Partition end) {
+        this.pGraph = pGraph;
+        this.entry = entry;
+        this.end = end;
+
+        // The partitions reachable from start, and the reverse edges between
+        // them.
+        Map<Partition, Set<Partition>> predecessors = new LinkedHashMap<Partition, Set<Partition>>();
+        Queue<Partition> workList = new LinkedList<Partition>();
+        predecessors.put(start, new LinkedHashSet<Partition>());
+        workList.add(start);
+        while (!workList.isEmpty()) {
+            Partition p = workList.remove();
+            if (p == end) {
+                // Paths beyond end are not part of the violation.
+                continue;
+            }
+            for (Partition q : pGraph.getAdjacentNodes(p)) {
+                if (!predecessors.containsKey(q)) {
+                    predecessors.put(q, new LinkedHashSet<Partition>());
+                    workList.add(q);
+                }
+                predecessors.get(q).add(p);
+            }
+        }
+
+        // Of these, the partitions from which end is reachable.
+        baseNodes = new LinkedHashSet<Partition>();
+        baseNodes.add(entry);
+        if (predecessors.containsKey(end)) {
+            baseNodes.add(end);
+            workList.add(end);
+        }
+        while (!workList.isEmpty()) {
+            for (Partition p : predecessors.get(workList.remove())) {
+                if (baseNodes.add(p)) {
+                    workList.add(p);
+                }
+            }
+        }
+        baseNodes.add(start);
+        nodes = baseNodes;
+    }
+
+    /**
+     * Returns true if the subgraph satisfies inv once splitOp is applied to
+     * the graph, i.e., no path from the entry partition to the end partition
+     * violates inv. The split is applied to the graph for the check, and
+     * rewound afterwards.
+     */
+    public boolean satisfiedAfter(BinaryInvariant inv,
+            PartitionMultiSplit splitOp) {
+        Metrics.get().counter("refinement.localChecks").inc();
+
+        Partition splitPart = splitOp.getPartition();
+        Set<EventNode> splitPartEvents = null;
+        if (baseNodes.contains(splitPart)) {
+            splitPartEvents = new LinkedHashSet<EventNode>(
+                    splitPart.getEventNodes());
+        }
+
+        IOperation rewindOperation = pGraph.apply(splitOp);
+        try {
+            Set<Partition> starts = Collections.singleton(entry);
+            Set<Partition> stops = Collections.singleton(end);
+            if (splitPartEvents != null) {
+                // The partitions that splitPart was split into replace it.
+                Set<Partition> splitInto = new LinkedHashSet<Partition>();
+                for (EventNode e : splitPartEvents) {
+                    splitInto.add(e.getParent());
+                }
+                nodes = new LinkedHashSet<Partition>(baseNodes);
+                nodes.addAll(splitInto);
+                if (splitPart == entry) {
+                    starts = splitInto;
+                }
+                if (splitPart == end) {
+                    stops = splitInto;
+                }
+            }
+
+            TracingStateSet<Partition> initial = FsmModelChecker
+                    .newTracingSet(inv);
+            Map<Partition, TracingStateSet<Partition>> states = FsmModelChecker
+                    .runChecker(initial, this, starts, stops, false);
+            for (Partition stop : stops) {
+                if (states.get(stop).isFail()) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            pGraph.apply(rewindOperation);
+            nodes = baseNodes;
+        }
+    }
+
+    @Override
+    public Set<Partition> getNodes() {
+        return nodes;
+    }
+
+    @Override
+    public Set<Partition> getAdjacentNodes(Partition node) {
+        // runChecker ignores the adjacent partitions outside of the subgraph.
+        return pGraph.getAdjacentNodes(node);
+    }
+
+    @Override
+    public Partition getDummyInitialNode() {
+        return entry;
+    }
+
+    @Override
+    public Set<String> getRelations() {
+        return pGraph.getRelations();
+    }
+
+    @Override
+    public void add(Partition node) {
+        throw new UnsupportedOperationException(
+                "A ViolationSubgraph is read-only.");
+    }
+}
@@ -58,6 +58,15 @@ public class PartitionMerge implements IOperation {
         return split;
     }
 
+    /**
+     * Get the partition that remains in the graph.
+     * 
+     * @return the partition that remains
+     */
+    public Partition getRetained() {
+        return retained;
+    }
+
     /**
      * Get the partition that was removed from the graph.
      * 
@@ -0,0 +1,34 @@
+package synoptic.algorithms.splitstrategies;
+
+import java.util.List;
+
+import synoptic.algorithms.graphops.PartitionSplit;
+import synoptic.invariants.CExamplePath;
+import synoptic.model.Partition;
+
+/**
+ * A strategy for choosing the splits that refine a partition graph. The
+ * strategy orders the counter-examples of a refinement round, and the
+ * candidate splits of each counter-example: splits of counter-examples that
+ * come first are preferred, as are the splits of a counter-example that come
+ * first.
+ */
+public interface ISplitStrategy {
+
+    /**
+     * Returns the name of this strategy, as used in the splitStrategy option.
+     */
+    String getName();
+
+    /**
+     * Orders the counter-examples of a refinement round, in place.
+     */
+    void orderCounterExamples(List<CExamplePath<Partition>> cExamples,
+            SplitContext context);
+
+    /**
+     * Orders the candidate splits of cExample, in place.
+     */
+    void orderCandidateSplits(CExamplePath<Partition> cExample,
+            List<PartitionSplit> splits, SplitContext context);
+}
@@ -0,0 +1,36 @@
+package synoptic.algorithms.splitstrategies;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import synoptic.algorithms.graphops.PartitionSplit;
+import synoptic.invariants.CExamplePath;
+import synoptic.model.Partition;
+
+/**
+ * Prefers the candidate splits of the largest partitions, which separate the
+ * most events in one step. Ties, and the counter-examples, are ordered
+ * randomly.
+ */
+public class LargestPartitionSplitStrategy extends RandomSplitStrategy {
+    public static final String NAME = "largest";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void orderCandidateSplits(CExamplePath<Partition> cExample,
+            List<PartitionSplit> splits, SplitContext context) {
+        super.orderCandidateSplits(cExample, splits, context);
+        Collections.sort(splits, new Comparator<PartitionSplit>() {
+            @Override
+            public int compare(PartitionSplit s1, PartitionSplit s2) {
+                return Integer.valueOf(s2.getPartition().size()).compareTo(
+                        s1.getPartition().size());
+            }
+        });
+    }
+}
@@ -0,0 +1,51 @@
+package synoptic.algorithms.splitstrategies;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import synoptic.algorithms.graphops.PartitionSplit;
+import synoptic.invariants.CExamplePath;
+import synoptic.model.Partition;
+
+/**
+ * Prefers the candidate splits that make the graph satisfy the most of the
+ * invariants that are unsatisfied in the current round. Scoring a split
+ * checks it against each of these invariants, which is expensive, but may
+ * reduce the number of refinement rounds; the scores are computed in parallel
+ * by the SplitEvaluator. Ties, and the counter-examples, are ordered randomly.
+ */
+public class MostResolvingSplitStrategy extends RandomSplitStrategy {
+    public static final String NAME = "mostResolving";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void orderCandidateSplits(CExamplePath<Partition> cExample,
+            List<PartitionSplit> splits, SplitContext context) {
+        super.orderCandidateSplits(cExample, splits, context);
+        if (splits.size() < 2) {
+            return;
+        }
+
+        int[] scores = context.getEvaluator().countSatisfied(splits,
+                context.getUnsatisfiedInvariants());
+        final Map<PartitionSplit, Integer> scoreBySplit = new IdentityHashMap<PartitionSplit, Integer>();
+        for (int i = 0; i < scores.length; i++) {
+            scoreBySplit.put(splits.get(i), scores[i]);
+        }
+
+        // Collections.sort is stable, so ties keep their random order.
+        Collections.sort(splits, new Comparator<PartitionSplit>() {
+            @Override
+            public int compare(PartitionSplit s1, PartitionSplit s2) {
+                return scoreBySplit.get(s2).compareTo(scoreBySplit.get(s1));
+            }
+        });
+    }
+}
@@ -0,0 +1,33 @@
+package synoptic.algorithms.splitstrategies;
+
+import java.util.Collections;
+import java.util.List;
+
+import synoptic.algorithms.graphops.PartitionSplit;
+import synoptic.invariants.CExamplePath;
+import synoptic.model.Partition;
+
+/**
+ * Considers counter-examples and candidate splits in a random order, which is
+ * deterministic for the same random seed. This is the default strategy.
+ */
+public class RandomSplitStrategy implements ISplitStrategy {
+    public static final String NAME = "random";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void orderCounterExamples(List<CExamplePath<Partition>> cExamples,
+            SplitContext context) {
+        Collections.shuffle(cExamples, context.getRandom());
+    }
+
+    @Override
+    public void orderCandidateSplits(CExamplePath<Partition> cExample,
+            List<PartitionSplit> splits, SplitContext context) {
+        Collections.shuffle(splits, context.getRandom());
+    }
+}
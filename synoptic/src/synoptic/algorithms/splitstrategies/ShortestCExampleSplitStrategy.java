@@ -0,0 +1,36 @@
+package synoptic.algorithms.splitstrategies;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import synoptic.invariants.CExamplePath;
+import synoptic.model.Partition;
+
+/**
+ * Considers the shortest counter-examples first, since they have the fewest
+ * candidate splits, and these are the cheapest to check. Ties, and the
+ * candidate splits, are ordered randomly.
+ */
+public class ShortestCExampleSplitStrategy extends RandomSplitStrategy {
+    public static final String NAME = "shortest";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void orderCounterExamples(List<CExamplePath<Partition>> cExamples,
+            SplitContext context) {
+        super.orderCounterExamples(cExamples, context);
+        Collections.sort(cExamples, new Comparator<CExamplePath<Partition>>() {
+            @Override
+            public int compare(CExamplePath<Partition> o1,
+                    CExamplePath<Partition> o2) {
+                return Integer.valueOf(o1.path.size()).compareTo(
+                        o2.path.size());
+            }
+        });
+    }
+}
@@ -0,0 +1,63 @@
+package synoptic.algorithms.splitstrategies;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import synoptic.invariants.CExamplePath;
+import synoptic.invariants.ITemporalInvariant;
+import synoptic.model.Partition;
+import synoptic.model.PartitionGraph;
+
+/**
+ * The state of a refinement round that a split strategy may use to order the
+ * counter-examples and candidate splits of the round.
+ */
+public class SplitContext {
+    private final PartitionGraph pGraph;
+    private final Random random;
+    private final SplitEvaluator evaluator;
+    private final List<ITemporalInvariant> unsatisfiedInvariants;
+
+    /**
+     * @param pGraph
+     *            the graph being refined
+     * @param cExamples
+     *            the counter-examples of the round
+     * @param random
+     *            the source of randomness of the run
+     * @param evaluator
+     *            the evaluator of candidate splits on pGraph
+     */
+    public SplitContext(PartitionGraph pGraph,
+            List<CExamplePath<Partition>> cExamples, Random random,
+            SplitEvaluator evaluator) {
+        this.pGraph = pGraph;
+        this.random = random;
+        this.evaluator = evaluator;
+        unsatisfiedInvariants = new ArrayList<ITemporalInvariant>(
+                cExamples.size());
+        for (CExamplePath<Partition> cExample : cExamples) {
+            unsatisfiedInvariants.add(cExample.invariant);
+        }
+    }
+
+    public PartitionGraph getPartitionGraph() {
+        return pGraph;
+    }
+
+    public Random getRandom() {
+        return random;
+    }
+
+    public SplitEvaluator getEvaluator() {
+        return evaluator;
+    }
+
+    /**
+     * Returns the invariants of the counter-examples of the round.
+     */
+    public List<ITemporalInvariant> getUnsatisfiedInvariants() {
+        return unsatisfiedInvariants;
+    }
+}
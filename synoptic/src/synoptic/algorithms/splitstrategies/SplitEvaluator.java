@@ -0,0 +1,250 @@
+package synoptic.algorithms.splitstrategies;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import synoptic.algorithms.graphops.IOperation;
+import synoptic.algorithms.graphops.PartitionMultiSplit;
+import synoptic.algorithms.graphops.PartitionSplit;
+import synoptic.benchmarks.Metrics;
+import synoptic.invariants.CExamplePath;
+import synoptic.invariants.ITemporalInvariant;
+import synoptic.invariants.TemporalInvariantSet;
+import synoptic.invariants.constraints.TempConstrainedInvariant;
+import synoptic.model.Partition;
+import synoptic.model.PartitionGraph;
+import synoptic.model.PartitionGraphOverlay;
+import synoptic.util.InternalSynopticException;
+
+/**
+ * Evaluates whether candidate splits make a partition graph satisfy
+ * invariants. Unconstrained invariants are model checked on a
+ * PartitionGraphOverlay of the split, which does not modify the graph, so
+ * these checks run in parallel on a thread pool (if the evaluator has more
+ * than one thread). Constrained invariants are checked by applying the split
+ * to the graph and rewinding it, on the calling thread.
+ * <p>
+ * The methods of an evaluator must be called from the thread that refines the
+ * graph, and the graph must not be modified while they run (except by the
+ * evaluator itself). The overlays share a snapshot of the graph, which is
+ * taken by the first check after the evaluator is created or graphChanged is
+ * called.
+ * </p>
+ */
+public class SplitEvaluator {
+    private final PartitionGraph pGraph;
+    // The pool for parallel evaluation, or null to evaluate on the calling
+    // thread.
+    private final ExecutorService executor;
+    private PartitionGraphOverlay.Snapshot snapshot = null;
+
+    /**
+     * Creates an evaluator of splits of pGraph that uses numThreads threads.
+     * With numThreads <= 1, all splits are evaluated on the calling thread.
+     */
+    public SplitEvaluator(PartitionGraph pGraph, int numThreads) {
+        this.pGraph = pGraph;
+        if (numThreads > 1) {
+            executor = Executors.newFixedThreadPool(numThreads,
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "split-evaluator");
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+        } else {
+            executor = null;
+        }
+    }
+
+    /**
+     * Whether or not inv can be checked on an overlay, concurrently with other
+     * checks.
+     */
+    private static boolean isOverlayCheckable(ITemporalInvariant inv) {
+        return !(inv instanceof TempConstrainedInvariant<?>);
+    }
+
+    /**
+     * Must be called after pGraph is modified (other than by the evaluator),
+     * before the evaluator is used again.
+     */
+    public void graphChanged() {
+        snapshot = null;
+    }
+
+    private PartitionGraphOverlay.Snapshot getSnapshot() {
+        if (snapshot == null) {
+            snapshot = new PartitionGraphOverlay.Snapshot(pGraph);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Checks inv on an overlay of split over s. This is thread-safe.
+     */
+    private static boolean satisfiesOnOverlay(
+            PartitionGraphOverlay.Snapshot s, ITemporalInvariant inv,
+            PartitionSplit split) {
+        Metrics.get().counter("refinement.candidatesEvaluated").inc();
+        CExamplePath<Partition> violation = TemporalInvariantSet
+                .getCounterExample(inv, new PartitionGraphOverlay(s, split));
+        return violation == null;
+    }
+
+    /**
+     * Returns true if applying split to the graph makes the graph satisfy
+     * inv, and false otherwise.
+     */
+    public boolean satisfies(ITemporalInvariant inv, PartitionSplit split) {
+        if (isOverlayCheckable(inv)) {
+            return satisfiesOnOverlay(getSnapshot(), inv, split);
+        }
+
+        Metrics.get().counter("refinement.candidatesEvaluated").inc();
+        // Perform the split.
+        IOperation rewindOperation = pGraph.apply(new PartitionMultiSplit(
+                split));
+
+        // See if splitting resolved the violation.
+        CExamplePath<Partition> violation = TemporalInvariantSet
+                .getCounterExample(inv, pGraph);
+
+        // Undo the split (rewind) to get back the input graph. This restores
+        // the partitions of the graph, so the snapshot remains valid.
+        pGraph.apply(rewindOperation);
+
+        return violation == null;
+    }
+
+    /**
+     * Returns, for each i, the index of the first split in candidates.get(i)
+     * that makes the graph satisfy invs.get(i), or -1 if there is none. The
+     * candidates of different invariants are evaluated in parallel, if they
+     * are unconstrained invariants.
+     */
+    public int[] findFirstSatisfying(List<ITemporalInvariant> invs,
+            List<List<PartitionSplit>> candidates) {
+        final int[] ret = new int[invs.size()];
+        final PartitionGraphOverlay.Snapshot s = getSnapshot();
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int i = 0; i < invs.size(); i++) {
+            final int index = i;
+            final ITemporalInvariant inv = invs.get(i);
+            final List<PartitionSplit> splits = candidates.get(i);
+            ret[i] = -1;
+            if (!isOverlayCheckable(inv)) {
+                for (int j = 0; j < splits.size(); j++) {
+                    if (satisfies(inv, splits.get(j))) {
+                        ret[i] = j;
+                        break;
+                    }
+                }
+                continue;
+            }
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    for (int j = 0; j < splits.size(); j++) {
+                        if (satisfiesOnOverlay(s, inv, splits.get(j))) {
+                            ret[index] = j;
+                            break;
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+        invokeAll(tasks);
+        return ret;
+    }
+
+    /**
+     * Returns, for each split, the number of invariants in invs that the
+     * graph satisfies once the split is applied to it. Splits are scored in
+     * parallel.
+     */
+    public int[] countSatisfied(List<PartitionSplit> splits,
+            List<ITemporalInvariant> invs) {
+        final int[] ret = new int[splits.size()];
+        final List<ITemporalInvariant> overlayInvs = new ArrayList<ITemporalInvariant>();
+        for (ITemporalInvariant inv : invs) {
+            if (isOverlayCheckable(inv)) {
+                overlayInvs.add(inv);
+            } else {
+                for (int i = 0; i < splits.size(); i++) {
+                    if (satisfies(inv, splits.get(i))) {
+                        ret[i]++;
+                    }
+                }
+            }
+        }
+
+        final PartitionGraphOverlay.Snapshot s = getSnapshot();
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int i = 0; i < splits.size(); i++) {
+            final int index = i;
+            final PartitionSplit split = splits.get(i);
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    for (ITemporalInvariant inv : overlayInvs) {
+                        if (satisfiesOnOverlay(s, inv, split)) {
+                            ret[index]++;
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+        invokeAll(tasks);
+        return ret;
+    }
+
+    /**
+     * Runs tasks, on the pool if there is one, and waits for all of them.
+     */
+    private void invokeAll(List<Callable<Void>> tasks) {
+        try {
+            if (executor == null) {
+                for (Callable<Void> task : tasks) {
+                    task.call();
+                }
+                return;
+            }
+            for (Future<Void> f : executor.invokeAll(tasks)) {
+                f.get();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw InternalSynopticException.wrap(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw InternalSynopticException.wrap(e);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw InternalSynopticException.wrap(e);
+        }
+    }
+
+    /**
+     * Stops the threads of this evaluator.
+     */
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package synoptic.algorithms.splitstrategies;
+
+/**
+ * Creates split strategies by name (see the splitStrategy option).
+ */
+public class SplitStrategies {
+    /** The names of the available strategies. */
+    public static final String[] NAMES = new String[] {
+            RandomSplitStrategy.NAME, ShortestCExampleSplitStrategy.NAME,
+            LargestPartitionSplitStrategy.NAME,
+            MostResolvingSplitStrategy.NAME };
+
+    /**
+     * Returns a new strategy with the given name, or null if there is no such
+     * strategy.
+     */
+    public static ISplitStrategy forName(String name) {
+        if (RandomSplitStrategy.NAME.equals(name)) {
+            return new RandomSplitStrategy();
+        } else if (ShortestCExampleSplitStrategy.NAME.equals(name)) {
+            return new ShortestCExampleSplitStrategy();
+        } else if (LargestPartitionSplitStrategy.NAME.equals(name)) {
+            return new LargestPartitionSplitStrategy();
+        } else if (MostResolvingSplitStrategy.NAME.equals(name)) {
+            return new MostResolvingSplitStrategy();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,17 @@
+package synoptic.algorithms.splitstrategies;
+
+/**
+ * <p>
+ * Provides the strategies that Bisimulation uses to choose the splits that
+ * refine a partition graph. In each refinement round, a strategy orders the
+ * counter-examples of the unsatisfied invariants, and the candidate splits of
+ * each counter-example; the first candidate split (in this order) that makes
+ * the graph satisfy the invariant of its counter-example is applied.
+ * </p>
+ * <p>
+ * Candidate splits are evaluated by a <code>SplitEvaluator</code>, which model
+ * checks unconstrained invariants on a <code>PartitionGraphOverlay</code> of
+ * the split rather than on the partition graph itself, and can therefore
+ * evaluate the candidates of different counter-examples in parallel.
+ * </p>
+ */
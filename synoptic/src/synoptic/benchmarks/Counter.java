@@ -0,0 +1,25 @@
+package synoptic.benchmarks;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread-safe count of events, such as the number of splits or of model
+ * checker runs. Counters are created by (and named in) {@link Metrics}.
+ */
+public class Counter {
+    private final AtomicLong count = new AtomicLong();
+
+    /** Increments the count by one. */
+    public void inc() {
+        count.incrementAndGet();
+    }
+
+    /** Increments the count by n. */
+    public void add(long n) {
+        count.addAndGet(n);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+}
@@ -0,0 +1,90 @@
+package synoptic.benchmarks;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe distribution of non-negative values, such as the sizes of
+ * counter-example paths or the durations of a task. Besides the count, sum,
+ * minimum and maximum of the values, a histogram keeps the number of values in
+ * each power-of-two bucket, from which percentiles are estimated (to within a
+ * factor of two). Recording a value does not allocate or take a lock.
+ */
+public class Histogram {
+    // buckets[i] is the number of values v with 2^(i-1) <= v < 2^i, and
+    // buckets[0] the number of zeros.
+    private final AtomicLongArray buckets = new AtomicLongArray(65);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * Records a value; negative values are recorded as 0.
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+
+        long cur = min.get();
+        while (value < cur && !min.compareAndSet(cur, value)) {
+            cur = min.get();
+        }
+        cur = max.get();
+        while (value > cur && !max.compareAndSet(cur, value)) {
+            cur = max.get();
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getSum() {
+        return sum.get();
+    }
+
+    /** Returns the smallest value recorded, or 0 if there are none. */
+    public long getMin() {
+        return count.get() == 0 ? 0 : min.get();
+    }
+
+    /** Returns the largest value recorded, or 0 if there are none. */
+    public long getMax() {
+        return count.get() == 0 ? 0 : max.get();
+    }
+
+    /** Returns the mean of the values recorded, or 0 if there are none. */
+    public double getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    /**
+     * Returns an upper bound on the q-quantile of the values recorded (e.g.,
+     * q = 0.99 for the 99th percentile): the upper end of the bucket that
+     * contains it, capped at the maximum value. Returns 0 if there are no
+     * values.
+     */
+    public long getPercentile(double q) {
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(q * n);
+        long seen = 0;
+        for (int i = 0; i < 65; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                long upper = i == 0 ? 0 : i == 64 ? Long.MAX_VALUE
+                        : (1L << i) - 1;
+                return Math.min(upper, getMax());
+            }
+        }
+        return getMax();
+    }
+}
@@ -0,0 +1,279 @@
+package synoptic.benchmarks;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.json.simple.JSONValue;
+
+/**
+ * A thread-safe registry of named counters, histograms and timers, which
+ * instrument the stages of a Synoptic run: parsing, mining, each refinement
+ * round, model checker runs, merges and export. The metrics can be dumped as
+ * JSON or CSV (see dump), and logged periodically while the run is in
+ * progress (see startReporter).
+ * <p>
+ * Metrics are created on first use, so instrumented code simply calls, e.g.,
+ * Metrics.get().counter("refinement.splits").inc(). Names are dot-separated,
+ * with the stage first.
+ * </p>
+ */
+public class Metrics {
+    private static Logger logger = Logger.getLogger("Metrics");
+
+    /** The global metrics of this run. */
+    private static final Metrics globalMetrics = new Metrics();
+
+    private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<String, Counter>();
+    private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<String, Histogram>();
+    private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<String, Timer>();
+
+    private ScheduledExecutorService reporter = null;
+
+    /** Returns the global metrics object. */
+    public static Metrics get() {
+        return globalMetrics;
+    }
+
+    /** Returns the counter with the given name, creating it if necessary. */
+    public Counter counter(String name) {
+        Counter c = counters.get(name);
+        if (c == null) {
+            c = new Counter();
+            Counter prev = counters.putIfAbsent(name, c);
+            if (prev != null) {
+                c = prev;
+            }
+        }
+        return c;
+    }
+
+    /** Returns the histogram with the given name, creating it if necessary. */
+    public Histogram histogram(String name) {
+        Histogram h = histograms.get(name);
+        if (h == null) {
+            h = new Histogram();
+            Histogram prev = histograms.putIfAbsent(name, h);
+            if (prev != null) {
+                h = prev;
+            }
+        }
+        return h;
+    }
+
+    /** Returns the timer with the given name, creating it if necessary. */
+    public Timer timer(String name) {
+        Timer t = timers.get(name);
+        if (t == null) {
+            t = new Timer();
+            Timer prev = timers.putIfAbsent(name, t);
+            if (prev != null) {
+                t = prev;
+            }
+        }
+        return t;
+    }
+
+    /** Removes all the metrics. */
+    public void clear() {
+        counters.clear();
+        histograms.clear();
+        timers.clear();
+    }
+
+    // //////////////////////////////////////////////////////////////////////
+    // Reporting.
+
+    /**
+     * Returns the metrics as rows of the form (kind, name, field, value),
+     * ordered by kind and name.
+     */
+    public List<String[]> getRows() {
+        List<String[]> rows = new ArrayList<String[]>();
+        for (String name : sorted(counters)) {
+            rows.add(new String[] { "counter", name, "count",
+                    Long.toString(counters.get(name).getCount()) });
+        }
+        for (String name : sorted(histograms)) {
+            Histogram h = histograms.get(name);
+            for (Map.Entry<String, Object> field : histogramFields(h, 1)
+                    .entrySet()) {
+                rows.add(new String[] { "histogram", name, field.getKey(),
+                        field.getValue().toString() });
+            }
+        }
+        for (String name : sorted(timers)) {
+            for (Map.Entry<String, Object> field : timerFields(
+                    timers.get(name)).entrySet()) {
+                rows.add(new String[] { "timer", name, field.getKey(),
+                        field.getValue().toString() });
+            }
+        }
+        return rows;
+    }
+
+    /** Returns the metrics as CSV, with a header line. */
+    public String toCsv() {
+        StringBuilder sb = new StringBuilder("kind,name,field,value\n");
+        for (String[] row : getRows()) {
+            for (int i = 0; i < row.length; i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                sb.append(csvField(row[i]));
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the metrics as a JSON object, with a "counters", a "histograms"
+     * and a "timers" object, each of which maps the names of the metrics to
+     * their values.
+     */
+    public String toJson() {
+        Map<String, Object> cs = new LinkedHashMap<String, Object>();
+        for (String name : sorted(counters)) {
+            cs.put(name, counters.get(name).getCount());
+        }
+        Map<String, Object> hs = new LinkedHashMap<String, Object>();
+        for (String name : sorted(histograms)) {
+            hs.put(name, histogramFields(histograms.get(name), 1));
+        }
+        Map<String, Object> ts = new LinkedHashMap<String, Object>();
+        for (String name : sorted(timers)) {
+            ts.put(name, timerFields(timers.get(name)));
+        }
+        Map<String, Object> json = new LinkedHashMap<String, Object>();
+        json.put("counters", cs);
+        json.put("histograms", hs);
+        json.put("timers", ts);
+        return JSONValue.toJSONString(json);
+    }
+
+    /**
+     * Writes the metrics to file, as CSV if its name ends with ".csv" and as
+     * JSON otherwise.
+     */
+    public void dump(File file) throws FileNotFoundException {
+        PrintWriter writer = new PrintWriter(file);
+        try {
+            if (file.getName().endsWith(".csv")) {
+                writer.print(toCsv());
+            } else {
+                writer.println(toJson());
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Returns a one-line-per-timer summary of the timers, and a line with the
+     * counters.
+     */
+    public String summary() {
+        StringBuilder sb = new StringBuilder();
+        for (String name : sorted(timers)) {
+            Timer t = timers.get(name);
+            sb.append(String.format(
+                    "%s: n=%d wall=%dms cpu=%dms alloc=%dMB%n", name, t
+                            .getWallNanos().getCount(), t.getWallNanos()
+                            .getSum() / 1000000, t.getCpuNanos() / 1000000,
+                    t.getAllocatedBytes() >> 20));
+        }
+        if (!counters.isEmpty()) {
+            sb.append("counters:");
+            for (String name : sorted(counters)) {
+                sb.append(" " + name + "=" + counters.get(name).getCount());
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Starts logging the summary of the metrics every intervalMs ms, on a
+     * daemon thread, until stopReporter is called.
+     */
+    public synchronized void startReporter(long intervalMs) {
+        stopReporter();
+        reporter = Executors
+                .newSingleThreadScheduledExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "metrics-reporter");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        reporter.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                logger.info("Metrics:\n" + summary());
+            }
+        }, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /** Stops the periodic reporter, if it is running. */
+    public synchronized void stopReporter() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+    }
+
+    /**
+     * Returns the fields of h, where the values (but not the count) are
+     * divided by divisor.
+     */
+    private static Map<String, Object> histogramFields(Histogram h,
+            long divisor) {
+        Map<String, Object> fields = new LinkedHashMap<String, Object>();
+        fields.put("count", h.getCount());
+        fields.put("sum", h.getSum() / divisor);
+        fields.put("min", h.getMin() / divisor);
+        fields.put("max", h.getMax() / divisor);
+        fields.put("mean", h.getMean() / divisor);
+        fields.put("p50", h.getPercentile(0.5) / divisor);
+        fields.put("p99", h.getPercentile(0.99) / divisor);
+        return fields;
+    }
+
+    private static Map<String, Object> timerFields(Timer t) {
+        // Wall times are reported in microseconds.
+        Map<String, Object> fields = new LinkedHashMap<String, Object>();
+        for (Map.Entry<String, Object> field : histogramFields(
+                t.getWallNanos(), 1000).entrySet()) {
+            fields.put("wallUs." + field.getKey(), field.getValue());
+        }
+        fields.put("cpuUs", t.getCpuNanos() / 1000);
+        fields.put("allocatedBytes", t.getAllocatedBytes());
+        return fields;
+    }
+
+    private static List<String> sorted(Map<String, ?> metrics) {
+        List<String> names = new ArrayList<String>(metrics.keySet());
+        Collections.sort(names);
+        return names;
+    }
+
+    private static String csvField(String s) {
+        if (s.indexOf(',') == -1 && s.indexOf('"') == -1) {
+            return s;
+        }
+        return '"' + s.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,120 @@
+package synoptic.benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread-safe timer of a stage or task, such as parsing or a model checker
+ * run. Each timing records the wall time in a histogram and, where the JVM
+ * supports it, adds the CPU time and the bytes allocated by the timing thread
+ * (from the ThreadMXBean). Work that the timed code hands off to other threads
+ * is included in the wall time, but not in the CPU time or allocations.
+ * <p>
+ * Usage:
+ *
+ * <pre>
+ * Timer.Context ctx = Metrics.get().timer(&quot;parse&quot;).start();
+ * try {
+ *     ...
+ * } finally {
+ *     ctx.stop();
+ * }
+ * </pre>
+ *
+ * </p>
+ */
+public class Timer {
+    private static final ThreadMXBean threadBean = ManagementFactory
+            .getThreadMXBean();
+    // The HotSpot extension that reports per-thread allocations, or null.
+    private static final com.sun.management.ThreadMXBean allocBean = getAllocBean();
+
+    private final Histogram wallNanos = new Histogram();
+    private final AtomicLong cpuNanos = new AtomicLong();
+    private final AtomicLong allocatedBytes = new AtomicLong();
+
+    private static com.sun.management.ThreadMXBean getAllocBean() {
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threadBean;
+            if (bean.isThreadAllocatedMemorySupported()
+                    && bean.isThreadAllocatedMemoryEnabled()) {
+                return bean;
+            }
+        }
+        return null;
+    }
+
+    private static long currentCpuNanos() {
+        if (threadBean.isCurrentThreadCpuTimeSupported()
+                && threadBean.isThreadCpuTimeEnabled()) {
+            return threadBean.getCurrentThreadCpuTime();
+        }
+        return -1;
+    }
+
+    private static long currentAllocatedBytes() {
+        if (allocBean == null) {
+            return -1;
+        }
+        return allocBean.getThreadAllocatedBytes(Thread.currentThread()
+                .getId());
+    }
+
+    /**
+     * A single timing, which is recorded in its timer when it is stopped. A
+     * context must be stopped by the thread that started it.
+     */
+    public class Context {
+        private final long startWall;
+        private final long startCpu;
+        private final long startAlloc;
+        private boolean stopped = false;
+
+        Context() {
+            startCpu = currentCpuNanos();
+            startAlloc = currentAllocatedBytes();
+            startWall = System.nanoTime();
+        }
+
+        /**
+         * Records this timing, and returns its wall time in nanoseconds.
+         * Stopping a context again has no effect, and returns 0.
+         */
+        public long stop() {
+            long wall = System.nanoTime() - startWall;
+            if (stopped) {
+                return 0;
+            }
+            stopped = true;
+            wallNanos.record(wall);
+            if (startCpu != -1) {
+                cpuNanos.addAndGet(currentCpuNanos() - startCpu);
+            }
+            if (startAlloc != -1) {
+                allocatedBytes.addAndGet(currentAllocatedBytes() - startAlloc);
+            }
+            return wall;
+        }
+    }
+
+    /** Starts a timing. */
+    public Context start() {
+        return new Context();
+    }
+
+    /** Returns the histogram of the wall times, in nanoseconds. */
+    public Histogram getWallNanos() {
+        return wallNanos;
+    }
+
+    /** Returns the total CPU time of the timing threads, in nanoseconds. */
+    public long getCpuNanos() {
+        return cpuNanos.get();
+    }
+
+    /** Returns the total bytes allocated by the timing threads. */
+    public long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+}
@@ -15,10 +15,9 @@ import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import synoptic.benchmarks.PerformanceMetrics;
-import synoptic.benchmarks.TimedTask;
+import synoptic.benchmarks.Metrics;
+import synoptic.benchmarks.Timer;
 import synoptic.invariants.fsmcheck.FsmModelChecker;
-import synoptic.main.AbstractMain;
 import synoptic.model.interfaces.IGraph;
 import synoptic.model.interfaces.INode;
 
@@ -132,15 +131,31 @@ public class TemporalInvariantSet implements Iterable<ITemporalInvariant> {
      */
     public static <T extends INode<T>> CExamplePath<T> getCounterExample(
             ITemporalInvariant inv, IGraph<T> g) {
-        TimedTask refinement = PerformanceMetrics.createTask(
-                "getCounterExample", true);
+        Timer.Context timer = Metrics.get()
+                .timer("modelcheck.getCounterExample").start();
         try {
-            return FsmModelChecker.getCounterExample((BinaryInvariant) inv, g);
+            return checkInvariant((BinaryInvariant) inv, g);
         } finally {
-            refinement.stop();
+            timer.stop();
         }
     }
 
+    /**
+     * Runs the model checker for inv on g, and counts the run and the length
+     * of the counter-example found, if any.
+     */
+    private static <T extends INode<T>> CExamplePath<T> checkInvariant(
+            BinaryInvariant inv, IGraph<T> g) {
+        Metrics metrics = Metrics.get();
+        metrics.counter("modelcheck.runs").inc();
+        CExamplePath<T> path = FsmModelChecker.getCounterExample(inv, g);
+        if (path != null) {
+            metrics.histogram("modelcheck.cExampleLength").record(
+                    path.path.size());
+        }
+        return path;
+    }
+
     /**
      * Returns a list of paths, each of which violates an invariant maintained
      * by this invariant set (i.e. each of which is a counter-example).
@@ -153,16 +168,15 @@ public class TemporalInvariantSet implements Iterable<ITemporalInvariant> {
      */
     public <T extends INode<T>> List<CExamplePath<T>> getAllCounterExamples(
             IGraph<T> graph) {
-        TimedTask violations = PerformanceMetrics.createTask(
-                "getAllCounterExamples", false);
-        AbstractMain main = AbstractMain.getInstance();
+        Timer.Context timer = Metrics.get()
+                .timer("modelcheck.getAllCounterExamples").start();
         try {
             List<CExamplePath<T>> paths = null;
 
             paths = new ArrayList<CExamplePath<T>>();
             for (ITemporalInvariant tinv : invariants) {
-                CExamplePath<T> path = FsmModelChecker.getCounterExample(
-                        (BinaryInvariant) tinv, graph);
+                CExamplePath<T> path = checkInvariant((BinaryInvariant) tinv,
+                        graph);
                 if (path != null) {
                     paths.add(path);
                 }
@@ -183,10 +197,7 @@ public class TemporalInvariantSet implements Iterable<ITemporalInvariant> {
 
             return paths;
         } finally {
-            violations.stop();
-            if (main.options.doBenchmarking) {
-                logger.info("BENCHM: " + violations.toString());
-            }
+            timer.stop();
         }
     }
 
@@ -202,19 +213,19 @@ public class TemporalInvariantSet implements Iterable<ITemporalInvariant> {
      */
     public <T extends INode<T>> CExamplePath<T> getFirstCounterExample(
             IGraph<T> g) {
-        TimedTask violations = PerformanceMetrics.createTask(
-                "getFirstCounterExample", false);
+        Timer.Context timer = Metrics.get()
+                .timer("modelcheck.getFirstCounterExample").start();
         try {
             for (ITemporalInvariant tinv : invariants) {
-                CExamplePath<T> path = FsmModelChecker.getCounterExample(
-                        (BinaryInvariant) tinv, g);
+                CExamplePath<T> path = checkInvariant((BinaryInvariant) tinv,
+                        g);
                 if (path != null) {
                     return path;
                 }
             }
             return null;
         } finally {
-            violations.stop();
+            timer.stop();
         }
     }
 
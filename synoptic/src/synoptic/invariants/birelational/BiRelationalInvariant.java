@@ -19,4 +19,8 @@ public abstract class BiRelationalInvariant extends BinaryInvariant {
         this.orderingRelation = orderingRelation;
     }
 
+    public String getOrderingRelation() {
+        return orderingRelation;
+    }
+
 }
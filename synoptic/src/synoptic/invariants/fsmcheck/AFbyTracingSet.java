@@ -18,14 +18,21 @@ import synoptic.model.interfaces.INode;
  * @see TracingStateSet
  */
 public class AFbyTracingSet<T extends INode<T>> extends TracingStateSet<T> {
-    HistoryNode<T> wasA; // Indicates that A was seen more recently than B (failing
+    int wasA = HistoryArena.NONE; // Indicates that A was seen more recently than B (failing
     // state)
-    HistoryNode<T> wasB; // Indicates that B was seen more recently than A
+    int wasB = HistoryArena.NONE; // Indicates that B was seen more recently than A
     EventType a, b;
+    // The arena of the paths of this set and its copies.
+    final HistoryArena<T> history;
 
     public AFbyTracingSet(EventType a, EventType b) {
+        this(a, b, new HistoryArena<T>());
+    }
+
+    private AFbyTracingSet(EventType a, EventType b, HistoryArena<T> history) {
         this.a = a;
         this.b = b;
+        this.history = history;
     }
 
     public AFbyTracingSet(BinaryInvariant inv) {
@@ -35,13 +42,13 @@ public class AFbyTracingSet<T extends INode<T>> extends TracingStateSet<T> {
     @Override
     public void setInitial(T x) {
         EventType name = x.getEType();
-        HistoryNode<T> newHistory = new HistoryNode<T>(x, null, 1);
+        int newHistory = history.start(x);
         if (name.equals(a)) {
-            wasB = null;
+            wasB = HistoryArena.NONE;
             wasA = newHistory;
         } else {
             wasB = newHistory;
-            wasA = null;
+            wasA = HistoryArena.NONE;
         }
     }
 
@@ -49,46 +56,61 @@ public class AFbyTracingSet<T extends INode<T>> extends TracingStateSet<T> {
     public void transition(T x) {
         EventType name = x.getEType();
         if (a.equals(name)) {
-            wasA = preferShorter(wasB, wasA);
-            wasB = null;
+            wasA = history.preferShorter(wasB, wasA);
+            wasB = HistoryArena.NONE;
         } else if (b.equals(name)) {
-            wasB = preferShorter(wasA, wasB);
-            wasA = null;
+            wasB = history.preferShorter(wasA, wasB);
+            wasA = HistoryArena.NONE;
         }
-        wasA = extend(x, wasA);
-        wasB = extend(x, wasB);
+        wasA = history.extend(x, wasA);
+        wasB = history.extend(x, wasB);
     }
 
     @Override
     public HistoryNode<T> failpath() {
-        return wasA;
+        return history.toHistoryNode(wasA);
+    }
+
+    @Override
+    public boolean isFail() {
+        return wasA != HistoryArena.NONE;
     }
 
     @Override
     public AFbyTracingSet<T> copy() {
-        AFbyTracingSet<T> result = new AFbyTracingSet<T>(a, b);
+        AFbyTracingSet<T> result = new AFbyTracingSet<T>(a, b, history);
         result.wasA = wasA;
         result.wasB = wasB;
         return result;
     }
 
+    @Override
+    public void setTo(TracingStateSet<T> other) {
+        AFbyTracingSet<T> casted = (AFbyTracingSet<T>) other;
+        assert casted.history == history;
+        wasA = casted.wasA;
+        wasB = casted.wasB;
+    }
+
     @Override
     public void mergeWith(TracingStateSet<T> other) {
         AFbyTracingSet<T> casted = (AFbyTracingSet<T>) other;
-        wasA = preferShorter(wasA, casted.wasA);
-        wasB = preferShorter(wasB, casted.wasB);
+        assert casted.history == history;
+        wasA = history.preferShorter(wasA, casted.wasA);
+        wasB = history.preferShorter(wasB, casted.wasB);
     }
 
     @Override
     public boolean isSubset(TracingStateSet<T> other) {
         AFbyTracingSet<T> casted = (AFbyTracingSet<T>) other;
-        if (casted.wasA == null) {
-            if (wasA != null) {
+        assert casted.history == history;
+        if (casted.wasA == HistoryArena.NONE) {
+            if (wasA != HistoryArena.NONE) {
                 return false;
             }
         }
-        if (casted.wasB == null) {
-            if (wasB != null) {
+        if (casted.wasB == HistoryArena.NONE) {
+            if (wasB != HistoryArena.NONE) {
                 return false;
             }
         }
@@ -99,9 +121,9 @@ public class AFbyTracingSet<T extends INode<T>> extends TracingStateSet<T> {
     public String toString() {
         StringBuilder result = new StringBuilder();
         result.append("AFby: ");
-        appendWNull(result, wasA); // Failure case first.
+        appendWNull(result, history.toHistoryNode(wasA)); // Failure case first.
         result.append(" | ");
-        appendWNull(result, wasB);
+        appendWNull(result, history.toHistoryNode(wasB));
         return result.toString();
     }
 }
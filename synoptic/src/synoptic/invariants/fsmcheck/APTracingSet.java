@@ -18,14 +18,21 @@ import synoptic.model.interfaces.INode;
  * @see TracingStateSet
  */
 public class APTracingSet<T extends INode<T>> extends TracingStateSet<T> {
-    HistoryNode<T> neitherSeen; // Neither A or B yet seen
-    HistoryNode<T> firstA; // A seen before B (permanent success)
-    HistoryNode<T> firstB; // B seen before A (permanent failure)
+    int neitherSeen = HistoryArena.NONE; // Neither A or B yet seen
+    int firstA = HistoryArena.NONE; // A seen before B (permanent success)
+    int firstB = HistoryArena.NONE; // B seen before A (permanent failure)
     EventType a, b;
+    // The arena of the paths of this set and its copies.
+    final HistoryArena<T> history;
 
     public APTracingSet(EventType a, EventType b) {
+        this(a, b, new HistoryArena<T>());
+    }
+
+    private APTracingSet(EventType a, EventType b, HistoryArena<T> history) {
         this.a = a;
         this.b = b;
+        this.history = history;
     }
 
     public APTracingSet(BinaryInvariant inv) {
@@ -35,8 +42,8 @@ public class APTracingSet<T extends INode<T>> extends TracingStateSet<T> {
     @Override
     public void setInitial(T x) {
         EventType name = x.getEType();
-        HistoryNode<T> newHistory = new HistoryNode<T>(x, null, 1);
-        neitherSeen = firstA = firstB = null;
+        int newHistory = history.start(x);
+        neitherSeen = firstA = firstB = HistoryArena.NONE;
         if (a.equals(name)) {
             firstA = newHistory;
         } else if (b.equals(name)) {
@@ -50,54 +57,70 @@ public class APTracingSet<T extends INode<T>> extends TracingStateSet<T> {
     public void transition(T x) {
         EventType name = x.getEType();
         if (a.equals(name)) {
-            firstA = preferShorter(neitherSeen, firstA);
-            neitherSeen = null;
+            firstA = history.preferShorter(neitherSeen, firstA);
+            neitherSeen = HistoryArena.NONE;
         } else if (b.equals(name)) {
-            firstB = preferShorter(neitherSeen, firstB);
-            neitherSeen = null;
+            firstB = history.preferShorter(neitherSeen, firstB);
+            neitherSeen = HistoryArena.NONE;
         }
-        neitherSeen = extend(x, neitherSeen);
-        firstA = extend(x, firstA);
-        firstB = extend(x, firstB);
+        neitherSeen = history.extend(x, neitherSeen);
+        firstA = history.extend(x, firstA);
+        firstB = history.extend(x, firstB);
     }
 
     @Override
     public HistoryNode<T> failpath() {
-        return firstB;
+        return history.toHistoryNode(firstB);
+    }
+
+    @Override
+    public boolean isFail() {
+        return firstB != HistoryArena.NONE;
     }
 
     @Override
     public APTracingSet<T> copy() {
-        APTracingSet<T> result = new APTracingSet<T>(a, b);
+        APTracingSet<T> result = new APTracingSet<T>(a, b, history);
         result.neitherSeen = neitherSeen;
         result.firstA = firstA;
         result.firstB = firstB;
         return result;
     }
 
+    @Override
+    public void setTo(TracingStateSet<T> other) {
+        APTracingSet<T> casted = (APTracingSet<T>) other;
+        assert casted.history == history;
+        neitherSeen = casted.neitherSeen;
+        firstA = casted.firstA;
+        firstB = casted.firstB;
+    }
+
     @Override
     public void mergeWith(TracingStateSet<T> other) {
         APTracingSet<T> casted = (APTracingSet<T>) other;
-        neitherSeen = preferShorter(neitherSeen, casted.neitherSeen);
-        firstA = preferShorter(firstA, casted.firstA);
-        firstB = preferShorter(firstB, casted.firstB);
+        assert casted.history == history;
+        neitherSeen = history.preferShorter(neitherSeen, casted.neitherSeen);
+        firstA = history.preferShorter(firstA, casted.firstA);
+        firstB = history.preferShorter(firstB, casted.firstB);
     }
 
     @Override
     public boolean isSubset(TracingStateSet<T> other) {
         APTracingSet<T> casted = (APTracingSet<T>) other;
-        if (casted.neitherSeen == null) {
-            if (neitherSeen != null) {
+        assert casted.history == history;
+        if (casted.neitherSeen == HistoryArena.NONE) {
+            if (neitherSeen != HistoryArena.NONE) {
                 return false;
             }
         }
-        if (casted.firstA == null) {
-            if (firstA != null) {
+        if (casted.firstA == HistoryArena.NONE) {
+            if (firstA != HistoryArena.NONE) {
                 return false;
             }
         }
-        if (casted.firstB == null) {
-            if (firstB != null) {
+        if (casted.firstB == HistoryArena.NONE) {
+            if (firstB != HistoryArena.NONE) {
                 return false;
             }
         }
@@ -108,11 +131,11 @@ public class APTracingSet<T extends INode<T>> extends TracingStateSet<T> {
     public String toString() {
         StringBuilder result = new StringBuilder();
         result.append("AP: ");
-        appendWNull(result, firstB); // Failure case first.
+        appendWNull(result, history.toHistoryNode(firstB)); // Failure case first.
         result.append(" | ");
-        appendWNull(result, firstA);
+        appendWNull(result, history.toHistoryNode(firstA));
         result.append(" | ");
-        appendWNull(result, neitherSeen);
+        appendWNull(result, history.toHistoryNode(neitherSeen));
         return result.toString();
     }
 }
@@ -1,22 +1,18 @@
 package synoptic.invariants.fsmcheck;
 
-import java.util.List;
-
 import synoptic.invariants.BinaryInvariant;
-import synoptic.model.EventNode;
 import synoptic.model.interfaces.INode;
-import synoptic.model.interfaces.ITransition;
 import synoptic.util.resource.AbstractResource;
 
 /**
  * NFA state set for the APUpper constrained invariant which keeps the shortest
  * path justifying a given state being inhabited. <br />
  * <br />
- * State0 = states.get(0): Neither A nor B seen <br />
- * State1 = states.get(1): A seen <br />
- * State2 = states.get(2): A seen, then B seen within time bound or anything
+ * State0 = states[0]: Neither A nor B seen <br />
+ * State1 = states[1]: A seen <br />
+ * State2 = states[2]: A seen, then B seen within time bound or anything
  * else seen <br />
- * State3 = states.get(3): B seen first or after A but out of time bound
+ * State3 = states[3]: B seen first or after A but out of time bound
  * (permanent reject state)
  * 
  * @param <T>
@@ -37,88 +33,75 @@ public class APUpperTracingSet<T extends INode<T>> extends
     }
 
     @Override
-    protected void transition(T input,
-            List<ITransition<EventNode>> transitions, boolean isA, boolean isB,
-            List<Boolean> outOfBound, List<ConstrainedHistoryNode<T>> statesOld) {
+    protected void transition(T input, int transitions,
+            AbstractResource minMaxTime, boolean isA, boolean isB,
+            boolean[] outOfBound, int[] statesOld) {
 
         // State0 -> State0
-        if (statesOld.get(0) != null && !isA && !isB) {
-            states.set(0, statesOld.get(0));
+        if (statesOld[0] != NONE && !isA && !isB) {
+            states[0] = statesOld[0];
         }
 
         // State0 -> State1
-        if (statesOld.get(0) != null && isA) {
-            states.set(1, statesOld.get(0));
+        if (statesOld[0] != NONE && isA) {
+            states[1] = statesOld[0];
         }
 
         // State1 -> State2
-        if (statesOld.get(1) != null
-                && (isB && !outOfBound.get(1) || !isB && !isA)) {
-            states.set(2, statesOld.get(1));
+        if (statesOld[1] != NONE && (isB && !outOfBound[1] || !isB && !isA)) {
+            states[2] = statesOld[1];
         }
 
         // State2 -> State2
-        if (statesOld.get(2) != null
-                && (isB && !outOfBound.get(2) || !isB && !isA)) {
-            states.set(2, preferMaxTime(statesOld.get(2), states.get(2)));
+        if (statesOld[2] != NONE && (isB && !outOfBound[2] || !isB && !isA)) {
+            states[2] = preferMaxTime(statesOld[2], states[2]);
         }
 
         // State0 -> State3
-        if (statesOld.get(0) != null && isB) {
-            states.set(3, statesOld.get(0));
+        if (statesOld[0] != NONE && isB) {
+            states[3] = statesOld[0];
         }
 
         // State1 -> State3
-        if (statesOld.get(1) != null && isB && outOfBound.get(1)) {
-            states.set(3, preferMaxTime(statesOld.get(1), states.get(3)));
+        if (statesOld[1] != NONE && isB && outOfBound[1]) {
+            states[3] = preferMaxTime(statesOld[1], states[3]);
         }
 
         // State2 -> State3
-        if (statesOld.get(2) != null && isB && outOfBound.get(2)) {
-            states.set(3, preferMaxTime(statesOld.get(2), states.get(3)));
+        if (statesOld[2] != NONE && isB && outOfBound[2]) {
+            states[3] = preferMaxTime(statesOld[2], states[3]);
         }
 
         // State3 -> State3
-        if (statesOld.get(3) != null) {
-            states.set(3, preferMaxTime(statesOld.get(3), states.get(3)));
-        }
-
-        // Retrieve the previously-found max time delta
-        AbstractResource tMax = transitions.get(0).getTimeDelta();
-        if (tMax == null) {
-            tMax = tBound.getZeroResource();
+        if (statesOld[3] != NONE) {
+            states[3] = preferMaxTime(statesOld[3], states[3]);
         }
 
         // Update the running time deltas of any states which require it. State0
         // disregards time. State1 sets time to 0, which is the default value.
         // State2,3 require updates.
-        if (states.get(2) != null) {
-            tRunning.set(2, tMax.incrBy(states.get(2).tDelta));
-        }
-        if (states.get(3) != null) {
-            tRunning.set(3, tMax.incrBy(states.get(3).tDelta));
-        }
+        updateRunningTime(2, minMaxTime);
+        updateRunningTime(3, minMaxTime);
 
         // Extend histories for each state
-        for (int i = 0; i < states.size(); ++i) {
-            states.set(i,
-                    extend(input, states.get(i), transitions, tRunning.get(i)));
+        for (int i = 0; i < states.length; ++i) {
+            extend(i, input, transitions);
         }
 
         // The violation subpath started if we just reached State1
-        if (states.get(1) != null && statesOld.get(1) == null) {
-            states.get(1).startViolationHere();
+        if (states[1] != NONE && statesOld[1] == NONE) {
+            history.startViolation(states[1]);
         }
 
         // The violation subpath ended if we just reached State3
-        if (states.get(3) != null && statesOld.get(3) == null) {
-            states.get(3).endViolationHere();
+        if (states[3] != NONE && statesOld[3] == NONE) {
+            history.endViolation(states[3]);
         }
     }
 
     @Override
-    public HistoryNode<T> failpath() {
-        return states.get(3);
+    protected int failState() {
+        return 3;
     }
 
     @Override
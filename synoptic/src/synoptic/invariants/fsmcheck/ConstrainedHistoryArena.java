@@ -0,0 +1,357 @@
+package synoptic.invariants.fsmcheck;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import synoptic.model.EventNode;
+import synoptic.model.interfaces.INode;
+import synoptic.model.interfaces.ITransition;
+import synoptic.util.resource.AbstractResource;
+import synoptic.util.resource.ITotalResource;
+import synoptic.util.resource.LTotalResource;
+import synoptic.util.resource.NonComparableResourceException;
+
+/**
+ * An arena of the history paths of the constrained tracing state sets of one
+ * model checking run. Like a HistoryArena, it stores each path as an int
+ * handle into parallel arrays of the last node, the previous path and the
+ * length of the path. It also stores the concrete transitions used to arrive
+ * at the last node, the running time at the last node, and the violation
+ * subpath of each path. A path is built into a linked list of
+ * ConstrainedHistoryNodes only when it is queried (see toHistoryNode).
+ * <p>
+ * Times are stored in a long column, as "time values" that the arena defines:
+ * the value itself for the integer resources (ITotalResource and
+ * LTotalResource), so that running times are added and compared without
+ * allocating resources, and otherwise an index into a list of the resources.
+ * </p>
+ * <p>
+ * Unlike a HistoryArena, the arena does not dedupe extensions, since two
+ * extensions of a path with the same node can differ in their times and
+ * violation subpaths, and since the violation subpath of a new path is set
+ * after it is created. A tracing state set and all of its copies share an
+ * arena, and an arena must only be used by one thread at a time.
+ * </p>
+ */
+final class ConstrainedHistoryArena<T extends INode<T>> {
+    /** The handle of no path. */
+    static final int NONE = HistoryArena.NONE;
+
+    // How time values represent resources.
+    private static final int INT_TIMES = 0;
+    private static final int LONG_TIMES = 1;
+    private static final int BOXED_TIMES = 2;
+
+    /** The nodes of the paths, by node ID. */
+    private final List<T> nodes = new ArrayList<T>();
+    private final Map<T, Integer> nodeIDs = new HashMap<T, Integer>();
+
+    /** The transitions of the paths, by transitions ID. */
+    private final List<List<ITransition<EventNode>>> transitionLists = new ArrayList<List<ITransition<EventNode>>>();
+
+    /** A zero resource of the type (and key) of the times of this arena. */
+    private final AbstractResource zero;
+    private final int timeKind;
+    /** The resources of the time values, for BOXED_TIMES. */
+    private final List<AbstractResource> boxedTimes = new ArrayList<AbstractResource>();
+
+    // The columns of the paths.
+    private int[] lastNodes = new int[64];
+    private int[] previous = new int[64];
+    private int[] counts = new int[64];
+    private int[] transitions = new int[64];
+    private long[] times = new long[64];
+    private int[] violationStarts = new int[64];
+    private int[] violationEnds = new int[64];
+    private int size = 0;
+
+    /** The paths built so far by toHistoryNode, by handle. */
+    private final List<ConstrainedHistoryNode<T>> built = new ArrayList<ConstrainedHistoryNode<T>>();
+
+    /**
+     * Creates an arena whose times are resources of the type and key of
+     * timeType.
+     */
+    ConstrainedHistoryArena(AbstractResource timeType) {
+        zero = timeType.getZeroResource();
+        if (zero instanceof ITotalResource) {
+            timeKind = INT_TIMES;
+        } else if (zero instanceof LTotalResource) {
+            timeKind = LONG_TIMES;
+        } else {
+            timeKind = BOXED_TIMES;
+        }
+    }
+
+    // //////////////////////////////////////////////////////////////////
+    // Times
+
+    /**
+     * Returns the time value of t, which must be comparable with the times of
+     * this arena.
+     */
+    long toTime(AbstractResource t) {
+        if (!zero.isComparable(t)) {
+            throw new NonComparableResourceException(zero, t);
+        }
+        switch (timeKind) {
+        case INT_TIMES:
+            return ((ITotalResource) t).value;
+        case LONG_TIMES:
+            return ((LTotalResource) t).value;
+        default:
+            boxedTimes.add(t);
+            return boxedTimes.size() - 1;
+        }
+    }
+
+    /**
+     * Returns the resource of the time value time.
+     */
+    AbstractResource toResource(long time) {
+        switch (timeKind) {
+        case INT_TIMES:
+            return new ITotalResource((int) time, zero.getKey());
+        case LONG_TIMES:
+            return new LTotalResource(time, zero.getKey());
+        default:
+            return boxedTimes.get((int) time);
+        }
+    }
+
+    /**
+     * Returns the time value of zero.
+     */
+    long zeroTime() {
+        if (timeKind == BOXED_TIMES) {
+            return toTime(zero);
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the time value of time incremented by delta (time itself if
+     * delta is null).
+     */
+    long incrBy(long time, AbstractResource delta) {
+        if (delta == null) {
+            return time;
+        }
+        switch (timeKind) {
+        case INT_TIMES:
+            checkComparable(time, delta);
+            return (int) time + ((ITotalResource) delta).value;
+        case LONG_TIMES:
+            checkComparable(time, delta);
+            return time + ((LTotalResource) delta).value;
+        default:
+            return toTime(toResource(time).incrBy(delta));
+        }
+    }
+
+    /**
+     * Compares time incremented by delta with bound, without storing the sum.
+     */
+    int compareIncrTo(long time, AbstractResource delta, long bound) {
+        if (delta == null) {
+            return compare(time, bound);
+        }
+        switch (timeKind) {
+        case INT_TIMES:
+            checkComparable(time, delta);
+            return compareLongs((int) time + ((ITotalResource) delta).value,
+                    bound);
+        case LONG_TIMES:
+            checkComparable(time, delta);
+            return compareLongs(time + ((LTotalResource) delta).value, bound);
+        default:
+            return toResource(time).incrBy(delta).compareTo(toResource(bound));
+        }
+    }
+
+    /**
+     * Compares the time values t1 and t2.
+     */
+    int compare(long t1, long t2) {
+        if (timeKind == BOXED_TIMES) {
+            return toResource(t1).compareTo(toResource(t2));
+        }
+        return compareLongs(t1, t2);
+    }
+
+    private void checkComparable(long time, AbstractResource delta) {
+        if (!zero.isComparable(delta)) {
+            throw new NonComparableResourceException(toResource(time), delta);
+        }
+    }
+
+    private static int compareLongs(long t1, long t2) {
+        return t1 < t2 ? -1 : (t1 == t2 ? 0 : 1);
+    }
+
+    // //////////////////////////////////////////////////////////////////
+    // Paths
+
+    /**
+     * Returns the ID of transitions, to extend paths with. Consecutive calls
+     * with the same list return the same ID.
+     */
+    int addTransitions(List<ITransition<EventNode>> trans) {
+        int last = transitionLists.size() - 1;
+        if (last >= 0 && transitionLists.get(last) == trans) {
+            return last;
+        }
+        transitionLists.add(trans);
+        return last + 1;
+    }
+
+    /**
+     * Returns the path of just node, with running time time.
+     */
+    int start(T node, long time) {
+        return add(node, NONE, 0, NONE, time, 0, 0);
+    }
+
+    /**
+     * Returns prior extended with node, which was reached through the
+     * transitions with ID trans, with running time time, or NONE if prior is
+     * NONE. The new path has the violation subpath of prior.
+     */
+    int extend(T node, int prior, int trans, long time) {
+        if (prior == NONE) {
+            return NONE;
+        }
+        return add(node, prior, counts[prior] + 1, trans, time,
+                violationStarts[prior], violationEnds[prior]);
+    }
+
+    /**
+     * Returns the running time of path, which must not be NONE.
+     */
+    long getTime(int path) {
+        return times[path];
+    }
+
+    /**
+     * Starts the violation subpath of path at its last node.
+     */
+    void startViolation(int path) {
+        violationStarts[path] = counts[path];
+    }
+
+    /**
+     * Ends the violation subpath of path at its last node.
+     */
+    void endViolation(int path) {
+        violationEnds[path] = counts[path];
+    }
+
+    /**
+     * Adds the paths of the linked list of node to the arena, and returns the
+     * handle of node (NONE if node is null). imported maps the nodes already
+     * added by previous calls to their handles.
+     */
+    int importPath(ConstrainedHistoryNode<T> node,
+            IdentityHashMap<ConstrainedHistoryNode<T>, Integer> imported) {
+        if (node == null) {
+            return NONE;
+        }
+        Integer path = imported.get(node);
+        if (path == null) {
+            int prior = importPath(node.previousConst, imported);
+            int trans = node.transitions == null ? NONE
+                    : addTransitions(node.transitions);
+            path = add(node.node, prior, node.count, trans,
+                    toTime(node.tDelta), node.violationStart,
+                    node.violationEnd);
+            imported.put(node, path);
+        }
+        return path;
+    }
+
+    /**
+     * Returns path as a linked list of ConstrainedHistoryNodes, or null if
+     * path is NONE. The nodes of a path are only built once, and share the
+     * nodes of its prefixes.
+     */
+    ConstrainedHistoryNode<T> toHistoryNode(int path) {
+        if (path == NONE) {
+            return null;
+        }
+        while (built.size() < size) {
+            built.add(null);
+        }
+        if (built.get(path) != null) {
+            return built.get(path);
+        }
+
+        // The handles of the path, from its end up to the first prefix that
+        // is built.
+        int[] unbuilt = new int[counts[path] + 1];
+        int numUnbuilt = 0;
+        for (int p = path; p != NONE && built.get(p) == null; p = previous[p]) {
+            unbuilt[numUnbuilt++] = p;
+        }
+        for (int i = numUnbuilt - 1; i >= 0; i--) {
+            int p = unbuilt[i];
+            T node = nodes.get(lastNodes[p]);
+            AbstractResource time = toResource(times[p]);
+            ConstrainedHistoryNode<T> hNode;
+            if (previous[p] == NONE) {
+                hNode = new ConstrainedHistoryNode<T>(node, time);
+            } else {
+                hNode = new ConstrainedHistoryNode<T>(node, built
+                        .get(previous[p]), counts[p],
+                        transitionLists.get(transitions[p]), time);
+            }
+            hNode.violationStart = violationStarts[p];
+            hNode.violationEnd = violationEnds[p];
+            built.set(p, hNode);
+        }
+        return built.get(path);
+    }
+
+    /**
+     * Returns the number of paths in the arena.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Adds a path with the given columns to the arena, and returns it.
+     */
+    private int add(T node, int prior, int count, int trans, long time,
+            int violationStart, int violationEnd) {
+        Integer nodeID = nodeIDs.get(node);
+        if (nodeID == null) {
+            nodeID = nodes.size();
+            nodes.add(node);
+            nodeIDs.put(node, nodeID);
+        }
+
+        if (size == counts.length) {
+            int capacity = size * 2;
+            lastNodes = Arrays.copyOf(lastNodes, capacity);
+            previous = Arrays.copyOf(previous, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            transitions = Arrays.copyOf(transitions, capacity);
+            times = Arrays.copyOf(times, capacity);
+            violationStarts = Arrays.copyOf(violationStarts, capacity);
+            violationEnds = Arrays.copyOf(violationEnds, capacity);
+        }
+        int path = size++;
+        lastNodes[path] = nodeID;
+        previous[path] = prior;
+        counts[path] = count;
+        transitions[path] = trans;
+        times[path] = time;
+        violationStarts[path] = violationStart;
+        violationEnds[path] = violationEnd;
+        return path;
+    }
+}
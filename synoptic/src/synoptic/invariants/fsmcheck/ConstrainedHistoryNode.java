@@ -12,7 +12,9 @@ import synoptic.model.interfaces.ITransition;
 import synoptic.util.resource.AbstractResource;
 
 /**
- * An extension of a HistoryNode which also records time deltas
+ * An extension of a HistoryNode which also records time deltas. The
+ * constrained tracing sets store their paths in a ConstrainedHistoryArena,
+ * and only build these nodes for the paths that are queried.
  */
 public class ConstrainedHistoryNode<T extends INode<T>> extends HistoryNode<T> {
     /**
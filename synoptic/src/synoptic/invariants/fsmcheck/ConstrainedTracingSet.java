@@ -1,7 +1,9 @@
 package synoptic.invariants.fsmcheck;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Set;
 
@@ -17,7 +19,9 @@ import synoptic.util.resource.AbstractResource;
 
 /**
  * NFA state set superclass for all time-constrained invariants. It keeps the
- * shortest path justifying a given state being inhabited.
+ * shortest path justifying a given state being inhabited. The paths, and
+ * their running times, are stored in a ConstrainedHistoryArena shared by a
+ * set and all its copies.
  * 
  * @param <T>
  *            The node type, used as an input, and stored in path-history.
@@ -25,16 +29,24 @@ import synoptic.util.resource.AbstractResource;
 public abstract class ConstrainedTracingSet<T extends INode<T>> extends
         TracingStateSet<T> {
 
+    /** The path of an uninhabited state. */
+    static final int NONE = ConstrainedHistoryArena.NONE;
+
+    /**
+     * The arena of the paths of this set and its copies
+     */
+    ConstrainedHistoryArena<T> history;
+
     /**
      * Running time stored by the state machine from when t=0 state was first
-     * encountered
+     * encountered, as time values of history
      */
-    List<AbstractResource> tRunning;
+    long[] tRunning;
 
     /**
-     * Upper- or lower-bound time constraint
+     * Upper- or lower-bound time constraint, as a time value of history
      */
-    AbstractResource tBound;
+    long tBound;
     public EventType a, b;
 
     /**
@@ -43,12 +55,17 @@ public abstract class ConstrainedTracingSet<T extends INode<T>> extends
     int numStates;
 
     /**
-     * A path for each state in the appropriate state machine. An explanation
-     * for each state should be included in the documentation for any
-     * subclasses. States are stored this way due to some constrained FSM states
-     * lacking concise and descriptive names.
+     * A path (in history) for each state in the appropriate state machine, or
+     * NONE if the state is not inhabited. An explanation for each state should
+     * be included in the documentation for any subclasses. States are stored
+     * this way due to some constrained FSM states lacking concise and
+     * descriptive names.
      */
-    List<ConstrainedHistoryNode<T>> states;
+    int[] states;
+
+    // Scratch arrays for transition(), which are not shared with copies.
+    private int[] statesOld;
+    private boolean[] outOfBound;
 
     /**
      * The node (usually Partition) being transitioned _from_
@@ -61,57 +78,52 @@ public abstract class ConstrainedTracingSet<T extends INode<T>> extends
     Set<String> relation;
 
     /**
-     * Extends this node with another
+     * Extends the path at state i with node, which was reached through the
+     * transitions with ID trans, and sets the running time of the new path to
+     * the running time at state i. The state remains uninhabited if it is.
      */
-    public ConstrainedHistoryNode<T> extend(T node,
-            ConstrainedHistoryNode<T> prior,
-            List<ITransition<EventNode>> transitions, AbstractResource tDelta) {
+    void extend(int i, T node, int trans) {
+        states[i] = history.extend(node, states[i], trans, tRunning[i]);
+    }
 
-        if (prior == null) {
-            return null;
+    /**
+     * Sets the running time at state i to delta plus the running time of the
+     * path at state i, if the state is inhabited. A null delta is zero.
+     */
+    void updateRunningTime(int i, AbstractResource delta) {
+        if (states[i] != NONE) {
+            tRunning[i] = history.incrBy(history.getTime(states[i]), delta);
         }
-
-        // Make new node extended from prior
-        ConstrainedHistoryNode<T> extendedNode = new ConstrainedHistoryNode<T>(
-                node, prior, prior.count + 1, transitions, tDelta);
-        extendedNode.violationStart = prior.violationStart;
-        extendedNode.violationEnd = prior.violationEnd;
-
-        return extendedNode;
     }
 
     /**
-     * Return the non-null path with the smaller running time delta
+     * Return the inhabiting path with the smaller running time delta
      */
-    public ConstrainedHistoryNode<T> preferMinTime(
-            ConstrainedHistoryNode<T> first, ConstrainedHistoryNode<T> second) {
+    int preferMinTime(int first, int second) {
         return preferMinMaxTime(first, second, false);
     }
 
     /**
-     * Return the non-null path with the larger running time delta
+     * Return the inhabiting path with the larger running time delta
      */
-    public ConstrainedHistoryNode<T> preferMaxTime(
-            ConstrainedHistoryNode<T> first, ConstrainedHistoryNode<T> second) {
+    int preferMaxTime(int first, int second) {
         return preferMinMaxTime(first, second, true);
     }
 
     /**
-     * Return the non-null path with the smaller or larger (whichever is
+     * Return the inhabiting path with the smaller or larger (whichever is
      * requested) running time delta
      * 
      * @param findMax
      *            If TRUE, find path with larger time delta. If FALSE, smaller.
      */
-    private ConstrainedHistoryNode<T> preferMinMaxTime(
-            ConstrainedHistoryNode<T> first, ConstrainedHistoryNode<T> second,
-            boolean findMax) {
+    private int preferMinMaxTime(int first, int second, boolean findMax) {
 
-        // If one path is null, return the other
-        if (second == null) {
+        // If one path is NONE, return the other
+        if (second == NONE) {
             return first;
         }
-        if (first == null) {
+        if (first == NONE) {
             return second;
         }
 
@@ -119,7 +131,7 @@ public abstract class ConstrainedTracingSet<T extends INode<T>> extends
         // was requested
 
         // "Second" running time is greater
-        if (first.tDelta.lessThan(second.tDelta)) {
+        if (history.compare(history.getTime(first), history.getTime(second)) < 0) {
             if (findMax) {
                 return second;
             }
@@ -144,8 +156,27 @@ public abstract class ConstrainedTracingSet<T extends INode<T>> extends
      *            tracing state set
      */
     public void setStates(List<ConstrainedHistoryNode<T>> states) {
-        this.states = states;
         numStates = states.size();
+        if (history == null) {
+            for (ConstrainedHistoryNode<T> state : states) {
+                if (state != null) {
+                    history = new ConstrainedHistoryArena<T>(state.tDelta);
+                    break;
+                }
+            }
+        }
+        IdentityHashMap<ConstrainedHistoryNode<T>, Integer> imported = new IdentityHashMap<ConstrainedHistoryNode<T>, Integer>();
+        this.states = new int[numStates];
+        for (int i = 0; i < numStates; ++i) {
+            this.states[i] = states.get(i) == null ? NONE : history
+                    .importPath(states.get(i), imported);
+        }
+        if (tRunning == null || tRunning.length != numStates) {
+            tRunning = new long[numStates];
+            if (history != null) {
+                Arrays.fill(tRunning, history.zeroTime());
+            }
+        }
     }
 
     /**
@@ -174,34 +205,33 @@ public abstract class ConstrainedTracingSet<T extends INode<T>> extends
 
         a = inv.getFirst();
         b = inv.getSecond();
-        tBound = constInv.getConstraint().getThreshold();
+        AbstractResource bound = constInv.getConstraint().getThreshold();
+        history = new ConstrainedHistoryArena<T>(bound);
+        tBound = history.toTime(bound);
         this.numStates = numStates;
 
         // Get the invariant's relation
         relation = new HashSet<String>(1);
         relation.add(inv.getRelation());
 
-        states = new ArrayList<ConstrainedHistoryNode<T>>(numStates);
-        tRunning = new ArrayList<AbstractResource>(numStates);
-
         // Set up states and state times
-        for (int i = 0; i < numStates; ++i) {
-            states.add(null);
-            tRunning.add(tBound.getZeroResource());
-        }
+        states = new int[numStates];
+        Arrays.fill(states, NONE);
+        tRunning = new long[numStates];
+        Arrays.fill(tRunning, history.zeroTime());
     }
 
     @Override
     public void setInitial(T input) {
 
-        // Should only be called on INITIAL nodes
-        assert (input.isInitial());
+        // Usually called on INITIAL nodes, but the bounded checks of
+        // FsmModelChecker.runChecker start at the node before the start of a
+        // violation.
 
-        ConstrainedHistoryNode<T> newHistory = new ConstrainedHistoryNode<T>(
-                input, tBound.getZeroResource());
+        int newHistory = history.start(input, history.zeroTime());
 
         // Always start on State0
-        states.set(0, newHistory);
+        states[0] = newHistory;
 
         // This node is our new previous node (for future transitions)
         previous = input;
@@ -275,50 +305,47 @@ public abstract class ConstrainedTracingSet<T extends INode<T>> extends
 
         // Whether current running time will be outside the time bound at each
         // state
-        List<Boolean> outOfBound = new ArrayList<Boolean>(numStates);
-
-        for (int i = 0; i < numStates; ++i) {
-            outOfBound.add(null);
+        if (outOfBound == null || outOfBound.length != numStates) {
+            outOfBound = new boolean[numStates];
+            statesOld = new int[numStates];
         }
 
         // Check for times outside time bound
         for (int i = 0; i < numStates; ++i) {
 
             // Increment running time and compare to time bound
-            AbstractResource newTime = tRunning.get(i).incrBy(minMaxTime);
-            int tComparison = newTime.compareTo(tBound);
+            int tComparison = history.compareIncrTo(tRunning[i], minMaxTime,
+                    tBound);
 
             // Within bound if upper and <= bound or if lower >= bound
-            if (isUpper && tComparison <= 0 || !isUpper && tComparison >= 0) {
-                outOfBound.set(i, false);
-            }
-
-            // Outside of bound
-            else {
-                outOfBound.set(i, true);
-            }
+            outOfBound[i] = !(isUpper && tComparison <= 0 || !isUpper
+                    && tComparison >= 0);
         }
 
-        // Keep old paths before this transition
-        List<ConstrainedHistoryNode<T>> statesOld = states;
-
-        // Final state nodes after the transition will be stored in s
-        states = new ArrayList<ConstrainedHistoryNode<T>>(numStates);
-        for (int i = 0; i < numStates; ++i) {
-            states.add(null);
-        }
+        // Keep old paths before this transition, and store the final state
+        // paths after the transition in the other array
+        int[] sOld = states;
+        states = statesOld;
+        statesOld = sOld;
+        Arrays.fill(states, NONE);
 
         // Call transition code specific to each invariant
-        transition(input, minMaxTrans, isA, isB, outOfBound, statesOld);
+        transition(input, history.addTransitions(minMaxTrans), minMaxTime,
+                isA, isB, outOfBound, statesOld);
 
         // The node we just transitioned _to_ is our new previous node (for
         // future transitions)
         previous = input;
     }
 
-    protected abstract void transition(T input,
-            List<ITransition<EventNode>> transitions, boolean isA, boolean isB,
-            List<Boolean> outOfBound, List<ConstrainedHistoryNode<T>> sOld);
+    /**
+     * Sets states to the paths after transitioning to input from the paths in
+     * sOld, through the transitions with ID trans, whose time delta is
+     * minMaxTime (null for no time).
+     */
+    protected abstract void transition(T input, int trans,
+            AbstractResource minMaxTime, boolean isA, boolean isB,
+            boolean[] outOfBound, int[] sOld);
 
     /**
      * Get the event transition(s) with the smallest time delta
@@ -421,26 +448,41 @@ public abstract class ConstrainedTracingSet<T extends INode<T>> extends
             previous = casted.previous;
         }
 
+        assert casted.history == history;
         for (int i = 0; i < numStates; ++i) {
             // For upper-bound types, keep the state with the higher time
             if (isUpper) {
-                states.set(i,
-                        preferMaxTime(states.get(i), casted.states.get(i)));
+                states[i] = preferMaxTime(states[i], casted.states[i]);
             }
 
             // For lower-bound types, keep the state with the lower time
             else {
-                states.set(i,
-                        preferMinTime(states.get(i), casted.states.get(i)));
+                states[i] = preferMinTime(states[i], casted.states[i]);
             }
 
             // Update the running time at this state
-            if (states.get(i) != null) {
-                tRunning.set(i, states.get(i).tDelta);
+            if (states[i] != NONE) {
+                tRunning[i] = history.getTime(states[i]);
             }
         }
     }
 
+    /**
+     * Returns the index of the (permanent reject) state that indicates a
+     * failure
+     */
+    protected abstract int failState();
+
+    @Override
+    public HistoryNode<T> failpath() {
+        return history.toHistoryNode(states[failState()]);
+    }
+
+    @Override
+    public boolean isFail() {
+        return states[failState()] != NONE;
+    }
+
     /**
      * Return a new, empty ConstrainedTracingSet object of the same subtype as
      * the current object
@@ -453,16 +495,45 @@ public abstract class ConstrainedTracingSet<T extends INode<T>> extends
 
         result.a = a;
         result.b = b;
+        result.history = history;
         result.tBound = tBound;
         result.numStates = numStates;
-        result.states = new ArrayList<ConstrainedHistoryNode<T>>(states);
-        result.tRunning = new ArrayList<AbstractResource>(tRunning);
+        result.states = states.clone();
+        result.tRunning = tRunning == null ? null : tRunning.clone();
         result.previous = previous;
         result.relation = relation;
 
         return result;
     }
 
+    @Override
+    public void setTo(TracingStateSet<T> other) {
+        ConstrainedTracingSet<T> casted = (ConstrainedTracingSet<T>) other;
+
+        a = casted.a;
+        b = casted.b;
+        history = casted.history;
+        tBound = casted.tBound;
+        numStates = casted.numStates;
+        // The arrays are refilled rather than shared with other, since
+        // mergeWith and transition set their elements.
+        if (states == null || states.length != casted.states.length) {
+            states = casted.states.clone();
+        } else {
+            System.arraycopy(casted.states, 0, states, 0, states.length);
+        }
+        if (casted.tRunning == null) {
+            tRunning = null;
+        } else if (tRunning == null
+                || tRunning.length != casted.tRunning.length) {
+            tRunning = casted.tRunning.clone();
+        } else {
+            System.arraycopy(casted.tRunning, 0, tRunning, 0, tRunning.length);
+        }
+        previous = casted.previous;
+        relation = casted.relation;
+    }
+
     @Override
     public boolean isSubset(TracingStateSet<T> o) {
         // Cast so that we can access FSM states
@@ -470,13 +541,9 @@ public abstract class ConstrainedTracingSet<T extends INode<T>> extends
 
         // Interate over all of this tracing set's states
         for (int i = 0; i < numStates; ++i) {
-            ConstrainedHistoryNode<T> thisState = states.get(i);
-
             // Check if this state is inhabited
-            if (thisState != null) {
-                ConstrainedHistoryNode<T> otherState = other.states.get(i);
-
-                if (otherState == null) {
+            if (states[i] != NONE) {
+                if (other.states[i] == NONE) {
                     // This tracing set inhabits a state 'other' doesn't and
                     // therefore is NOT a subset of 'other'
                     return false;
@@ -496,11 +563,11 @@ public abstract class ConstrainedTracingSet<T extends INode<T>> extends
                 + ": ");
 
         // Print all current FSM states
-        for (int i = 0; i < states.size(); ++i) {
-            appendWNull(result, states.get(i));
+        for (int i = 0; i < states.length; ++i) {
+            appendWNull(result, history.toHistoryNode(states[i]));
 
             // Print separator after all but the last state
-            if (i < states.size() - 1) {
+            if (i < states.length - 1) {
                 result.append(" | ");
             }
         }
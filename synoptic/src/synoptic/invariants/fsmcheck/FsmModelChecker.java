@@ -1,13 +1,17 @@
 package synoptic.invariants.fsmcheck;
 
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
-import java.util.LinkedHashMap;
-import java.util.LinkedList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Queue;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 import synoptic.invariants.AlwaysFollowedInvariant;
@@ -45,27 +49,77 @@ public class FsmModelChecker {
      *            The initial state of each node.
      * @param graph
      *            The graph to analyze.
-     * @return The associations between node and stateset.
+     * @return The (read-only) associations between node and stateset.
      */
     public static <Node extends INode<Node>, StateSet extends IStateSet<Node, StateSet>> Map<Node, StateSet> runChecker(
             IStateSet<Node, StateSet> initial, IGraph<Node> graph,
             boolean earlyExit) {
+        return runChecker(initial, graph,
+                Collections.singleton(graph.getDummyInitialNode()),
+                Collections.<Node> emptySet(), earlyExit);
+    }
+
+    /**
+     * A bounded version of runChecker, which checks a subgraph of graph: the
+     * states start at the startNodes (rather than at the initial node), and
+     * are not propagated past the stopNodes (rather than the terminal node).
+     * Only the nodes of graph.getNodes() are checked, so that the subgraph
+     * can be restricted further by the nodes that graph returns.
+     * 
+     * @param initial
+     *            The initial state of each node.
+     * @param graph
+     *            The graph to analyze.
+     * @param startNodes
+     *            The nodes at which the states start, as if each of them were
+     *            the initial node.
+     * @param stopNodes
+     *            The nodes whose states are not propagated to their adjacent
+     *            nodes.
+     * @return The (read-only) associations between node and stateset.
+     */
+    public static <Node extends INode<Node>, StateSet extends IStateSet<Node, StateSet>> Map<Node, StateSet> runChecker(
+            IStateSet<Node, StateSet> initial, IGraph<Node> graph,
+            Set<Node> startNodes, Set<Node> stopNodes, boolean earlyExit) {
 
-        // A queue of nodes that we should process.
-        Queue<Node> workList = new LinkedList<Node>();
+        // Maps a node to a set of states. The nodes are indexed by dense IDs,
+        // and the states and adjacency of a node are kept at its ID.
+        NodeStates<Node, StateSet> states = new NodeStates<Node, StateSet>(
+                initial, graph.getNodes());
+        int numNodes = states.size();
+        int[][] adjacent = new int[numNodes][];
 
-        // Maps a node to a set of states.
-        Map<Node, StateSet> states = new LinkedHashMap<Node, StateSet>();
+        BitSet stops = new BitSet(numNodes);
+        for (Node stop : stopNodes) {
+            int id = states.idOf(stop);
+            if (id >= 0) {
+                stops.set(id);
+            }
+        }
+
+        // A queue of the IDs of the nodes that we should process. A node is
+        // in the queue at most once (see inQueue), so the queue is a ring
+        // buffer of numNodes IDs.
+        int[] workList = new int[Math.max(numNodes, 1)];
+        int head = 0;
+        int size = 0;
+        BitSet inQueue = new BitSet(numNodes);
 
-        // Populate the state map with initial states.
-        for (Node node : graph.getNodes()) {
-            states.put(node, initial.copy());
+        // Add the start (usually, initial) nodes to the worklist.
+        for (Node start : startNodes) {
+            int id = states.idOf(start);
+            assert id >= 0;
+            states.stateAt(id).setInitial(start);
+            if (!inQueue.get(id)) {
+                workList[(head + size) % numNodes] = id;
+                size++;
+                inQueue.set(id);
+            }
         }
 
-        // Add initial node to the worklist.
-        Node node = graph.getDummyInitialNode();
-        workList.add(node);
-        states.get(node).setInitial(node);
+        // The state transitioned along an edge is applied to this scratch
+        // set, rather than to a new copy of the current state for each edge.
+        StateSet updatesToTargetStates = null;
 
         // Actual model checking step - takes an item off the worklist, and
         // transitions the state found at that node, using the labels of all
@@ -75,14 +129,32 @@ public class FsmModelChecker {
         // change. Therefore, only in the case where it's not a subset is the
         // merge performed and the destination node added to the worklist
         // (the changed states need to be propagated).
-        while (!workList.isEmpty()) {
-            node = workList.remove();
-            StateSet current = states.get(node);
+        while (size > 0) {
+            int id = workList[head];
+            head = (head + 1) % numNodes;
+            size--;
+            inQueue.clear(id);
+            if (stops.get(id)) {
+                continue;
+            }
+            StateSet current = states.stateAt(id);
 
             // Process all the nodes that are adjacent to the current node.
-            for (Node target : graph.getAdjacentNodes(node)) {
-                StateSet oldTargetStates = states.get(target);
-                StateSet updatesToTargetStates = current.copy();
+            // Adjacent nodes outside of the checked (sub)graph are skipped.
+            int[] targets = adjacent[id];
+            if (targets == null) {
+                targets = states.idsOf(graph.getAdjacentNodes(states
+                        .nodeAt(id)));
+                adjacent[id] = targets;
+            }
+            for (int targetID : targets) {
+                Node target = states.nodeAt(targetID);
+                StateSet oldTargetStates = states.stateAt(targetID);
+                if (updatesToTargetStates == null) {
+                    updatesToTargetStates = current.copy();
+                } else {
+                    updatesToTargetStates.setTo(current);
+                }
                 updatesToTargetStates.transition(target);
 
                 // Evaluate isSubset _before_ the merge.
@@ -97,8 +169,10 @@ public class FsmModelChecker {
                 // If updatesToTargetStates is subset of targetStates, then NOT
                 // re-exploring the graph starting from the current node
                 // prevents infinitely traversing loops
-                if (!isSubset && !workList.contains(target)) {
-                    workList.add(target);
+                if (!isSubset && !inQueue.get(targetID)) {
+                    workList[(head + size) % numNodes] = targetID;
+                    size++;
+                    inQueue.set(targetID);
                 }
             }
         }
@@ -106,6 +180,117 @@ public class FsmModelChecker {
         return states;
     }
 
+    /**
+     * The states of the nodes of a graph, which runChecker yields. The nodes
+     * are indexed by dense IDs, in the order of the graph's nodes. The
+     * stateset of a node is a copy of the initial stateset, which is only
+     * created once the node is reached or looked up.
+     */
+    private static final class NodeStates<Node, StateSet extends IStateSet<Node, StateSet>>
+            extends AbstractMap<Node, StateSet> {
+        private final IStateSet<Node, StateSet> initial;
+        private final List<Node> nodes;
+        private final Map<Node, Integer> ids;
+        private final List<StateSet> states;
+
+        NodeStates(IStateSet<Node, StateSet> initial, Set<Node> graphNodes) {
+            this.initial = initial;
+            nodes = new ArrayList<Node>(graphNodes);
+            ids = new HashMap<Node, Integer>(nodes.size() * 2);
+            states = new ArrayList<StateSet>(nodes.size());
+            for (int i = 0; i < nodes.size(); i++) {
+                ids.put(nodes.get(i), i);
+                states.add(null);
+            }
+        }
+
+        /** Returns the ID of node, or -1 if it is not a node of the graph. */
+        int idOf(Object node) {
+            Integer id = ids.get(node);
+            return id == null ? -1 : id;
+        }
+
+        /** Returns the IDs of the nodes of adjacent that are in the graph. */
+        int[] idsOf(Set<Node> adjacent) {
+            int[] ret = new int[adjacent.size()];
+            int size = 0;
+            for (Node node : adjacent) {
+                int id = idOf(node);
+                if (id >= 0) {
+                    ret[size++] = id;
+                }
+            }
+            return size == ret.length ? ret : Arrays.copyOf(ret, size);
+        }
+
+        Node nodeAt(int id) {
+            return nodes.get(id);
+        }
+
+        StateSet stateAt(int id) {
+            StateSet state = states.get(id);
+            if (state == null) {
+                state = initial.copy();
+                states.set(id, state);
+            }
+            return state;
+        }
+
+        @Override
+        public StateSet get(Object node) {
+            int id = idOf(node);
+            return id < 0 ? null : stateAt(id);
+        }
+
+        @Override
+        public boolean containsKey(Object node) {
+            return idOf(node) >= 0;
+        }
+
+        @Override
+        public int size() {
+            return nodes.size();
+        }
+
+        @Override
+        public Set<Entry<Node, StateSet>> entrySet() {
+            return new AbstractSet<Entry<Node, StateSet>>() {
+                @Override
+                public int size() {
+                    return nodes.size();
+                }
+
+                @Override
+                public Iterator<Entry<Node, StateSet>> iterator() {
+                    return new Iterator<Entry<Node, StateSet>>() {
+                        private int next = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < nodes.size();
+                        }
+
+                        @Override
+                        public Entry<Node, StateSet> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            Entry<Node, StateSet> ret = new SimpleImmutableEntry<Node, StateSet>(
+                                    nodes.get(next), stateAt(next));
+                            next++;
+                            return ret;
+                        }
+
+                        @Override
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+            };
+        }
+    }
+
     // Helper which invokes runChecker given an fsm state set, and process the
     // resulting states into a summary failure-indicating BitSet.
     protected static <T extends INode<T>> BitSet whichFail(
@@ -170,23 +355,13 @@ public class FsmModelChecker {
     }
 
     /**
-     * Runs invariant-checking finite state machines over the synoptic.model
-     * graph, while keeping history paths which justify any particular state.
-     * This allows us to report counterexample paths, where a failure state is
-     * reached on a final node.
-     * 
-     * @param invariant
-     *            The invariant to test.
-     * @return The shortest counterexample path for this invariant.
+     * Returns a new tracing state set, which keeps the paths that justify its
+     * states, of the finite state machine of invariant.
      */
     @SuppressWarnings("unchecked")
-    public static <Node extends INode<Node>> CExamplePath<Node> getCounterExample(
-            BinaryInvariant invariant, IGraph<Node> graph) {
-
+    public static <Node extends INode<Node>> TracingStateSet<Node> newTracingSet(
+            BinaryInvariant invariant) {
         TracingStateSet<Node> stateset = null;
-        if (invariant == null) {
-            return null;
-        }
         Class<BinaryInvariant> invClass = (Class<BinaryInvariant>) invariant
                 .getClass();
         if (invClass.equals(AlwaysFollowedInvariant.class)) {
@@ -234,23 +409,47 @@ public class FsmModelChecker {
             }
         }
 
+        return stateset;
+    }
+
+    /**
+     * Runs invariant-checking finite state machines over the synoptic.model
+     * graph, while keeping history paths which justify any particular state.
+     * This allows us to report counterexample paths, where a failure state is
+     * reached on a final node.
+     * 
+     * @param invariant
+     *            The invariant to test.
+     * @return The shortest counterexample path for this invariant.
+     */
+    public static <Node extends INode<Node>> CExamplePath<Node> getCounterExample(
+            BinaryInvariant invariant, IGraph<Node> graph) {
+
+        if (invariant == null) {
+            return null;
+        }
+        TracingStateSet<Node> stateset = newTracingSet(invariant);
+
         // Return the shortest path, ending on a final node, which causes the
         // invariant to fail.
         HistoryNode<Node> shortestPath = null;
         Set<Entry<Node, TracingStateSet<Node>>> entrySet = runChecker(stateset,
                 graph, true).entrySet();
         for (Entry<Node, TracingStateSet<Node>> e : entrySet) {
-            TracingStateSet<Node> stateSet = e.getValue();
             Node node = e.getKey();
+            if (!node.isTerminal()) {
+                // We must have ended up at the terminal node, so only the
+                // paths at the terminal node are built.
+                continue;
+            }
+            TracingStateSet<Node> stateSet = e.getValue();
 
             HistoryNode<Node> path = stateSet.failpath();
 
-            // 1. We must have ended up at the terminal node.
-            // 2. Invariant is not satisfied, so we have a history path for it.
-            // 3. If we had counter-example path in the past, that path is
+            // 1. Invariant is not satisfied, so we have a history path for it.
+            // 2. If we had counter-example path in the past, that path is
             // longer (because we want the shortest).
-            if (node.isTerminal()
-                    && path != null
+            if (path != null
                     && (shortestPath == null || shortestPath.count > path.count)) {
                 shortestPath = path;
             }
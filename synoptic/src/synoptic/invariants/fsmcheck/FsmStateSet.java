@@ -164,11 +164,12 @@ public abstract class FsmStateSet<T extends INode<T>> implements
         assert other.invariantsMap == invariantsMap;
         for (int j = 0; j < sets.size(); j++) {
             BitSet thisSet = sets.get(j);
-            BitSet s = (BitSet) thisSet.clone();
-            s.and(other.sets.get(j));
-            s.xor(thisSet); // (intersection != this) == 0 for subset
-            if (!s.isEmpty()) {
-                return false;
+            BitSet otherSet = other.sets.get(j);
+            for (int i = thisSet.nextSetBit(0); i >= 0; i = thisSet
+                    .nextSetBit(i + 1)) {
+                if (!otherSet.get(i)) {
+                    return false;
+                }
             }
         }
         return true;
@@ -214,6 +215,18 @@ public abstract class FsmStateSet<T extends INode<T>> implements
         return result;
     }
 
+    @Override
+    public void setTo(FsmStateSet<T> other) {
+        assert other.invariantsMap == invariantsMap;
+        assert other.sets.size() == sets.size();
+        count = other.count;
+        for (int i = 0; i < sets.size(); i++) {
+            BitSet s = sets.get(i);
+            s.clear();
+            s.or(other.sets.get(i));
+        }
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public boolean equals(Object otherObj) {
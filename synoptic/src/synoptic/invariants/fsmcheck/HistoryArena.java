@@ -0,0 +1,196 @@
+package synoptic.invariants.fsmcheck;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import synoptic.model.interfaces.INode;
+
+/**
+ * An arena of the history paths of the tracing state sets of one model
+ * checking run. A path is an int handle into the arena, which stores the last
+ * node, the previous path, and the length of each path in parallel int
+ * arrays. Paths share prefixes, and extending the same path with the same
+ * node twice yields the same handle, so the arena holds each distinct path
+ * once. A path is built into a linked list of HistoryNodes only when it is
+ * queried (see toHistoryNode), which is usually just for the counter-example.
+ * <p>
+ * A tracing state set and all of its copies share an arena, and an arena
+ * must only be used by one thread at a time.
+ * </p>
+ */
+final class HistoryArena<T extends INode<T>> {
+    /** The handle of no path. */
+    static final int NONE = -1;
+
+    /** The nodes of the paths, by node ID. */
+    private final List<T> nodes = new ArrayList<T>();
+    private final Map<T, Integer> nodeIDs = new HashMap<T, Integer>();
+
+    // The last node ID, the previous path, and the length of each path.
+    private int[] lastNodes = new int[64];
+    private int[] previous = new int[64];
+    private int[] counts = new int[64];
+    private int size = 0;
+
+    /**
+     * An open-addressing hash table from (previous path, last node ID) keys to
+     * paths, which finds existing extensions of a path. The slots of keys are
+     * empty where paths holds NONE.
+     */
+    private long[] keys = new long[128];
+    private int[] paths = newEmptySlots(128);
+
+    /** The paths built so far by toHistoryNode, by handle. */
+    private final List<HistoryNode<T>> built = new ArrayList<HistoryNode<T>>();
+
+    /**
+     * Returns the path of just node.
+     */
+    int start(T node) {
+        return add(NONE, node, 1);
+    }
+
+    /**
+     * Returns prior extended with node, or NONE if prior is NONE.
+     */
+    int extend(T node, int prior) {
+        if (prior == NONE) {
+            return NONE;
+        }
+        return add(prior, node, counts[prior] + 1);
+    }
+
+    /**
+     * Returns the shorter of the two paths that are not NONE (b if they have
+     * the same length), or NONE if both are.
+     */
+    int preferShorter(int a, int b) {
+        if (b == NONE) {
+            return a;
+        }
+        if (a == NONE) {
+            return b;
+        }
+        if (counts[a] < counts[b]) {
+            return a;
+        }
+        return b;
+    }
+
+    /**
+     * Returns path as a linked list of HistoryNodes, or null if path is NONE.
+     * The HistoryNodes of a path are only built once, and share the
+     * HistoryNodes of its prefixes.
+     */
+    HistoryNode<T> toHistoryNode(int path) {
+        if (path == NONE) {
+            return null;
+        }
+        while (built.size() < size) {
+            built.add(null);
+        }
+        if (built.get(path) != null) {
+            return built.get(path);
+        }
+
+        // The handles of the path, from its end up to the first prefix that
+        // is built.
+        int[] unbuilt = new int[counts[path]];
+        int numUnbuilt = 0;
+        for (int p = path; p != NONE && built.get(p) == null; p = previous[p]) {
+            unbuilt[numUnbuilt++] = p;
+        }
+        for (int i = numUnbuilt - 1; i >= 0; i--) {
+            int p = unbuilt[i];
+            HistoryNode<T> prior = previous[p] == NONE ? null : built
+                    .get(previous[p]);
+            built.set(p, new HistoryNode<T>(nodes.get(lastNodes[p]), prior,
+                    counts[p]));
+        }
+        return built.get(path);
+    }
+
+    /**
+     * Returns the number of distinct paths in the arena.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the path that extends prior with node, and has length count,
+     * adding it to the arena if it does not exist yet.
+     */
+    private int add(int prior, T node, int count) {
+        Integer nodeID = nodeIDs.get(node);
+        if (nodeID == null) {
+            nodeID = nodes.size();
+            nodes.add(node);
+            nodeIDs.put(node, nodeID);
+        }
+
+        long key = ((long) (prior + 1) << 32) | nodeID;
+        int slot = findSlot(keys, paths, key);
+        if (paths[slot] != NONE) {
+            return paths[slot];
+        }
+
+        if (size == counts.length) {
+            int capacity = size * 2;
+            lastNodes = Arrays.copyOf(lastNodes, capacity);
+            previous = Arrays.copyOf(previous, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+        }
+        int path = size++;
+        lastNodes[path] = nodeID;
+        previous[path] = prior;
+        counts[path] = count;
+
+        keys[slot] = key;
+        paths[slot] = path;
+        if (size * 2 > keys.length) {
+            rehash();
+        }
+        return path;
+    }
+
+    /**
+     * Doubles the capacity of the hash table.
+     */
+    private void rehash() {
+        long[] newKeys = new long[keys.length * 2];
+        int[] newPaths = newEmptySlots(keys.length * 2);
+        for (int i = 0; i < keys.length; i++) {
+            if (paths[i] != NONE) {
+                int slot = findSlot(newKeys, newPaths, keys[i]);
+                newKeys[slot] = keys[i];
+                newPaths[slot] = paths[i];
+            }
+        }
+        keys = newKeys;
+        paths = newPaths;
+    }
+
+    /**
+     * Returns the slot of key in the table, or the empty slot where it would
+     * be added.
+     */
+    private static int findSlot(long[] keys, int[] paths, long key) {
+        int mask = keys.length - 1;
+        long h = key * 0x9E3779B97F4A7C15L;
+        int slot = (int) (h ^ (h >>> 32)) & mask;
+        while (paths[slot] != NONE && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static int[] newEmptySlots(int capacity) {
+        int[] slots = new int[capacity];
+        Arrays.fill(slots, NONE);
+        return slots;
+    }
+}
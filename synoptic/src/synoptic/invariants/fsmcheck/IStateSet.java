@@ -43,4 +43,12 @@ public interface IStateSet<T, StateSetType> {
      * Version of clone which doesn't require unsafe casting.
      */
     StateSetType copy();
+
+    /**
+     * Mutates this stateset to inhabit exactly the states of other, as if it
+     * were other.copy(), but reusing the storage of this stateset. Other
+     * must be of the same type, and track the same invariants, as this
+     * stateset.
+     */
+    void setTo(StateSetType other);
 }
@@ -5,15 +5,22 @@ import synoptic.model.event.EventType;
 import synoptic.model.interfaces.INode;
 
 public class IntrByTracingSet<T extends INode<T>> extends TracingStateSet<T> {
-    HistoryNode<T> aNotSeen;
-    HistoryNode<T> aSeenOnce;
-    HistoryNode<T> aSeenMoreThanOnce;
+    int aNotSeen = HistoryArena.NONE;
+    int aSeenOnce = HistoryArena.NONE;
+    int aSeenMoreThanOnce = HistoryArena.NONE;
 
     EventType a, b;
+    // The arena of the paths of this set and its copies.
+    final HistoryArena<T> history;
 
     public IntrByTracingSet(EventType a, EventType b) {
+        this(a, b, new HistoryArena<T>());
+    }
+
+    private IntrByTracingSet(EventType a, EventType b, HistoryArena<T> history) {
         this.a = a;
         this.b = b;
+        this.history = history;
     }
 
     public IntrByTracingSet(BinaryInvariant inv) {
@@ -23,8 +30,8 @@ public class IntrByTracingSet<T extends INode<T>> extends TracingStateSet<T> {
     @Override
     public void setInitial(T x) {
         EventType name = x.getEType();
-        HistoryNode<T> newHistory = new HistoryNode<T>(x, null, 1);
-        aNotSeen = aSeenOnce = aSeenMoreThanOnce = null;
+        int newHistory = history.start(x);
+        aNotSeen = aSeenOnce = aSeenMoreThanOnce = HistoryArena.NONE;
         if (a.equals(name)) {
             aSeenOnce = newHistory;
         } else {
@@ -40,59 +47,75 @@ public class IntrByTracingSet<T extends INode<T>> extends TracingStateSet<T> {
         boolean isB = b.equals(name);
 
         if (isA) {
-            aSeenMoreThanOnce = preferShorter(aSeenOnce, aSeenMoreThanOnce);
+            aSeenMoreThanOnce = history.preferShorter(aSeenOnce, aSeenMoreThanOnce);
             aSeenOnce = aNotSeen;
-            aNotSeen = null;
+            aNotSeen = HistoryArena.NONE;
         }
 
         if (isB) {
-            aNotSeen = preferShorter(aSeenOnce, aNotSeen);
-            aSeenOnce = null;
+            aNotSeen = history.preferShorter(aSeenOnce, aNotSeen);
+            aSeenOnce = HistoryArena.NONE;
         }
 
         // Advance history for all states.
-        aNotSeen = extend(x, aNotSeen);
-        aSeenOnce = extend(x, aSeenOnce);
-        aSeenMoreThanOnce = extend(x, aSeenMoreThanOnce);
+        aNotSeen = history.extend(x, aNotSeen);
+        aSeenOnce = history.extend(x, aSeenOnce);
+        aSeenMoreThanOnce = history.extend(x, aSeenMoreThanOnce);
     }
 
     @Override
     public HistoryNode<T> failpath() {
-        return aSeenMoreThanOnce;
+        return history.toHistoryNode(aSeenMoreThanOnce);
+    }
+
+    @Override
+    public boolean isFail() {
+        return aSeenMoreThanOnce != HistoryArena.NONE;
     }
 
     @Override
     public IntrByTracingSet<T> copy() {
-        IntrByTracingSet<T> result = new IntrByTracingSet<T>(a, b);
+        IntrByTracingSet<T> result = new IntrByTracingSet<T>(a, b, history);
         result.aNotSeen = aNotSeen;
         result.aSeenOnce = aSeenOnce;
         result.aSeenMoreThanOnce = aSeenMoreThanOnce;
         return result;
     }
 
+    @Override
+    public void setTo(TracingStateSet<T> other) {
+        IntrByTracingSet<T> casted = (IntrByTracingSet<T>) other;
+        assert casted.history == history;
+        aNotSeen = casted.aNotSeen;
+        aSeenOnce = casted.aSeenOnce;
+        aSeenMoreThanOnce = casted.aSeenMoreThanOnce;
+    }
+
     @Override
     public void mergeWith(TracingStateSet<T> other) {
         IntrByTracingSet<T> casted = (IntrByTracingSet<T>) other;
-        aNotSeen = preferShorter(aNotSeen, casted.aNotSeen);
-        aSeenOnce = preferShorter(aSeenOnce, casted.aSeenOnce);
-        aSeenMoreThanOnce = preferShorter(aSeenMoreThanOnce, casted.aSeenMoreThanOnce);
+        assert casted.history == history;
+        aNotSeen = history.preferShorter(aNotSeen, casted.aNotSeen);
+        aSeenOnce = history.preferShorter(aSeenOnce, casted.aSeenOnce);
+        aSeenMoreThanOnce = history.preferShorter(aSeenMoreThanOnce, casted.aSeenMoreThanOnce);
     }
 
     @Override
     public boolean isSubset(TracingStateSet<T> other) {
         IntrByTracingSet<T> casted = (IntrByTracingSet<T>) other;
-        if (casted.aNotSeen == null) {
-            if (aNotSeen != null) {
+        assert casted.history == history;
+        if (casted.aNotSeen == HistoryArena.NONE) {
+            if (aNotSeen != HistoryArena.NONE) {
                 return false;
             }
         }
-        if (casted.aSeenOnce == null) {
-            if (aSeenOnce != null) {
+        if (casted.aSeenOnce == HistoryArena.NONE) {
+            if (aSeenOnce != HistoryArena.NONE) {
                 return false;
             }
         }
-        if (casted.aSeenMoreThanOnce == null) {
-            if (aSeenMoreThanOnce != null) {
+        if (casted.aSeenMoreThanOnce == HistoryArena.NONE) {
+            if (aSeenMoreThanOnce != HistoryArena.NONE) {
                 return false;
             }
         }
@@ -103,11 +126,11 @@ public class IntrByTracingSet<T extends INode<T>> extends TracingStateSet<T> {
     public String toString() {
         StringBuilder result = new StringBuilder();
         result.append("IntrBy: ");
-        appendWNull(result, aSeenMoreThanOnce); // Failure case first.
+        appendWNull(result, history.toHistoryNode(aSeenMoreThanOnce)); // Failure case first.
         result.append(" | ");
-        appendWNull(result, aSeenOnce);
+        appendWNull(result, history.toHistoryNode(aSeenOnce));
         result.append(" | ");
-        appendWNull(result, aNotSeen);
+        appendWNull(result, history.toHistoryNode(aNotSeen));
         return result.toString();
     }
 }
@@ -14,15 +14,22 @@ import synoptic.model.interfaces.INode;
  * @see FsmStateSet
  */
 public class NFbyTracingSet<T extends INode<T>> extends TracingStateSet<T> {
-    HistoryNode<T> aNotSeen; // A not seen
-    HistoryNode<T> aSeen; // A seen (and no Bs yet after it)
-    HistoryNode<T> bSeenAfter; // A seen, followed by B -- failure state
+    int aNotSeen = HistoryArena.NONE; // A not seen
+    int aSeen = HistoryArena.NONE; // A seen (and no Bs yet after it)
+    int bSeenAfter = HistoryArena.NONE; // A seen, followed by B -- failure state
 
     EventType a, b;
+    // The arena of the paths of this set and its copies.
+    final HistoryArena<T> history;
 
     public NFbyTracingSet(EventType a, EventType b) {
+        this(a, b, new HistoryArena<T>());
+    }
+
+    private NFbyTracingSet(EventType a, EventType b, HistoryArena<T> history) {
         this.a = a;
         this.b = b;
+        this.history = history;
     }
 
     public NFbyTracingSet(BinaryInvariant inv) {
@@ -32,8 +39,8 @@ public class NFbyTracingSet<T extends INode<T>> extends TracingStateSet<T> {
     @Override
     public void setInitial(T x) {
         EventType name = x.getEType();
-        HistoryNode<T> newHistory = new HistoryNode<T>(x, null, 1);
-        aNotSeen = aSeen = bSeenAfter = null;
+        int newHistory = history.start(x);
+        aNotSeen = aSeen = bSeenAfter = HistoryArena.NONE;
         if (a.equals(name)) {
             aSeen = newHistory;
         } else {
@@ -46,61 +53,77 @@ public class NFbyTracingSet<T extends INode<T>> extends TracingStateSet<T> {
         EventType name = x.getEType();
 
         if (b.equals(name)) {
-            bSeenAfter = preferShorter(aSeen, bSeenAfter);
-            aSeen = null;
+            bSeenAfter = history.preferShorter(aSeen, bSeenAfter);
+            aSeen = HistoryArena.NONE;
         }
         /*
          * NOTE: there is no else here, because for this invariant, isA and isB
          * can be simultaneously true (A NFby A, eg, A is singleton).
          */
         if (a.equals(name)) {
-            aSeen = preferShorter(aNotSeen, aSeen);
-            aNotSeen = null;
+            aSeen = history.preferShorter(aNotSeen, aSeen);
+            aNotSeen = HistoryArena.NONE;
         }
 
         // Advance history for all states.
-        aNotSeen = extend(x, aNotSeen);
-        aSeen = extend(x, aSeen);
-        bSeenAfter = extend(x, bSeenAfter);
+        aNotSeen = history.extend(x, aNotSeen);
+        aSeen = history.extend(x, aSeen);
+        bSeenAfter = history.extend(x, bSeenAfter);
     }
 
     @Override
     public HistoryNode<T> failpath() {
-        return bSeenAfter;
+        return history.toHistoryNode(bSeenAfter);
+    }
+
+    @Override
+    public boolean isFail() {
+        return bSeenAfter != HistoryArena.NONE;
     }
 
     @Override
     public NFbyTracingSet<T> copy() {
-        NFbyTracingSet<T> result = new NFbyTracingSet<T>(a, b);
+        NFbyTracingSet<T> result = new NFbyTracingSet<T>(a, b, history);
         result.aNotSeen = aNotSeen;
         result.aSeen = aSeen;
         result.bSeenAfter = bSeenAfter;
         return result;
     }
 
+    @Override
+    public void setTo(TracingStateSet<T> other) {
+        NFbyTracingSet<T> casted = (NFbyTracingSet<T>) other;
+        assert casted.history == history;
+        aNotSeen = casted.aNotSeen;
+        aSeen = casted.aSeen;
+        bSeenAfter = casted.bSeenAfter;
+    }
+
     @Override
     public void mergeWith(TracingStateSet<T> other) {
         NFbyTracingSet<T> casted = (NFbyTracingSet<T>) other;
-        aNotSeen = preferShorter(aNotSeen, casted.aNotSeen);
-        aSeen = preferShorter(aSeen, casted.aSeen);
-        bSeenAfter = preferShorter(bSeenAfter, casted.bSeenAfter);
+        assert casted.history == history;
+        aNotSeen = history.preferShorter(aNotSeen, casted.aNotSeen);
+        aSeen = history.preferShorter(aSeen, casted.aSeen);
+        bSeenAfter = history.preferShorter(bSeenAfter, casted.bSeenAfter);
     }
 
     @Override
     public boolean isSubset(TracingStateSet<T> other) {
         NFbyTracingSet<T> casted = (NFbyTracingSet<T>) other;
-        if (casted.aNotSeen == null) {
-            if (aNotSeen != null) {
+        assert casted.history == history;
+        if (casted.aNotSeen == HistoryArena.NONE) {
+            if (aNotSeen != HistoryArena.NONE) {
                 return false;
             }
         }
-        if (casted.aSeen == null) {
-            if (aSeen != null) {
+        if (casted.aSeen == HistoryArena.NONE) {
+            if (aSeen != HistoryArena.NONE) {
                 return false;
             }
         }
-        if (casted.bSeenAfter == null) {
-            if (bSeenAfter != null) {
+        if (casted.bSeenAfter == HistoryArena.NONE) {
+            if (bSeenAfter != HistoryArena.NONE) {
                 return false;
             }
         }
@@ -111,11 +134,11 @@ public class NFbyTracingSet<T extends INode<T>> extends TracingStateSet<T> {
     public String toString() {
         StringBuilder result = new StringBuilder();
         result.append("NFby: ");
-        appendWNull(result, bSeenAfter); // Failure case first.
+        appendWNull(result, history.toHistoryNode(bSeenAfter)); // Failure case first.
         result.append(" | ");
-        appendWNull(result, aSeen);
+        appendWNull(result, history.toHistoryNode(aSeen));
         result.append(" | ");
-        appendWNull(result, aNotSeen);
+        appendWNull(result, history.toHistoryNode(aNotSeen));
         return result.toString();
     }
 }
@@ -3,6 +3,7 @@ package synoptic.invariants.miners;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -32,13 +33,39 @@ import synoptic.model.interfaces.IRelationPath;
 public class ChainWalkingTOInvMiner extends CountingInvariantMiner implements
         ITOInvariantMiner {
 
+    /**
+     * Computes the invariants of all the relations of g. Each trace is walked
+     * once for all the relations (see Trace.getRelationPaths), and the counts
+     * of the relations are accumulated side by side, so this is equivalent to,
+     * but faster than, computing the invariants of each relation in turn.
+     */
     public TemporalInvariantSet computeInvariants(ChainsTraceGraph g,
             boolean multipleRelations, boolean supportCount) {
+        Set<String> relations = g.getRelations();
+        Map<String, RelationCounts> relationCounts = new LinkedHashMap<String, RelationCounts>();
+        for (String r : relations) {
+            relationCounts.put(r, new RelationCounts());
+        }
+
+        for (Trace trace : g.getTraces()) {
+            Map<String, List<IRelationPath>> tracePaths = trace
+                    .getRelationPaths(relations, multipleRelations);
+            for (String r : relations) {
+                List<IRelationPath> paths = tracePaths.get(r);
+                if (r.equals(Event.defTimeRelationStr) && paths.size() != 1) {
+                    throw new IllegalStateException(
+                            "Multiple relation subraphs for ordering relation graph");
+                }
+                for (IRelationPath relationPath : paths) {
+                    relationCounts.get(r).add(relationPath);
+                }
+            }
+        }
+
         TemporalInvariantSet result = new TemporalInvariantSet();
-        for (String r : g.getRelations()) {
-            TemporalInvariantSet tmp = computeInvariants(g, r,
-                    multipleRelations, supportCount);
-            result.add(tmp);
+        for (String r : relations) {
+            result.add(relationCounts.get(r).computeInvariants(r,
+                    multipleRelations, supportCount));
         }
         return result;
     }
@@ -94,24 +121,9 @@ public class ChainWalkingTOInvMiner extends CountingInvariantMiner implements
     public TemporalInvariantSet computeInvariants(ChainsTraceGraph g,
             String relation, boolean multipleRelations, boolean supportCount) {
 
-        // TODO: we can set the initial capacity of the following HashMaps more
-        // optimally, e.g. (N / 0.75) + 1 where N is the total number of event
-        // types. See:
-        // http://stackoverflow.com/questions/434989/hashmap-intialization-parameters-load-initialcapacity
-
         // Stores generated RelationPaths
         Set<IRelationPath> relationPaths = new HashSet<IRelationPath>();
 
-        // Tracks event counts globally -- across all traces.
-        Map<EventType, Integer> gEventCnts = new LinkedHashMap<EventType, Integer>();
-
-        /*
-         * Build the set of all event types in the RelationPaths. We will use
-         * this set to pre-seed the various maps below. Also, since we're
-         * iterating over all nodes, we might as well count up the total counts
-         * of instances for each event type.
-         */
-        Set<EventType> eTypes = new LinkedHashSet<EventType>();
         for (Trace trace : g.getTraces()) {
 
             if (multipleRelations && !relation.equals(Event.defTimeRelationStr)) {
@@ -131,8 +143,35 @@ public class ChainWalkingTOInvMiner extends CountingInvariantMiner implements
 
         }
 
+        RelationCounts counts = new RelationCounts();
         for (IRelationPath relationPath : relationPaths) {
-            eTypes.addAll(relationPath.getSeen());
+            counts.add(relationPath);
+        }
+        return counts.computeInvariants(relation, multipleRelations,
+                supportCount);
+    }
+
+    /**
+     * The counts of one relation aggregated over all its relation paths, from
+     * which the invariants of the relation are extracted.
+     */
+    private class RelationCounts {
+        // Tracks event counts globally -- across all traces.
+        private final Map<EventType, Integer> gEventCnts = new LinkedHashMap<EventType, Integer>();
+        // Tracks followed-by counts.
+        private final Map<EventType, Map<EventType, Integer>> gFollowedByCnts = new LinkedHashMap<EventType, Map<EventType, Integer>>();
+        // Tracks precedence counts.
+        private final Map<EventType, Map<EventType, Integer>> gPrecedesCnts = new LinkedHashMap<EventType, Map<EventType, Integer>>();
+        // Tracks interrupted-by counts.
+        private final Map<EventType, Set<EventType>> gPossibleInterrupts = new LinkedHashMap<EventType, Set<EventType>>();
+        // Tracks which events were observed across all RelationPaths.
+        private Set<EventType> AlwaysFollowsINITIALSet = null;
+
+        /**
+         * Aggregates the Occurrences, Follows, Precedes and InterruptedBy
+         * counts of relationPath.
+         */
+        void add(IRelationPath relationPath) {
             Map<EventType, Integer> relationPathEventCounts = relationPath
                     .getEventCounts();
             for (EventType eventType : relationPathEventCounts.keySet()) {
@@ -144,62 +183,24 @@ public class ChainWalkingTOInvMiner extends CountingInvariantMiner implements
 
                 gEventCnts.put(eventType, count);
             }
-        }
-
-        // Tracks followed-by counts.
-        Map<EventType, Map<EventType, Integer>> gFollowedByCnts = new LinkedHashMap<EventType, Map<EventType, Integer>>();
-        // Tracks precedence counts.
-        Map<EventType, Map<EventType, Integer>> gPrecedesCnts = new LinkedHashMap<EventType, Map<EventType, Integer>>();
-        // Tracks interrupted-by counts.
-        Map<EventType, Set<EventType>> gPossibleInterrupts = new LinkedHashMap<EventType, Set<EventType>>();
-
-        // Initialize the event-type contents of the maps that persist
-        // across traces (global counts maps).
-        for (EventType e : eTypes) {
-            Map<EventType, Integer> mapF = new LinkedHashMap<EventType, Integer>();
-            Map<EventType, Integer> mapP = new LinkedHashMap<EventType, Integer>();
-            gFollowedByCnts.put(e, mapF);
-            gPrecedesCnts.put(e, mapP);
-            for (EventType e2 : eTypes) {
-                mapF.put(e2, 0);
-                mapP.put(e2, 0);
-            }
-        }
-
-        // Tracks which events were observed across all RelationPaths.
-        Set<EventType> AlwaysFollowsINITIALSet = null;
-
-        /*
-         * Iterates over each RelationPath in the graph and aggregates the
-         * individual Occurrences, Follows, and Precedes counts.
-         */
-        for (IRelationPath relationPath : relationPaths) {
 
             /*
              * Adds the Precedes count from the RelationPath into the graph
              * global count.
              */
-
-            Map<EventType, Map<EventType, Integer>> relationPathPrecedesCounts = relationPath
-                    .getPrecedesCounts();
-            addCounts(relationPathPrecedesCounts, gPrecedesCnts);
+            addCounts(relationPath.getPrecedesCounts(), gPrecedesCnts);
 
             /*
              * Adds the FollowedBy count from the RelationPath into the graph
              * global count.
              */
-
-            Map<EventType, Map<EventType, Integer>> relationPathFollowedByCounts = relationPath
-                    .getFollowedByCounts();
-            addCounts(relationPathFollowedByCounts, gFollowedByCnts);
+            addCounts(relationPath.getFollowedByCounts(), gFollowedByCnts);
 
             /*
              * Updates the graph global InterruptedBy counts with the
              * RelationPath counts
              */
-            Map<EventType, Set<EventType>> relationPathPossibleInterrupts = relationPath
-                    .getPossibleInterrupts();
-            intersectInterrupts(relationPathPossibleInterrupts,
+            intersectInterrupts(relationPath.getPossibleInterrupts(),
                     gPossibleInterrupts);
 
             // Update the AlwaysFollowsINITIALSet set of events by
@@ -212,15 +213,36 @@ public class ChainWalkingTOInvMiner extends CountingInvariantMiner implements
             } else {
                 AlwaysFollowsINITIALSet.retainAll(relationPathSeen);
             }
-
-            // At this point, we've completed all counts computation for the
-            // current RelationPath.
         }
 
-        return new TemporalInvariantSet(extractPathInvariantsFromWalkCounts(
-                relation, gEventCnts, gFollowedByCnts, gPrecedesCnts,
-                gPossibleInterrupts, null, AlwaysFollowsINITIALSet,
-                multipleRelations, supportCount));
+        /**
+         * Returns the invariants of relation that hold given the counts of all
+         * the relation paths of the relation.
+         */
+        TemporalInvariantSet computeInvariants(String relation,
+                boolean multipleRelations, boolean supportCount) {
+            // Fill in the counts of the pairs of event types that never
+            // occurred in order in any RelationPath.
+            for (EventType e : gEventCnts.keySet()) {
+                Map<EventType, Integer> mapF = getRow(gFollowedByCnts, e);
+                Map<EventType, Integer> mapP = getRow(gPrecedesCnts, e);
+                for (EventType e2 : gEventCnts.keySet()) {
+                    if (!mapF.containsKey(e2)) {
+                        mapF.put(e2, 0);
+                    }
+                    if (!mapP.containsKey(e2)) {
+                        mapP.put(e2, 0);
+                    }
+                }
+            }
+
+            return new TemporalInvariantSet(
+                    extractPathInvariantsFromWalkCounts(relation, gEventCnts,
+                            gFollowedByCnts, gPrecedesCnts,
+                            gPossibleInterrupts, null,
+                            AlwaysFollowsINITIALSet, multipleRelations,
+                            supportCount));
+        }
     }
 
     /**
@@ -236,8 +258,8 @@ public class ChainWalkingTOInvMiner extends CountingInvariantMiner implements
                 gPossibleInterrupts.get(et).retainAll(
                         relationPathPossibleInterrupts.get(et));
             } else {
-                gPossibleInterrupts.put(et,
-                        relationPathPossibleInterrupts.get(et));
+                gPossibleInterrupts.put(et, new LinkedHashSet<EventType>(
+                        relationPathPossibleInterrupts.get(et)));
             }
         }
     }
@@ -254,7 +276,7 @@ public class ChainWalkingTOInvMiner extends CountingInvariantMiner implements
 
         for (EventType a : src.keySet()) {
             Map<EventType, Integer> srcBValues = src.get(a);
-            Map<EventType, Integer> dstBValues = dst.get(a);
+            Map<EventType, Integer> dstBValues = getRow(dst, a);
             for (EventType b : srcBValues.keySet()) {
                 int count = srcBValues.get(b);
                 if (dstBValues.containsKey(b)) {
@@ -265,6 +287,19 @@ public class ChainWalkingTOInvMiner extends CountingInvariantMiner implements
         }
     }
 
+    /**
+     * Returns counts[a], adding an empty row for a if there is none.
+     */
+    private static Map<EventType, Integer> getRow(
+            Map<EventType, Map<EventType, Integer>> counts, EventType a) {
+        Map<EventType, Integer> row = counts.get(a);
+        if (row == null) {
+            row = new LinkedHashMap<EventType, Integer>();
+            counts.put(a, row);
+        }
+        return row;
+    }
+
     @Override
     public Set<Class<? extends ITemporalInvariant>> getMinedInvariants() {
         Set<Class<? extends ITemporalInvariant>> set = new HashSet<Class<? extends ITemporalInvariant>>();
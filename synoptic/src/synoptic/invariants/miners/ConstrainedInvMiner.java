@@ -1,6 +1,7 @@
 package synoptic.invariants.miners;
 
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 import synoptic.invariants.AlwaysFollowedInvariant;
@@ -103,8 +104,14 @@ public class ConstrainedInvMiner extends InvariantMiner {
         // generated constrained invariants.
         this.constrainedInvs = new TemporalInvariantSet();
 
+        // The relation paths of each relation are only built once, rather
+        // than once per invariant over the relation.
+        Set<String> relations = new LinkedHashSet<String>();
         for (ITemporalInvariant inv : invs.getSet()) {
-            String relation = inv.getRelation();
+            relations.add(inv.getRelation());
+        }
+
+        for (String relation : relations) {
             boolean isTimeRelation = relation.equals(Event.defTimeRelationStr);
 
             // Loop through the traces.
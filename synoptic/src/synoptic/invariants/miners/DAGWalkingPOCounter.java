@@ -0,0 +1,549 @@
+package synoptic.invariants.miners;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import synoptic.model.EventNode;
+import synoptic.model.Transition;
+import synoptic.model.event.DistEventType;
+import synoptic.model.event.EventType;
+
+/**
+ * Collects the followed-by, precedes, co-occurrence and ordering counts that
+ * DAGWalkingPOInvMiner turns into invariants. <br/>
+ * <br/>
+ * Event types are given dense ids, and all the counts are kept in flat int
+ * arrays indexed by pairs of ids. Each trace DAG is walked forward (in
+ * topological order) and backward (in reverse topological order). At each
+ * node the walk derives a row that summarizes the nodes seen before (after)
+ * the node from the rows of the node's parents (children): <br/>
+ * - a bitset of the event types of these nodes, if only the path invariants
+ * are mined, or <br/>
+ * - the number of these nodes per event type, if NeverConcurrentWith is mined,
+ * since this invariant depends on the number of ordered pairs of instances.
+ * Counts cannot be summed over parents, as a node may be reached through more
+ * than one parent. So, a count row is derived from the parent's count row only
+ * for nodes with a single parent, and otherwise from a bitset of the nodes
+ * seen before (after) the node. <br/>
+ * <br/>
+ * A row is returned to a pool as soon as all the nodes that depend on it have
+ * been walked, and the pools and per-trace buffers of a walker are reused
+ * across traces. Traces are independent, so they are walked in parallel by
+ * several walkers, each with its own counts, which are summed at the end.
+ */
+class DAGWalkingPOCounter {
+
+    // Dense ids for the event types.
+    private final Map<EventType, Integer> eTypeIds;
+    private final int numTypes;
+
+    // Per event type id: a dense id of its process, or -1 if the type is not
+    // a distributed event type.
+    private final int[] eTypePids;
+
+    private final boolean mineNeverConcurrentWith;
+
+    // Per pair of type ids (a * numTypes + b): the number of a instances that
+    // are followed by some b, and the number of b instances that are preceded
+    // by some a.
+    final int[] followedByCnts;
+    final int[] precedesCnts;
+
+    // The pairs of types at different processes that appeared in the same
+    // trace, and the pairs of types that had some unordered (concurrent) pair
+    // of instances in a trace (only if mineNeverConcurrentWith).
+    final BitSet coOccurrences = new BitSet();
+    final BitSet unordered = new BitSet();
+
+    // The types that appeared in every trace.
+    final BitSet alwaysFollowsInitial = new BitSet();
+
+    /**
+     * @param eTypes
+     *            the event types that appear in the traces, in the order in
+     *            which they are given ids
+     */
+    DAGWalkingPOCounter(List<EventType> eTypes, boolean mineNeverConcurrentWith) {
+        this.mineNeverConcurrentWith = mineNeverConcurrentWith;
+        numTypes = eTypes.size();
+        eTypeIds = new HashMap<EventType, Integer>();
+        eTypePids = new int[numTypes];
+        Map<String, Integer> pids = new HashMap<String, Integer>();
+        for (EventType e : eTypes) {
+            int id = eTypeIds.size();
+            eTypeIds.put(e, id);
+            eTypePids[id] = -1;
+            if (e instanceof DistEventType) {
+                String pName = ((DistEventType) e).getProcessName();
+                Integer pid = pids.get(pName);
+                if (pid == null) {
+                    pid = pids.size();
+                    pids.put(pName, pid);
+                }
+                eTypePids[id] = pid;
+            }
+        }
+        followedByCnts = new int[numTypes * numTypes];
+        precedesCnts = new int[numTypes * numTypes];
+    }
+
+    int getETypeId(EventType e) {
+        return eTypeIds.get(e);
+    }
+
+    /**
+     * Walks all the traces, each given by the set of its initial nodes, using
+     * up to numThreads threads.
+     */
+    void count(final List<Set<EventNode>> traces, int numThreads) {
+        int numWalkers = Math.max(1, Math.min(numThreads, traces.size()));
+        final AtomicInteger nextTrace = new AtomicInteger(0);
+        List<Callable<TraceWalker>> walkers = new ArrayList<Callable<TraceWalker>>();
+        for (int i = 0; i < numWalkers; i++) {
+            walkers.add(new Callable<TraceWalker>() {
+                @Override
+                public TraceWalker call() {
+                    TraceWalker walker = new TraceWalker();
+                    int t;
+                    while ((t = nextTrace.getAndIncrement()) < traces.size()) {
+                        walker.walk(traces.get(t));
+                    }
+                    return walker;
+                }
+            });
+        }
+
+        List<TraceWalker> done = new ArrayList<TraceWalker>();
+        if (numWalkers == 1) {
+            try {
+                done.add(walkers.get(0).call());
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        } else {
+            ExecutorService eService = Executors.newFixedThreadPool(numWalkers);
+            try {
+                for (Future<TraceWalker> f : eService.invokeAll(walkers)) {
+                    done.add(f.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            } finally {
+                eService.shutdownNow();
+            }
+        }
+
+        boolean first = true;
+        for (TraceWalker w : done) {
+            for (int i = 0; i < followedByCnts.length; i++) {
+                followedByCnts[i] += w.followedByCnts[i];
+                precedesCnts[i] += w.precedesCnts[i];
+            }
+            coOccurrences.or(w.coOccurrences);
+            unordered.or(w.unordered);
+            if (w.numTraces == 0) {
+                continue;
+            }
+            if (first) {
+                alwaysFollowsInitial.or(w.alwaysFollowsInitial);
+                first = false;
+            } else {
+                alwaysFollowsInitial.and(w.alwaysFollowsInitial);
+            }
+        }
+    }
+
+    // //////////////////////////////////////////////////////////////////
+
+    /**
+     * Walks traces one at a time, accumulating the counts of these traces.
+     */
+    private final class TraceWalker {
+        final int[] followedByCnts = new int[numTypes * numTypes];
+        final int[] precedesCnts = new int[numTypes * numTypes];
+        final BitSet coOccurrences = new BitSet();
+        final BitSet unordered = new BitSet();
+        final BitSet alwaysFollowsInitial = new BitSet();
+        int numTraces = 0;
+
+        // The nodes of the current trace (excluding the INITIAL and TERMINAL
+        // nodes), and the node ids.
+        private final List<EventNode> nodes = new ArrayList<EventNode>();
+        private final Map<EventNode, Integer> nodeIds = new HashMap<EventNode, Integer>();
+        private final ArrayDeque<EventNode> stack = new ArrayDeque<EventNode>();
+
+        // Per node id: the type id, the children and parents (as ranges of
+        // childList/parentList), and a topological order of the ids.
+        private int[] nodeTypes = new int[0];
+        private int[] childStart = new int[1];
+        private int[] childList = new int[0];
+        private int[] parentStart = new int[1];
+        private int[] parentList = new int[0];
+        private int[] order = new int[0];
+        private int[] scratch = new int[0];
+
+        // Per node id: the row of the node in the current walk, and the
+        // number of nodes that still have to derive their rows from it.
+        private long[][] bitRows = new long[0][];
+        private int[][] cntRows = new int[0][];
+        private int[] pending = new int[0];
+
+        // Pools of rows that are not in use.
+        private final ArrayDeque<long[]> bitRowPool = new ArrayDeque<long[]>();
+        private final ArrayDeque<int[]> cntRowPool = new ArrayDeque<int[]>();
+
+        // The types seen in the current trace, and their counts.
+        private final BitSet seenTypes = new BitSet();
+        private final int[] typeCnts = new int[numTypes];
+
+        // Per pair of type ids (b * numTypes + a): the total number of a
+        // instances before (after) each b instance in the current trace.
+        private final long[] tPrecedingCnts;
+        private final long[] tFollowingCnts;
+
+        TraceWalker() {
+            if (mineNeverConcurrentWith) {
+                tPrecedingCnts = new long[numTypes * numTypes];
+                tFollowingCnts = new long[numTypes * numTypes];
+            } else {
+                tPrecedingCnts = null;
+                tFollowingCnts = null;
+            }
+        }
+
+        /** Walks the trace with the given initial nodes. */
+        void walk(Set<EventNode> initNodes) {
+            int n = collectNodes(initNodes);
+            if (n == 0) {
+                return;
+            }
+
+            seenTypes.clear();
+            for (int i = 0; i < n; i++) {
+                seenTypes.set(nodeTypes[i]);
+                typeCnts[nodeTypes[i]] += 1;
+            }
+
+            // Forward: the nodes before each node, and its parents.
+            walkRows(n, false);
+            // Backward: the nodes after each node, and its children.
+            walkRows(n, true);
+
+            for (int a = seenTypes.nextSetBit(0); a >= 0; a = seenTypes
+                    .nextSetBit(a + 1)) {
+                for (int b = seenTypes.nextSetBit(0); b >= 0; b = seenTypes
+                        .nextSetBit(b + 1)) {
+                    // We only consider pairs of types at different processes,
+                    // as the concurrency invariants are only mined for these.
+                    if (a == b || eTypePids[a] == -1 || eTypePids[b] == -1
+                            || eTypePids[a] == eTypePids[b]) {
+                        continue;
+                    }
+                    int ab = a * numTypes + b;
+                    coOccurrences.set(ab);
+
+                    if (mineNeverConcurrentWith) {
+                        // Every pair of a and b instances is ordered if and
+                        // only if the number of b's that precede or follow
+                        // each a instance sums up to #a * #b.
+                        long ordered = tPrecedingCnts[ab] + tFollowingCnts[ab];
+                        if (ordered != (long) typeCnts[a] * typeCnts[b]) {
+                            unordered.set(ab);
+                        }
+                    }
+                }
+            }
+
+            // Reset the per-trace counts.
+            for (int a = seenTypes.nextSetBit(0); a >= 0; a = seenTypes
+                    .nextSetBit(a + 1)) {
+                typeCnts[a] = 0;
+                if (mineNeverConcurrentWith) {
+                    for (int b = seenTypes.nextSetBit(0); b >= 0; b = seenTypes
+                            .nextSetBit(b + 1)) {
+                        tPrecedingCnts[a * numTypes + b] = 0;
+                        tFollowingCnts[a * numTypes + b] = 0;
+                    }
+                }
+            }
+
+            if (numTraces == 0) {
+                alwaysFollowsInitial.or(seenTypes);
+            } else {
+                alwaysFollowsInitial.and(seenTypes);
+            }
+            numTraces += 1;
+        }
+
+        /**
+         * Collects the nodes of the trace into nodes, and builds the per node
+         * arrays: types, children, parents, and a topological order. Returns
+         * the number of nodes.
+         */
+        private int collectNodes(Set<EventNode> initNodes) {
+            nodes.clear();
+            nodeIds.clear();
+            for (EventNode init : initNodes) {
+                addNode(init);
+            }
+            int numEdges = 0;
+            while (!stack.isEmpty()) {
+                EventNode node = stack.pop();
+                for (Transition<EventNode> trans : node.getAllTransitions()) {
+                    if (addNode(trans.getTarget())) {
+                        numEdges += 1;
+                    }
+                }
+            }
+
+            int n = nodes.size();
+            if (nodeTypes.length < n) {
+                int len = Math.max(n, 2 * nodeTypes.length);
+                nodeTypes = new int[len];
+                childStart = new int[len + 1];
+                parentStart = new int[len + 1];
+                order = new int[len];
+                scratch = new int[len];
+                pending = new int[len];
+                bitRows = new long[len][];
+                cntRows = new int[len][];
+            }
+            if (childList.length < numEdges) {
+                int len = Math.max(numEdges, 2 * childList.length);
+                childList = new int[len];
+                parentList = new int[len];
+            }
+
+            // Children, and the number of parents of each node.
+            Arrays.fill(scratch, 0, n, 0);
+            int e = 0;
+            for (int i = 0; i < n; i++) {
+                EventNode node = nodes.get(i);
+                nodeTypes[i] = eTypeIds.get(node.getEType());
+                childStart[i] = e;
+                for (Transition<EventNode> trans : node.getAllTransitions()) {
+                    Integer child = nodeIds.get(trans.getTarget());
+                    if (child != null) {
+                        childList[e++] = child;
+                        scratch[child] += 1;
+                    }
+                }
+            }
+            childStart[n] = e;
+
+            // Parents.
+            parentStart[0] = 0;
+            for (int i = 0; i < n; i++) {
+                parentStart[i + 1] = parentStart[i] + scratch[i];
+            }
+            for (int i = 0; i < n; i++) {
+                scratch[i] = parentStart[i];
+            }
+            for (int i = 0; i < n; i++) {
+                for (int c = childStart[i]; c < childStart[i + 1]; c++) {
+                    parentList[scratch[childList[c]]++] = i;
+                }
+            }
+
+            // A topological order (Kahn's algorithm).
+            int head = 0;
+            int tail = 0;
+            for (int i = 0; i < n; i++) {
+                scratch[i] = parentStart[i + 1] - parentStart[i];
+                if (scratch[i] == 0) {
+                    order[tail++] = i;
+                }
+            }
+            while (head < tail) {
+                int i = order[head++];
+                for (int c = childStart[i]; c < childStart[i + 1]; c++) {
+                    if (--scratch[childList[c]] == 0) {
+                        order[tail++] = childList[c];
+                    }
+                }
+            }
+            assert tail == n : "Trace is not a DAG";
+            return n;
+        }
+
+        /**
+         * Assigns an id to node, if it is not the TERMINAL node and it does
+         * not have one yet. Returns true if node is not the TERMINAL node.
+         */
+        private boolean addNode(EventNode node) {
+            // TODO: Why doesn't this work -- if (node.isTerminal()) ?
+            if (node.getAllTransitions().size() == 0) {
+                return false;
+            }
+            if (!nodeIds.containsKey(node)) {
+                nodeIds.put(node, nodes.size());
+                nodes.add(node);
+                stack.push(node);
+            }
+            return true;
+        }
+
+        /**
+         * Walks the n nodes in topological order (or reverse topological
+         * order, if backward), deriving each node's row from the rows of its
+         * predecessors in the walk, and records the counts of the node.
+         */
+        private void walkRows(int n, boolean backward) {
+            int[] predStart = backward ? childStart : parentStart;
+            int[] predList = backward ? childList : parentList;
+            int[] succStart = backward ? parentStart : childStart;
+
+            int typeWords = (numTypes + 63) >>> 6;
+            int nodeWords = (n + 63) >>> 6;
+            for (int i = 0; i < n; i++) {
+                pending[i] = succStart[i + 1] - succStart[i];
+            }
+
+            for (int k = 0; k < n; k++) {
+                int i = order[backward ? n - 1 - k : k];
+                int numPreds = predStart[i + 1] - predStart[i];
+
+                if (!mineNeverConcurrentWith) {
+                    // The row is the set of types before (after) node i.
+                    long[] row = newBitRow(typeWords);
+                    for (int p = predStart[i]; p < predStart[i + 1]; p++) {
+                        int pred = predList[p];
+                        long[] predRow = bitRows[pred];
+                        for (int w = 0; w < typeWords; w++) {
+                            row[w] |= predRow[w];
+                        }
+                        row[nodeTypes[pred] >>> 6] |= 1L << nodeTypes[pred];
+                    }
+                    bitRows[i] = row;
+
+                    int t = nodeTypes[i];
+                    for (int w = 0; w < typeWords; w++) {
+                        long word = row[w];
+                        while (word != 0) {
+                            int u = (w << 6) + Long.numberOfTrailingZeros(word);
+                            word &= word - 1;
+                            recordPair(backward, t, u, 0);
+                        }
+                    }
+                } else {
+                    // The rows are the set of nodes before (after) node i,
+                    // and the number of these nodes per type.
+                    long[] row = newBitRow(nodeWords);
+                    int[] cnts = newCntRow();
+                    int singlePred = -1;
+                    for (int p = predStart[i]; p < predStart[i + 1]; p++) {
+                        int pred = predList[p];
+                        long[] predRow = bitRows[pred];
+                        for (int w = 0; w < nodeWords; w++) {
+                            row[w] |= predRow[w];
+                        }
+                        row[pred >>> 6] |= 1L << pred;
+                        if (p == predStart[i]) {
+                            singlePred = pred;
+                        } else if (pred != singlePred) {
+                            singlePred = -1;
+                        }
+                    }
+                    if (singlePred != -1) {
+                        System.arraycopy(cntRows[singlePred], 0, cnts, 0,
+                                numTypes);
+                        cnts[nodeTypes[singlePred]] += 1;
+                    } else if (numPreds > 0) {
+                        for (int w = 0; w < nodeWords; w++) {
+                            long word = row[w];
+                            while (word != 0) {
+                                int j = (w << 6)
+                                        + Long.numberOfTrailingZeros(word);
+                                word &= word - 1;
+                                cnts[nodeTypes[j]] += 1;
+                            }
+                        }
+                    }
+                    bitRows[i] = row;
+                    cntRows[i] = cnts;
+
+                    int t = nodeTypes[i];
+                    for (int u = 0; u < numTypes; u++) {
+                        if (cnts[u] != 0) {
+                            recordPair(backward, t, u, cnts[u]);
+                        }
+                    }
+                }
+
+                // Release the rows that are no longer needed.
+                for (int p = predStart[i]; p < predStart[i + 1]; p++) {
+                    int pred = predList[p];
+                    if (--pending[pred] == 0) {
+                        releaseRows(pred);
+                    }
+                }
+                if (pending[i] == 0) {
+                    releaseRows(i);
+                }
+            }
+        }
+
+        /**
+         * Records that a node of type t has instances of type u before it (or
+         * after it, if backward) -- cnt of them, if NeverConcurrentWith is
+         * mined.
+         */
+        private void recordPair(boolean backward, int t, int u, int cnt) {
+            if (backward) {
+                followedByCnts[t * numTypes + u] += 1;
+                if (mineNeverConcurrentWith) {
+                    tFollowingCnts[t * numTypes + u] += cnt;
+                }
+            } else {
+                precedesCnts[u * numTypes + t] += 1;
+                if (mineNeverConcurrentWith) {
+                    tPrecedingCnts[t * numTypes + u] += cnt;
+                }
+            }
+        }
+
+        private long[] newBitRow(int words) {
+            long[] row = bitRowPool.poll();
+            if (row == null || row.length != words) {
+                // Rows of a different length are from a previous trace.
+                bitRowPool.clear();
+                return new long[words];
+            }
+            Arrays.fill(row, 0L);
+            return row;
+        }
+
+        private int[] newCntRow() {
+            int[] row = cntRowPool.poll();
+            if (row == null) {
+                return new int[numTypes];
+            }
+            Arrays.fill(row, 0);
+            return row;
+        }
+
+        private void releaseRows(int i) {
+            bitRowPool.push(bitRows[i]);
+            bitRows[i] = null;
+            if (cntRows[i] != null) {
+                cntRowPool.push(cntRows[i]);
+                cntRows[i] = null;
+            }
+        }
+    }
+}
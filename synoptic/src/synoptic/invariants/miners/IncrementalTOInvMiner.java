@@ -0,0 +1,241 @@
+package synoptic.invariants.miners;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import synoptic.invariants.TemporalInvariantSet;
+import synoptic.model.event.Event;
+import synoptic.model.event.EventType;
+
+/**
+ * Mines the same invariants as {@link ChainWalkingTOInvMiner} -- AFby, AP,
+ * NFby, IntrBy and INITIAL AFby x -- over the time relation, but from traces
+ * that are added one at a time. The counts of the traces added so far are
+ * kept, so that the invariants of all these traces can be extracted at any
+ * point, without walking the traces again. This is used to mine invariants
+ * from logs that are still growing (see LiveInvariantMiner).
+ * <p>
+ * The event types get dense ids in the order in which they are first seen.
+ * The counts are kept in flat arrays indexed by pairs of ids, which grow as
+ * new event types are seen, and the sets of possible interrupts are bitsets
+ * over the ids. Adding a trace of n events over t distinct event types takes
+ * O(n * t) time. Methods are synchronized, so that invariants can be
+ * extracted while traces are being added by another thread.
+ * </p>
+ */
+public class IncrementalTOInvMiner extends CountingInvariantMiner {
+
+    // The event types, by id.
+    private final List<EventType> eTypes = new ArrayList<EventType>();
+    private final Map<EventType, Integer> eTypeIds = new HashMap<EventType, Integer>();
+
+    // The number of ids that the arrays below have room for.
+    private int capacity = 0;
+
+    // eventCnts[a] is the number of a events in all the traces.
+    private int[] eventCnts = new int[0];
+
+    // followedByCnts[a * capacity + b] and precedesCnts[a * capacity + b]
+    // are the sums of the followed-by and precedes counts of the traces (see
+    // ChainRelationPath).
+    private int[] followedByCnts = new int[0];
+    private int[] precedesCnts = new int[0];
+
+    // possibleInterrupts[b] is the set of types that appeared between every
+    // two consecutive b events of every trace, or null if no trace had two b
+    // events.
+    private BitSet[] possibleInterrupts = new BitSet[0];
+
+    // The types that appear in every trace, or null if there are no traces.
+    private BitSet alwaysFollowsINITIAL = null;
+
+    private int numTraces = 0;
+
+    // Buffers for a single trace, which are reused across traces: the number
+    // of events of each type so far, the position of the last event of each
+    // type, the followed-by counts, and the ids of the types seen so far (in
+    // the order in which they were first seen).
+    private int[] traceCnts = new int[0];
+    private int[] lastPos = new int[0];
+    private int[] traceFollowedByCnts = new int[0];
+    private int[] traceSeen = new int[0];
+
+    /**
+     * Adds the counts of a (completed) trace, given as the sequence of its
+     * event types in time order -- without the INITIAL and TERMINAL events.
+     */
+    public synchronized void addTrace(List<EventType> trace) {
+        int[] ids = new int[trace.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = getId(trace.get(i));
+        }
+
+        int numSeen = 0;
+        BitSet[] traceInterrupts = new BitSet[capacity];
+        for (int i = 0; i < ids.length; i++) {
+            int b = ids[i];
+
+            // The a events so far are followed by this b, and precede it.
+            // Once all the events have been counted, the followed-by count of
+            // a and b in the trace is the number of a's before the last b.
+            for (int k = 0; k < numSeen; k++) {
+                int a = traceSeen[k];
+                precedesCnts[a * capacity + b]++;
+                traceFollowedByCnts[a * capacity + b] = traceCnts[a];
+            }
+
+            if (traceCnts[b] == 0) {
+                traceSeen[numSeen++] = b;
+            } else {
+                // The types between the previous b and this one are those
+                // whose last event came after the previous b.
+                BitSet between = new BitSet();
+                for (int k = 0; k < numSeen; k++) {
+                    int a = traceSeen[k];
+                    if (lastPos[a] > lastPos[b]) {
+                        between.set(a);
+                    }
+                }
+                if (traceInterrupts[b] == null) {
+                    traceInterrupts[b] = between;
+                } else {
+                    traceInterrupts[b].and(between);
+                }
+            }
+            traceCnts[b]++;
+            lastPos[b] = i;
+        }
+
+        // Fold the trace counts into the global counts, and reset the trace
+        // buffers.
+        BitSet seen = new BitSet();
+        for (int k = 0; k < numSeen; k++) {
+            int a = traceSeen[k];
+            seen.set(a);
+            eventCnts[a] += traceCnts[a];
+            for (int j = 0; j < numSeen; j++) {
+                int ab = a * capacity + traceSeen[j];
+                followedByCnts[ab] += traceFollowedByCnts[ab];
+                traceFollowedByCnts[ab] = 0;
+            }
+            if (traceInterrupts[a] != null) {
+                if (possibleInterrupts[a] == null) {
+                    possibleInterrupts[a] = traceInterrupts[a];
+                } else {
+                    possibleInterrupts[a].and(traceInterrupts[a]);
+                }
+            }
+        }
+        for (int k = 0; k < numSeen; k++) {
+            traceCnts[traceSeen[k]] = 0;
+        }
+
+        if (alwaysFollowsINITIAL == null) {
+            alwaysFollowsINITIAL = seen;
+        } else {
+            alwaysFollowsINITIAL.and(seen);
+        }
+        numTraces++;
+    }
+
+    /** Returns the number of traces added so far. */
+    public synchronized int getNumTraces() {
+        return numTraces;
+    }
+
+    /**
+     * Returns the invariants of all the traces added so far.
+     *
+     * @param supportCount
+     *            whether to compute the support counts of the invariants
+     */
+    public synchronized TemporalInvariantSet getInvariants(boolean supportCount) {
+        int n = eTypes.size();
+        Map<EventType, Integer> gEventCnts = new LinkedHashMap<EventType, Integer>();
+        Map<EventType, Map<EventType, Integer>> gFollowedByCnts = new LinkedHashMap<EventType, Map<EventType, Integer>>();
+        Map<EventType, Map<EventType, Integer>> gPrecedesCnts = new LinkedHashMap<EventType, Map<EventType, Integer>>();
+        Map<EventType, Set<EventType>> gPossibleInterrupts = new LinkedHashMap<EventType, Set<EventType>>();
+        Set<EventType> alwaysFollowsINITIALSet = new LinkedHashSet<EventType>();
+
+        for (int a = 0; a < n; a++) {
+            EventType e1 = eTypes.get(a);
+            gEventCnts.put(e1, eventCnts[a]);
+            Map<EventType, Integer> mapF = new LinkedHashMap<EventType, Integer>();
+            Map<EventType, Integer> mapP = new LinkedHashMap<EventType, Integer>();
+            gFollowedByCnts.put(e1, mapF);
+            gPrecedesCnts.put(e1, mapP);
+            for (int b = 0; b < n; b++) {
+                mapF.put(eTypes.get(b), followedByCnts[a * capacity + b]);
+                mapP.put(eTypes.get(b), precedesCnts[a * capacity + b]);
+            }
+            if (possibleInterrupts[a] != null) {
+                Set<EventType> interrupts = new HashSet<EventType>();
+                for (int b = possibleInterrupts[a].nextSetBit(0); b >= 0; b = possibleInterrupts[a]
+                        .nextSetBit(b + 1)) {
+                    interrupts.add(eTypes.get(b));
+                }
+                gPossibleInterrupts.put(e1, interrupts);
+            }
+            if (alwaysFollowsINITIAL != null && alwaysFollowsINITIAL.get(a)) {
+                alwaysFollowsINITIALSet.add(e1);
+            }
+        }
+
+        return new TemporalInvariantSet(extractPathInvariantsFromWalkCounts(
+                Event.defTimeRelationStr, gEventCnts, gFollowedByCnts,
+                gPrecedesCnts, gPossibleInterrupts, null,
+                alwaysFollowsINITIALSet, false, supportCount));
+    }
+
+    /**
+     * Returns the id of eType, assigning it the next id (and growing the
+     * arrays) if it has not been seen before.
+     */
+    private int getId(EventType eType) {
+        Integer id = eTypeIds.get(eType);
+        if (id != null) {
+            return id;
+        }
+        id = eTypes.size();
+        eTypes.add(eType);
+        eTypeIds.put(eType, id);
+        if (id == capacity) {
+            grow(Math.max(8, 2 * capacity));
+        }
+        return id;
+    }
+
+    /** Re-lays out the arrays for newCapacity ids. */
+    private void grow(int newCapacity) {
+        followedByCnts = regrid(followedByCnts, newCapacity);
+        precedesCnts = regrid(precedesCnts, newCapacity);
+        traceFollowedByCnts = regrid(traceFollowedByCnts, newCapacity);
+        eventCnts = Arrays.copyOf(eventCnts, newCapacity);
+        traceCnts = Arrays.copyOf(traceCnts, newCapacity);
+        lastPos = Arrays.copyOf(lastPos, newCapacity);
+        traceSeen = Arrays.copyOf(traceSeen, newCapacity);
+        possibleInterrupts = Arrays.copyOf(possibleInterrupts, newCapacity);
+        capacity = newCapacity;
+    }
+
+    /**
+     * Copies a flat capacity x capacity array into a newCapacity x newCapacity
+     * array.
+     */
+    private int[] regrid(int[] cnts, int newCapacity) {
+        int[] ret = new int[newCapacity * newCapacity];
+        for (int a = 0; a < capacity; a++) {
+            System.arraycopy(cnts, a * capacity, ret, a * newCapacity,
+                    capacity);
+        }
+        return ret;
+    }
+}
@@ -10,8 +10,8 @@ import java.util.Map.Entry;
 import java.util.Set;
 
 import synoptic.algorithms.TransitiveClosure;
-import synoptic.benchmarks.PerformanceMetrics;
-import synoptic.benchmarks.TimedTask;
+import synoptic.benchmarks.Metrics;
+import synoptic.benchmarks.Timer;
 import synoptic.invariants.AlwaysFollowedInvariant;
 import synoptic.invariants.AlwaysPrecedesInvariant;
 import synoptic.invariants.ITemporalInvariant;
@@ -20,7 +20,6 @@ import synoptic.invariants.NeverFollowedInvariant;
 import synoptic.invariants.TemporalInvariantSet;
 import synoptic.invariants.concurrency.AlwaysConcurrentInvariant;
 import synoptic.invariants.concurrency.NeverConcurrentInvariant;
-import synoptic.main.AbstractMain;
 import synoptic.model.ChainsTraceGraph;
 import synoptic.model.DAGsTraceGraph;
 import synoptic.model.EventNode;
@@ -85,50 +84,32 @@ public class TransitiveClosureInvMiner extends InvariantMiner implements
     public TemporalInvariantSet computeTransClosureInvariants(TraceGraph<?> g,
             boolean mineConcurrencyInvariants) {
 
-        TimedTask mineInvariants = PerformanceMetrics.createTask(
-                "mineInvariants", false);
-        Set<ITemporalInvariant> overapproximatedInvariantsSet;
-
-        AbstractMain main = AbstractMain.getInstance();
-
         // Compute the over-approximated set of invariants for the input graph.
-        try {
-
-            TimedTask itc = PerformanceMetrics.createTask(
-                    "invariants_transitive_closure", false);
-
-            // Compute the transitive closure.
-            AllRelationsTransitiveClosure transitiveClosure = new AllRelationsTransitiveClosure(
-                    g);
-
-            // Get the over-approximation.
-            itc.stop();
-            if (main.options.doBenchmarking) {
-                logger.info("BENCHM: " + itc);
-            }
-            TimedTask io = PerformanceMetrics.createTask(
-                    "invariants_approximation", false);
-
-            // Extract invariants for all relations, iteratively. Since we are
-            // not considering invariants over multiple relations, this is
-            // sufficient.
-            overapproximatedInvariantsSet = new LinkedHashSet<ITemporalInvariant>();
-            for (String relation : g.getRelations()) {
-                overapproximatedInvariantsSet.addAll(extractInvariantsFromTC(g,
-                        transitiveClosure.get(relation), relation,
-                        mineConcurrencyInvariants));
-            }
-
-            io.stop();
-            if (main.options.doBenchmarking) {
-                logger.info("BENCHM: " + io);
-            }
-            // logger.info("Over-approx set: "
-            // + overapproximatedInvariantsSet.toString());
-        } finally {
-            mineInvariants.stop();
+        Timer.Context itc = Metrics.get().timer("mine.transitiveClosure")
+                .start();
+
+        // Compute the transitive closure.
+        AllRelationsTransitiveClosure transitiveClosure = new AllRelationsTransitiveClosure(
+                g);
+
+        // Get the over-approximation.
+        itc.stop();
+        Timer.Context io = Metrics.get().timer("mine.approximation").start();
+
+        // Extract invariants for all relations, iteratively. Since we are
+        // not considering invariants over multiple relations, this is
+        // sufficient.
+        Set<ITemporalInvariant> overapproximatedInvariantsSet = new LinkedHashSet<ITemporalInvariant>();
+        for (String relation : g.getRelations()) {
+            overapproximatedInvariantsSet.addAll(extractInvariantsFromTC(g,
+                    transitiveClosure.get(relation), relation,
+                    mineConcurrencyInvariants));
         }
 
+        io.stop();
+        // logger.info("Over-approx set: "
+        // + overapproximatedInvariantsSet.toString());
+
         return new TemporalInvariantSet(overapproximatedInvariantsSet);
     }
 
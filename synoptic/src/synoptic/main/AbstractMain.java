@@ -12,6 +12,7 @@ import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Random;
 import java.util.Set;
 import java.util.logging.ConsoleHandler;
@@ -23,6 +24,9 @@ import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.filefilter.WildcardFileFilter;
 
 import synoptic.algorithms.Bisimulation;
+import synoptic.algorithms.splitstrategies.SplitStrategies;
+import synoptic.benchmarks.Metrics;
+import synoptic.benchmarks.Timer;
 import synoptic.invariants.BinaryInvariant;
 import synoptic.invariants.ITemporalInvariant;
 import synoptic.invariants.TemporalInvariantSet;
@@ -43,6 +47,7 @@ import synoptic.model.EventNode;
 import synoptic.model.PartitionGraph;
 import synoptic.model.Trace;
 import synoptic.model.Transition;
+import synoptic.model.checkpoint.Checkpoint;
 import synoptic.model.event.Event;
 import synoptic.model.event.EventType;
 import synoptic.model.export.DotExportFormatter;
@@ -54,9 +59,11 @@ import synoptic.model.export.LtsExporter;
 import synoptic.model.interfaces.IGraph;
 import synoptic.model.interfaces.INode;
 import synoptic.model.interfaces.IRelationPath;
+import synoptic.model.state.DaikonInferenceService;
 import synoptic.model.testgeneration.AbstractTestCase;
 import synoptic.tests.SynopticLibTest;
 import synoptic.util.BriefLogFormatter;
+import synoptic.util.InternalSynopticException;
 import synoptic.util.SynopticJar;
 import synoptic.util.resource.AbstractResource;
 
@@ -95,6 +102,19 @@ public abstract class AbstractMain {
      */
     public static Options plumeOpts = null;
 
+    /**
+     * The stage of the checkpoint that the partition graph was resumed from,
+     * or null if the graph was not resumed from a checkpoint with partitions.
+     */
+    private Checkpoint.Stage resumedStage = null;
+
+    /**
+     * The service that infers the Daikon invariants of the transitions of this
+     * run, with state processing. Its memo of invariants lives as long as this
+     * run (see getDaikonInferenceService).
+     */
+    private DaikonInferenceService daikonInferenceService = null;
+
     /**
      * Return the singleton instance of AbstractMain, first asserting that the
      * instance isn't null.
@@ -104,6 +124,18 @@ public abstract class AbstractMain {
         return instance;
     }
 
+    /**
+     * Returns the DaikonInferenceService of this run, creating it on first use.
+     * Sharing one service lets the batches of a run reuse its memo of
+     * invariants, which becomes garbage with this main.
+     */
+    public synchronized DaikonInferenceService getDaikonInferenceService() {
+        if (daikonInferenceService == null) {
+            daikonInferenceService = new DaikonInferenceService();
+        }
+        return daikonInferenceService;
+    }
+
     /**
      * Uses the parsed opts to set up static state in Main. This state includes
      * everything necessary to run Synoptic -- input log files, regular
@@ -166,12 +198,23 @@ public abstract class AbstractMain {
             return null;
         }
 
-        if (AbstractOptions.plumeOpts.logFilenames.size() == 0) {
+        if (AbstractOptions.plumeOpts.logFilenames.size() == 0 && options.resumeFromCheckpoint == null) {
             logger.severe(
                     "No log filenames specified, exiting. Specify log files at the end of the command line with no options.");
             return null;
         }
 
+        if (SplitStrategies.forName(options.splitStrategy) == null) {
+            logger.severe("Unknown split strategy " + options.splitStrategy + ", use one of: "
+                    + Arrays.toString(SplitStrategies.NAMES));
+            return null;
+        }
+
+        if (options.testGenerationMaxTests < 0 || options.testGenerationMaxLength < 0) {
+            logger.severe("The number and length of generated tests cannot be negative.");
+            return null;
+        }
+
         if (options.dumpIntermediateStages && AbstractOptions.outputPathPrefix == null) {
             logger.severe("Cannot dump intermediate stages without an output path prefix. Set this prefix with:\n\t"
                     + AbstractOptions.plumeOpts.getOptDesc("outputPathPrefix"));
@@ -411,6 +454,80 @@ public abstract class AbstractMain {
             logger.info("Outputting invarians to file: " + invariantsFilename);
             minedInvs.outputToFile(invariantsFilename, options.outputSupportCount);
         }
+
+        writeCheckpoint(new Checkpoint(traceGraph, minedInvs));
+    }
+
+    /**
+     * Writes checkpoint to <checkpointPathPrefix>.<stage>.ckpt, if a
+     * checkpointPathPrefix is set. A checkpoint that cannot be written is
+     * logged, but does not stop the run.
+     */
+    private void writeCheckpoint(Checkpoint checkpoint) {
+        if (options.checkpointPathPrefix == null) {
+            return;
+        }
+        String filename = options.checkpointPathPrefix + "."
+                + checkpoint.getStage().name().toLowerCase() + ".ckpt";
+        long startTime = loggerInfoStart("Writing checkpoint " + filename + "..");
+        try {
+            checkpoint.write(new File(filename));
+        } catch (IOException e) {
+            logger.severe("Unable to write checkpoint " + filename + ": " + e);
+            return;
+        } catch (IllegalArgumentException e) {
+            logger.severe("Unable to write checkpoint " + filename + ": " + e.getMessage());
+            return;
+        }
+        loggerInfoEnd("Writing checkpoint took ", startTime);
+    }
+
+    /**
+     * Reads the checkpoint to resume from, and returns its partition graph --
+     * or a graph partitioned by label, if the checkpoint was taken after
+     * mining. Returns null if there is no model to infer (the checkpoint is of
+     * a PO log, or only invariants are to be mined).
+     */
+    private PartitionGraph resumeFromCheckpoint() throws IOException {
+        long startTime = loggerInfoStart("Reading checkpoint " + options.resumeFromCheckpoint + "..");
+        Checkpoint checkpoint = Checkpoint.read(new File(options.resumeFromCheckpoint));
+        loggerInfoEnd("Reading checkpoint took ", startTime);
+
+        TemporalInvariantSet invs = checkpoint.getInvariants();
+        if (invs == null) {
+            logger.severe("Checkpoint " + options.resumeFromCheckpoint + " has no invariants. Stopping.");
+            return null;
+        }
+        logger.info("Resumed " + invs.numInvariants() + " invariants from a " + checkpoint.getStage()
+                + " checkpoint");
+
+        if (options.dumpInvariants) {
+            logger.info("Mined invariants:\n" + invs.toPrettyString());
+        }
+
+        if (options.outputInvariantsToFile) {
+            String invariantsFilename = AbstractOptions.outputPathPrefix + ".invariants.txt";
+            logger.info("Outputting invariants to file: " + invariantsFilename);
+            invs.outputToFile(invariantsFilename, options.outputSupportCount);
+        }
+
+        ChainsTraceGraph traceGraph = checkpoint.getChainsTraceGraph();
+        if (traceGraph == null) {
+            logger.warning(
+                    "Checkpoint of a partially ordered log. Only outputting invariants since refinement/coarsening is not yet supported.");
+            return null;
+        }
+
+        if (options.onlyMineInvariants) {
+            return null;
+        }
+
+        PartitionGraph pGraph = checkpoint.getPartitionGraph();
+        if (pGraph == null) {
+            return new PartitionGraph(traceGraph, true, invs);
+        }
+        resumedStage = checkpoint.getStage();
+        return pGraph;
     }
 
     /**
@@ -424,20 +541,26 @@ public abstract class AbstractMain {
      */
     static public List<EventNode> parseEvents(TraceParser parser, List<String> logFilenames) throws Exception {
         long startTime = loggerInfoStart("Parsing input files..");
+        Timer.Context timer = Metrics.get().timer("parse").start();
 
         List<EventNode> parsedEvents = new ArrayList<EventNode>();
-        for (String fileArg : logFilenames) {
-            logger.fine("\tprocessing fileArg: " + fileArg);
-            File[] files = getFiles(fileArg);
-            if (files.length == 0) {
-                throw new ParseException(
-                        "The set of input files is empty. Please specify a set of existing files to parse.");
-            }
-            for (File file : files) {
-                logger.fine("\tcalling parseTraceFile with file: " + file.getAbsolutePath());
-                parsedEvents.addAll(parser.parseTraceFile(file, -1));
+        try {
+            for (String fileArg : logFilenames) {
+                logger.fine("\tprocessing fileArg: " + fileArg);
+                File[] files = getFiles(fileArg);
+                if (files.length == 0) {
+                    throw new ParseException(
+                            "The set of input files is empty. Please specify a set of existing files to parse.");
+                }
+                for (File file : files) {
+                    logger.fine("\tcalling parseTraceFile with file: " + file.getAbsolutePath());
+                    parsedEvents.addAll(parser.parseTraceFile(file, -1));
+                }
             }
+        } finally {
+            timer.stop();
         }
+        Metrics.get().counter("parse.events").add(parsedEvents.size());
         loggerInfoEnd("Parsing took ", startTime);
 
         return parsedEvents;
@@ -446,7 +569,9 @@ public abstract class AbstractMain {
     static public ChainsTraceGraph genChainsTraceGraph(TraceParser parser, List<EventNode> parsedEvents)
             throws ParseException {
         long startTime = loggerInfoStart("Generating inter-event temporal relation...");
+        Timer.Context timer = Metrics.get().timer("parse.traceGraph").start();
         ChainsTraceGraph inputGraph = parser.generateDirectTORelation(parsedEvents);
+        timer.stop();
         loggerInfoEnd("Generating temporal relation took ", startTime);
         return inputGraph;
     }
@@ -454,7 +579,9 @@ public abstract class AbstractMain {
     static public DAGsTraceGraph genDAGsTraceGraph(TraceParser parser, List<EventNode> parsedEvents)
             throws ParseException {
         long startTime = loggerInfoStart("Generating inter-event temporal relation...");
+        Timer.Context timer = Metrics.get().timer("parse.traceGraph").start();
         DAGsTraceGraph traceGraph = parser.generateDirectPORelation(parsedEvents);
+        timer.stop();
         loggerInfoEnd("Generating temporal relation took ", startTime);
         return traceGraph;
     }
@@ -482,6 +609,7 @@ public abstract class AbstractMain {
         }
 
         long startTime = loggerInfoStart("Mining invariants [" + miner.getClass().getName() + "]..");
+        Timer.Context timer = Metrics.get().timer("mine").start();
         TemporalInvariantSet minedInvs = miner.computeInvariants(traceGraph, options.multipleRelations,
                 options.outputSupportCount);
 
@@ -497,6 +625,8 @@ public abstract class AbstractMain {
             }
         }
 
+        timer.stop();
+        Metrics.get().counter("mine.invariants").add(minedInvs.numInvariants());
         loggerInfoEnd("Mining took ", startTime);
 
         // Miner can be garbage-collected.
@@ -522,7 +652,10 @@ public abstract class AbstractMain {
         }
 
         long startTime = loggerInfoStart("Mining invariants [" + miner.getClass().getName() + "]..");
+        Timer.Context timer = Metrics.get().timer("mine").start();
         TemporalInvariantSet minedInvs = miner.computeInvariants(traceGraph);
+        timer.stop();
+        Metrics.get().counter("mine.invariants").add(minedInvs.numInvariants());
         loggerInfoEnd("Mining took ", startTime);
         // Miner can be garbage-collected.
         miner = null;
@@ -540,6 +673,10 @@ public abstract class AbstractMain {
      * @throws Exception
      */
     public PartitionGraph createInitialPartitionGraph() throws Exception {
+        if (options.resumeFromCheckpoint != null) {
+            return resumeFromCheckpoint();
+        }
+
         TraceParser parser = new TraceParser(options.regExps, AbstractOptions.partitionRegExp,
                 AbstractOptions.separatorRegExp, options.dateFormat);
         List<EventNode> parsedEvents;
@@ -593,79 +730,8 @@ public abstract class AbstractMain {
         TemporalInvariantSet minedInvs = mineTOInvariants(options.useTransitiveClosureMining, traceGraph);
         // //////////////////
 
-        int origNumInvariants = minedInvs.numInvariants();
-        logger.info("Mined " + origNumInvariants + " invariants");
-
-        // Check if the support counts for all the invariants that have a count
-        // is above the
-        // threshold and if not then remove the invariant
-        for (Iterator<ITemporalInvariant> it = minedInvs.iterator(); it.hasNext();) {
-            ITemporalInvariant inv = it.next();
-            if (inv instanceof BinaryInvariant) {
-                if (((BinaryInvariant) inv).getStatistics() != null
-                        && ((BinaryInvariant) inv).getStatistics().supportCount <= options.supportCountThreshold) {
-                    it.remove();
-                }
-            }
-        }
-
-        if (minedInvs.numInvariants() != origNumInvariants) {
-            logger.info(String.format("Retained %d invariants that met support count threshold %d",
-                    minedInvs.numInvariants(), options.supportCountThreshold));
-        }
-
-        // Removed IntrBy and/or NFby invariants if necessary
-        if (options.ignoreIntrByInvs || options.ignoreNFbyInvs) {
-            for (Iterator<ITemporalInvariant> it = minedInvs.iterator(); it.hasNext();) {
-                ITemporalInvariant inv = it.next();
-
-                if (options.ignoreIntrByInvs && inv.getShortName().equals("IntrBy")) {
-                    it.remove();
-                }
-
-                if (options.ignoreNFbyInvs && inv.getShortName().equals("NFby")) {
-                    it.remove();
-                }
-            }
-
-            String removedTypes = "";
-            if (options.ignoreIntrByInvs) {
-                removedTypes += "IntrBy ";
-            }
-            if (options.ignoreNFbyInvs) {
-                removedTypes = "NFby";
-            }
-            logger.info(String.format("Retained %d invariants after removing %s invariants", minedInvs.numInvariants(),
-                    removedTypes));
-        }
-
-        if (AbstractOptions.ignoreInvsOverETypeSet != null) {
-
-            // Split string options.ignoreInvsOverETypeSet by the ";" delimiter:
-            List<String> stringEtypesToIgnore = Arrays.asList(AbstractOptions.ignoreInvsOverETypeSet.split(";"));
-
-            logger.info("Ignoring invariants over event-types set: " + stringEtypesToIgnore.toString());
-
-            boolean removeInv;
-            for (Iterator<ITemporalInvariant> it = minedInvs.iterator(); it.hasNext();) {
-                ITemporalInvariant inv = it.next();
-
-                // To remove an invariant inv, the event types associated with
-                // inv must all come from the list stringEtypesToIgnore, we
-                // check this here:
-                removeInv = true;
-                for (EventType eType : inv.getPredicates()) {
-                    if (!stringEtypesToIgnore.contains(eType.getETypeLabel())) {
-                        removeInv = false;
-                        break;
-                    }
-                }
-                if (removeInv) {
-                    it.remove();
-                }
-            }
-
-        }
+        logger.info("Mined " + minedInvs.numInvariants() + " invariants");
+        filterInvariants(minedInvs);
 
         if (options.dumpInvariants) {
             logger.info("Mined invariants:\n" + minedInvs.toPrettyString());
@@ -681,6 +747,8 @@ public abstract class AbstractMain {
             minedInvs.outputToFile(invariantsFilename, options.outputSupportCount);
         }
 
+        writeCheckpoint(new Checkpoint(traceGraph, minedInvs));
+
         if (options.onlyMineInvariants) {
             return null;
         }
@@ -798,10 +866,15 @@ public abstract class AbstractMain {
         // //////////////////
         if (options.noRefinement) {
             logger.info("Skipping refinement");
+        } else if (resumedStage != null) {
+            logger.info("Skipping refinement: resumed from a " + resumedStage + " checkpoint");
         } else {
             startTime = loggerInfoStart("Refining (Splitting)...");
+            Timer.Context timer = Metrics.get().timer("refinement").start();
             Bisimulation.splitUntilAllInvsSatisfied(pGraph);
+            timer.stop();
             loggerInfoEnd("Splitting took ", startTime);
+            writeCheckpoint(new Checkpoint(pGraph, Checkpoint.Stage.REFINED));
         }
         // //////////////////
 
@@ -813,10 +886,15 @@ public abstract class AbstractMain {
         // //////////////////
         if (options.noCoarsening) {
             logger.info("Skipping coarsening");
+        } else if (resumedStage == Checkpoint.Stage.COARSENED) {
+            logger.info("Skipping coarsening: resumed from a " + resumedStage + " checkpoint");
         } else {
             startTime = loggerInfoStart("Coarsening (Merging)..");
+            Timer.Context timer = Metrics.get().timer("coarsening").start();
             Bisimulation.mergePartitions(pGraph);
+            timer.stop();
             loggerInfoEnd("Merging took ", startTime);
+            writeCheckpoint(new Checkpoint(pGraph, Checkpoint.Stage.COARSENED));
         }
         // //////////////////
 
@@ -825,6 +903,8 @@ public abstract class AbstractMain {
         // TODO: check that none of the initially mined synoptic.invariants are
         // unsatisfied in the result
 
+        Timer.Context exportTimer = Metrics.get().timer("export").start();
+
         // export the resulting graph
         if (AbstractOptions.outputPathPrefix != null) {
             logger.info("Exporting final graph [" + pGraph.getNodes().size() + " nodes]..");
@@ -869,5 +949,147 @@ public abstract class AbstractMain {
 
             logger.info("Exporting in LTS format took " + (System.currentTimeMillis() - startTime) + "ms");
         }
+
+        exportTimer.stop();
+    }
+
+    /**
+     * Removes the invariants that the options exclude from minedInvs: those
+     * whose support count is not above the supportCountThreshold, the IntrBy
+     * and/or NFby invariants if they are ignored, and those over only the
+     * event types of ignoreInvsOverETypeSet. Every set of mined invariants
+     * that is output, in batch or live mining, is filtered with this method.
+     */
+    public void filterInvariants(TemporalInvariantSet minedInvs) {
+        int origNumInvariants = minedInvs.numInvariants();
+
+        // Check if the support counts for all the invariants that have a count
+        // is above the
+        // threshold and if not then remove the invariant
+        for (Iterator<ITemporalInvariant> it = minedInvs.iterator(); it.hasNext();) {
+            ITemporalInvariant inv = it.next();
+            if (inv instanceof BinaryInvariant) {
+                if (((BinaryInvariant) inv).getStatistics() != null
+                        && ((BinaryInvariant) inv).getStatistics().supportCount <= options.supportCountThreshold) {
+                    it.remove();
+                }
+            }
+        }
+
+        if (minedInvs.numInvariants() != origNumInvariants) {
+            logger.info(String.format("Retained %d invariants that met support count threshold %d",
+                    minedInvs.numInvariants(), options.supportCountThreshold));
+        }
+
+        // Removed IntrBy and/or NFby invariants if necessary
+        if (options.ignoreIntrByInvs || options.ignoreNFbyInvs) {
+            for (Iterator<ITemporalInvariant> it = minedInvs.iterator(); it.hasNext();) {
+                ITemporalInvariant inv = it.next();
+
+                if (options.ignoreIntrByInvs && inv.getShortName().equals("IntrBy")) {
+                    it.remove();
+                }
+
+                if (options.ignoreNFbyInvs && inv.getShortName().equals("NFby")) {
+                    it.remove();
+                }
+            }
+
+            String removedTypes = "";
+            if (options.ignoreIntrByInvs) {
+                removedTypes += "IntrBy ";
+            }
+            if (options.ignoreNFbyInvs) {
+                removedTypes = "NFby";
+            }
+            logger.info(String.format("Retained %d invariants after removing %s invariants", minedInvs.numInvariants(),
+                    removedTypes));
+        }
+
+        if (AbstractOptions.ignoreInvsOverETypeSet != null) {
+
+            // Split string options.ignoreInvsOverETypeSet by the ";" delimiter:
+            List<String> stringEtypesToIgnore = Arrays.asList(AbstractOptions.ignoreInvsOverETypeSet.split(";"));
+
+            logger.info("Ignoring invariants over event-types set: " + stringEtypesToIgnore.toString());
+
+            boolean removeInv;
+            for (Iterator<ITemporalInvariant> it = minedInvs.iterator(); it.hasNext();) {
+                ITemporalInvariant inv = it.next();
+
+                // To remove an invariant inv, the event types associated with
+                // inv must all come from the list stringEtypesToIgnore, we
+                // check this here:
+                removeInv = true;
+                for (EventType eType : inv.getPredicates()) {
+                    if (!stringEtypesToIgnore.contains(eType.getETypeLabel())) {
+                        removeInv = false;
+                        break;
+                    }
+                }
+                if (removeInv) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the inference of this main on the input logs (see runInference),
+     * with the periodic metrics reporter running, and reports the metrics of
+     * the run at the end -- also when the inference fails.
+     */
+    public void run() throws Exception {
+        startMetricsReporter();
+        try {
+            Locale.setDefault(Locale.US);
+            runInference();
+        } catch (ParseException e) {
+            throw e;
+        } catch (Exception e) {
+            throw InternalSynopticException.wrap(e);
+        } finally {
+            reportMetrics();
+        }
+    }
+
+    /**
+     * Creates the initial partition graph of the input logs, and runs
+     * Synoptic on it.
+     */
+    protected void runInference() throws Exception {
+        PartitionGraph pGraph = createInitialPartitionGraph();
+        if (pGraph != null) {
+            runSynoptic(pGraph);
+        }
+    }
+
+    /**
+     * Starts the periodic metrics reporter, if a metricsReportInterval is set.
+     */
+    public void startMetricsReporter() {
+        if (options.metricsReportInterval > 0) {
+            Metrics.get().startReporter(options.metricsReportInterval);
+        }
+    }
+
+    /**
+     * Stops the periodic metrics reporter, and reports the metrics of this run:
+     * they are dumped to the metricsFile (if set), and logged if benchmarking.
+     */
+    public void reportMetrics() {
+        Metrics metrics = Metrics.get();
+        metrics.stopReporter();
+        if (options.doBenchmarking) {
+            logger.info("BENCHM:\n" + metrics.summary());
+        }
+        if (options.metricsFile != null) {
+            logger.info("Writing metrics to " + options.metricsFile);
+            try {
+                metrics.dump(new File(options.metricsFile));
+            } catch (FileNotFoundException e) {
+                logger.severe("Unable to write metrics to " + options.metricsFile + ": " + e.getMessage());
+            }
+        }
     }
 }
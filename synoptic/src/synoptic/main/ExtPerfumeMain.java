@@ -34,6 +34,21 @@ public class ExtPerfumeMain extends PerfumeMain {
         super(opts, graphExportFormatter);
     }
 
+    /**
+     * The synoptic.main method to perform the Extended Perfume inference
+     * algorithm. See user documentation for an explanation of the options.
+     * 
+     * @param args
+     *            Command-line options
+     */
+    public static void main(String[] args) throws Exception {
+        ExtPerfumeMain mainInstance = processArgs(args);
+        if (mainInstance == null) {
+            return;
+        }
+        mainInstance.run();
+    }
+
     /**
      * Parses the set of arguments to the program, to set up static state in
      * ExtPerfumeMain. This state includes everything necessary to run Extended
@@ -0,0 +1,21 @@
+package synoptic.main;
+
+import synoptic.invariants.TemporalInvariantSet;
+
+/**
+ * Receives the invariants that a LiveInvariantMiner publishes, as the logs
+ * that it mines grow.
+ */
+public interface ILiveInvariantsListener {
+
+    /**
+     * Called with the invariants of the traces completed so far.
+     *
+     * @param invariants
+     *            a fresh set, which the listener may keep or modify
+     * @param numTraces
+     *            the number of traces the invariants were mined from
+     */
+    public void invariantsPublished(TemporalInvariantSet invariants,
+            int numTraces);
+}
@@ -0,0 +1,423 @@
+package synoptic.main;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import synoptic.invariants.TemporalInvariantSet;
+import synoptic.invariants.miners.IncrementalTOInvMiner;
+import synoptic.main.parser.ParseException;
+import synoptic.main.parser.TraceParser;
+import synoptic.model.EventNode;
+import synoptic.model.event.EventType;
+
+/**
+ * Mines the totally ordered invariants of logs that are still being written.
+ * Log files are tailed, and other streams (e.g., stdin) are read until they
+ * end. Each line is parsed with a TraceParser as it arrives, and each trace is
+ * folded into the counts of an IncrementalTOInvMiner as soon as it is
+ * complete, after which its events are dropped.
+ * <p>
+ * A trace is complete when a partition separator follows it in its log, when
+ * it has had no new events for traceTimeout ms, when its log ends, or when the
+ * mining stops. The events of a trace are sorted by time when it completes,
+ * unless keepOrder is set. The invariants of the completed traces are
+ * published to the listeners every publishInterval ms, if new traces have
+ * completed since the last publication.
+ * </p>
+ * <p>
+ * The logs are read by one daemon thread each, while lines are parsed and
+ * traces are mined by the thread that calls run(). The parseLine, endLog,
+ * completeIdleTraces and publish methods can also be called directly, instead
+ * of run(), from a single thread.
+ * </p>
+ */
+public class LiveInvariantMiner {
+    static Logger logger = Logger.getLogger("LiveInvariantMiner");
+
+    // How long a tailing reader waits before looking for new lines at the end
+    // of a file.
+    private static final long TAIL_DELAY_MS = 200;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final TraceParser parser;
+    private final IncrementalTOInvMiner miner = new IncrementalTOInvMiner();
+    private final long publishInterval;
+    private final long traceTimeout;
+    private final boolean keepOrder;
+    private final boolean supportCount;
+    private final List<ILiveInvariantsListener> listeners = new ArrayList<ILiveInvariantsListener>();
+
+    // The logs being mined, by name.
+    private final Map<String, Log> logs = new LinkedHashMap<String, Log>();
+
+    // The traces that are not complete yet, by trace ID. The map is in access
+    // order, and parseLine gets a trace for each of its events, so the traces
+    // are in the order of their last events.
+    private final Map<Integer, OpenTrace> openTraces = new LinkedHashMap<Integer, OpenTrace>(
+            16, 0.75f, true);
+
+    // The lines read by the readers, in the order in which they are to be
+    // parsed.
+    private final BlockingQueue<Line> lines = new LinkedBlockingQueue<Line>();
+
+    private final List<Thread> readers = new ArrayList<Thread>();
+    private volatile boolean stopped = false;
+
+    // The number of traces that the last published invariants were mined
+    // from.
+    private int numPublishedTraces = 0;
+
+    /** The parsing state of a log. */
+    private static final class Log {
+        final TraceParser.LogStream stream;
+        // The traces that the log has events in.
+        final Set<Integer> traceIDs = new LinkedHashSet<Integer>();
+
+        Log(TraceParser.LogStream stream) {
+            this.stream = stream;
+        }
+    }
+
+    /** The events of a trace that is not complete yet. */
+    private static final class OpenTrace {
+        final List<EventNode> events = new ArrayList<EventNode>();
+        // The logs that have events in the trace.
+        final Set<Log> logs = new LinkedHashSet<Log>(1);
+        long lastEventTime;
+    }
+
+    /** A line of a log, or the end of the log if text is null. */
+    private static final class Line {
+        final String logName;
+        final String text;
+
+        Line(String logName, String text) {
+            this.logName = logName;
+            this.text = text;
+        }
+    }
+
+    private static final Comparator<EventNode> timeComparator = new Comparator<EventNode>() {
+        @Override
+        public int compare(EventNode e1, EventNode e2) {
+            return e1.getTime().compareTo(e2.getTime());
+        }
+    };
+
+    /**
+     * @param parser
+     *            the parser for the lines of the logs, whose time must be
+     *            totally ordered
+     * @param publishInterval
+     *            the number of ms between two publications of the invariants
+     * @param traceTimeout
+     *            the number of ms without new events after which a trace is
+     *            complete
+     * @param keepOrder
+     *            whether to keep the events of a trace in log order, instead
+     *            of sorting them by time
+     * @param supportCount
+     *            whether to compute the support counts of the invariants
+     */
+    public LiveInvariantMiner(TraceParser parser, long publishInterval,
+            long traceTimeout, boolean keepOrder, boolean supportCount) {
+        this.parser = parser;
+        this.publishInterval = publishInterval;
+        this.traceTimeout = traceTimeout;
+        this.keepOrder = keepOrder;
+        this.supportCount = supportCount;
+    }
+
+    public void addListener(ILiveInvariantsListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Adds a log with the given name, whose lines are passed to parseLine.
+     *
+     * @throws ParseException
+     *             when the parser's time is not totally ordered
+     */
+    public void addLog(String logName) throws ParseException {
+        if (logs.containsKey(logName)) {
+            throw new IllegalArgumentException("Log " + logName
+                    + " is already mined.");
+        }
+        logs.put(logName, new Log(parser.newLogStream(logName)));
+    }
+
+    /**
+     * Adds a log file, which is read from its start and then tailed: lines
+     * appended to it while run() executes are mined too.
+     */
+    public void tailFile(File file) throws ParseException,
+            FileNotFoundException {
+        String logName = file.getAbsolutePath();
+        addLog(logName);
+        addReader(logName, new FileInputStream(file), true);
+    }
+
+    /** Adds a log that is read from a stream until the stream ends. */
+    public void readStream(String logName, InputStream in)
+            throws ParseException {
+        addLog(logName);
+        addReader(logName, in, false);
+    }
+
+    private void addReader(final String logName, final InputStream in,
+            final boolean tail) {
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                readLines(logName, in, tail);
+            }
+        }, "LiveInvariantMiner reader for " + logName);
+        reader.setDaemon(true);
+        readers.add(reader);
+    }
+
+    /**
+     * Reads in to lines until it ends (or, when tailing, until the mining
+     * stops). Partial lines are kept until their end is read.
+     */
+    private void readLines(String logName, InputStream in, boolean tail) {
+        byte[] buf = new byte[8192];
+        byte[] partial = new byte[256];
+        int partialLen = 0;
+        try {
+            try {
+                while (!stopped) {
+                    int n = in.read(buf);
+                    if (n < 0) {
+                        if (!tail) {
+                            break;
+                        }
+                        Thread.sleep(TAIL_DELAY_MS);
+                        continue;
+                    }
+                    for (int i = 0; i < n; i++) {
+                        if (buf[i] == '\n') {
+                            int len = partialLen;
+                            if (len > 0 && partial[len - 1] == '\r') {
+                                len--;
+                            }
+                            lines.put(new Line(logName, new String(partial, 0,
+                                    len, UTF8)));
+                            partialLen = 0;
+                        } else {
+                            if (partialLen == partial.length) {
+                                byte[] grown = new byte[2 * partialLen];
+                                System.arraycopy(partial, 0, grown, 0,
+                                        partialLen);
+                                partial = grown;
+                            }
+                            partial[partialLen++] = buf[i];
+                        }
+                    }
+                }
+                if (partialLen > 0) {
+                    lines.put(new Line(logName, new String(partial, 0,
+                            partialLen, UTF8)));
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            logger.severe("Error while reading log [" + logName + "]: "
+                    + e.getMessage());
+        } catch (InterruptedException e) {
+            return;
+        }
+        lines.add(new Line(logName, null));
+    }
+
+    /**
+     * Parses a line of a log, and adds its event (if any) to the event's
+     * trace. Completes the traces of the log when the line is a partition
+     * separator.
+     *
+     * @throws ParseException
+     *             when the line cannot be parsed
+     */
+    public void parseLine(String logName, String line) throws ParseException {
+        Log log = getLog(logName);
+        int numSeparators = log.stream.getNumSeparators();
+        EventNode node = parser.parseStreamedLine(log.stream, line);
+        if (log.stream.getNumSeparators() != numSeparators) {
+            completeTraces(log);
+        }
+        if (node == null) {
+            return;
+        }
+
+        int traceID = node.getTraceID();
+        OpenTrace trace = openTraces.get(traceID);
+        if (trace == null) {
+            trace = new OpenTrace();
+            openTraces.put(traceID, trace);
+        }
+        trace.events.add(node);
+        trace.lastEventTime = System.currentTimeMillis();
+        trace.logs.add(log);
+        log.traceIDs.add(traceID);
+    }
+
+    /** Completes the traces of a log that has ended. */
+    public void endLog(String logName) {
+        completeTraces(getLog(logName));
+    }
+
+    private Log getLog(String logName) {
+        Log log = logs.get(logName);
+        if (log == null) {
+            throw new IllegalArgumentException("Unknown log " + logName);
+        }
+        return log;
+    }
+
+    /** Completes the open traces that the log has events in. */
+    private void completeTraces(Log log) {
+        for (int traceID : new ArrayList<Integer>(log.traceIDs)) {
+            completeTrace(traceID);
+        }
+    }
+
+    private void completeTrace(int traceID) {
+        OpenTrace trace = openTraces.remove(traceID);
+        for (Log log : trace.logs) {
+            log.traceIDs.remove(traceID);
+        }
+        if (!keepOrder) {
+            // The sort is stable, so events with equal times stay in log
+            // order.
+            Collections.sort(trace.events, timeComparator);
+        }
+        List<EventType> eTypes = new ArrayList<EventType>(trace.events.size());
+        for (EventNode node : trace.events) {
+            eTypes.add(node.getEType());
+        }
+        miner.addTrace(eTypes);
+        parser.endStreamedTrace(traceID);
+    }
+
+    /**
+     * Completes the traces that have had no new events since now -
+     * traceTimeout. The open traces are in the order of their last events, so
+     * only the idle traces and the first trace that is not idle are visited.
+     */
+    public void completeIdleTraces(long now) {
+        List<Integer> idle = new ArrayList<Integer>();
+        for (Map.Entry<Integer, OpenTrace> entry : openTraces.entrySet()) {
+            if (now - entry.getValue().lastEventTime < traceTimeout) {
+                break;
+            }
+            idle.add(entry.getKey());
+        }
+        for (int traceID : idle) {
+            completeTrace(traceID);
+        }
+    }
+
+    /** Completes all the open traces. */
+    public void completeAllTraces() {
+        for (int traceID : new ArrayList<Integer>(openTraces.keySet())) {
+            completeTrace(traceID);
+        }
+    }
+
+    /**
+     * Publishes the invariants of the completed traces to the listeners, if
+     * traces have completed since the last publication.
+     */
+    public void publish() {
+        int numTraces = miner.getNumTraces();
+        if (numTraces == numPublishedTraces) {
+            return;
+        }
+        numPublishedTraces = numTraces;
+        logger.info("Publishing the invariants of " + numTraces + " traces");
+        for (ILiveInvariantsListener listener : listeners) {
+            listener.invariantsPublished(miner.getInvariants(supportCount),
+                    numTraces);
+        }
+    }
+
+    /** Returns the invariants of the traces completed so far. */
+    public TemporalInvariantSet getInvariants() {
+        return miner.getInvariants(supportCount);
+    }
+
+    /** Returns the number of traces completed so far. */
+    public int getNumTraces() {
+        return miner.getNumTraces();
+    }
+
+    /**
+     * Mines the logs that have readers until all of them end or stop() is
+     * called, and then completes the open traces and publishes their
+     * invariants a last time. Tailed files never end.
+     *
+     * @throws ParseException
+     *             when a line cannot be parsed
+     */
+    public void run() throws ParseException, InterruptedException {
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        int numActiveLogs = readers.size();
+
+        long nextPublish = System.currentTimeMillis() + publishInterval;
+        try {
+            while (!stopped && numActiveLogs > 0) {
+                long now = System.currentTimeMillis();
+                long wait = Math.min(nextPublish - now, traceTimeout);
+                Line line = lines.poll(Math.max(wait, 1),
+                        TimeUnit.MILLISECONDS);
+                if (line != null) {
+                    if (line.text == null) {
+                        endLog(line.logName);
+                        numActiveLogs--;
+                    } else {
+                        parseLine(line.logName, line.text);
+                    }
+                }
+
+                now = System.currentTimeMillis();
+                completeIdleTraces(now);
+                if (now >= nextPublish) {
+                    publish();
+                    nextPublish = now + publishInterval;
+                }
+            }
+        } finally {
+            stopped = true;
+            for (Thread reader : readers) {
+                reader.interrupt();
+            }
+        }
+        completeAllTraces();
+        publish();
+    }
+
+    /** Makes run() return, after it publishes the last invariants. */
+    public void stop() {
+        stopped = true;
+    }
+}
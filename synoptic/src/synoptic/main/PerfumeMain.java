@@ -2,7 +2,6 @@ package synoptic.main;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
-import java.util.Locale;
 import java.util.Random;
 
 import synoptic.invariants.TemporalInvariantSet;
@@ -11,9 +10,7 @@ import synoptic.main.options.AbstractOptions;
 import synoptic.main.options.PerfumeOptions;
 import synoptic.main.parser.ParseException;
 import synoptic.model.ChainsTraceGraph;
-import synoptic.model.PartitionGraph;
 import synoptic.model.export.GraphExportFormatter;
-import synoptic.util.InternalSynopticException;
 
 /**
  * Contains entry points for the command line version of Perfume.
@@ -43,18 +40,7 @@ public class PerfumeMain extends AbstractMain {
             return;
         }
 
-        try {
-            Locale.setDefault(Locale.US);
-
-            PartitionGraph pGraph = mainInstance.createInitialPartitionGraph();
-            if (pGraph != null) {
-                mainInstance.runSynoptic(pGraph);
-            }
-        } catch (ParseException e) {
-            throw e;
-        } catch (Exception e) {
-            throw InternalSynopticException.wrap(e);
-        }
+        mainInstance.run();
     }
 
     /**
@@ -1,16 +1,17 @@
 package synoptic.main;
 
+import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URISyntaxException;
-import java.util.Locale;
 import java.util.Random;
 
+import synoptic.invariants.TemporalInvariantSet;
 import synoptic.main.options.AbstractOptions;
 import synoptic.main.options.SynopticOptions;
 import synoptic.main.parser.ParseException;
-import synoptic.model.PartitionGraph;
+import synoptic.main.parser.TraceParser;
 import synoptic.model.export.GraphExportFormatter;
-import synoptic.util.InternalSynopticException;
 
 /**
  * Contains entry points for the command line version of Synoptic, as well as
@@ -41,18 +42,76 @@ public class SynopticMain extends AbstractMain {
             return;
         }
 
-        try {
-            Locale.setDefault(Locale.US);
+        mainInstance.run();
+    }
+
+    /**
+     * Runs live mining when a liveMiningInterval is set, and the batch
+     * inference otherwise.
+     */
+    @Override
+    protected void runInference() throws Exception {
+        if (options.liveMiningInterval > 0) {
+            runLiveMining();
+            return;
+        }
+        super.runInference();
+    }
 
-            PartitionGraph pGraph = mainInstance.createInitialPartitionGraph();
-            if (pGraph != null) {
-                mainInstance.runSynoptic(pGraph);
+    /**
+     * Continuously mines the invariants of the input logs, which are tailed
+     * ('-' stands for stdin), and logs them every liveMiningInterval ms -- or
+     * outputs them to the invariants file, with outputInvariantsToFile. Runs
+     * until stdin ends, when it is the only input, or until the process is
+     * killed. No model is inferred.
+     */
+    public void runLiveMining() throws Exception {
+        TraceParser parser = new TraceParser(options.regExps,
+                AbstractOptions.partitionRegExp,
+                AbstractOptions.separatorRegExp, options.dateFormat);
+        LiveInvariantMiner liveMiner = new LiveInvariantMiner(parser,
+                options.liveMiningInterval, options.liveTraceTimeout,
+                options.keepOrder, options.outputSupportCount);
+        for (String fileArg : AbstractOptions.plumeOpts.logFilenames) {
+            if (fileArg.equals("-")) {
+                liveMiner.readStream("stdin", System.in);
+                continue;
+            }
+            File[] files = getFiles(fileArg);
+            if (files.length == 0) {
+                throw new ParseException(
+                        "The set of input files is empty. Please specify a set of existing files to parse.");
+            }
+            for (File file : files) {
+                liveMiner.tailFile(file);
             }
-        } catch (ParseException e) {
-            throw e;
-        } catch (Exception e) {
-            throw InternalSynopticException.wrap(e);
         }
+
+        liveMiner.addListener(new ILiveInvariantsListener() {
+            @Override
+            public void invariantsPublished(TemporalInvariantSet invariants,
+                    int numTraces) {
+                logger.info("Mined " + invariants.numInvariants()
+                        + " invariants from " + numTraces + " traces");
+                filterInvariants(invariants);
+                if (options.dumpInvariants) {
+                    logger.info("Mined invariants:\n"
+                            + invariants.toPrettyString());
+                }
+                if (options.outputInvariantsToFile) {
+                    String invariantsFilename = AbstractOptions.outputPathPrefix
+                            + ".invariants.txt";
+                    try {
+                        invariants.outputToFile(invariantsFilename,
+                                options.outputSupportCount);
+                    } catch (FileNotFoundException e) {
+                        logger.severe("Could not output invariants to file "
+                                + invariantsFilename + ": " + e.getMessage());
+                    }
+                }
+            }
+        });
+        liveMiner.run();
     }
 
     /**
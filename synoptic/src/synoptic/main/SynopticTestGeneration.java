@@ -6,8 +6,10 @@ import java.util.Set;
 
 import daikonizer.DaikonInvariants;
 
+import synoptic.main.options.AbstractOptions;
 import synoptic.model.Partition;
 import synoptic.model.PartitionGraph;
+import synoptic.model.PredictedPaths;
 import synoptic.model.Transition;
 import synoptic.model.TransitionLabelType;
 import synoptic.model.interfaces.ITransition;
@@ -25,14 +27,32 @@ public class SynopticTestGeneration {
     private static final String timeRelation = "time".intern();
 
     /**
-     * Derives an abstract test suite from a given model.
+     * Derives an abstract test suite from a given model. The number and length
+     * of the tests are limited by the testGenerationMaxTests and
+     * testGenerationMaxLength options. Unless the paths of the model are
+     * enumerated in parallel (see the testGenerationThreads option), each
+     * path is converted to a test as soon as it is found, so the paths are
+     * not all held in memory.
      * 
      * @return a set of abstract test cases derived from model.
      */
     public static Set<AbstractTestCase> deriveAbstractTests(PartitionGraph model) {
+        AbstractOptions options = AbstractMain.getInstance().options;
+        PredictedPaths paths = model.getBoundedPredictedPaths(
+                options.testGenerationMaxTests, options.testGenerationMaxLength);
+        Iterable<List<Partition>> pathsToConvert = paths;
+        if (options.testGenerationThreads > 1) {
+            pathsToConvert = paths.collect(options.testGenerationThreads);
+        }
+
+        if (options.stateProcessing) {
+            // Infer the Daikon invariants of all the transitions of the model
+            // in one batch, rather than as each partition is converted.
+            Partition.computeTransitionsWithDaikonInvariants(model.getNodes());
+        }
+
         Set<AbstractTestCase> testSuite = new LinkedHashSet<AbstractTestCase>();
-        Set<List<Partition>> paths = model.getAllBoundedPredictedPaths();
-        for (List<Partition> path : paths) {
+        for (List<Partition> path : pathsToConvert) {
             AbstractTestCase testCase = convertPathToAbstractTest(path);
             testSuite.add(testCase);
         }
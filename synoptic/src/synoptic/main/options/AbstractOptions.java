@@ -60,6 +60,15 @@ public class AbstractOptions {
     static final String testGenerationStr = "-t Enable abstract test generation";
     public boolean testGeneration = false;
 
+    static final String testGenerationMaxTestsStr = "The number of abstract tests to generate with test generation (0 for no limit)";
+    public int testGenerationMaxTests = 0;
+
+    static final String testGenerationMaxLengthStr = "The number of events in each abstract test generated with test generation, including the INITIAL and TERMINAL events (0 for no limit)";
+    public int testGenerationMaxLength = 0;
+
+    static final String testGenerationThreadsStr = "The number of threads that enumerate the paths of the model for test generation";
+    public int testGenerationThreads = 1;
+
     static final String supportCountThresholdStr = "filter all invariants that have support values greater than the threshold";
     public int supportCountThreshold = 0;
 
@@ -69,6 +78,12 @@ public class AbstractOptions {
     static final String ignoreNFbyInvsStr = "Ignore NFby invariants";
     public boolean ignoreNFbyInvs = false;
 
+    static final String liveMiningIntervalStr = "Continuously mine invariants from the input logs (which are tailed, or read from stdin for '-'), publishing them every this many ms. 0 mines the logs once.";
+    public int liveMiningInterval = 0;
+
+    static final String liveTraceTimeoutStr = "In live mining, the number of ms without new events after which a trace is considered complete";
+    public int liveTraceTimeout = 10000;
+
     // Extended Perfume option
     static final String termOnIntermediateModelStr = "-t Terminate on intermediate model output";
     public boolean termOnIntermediateModel = false;
@@ -116,6 +131,9 @@ public class AbstractOptions {
     static final String argsFilenameStr = "-c Command line arguments input filename";
     public static String argsFilename = null;
 
+    static final String resumeFromCheckpointStr = "Resume from a checkpoint file written with checkpointPathPrefix, instead of parsing and mining the input logs";
+    public String resumeFromCheckpoint = null;
+
     static final String inputDeltaStr = "Interpret the supplied time values as delta values instead of absolute values";
     public static boolean inputDelta = false;
 
@@ -171,6 +189,9 @@ public class AbstractOptions {
     static final String outputJSONStr = "-j Output the final model as a JSON object";
     public boolean outputJSON = false;
 
+    static final String checkpointPathPrefixStr = "Write a binary checkpoint of each pipeline stage to <checkpointPathPrefix>.{mined,refined,coarsened}.ckpt";
+    public String checkpointPathPrefix = null;
+
     // Extended Perfume option
     static final String intermediateOutPathStr = "The location to output intermediate models";
     public String intermediateOutPath = null;
@@ -216,9 +237,24 @@ public class AbstractOptions {
     static final String noCoarseningStr = "Do not perform the coarsening stage";
     public boolean noCoarsening = false;
 
+    static final String splitStrategyStr = "The strategy for choosing refinement splits: random, shortest (shortest counter-examples first), largest (splits of the largest partitions first) or mostResolving (splits that satisfy the most unsatisfied invariants first)";
+    public String splitStrategy = "random";
+
+    static final String splitEvaluationThreadsStr = "The number of threads that evaluate candidate refinement splits in parallel";
+    public int splitEvaluationThreads = 1;
+
+    static final String mergeEvaluationThreadsStr = "The number of threads that evaluate candidate coarsening merges in parallel";
+    public int mergeEvaluationThreads = 1;
+
     static final String doBenchmarkingStr = "Perform benchmarking and output benchmark information";
     public boolean doBenchmarking = false;
 
+    static final String metricsFileStr = "Write the per-stage metrics (counters, histograms, and wall/CPU time and allocations of each stage) to this file at exit, as CSV if it ends with .csv and as JSON otherwise";
+    public String metricsFile = null;
+
+    static final String metricsReportIntervalStr = "Log a summary of the metrics every this many ms while running. 0 disables the periodic report.";
+    public int metricsReportInterval = 0;
+
     static final String internCommonStringsStr = "Intern commonly occurring strings, such as event types, as a memory-usage optimization";
     public boolean internCommonStrings = true;
 
@@ -408,6 +408,20 @@ public class ExtPerfumeOptions extends Options {
     @Option(AbstractOptions.doBenchmarkingStr)
     public boolean doBenchmarking = false;
 
+    /**
+     * File to write the metrics of the run to at exit (see
+     * synoptic.benchmarks.Metrics). This option is <i>unpublicized</i>.
+     */
+    @Option(AbstractOptions.metricsFileStr)
+    public String metricsFile = null;
+
+    /**
+     * Interval in ms at which to log a summary of the metrics while running.
+     * This option is <i>unpublicized</i>.
+     */
+    @Option(AbstractOptions.metricsReportIntervalStr)
+    public int metricsReportInterval = 0;
+
     /**
      * Intern commonly occurring strings, such as event types, as a memory-usage
      * optimization. This option is <i>unpublicized</i>; it will not appear in
@@ -575,6 +589,8 @@ public class ExtPerfumeOptions extends Options {
         absOpts.onlyMineInvariants = onlyMineInvariants;
         absOpts.noCoarsening = noCoarsening;
         absOpts.doBenchmarking = doBenchmarking;
+        absOpts.metricsFile = metricsFile;
+        absOpts.metricsReportInterval = metricsReportInterval;
         absOpts.internCommonStrings = internCommonStrings;
         absOpts.runTests = runTests;
         absOpts.runAllTests = runAllTests;
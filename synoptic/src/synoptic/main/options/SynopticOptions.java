@@ -92,6 +92,26 @@ public class SynopticOptions extends Options {
     @Option(value = AbstractOptions.testGenerationStr, aliases = { "-test-generation" })
     public boolean testGeneration = false;
 
+    /**
+     * The number of abstract tests to generate with test generation.
+     */
+    @Option(AbstractOptions.testGenerationMaxTestsStr)
+    public int testGenerationMaxTests = 0;
+
+    /**
+     * The number of events in each abstract test generated with test
+     * generation.
+     */
+    @Option(AbstractOptions.testGenerationMaxLengthStr)
+    public int testGenerationMaxLength = 0;
+
+    /**
+     * The number of threads that enumerate the paths of the model for test
+     * generation. This option is <i>unpublicized</i>.
+     */
+    @Option(AbstractOptions.testGenerationThreadsStr)
+    public int testGenerationThreads = 1;
+
     /**
      * Filter all invariants that have support values greater than the threshold
      */
@@ -111,6 +131,23 @@ public class SynopticOptions extends Options {
     @Option(AbstractOptions.ignoreNFbyInvsStr)
     public boolean ignoreNFbyInvs = false;
 
+    /**
+     * Mine invariants continuously, from logs that are still being written.
+     * The input log files are tailed, and '-' stands for stdin. The mined
+     * invariants are published every this many milliseconds. When 0, the logs
+     * are mined once, and a model is inferred.
+     */
+    @Option(AbstractOptions.liveMiningIntervalStr)
+    public int liveMiningInterval = 0;
+
+    /**
+     * The number of milliseconds without new events after which a trace of a
+     * live log is complete. Traces are also complete at partition separators
+     * and at the end of stdin.
+     */
+    @Option(AbstractOptions.liveTraceTimeoutStr)
+    public int liveTraceTimeout = 10000;
+
     // //////////////////////////////////////////////////
     /**
      * Regular expression separator string. When lines are found which match
@@ -199,6 +236,14 @@ public class SynopticOptions extends Options {
     @OptionGroup("Input Options")
     @Option(value = AbstractOptions.argsFilenameStr, aliases = { "-argsfile" })
     public String argsFilename = null;
+
+    /**
+     * A checkpoint to resume from, instead of parsing the logs and mining
+     * invariants. Refinement and coarsening are skipped if the checkpoint was
+     * written after them.
+     */
+    @Option(AbstractOptions.resumeFromCheckpointStr)
+    public String resumeFromCheckpoint = null;
     // end option group "Input Options"
 
     // //////////////////////////////////////////////////
@@ -286,6 +331,13 @@ public class SynopticOptions extends Options {
     @Option(value = AbstractOptions.outputJSONStr, aliases = { "-output-json" })
     public boolean outputJSON = false;
 
+    /**
+     * The prefix of the checkpoints written after mining, refinement and
+     * coarsening, which later runs can resume from (see resumeFromCheckpoint).
+     */
+    @Option(AbstractOptions.checkpointPathPrefixStr)
+    public String checkpointPathPrefix = null;
+
     // end option group "Output Options"
 
     // //////////////////////////////////////////////////
@@ -385,6 +437,28 @@ public class SynopticOptions extends Options {
     @Option(AbstractOptions.noCoarseningStr)
     public boolean noCoarsening = false;
 
+    /**
+     * The strategy that orders the counter-examples and candidate splits in
+     * each refinement round (see synoptic.algorithms.splitstrategies). This
+     * option is <i>unpublicized</i>.
+     */
+    @Option(AbstractOptions.splitStrategyStr)
+    public String splitStrategy = "random";
+
+    /**
+     * The number of threads that evaluate candidate refinement splits. This
+     * option is <i>unpublicized</i>.
+     */
+    @Option(AbstractOptions.splitEvaluationThreadsStr)
+    public int splitEvaluationThreads = 1;
+
+    /**
+     * The number of threads that evaluate candidate coarsening merges. This
+     * option is <i>unpublicized</i>.
+     */
+    @Option(AbstractOptions.mergeEvaluationThreadsStr)
+    public int mergeEvaluationThreads = 1;
+
     /**
      * Perform benchmarking and output benchmark information. This option is
      * <i>unpublicized</i>; it will not appear in the default usage message
@@ -392,6 +466,20 @@ public class SynopticOptions extends Options {
     @Option(AbstractOptions.doBenchmarkingStr)
     public boolean doBenchmarking = false;
 
+    /**
+     * File to write the metrics of the run to at exit (see
+     * synoptic.benchmarks.Metrics). This option is <i>unpublicized</i>.
+     */
+    @Option(AbstractOptions.metricsFileStr)
+    public String metricsFile = null;
+
+    /**
+     * Interval in ms at which to log a summary of the metrics while running.
+     * This option is <i>unpublicized</i>.
+     */
+    @Option(AbstractOptions.metricsReportIntervalStr)
+    public int metricsReportInterval = 0;
+
     /**
      * Intern commonly occurring strings, such as event types, as a memory-usage
      * optimization. This option is <i>unpublicized</i>; it will not appear in
@@ -501,9 +589,14 @@ public class SynopticOptions extends Options {
         absOpts.multipleRelations = multipleRelations;
         absOpts.stateProcessing = stateProcessing;
         absOpts.testGeneration = testGeneration;
+        absOpts.testGenerationMaxTests = testGenerationMaxTests;
+        absOpts.testGenerationMaxLength = testGenerationMaxLength;
+        absOpts.testGenerationThreads = testGenerationThreads;
         absOpts.supportCountThreshold = supportCountThreshold;
         absOpts.ignoreIntrByInvs = ignoreIntrByInvs;
         absOpts.ignoreNFbyInvs = ignoreNFbyInvs;
+        absOpts.liveMiningInterval = liveMiningInterval;
+        absOpts.liveTraceTimeout = liveTraceTimeout;
 
         // Parser options
 
@@ -521,6 +614,7 @@ public class SynopticOptions extends Options {
         // Input options
 
         AbstractOptions.argsFilename = argsFilename;
+        absOpts.resumeFromCheckpoint = resumeFromCheckpoint;
 
         // Output options
 
@@ -536,6 +630,7 @@ public class SynopticOptions extends Options {
         absOpts.showTerminalNode = showTerminalNode;
         absOpts.showInitialNode = showInitialNode;
         absOpts.outputJSON = outputJSON;
+        absOpts.checkpointPathPrefix = checkpointPathPrefix;
 
         // Verbosity Options
 
@@ -553,7 +648,12 @@ public class SynopticOptions extends Options {
         absOpts.mineNeverConcurrentWithInv = mineNeverConcurrentWithInv;
         absOpts.onlyMineInvariants = onlyMineInvariants;
         absOpts.noCoarsening = noCoarsening;
+        absOpts.splitStrategy = splitStrategy;
+        absOpts.splitEvaluationThreads = splitEvaluationThreads;
+        absOpts.mergeEvaluationThreads = mergeEvaluationThreads;
         absOpts.doBenchmarking = doBenchmarking;
+        absOpts.metricsFile = metricsFile;
+        absOpts.metricsReportInterval = metricsReportInterval;
         absOpts.internCommonStrings = internCommonStrings;
         absOpts.runTests = runTests;
         absOpts.runAllTests = runAllTests;
@@ -0,0 +1,19 @@
+package synoptic.main.parser;
+
+import synoptic.model.EventNode;
+
+/**
+ * Receives the event nodes of a log as the log is being parsed, in the order of
+ * the log lines (see TraceParser.streamTraceFile).
+ */
+public interface IEventNodeListener {
+
+    /**
+     * Called with each parsed event node. The trace of the node is identified
+     * by node.getTraceID().
+     * 
+     * @throws ParseException
+     *             to stop parsing the log
+     */
+    public void eventNodeParsed(EventNode node) throws ParseException;
+}
@@ -34,6 +34,7 @@ import synoptic.model.TraceGraph;
 import synoptic.model.event.DistEventType;
 import synoptic.model.event.Event;
 import synoptic.model.event.EventType;
+import synoptic.model.event.EventTypeAlphabet;
 import synoptic.model.event.StringEventType;
 import synoptic.model.state.State;
 import synoptic.util.InternalSynopticException;
@@ -47,6 +48,7 @@ import synoptic.util.resource.ITotalResource;
 import synoptic.util.resource.LTotalResource;
 import synoptic.util.resource.NotComparableVectorsException;
 import synoptic.util.resource.VectorTime;
+import synoptic.util.resource.VectorTimeArena;
 
 /**
  * A generic trace parser, configured in terms of Java 7 style named capture
@@ -63,6 +65,10 @@ public class TraceParser {
     private static int nextTraceID;
     private final Map<String, Integer> partitionNameToTraceID;
 
+    // The partition names of the streamed traces that have not ended yet, by
+    // trace ID.
+    private final Map<Integer, String> streamedPartitionNames = new HashMap<Integer, String>();
+
     private NamedSubstitution filter;
 
     // Partitioning based on filter expressions -- maps a unique partition
@@ -139,6 +145,19 @@ public class TraceParser {
     // Used to convert delta values into absolute values when the flag is set
     private AbstractResource lastTime;
 
+    // Allocates the clocks of all the parsed vector times densely.
+    private final VectorTimeArena vtimeArena = new VectorTimeArena();
+
+    // Assigns the parsed event types their IDs, for this parser's run only.
+    private final EventTypeAlphabet alphabet = new EventTypeAlphabet();
+
+    // Whether the parsed events are kept in partitions (to generate a trace
+    // graph), which is not the case while streaming a log.
+    private boolean retainEvents = true;
+
+    // The incremented group that counts the partition separators.
+    private static final String separatorCountGroup = "SEPCOUNT";
+
     private static final String dummyEtypeLabel = "dummy-etype-for-line-with-state"
             .intern();
 
@@ -223,6 +242,13 @@ public class TraceParser {
         }
     }
 
+    /**
+     * Returns the alphabet of the event types parsed by this parser.
+     */
+    public EventTypeAlphabet getAlphabet() {
+        return alphabet;
+    }
+
     /**
      * Returns whether or not the time type used to parse the log(s) has a
      * canonical total order or not.
@@ -648,6 +674,166 @@ public class TraceParser {
         }
     }
 
+    /**
+     * Parses a log file line by line and passes each parsed event to listener,
+     * without keeping the events in this parser. The memory used thus does not
+     * grow with the size of the log, but no trace graph can be generated from
+     * the streamed events. Only logs with totally ordered time are supported,
+     * and lines that only capture a state are skipped.
+     * 
+     * @param file
+     *            The log file to stream.
+     * @param listener
+     *            The listener that receives the parsed events.
+     * @throws ParseException
+     *             when user supplied expressions are the problem, or when the
+     *             log time is not totally ordered
+     * @throws InternalSynopticException
+     *             when Synoptic code is the problem
+     */
+    public void streamTraceFile(File file, IEventNodeListener listener)
+            throws ParseException, InternalSynopticException {
+        LogStream stream = newLogStream(file.getAbsolutePath());
+        try {
+            BufferedReader br = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(file)));
+            try {
+                String strLine;
+                while ((strLine = br.readLine()) != null) {
+                    EventNode node = parseStreamedLine(stream, strLine);
+                    if (node != null) {
+                        listener.eventNodeParsed(node);
+                    }
+                }
+            } finally {
+                br.close();
+            }
+        } catch (IOException e) {
+            String error = "Error while attempting to read log file ["
+                    + stream.traceName + "]: " + e.getMessage();
+            logger.severe(error);
+            throw new ParseException(error);
+        }
+        logger.info("Successfully streamed " + stream.lineNum
+                + " lines from [" + stream.traceName + "]");
+    }
+
+    /**
+     * The parsing state of a log that is streamed through a parser one line at
+     * a time: the name of the log, its incrementor context (which includes the
+     * count of partition separators), the last parsed time and the number of
+     * parsed lines. Created with newLogStream.
+     */
+    public static final class LogStream {
+        private final String traceName;
+        private final Map<String, Integer> context;
+        private AbstractResource lastTime = null;
+        private int lineNum = 0;
+
+        private LogStream(String traceName, Map<String, Integer> context) {
+            this.traceName = traceName;
+            this.context = context;
+        }
+
+        public String getTraceName() {
+            return traceName;
+        }
+
+        /** Returns the number of lines of the log parsed so far. */
+        public int getNumLines() {
+            return lineNum;
+        }
+
+        /**
+         * Returns the number of partition separators parsed so far. The events
+         * after a separator are always in different partitions than those
+         * before it.
+         */
+        public int getNumSeparators() {
+            Integer count = context.get(separatorCountGroup);
+            return (count == null) ? 0 : count;
+        }
+    }
+
+    /**
+     * Starts streaming a log with the given name (which maps to the FILE parse
+     * group) through this parser. Only logs with totally ordered time can be
+     * streamed.
+     * 
+     * @throws ParseException
+     *             when the log time is not totally ordered
+     */
+    public LogStream newLogStream(String traceName) throws ParseException {
+        if (!logTimeTypeIsTotallyOrdered()) {
+            String error = "Only logs with totally ordered time can be streamed.";
+            logger.severe(error);
+            throw new ParseException(error);
+        }
+        String tName = traceName;
+        if (AbstractMain.getInstance().options.internCommonStrings) {
+            tName = tName.intern();
+        }
+        return new LogStream(tName, newIncrementorContext());
+    }
+
+    /**
+     * Forgets the partition of a streamed trace that has ended, so that
+     * streaming a log for a long time does not accumulate partition names. A
+     * later event of the same partition starts a new trace, with a new ID.
+     */
+    public void endStreamedTrace(int traceID) {
+        String pName = streamedPartitionNames.remove(traceID);
+        if (pName != null) {
+            partitionNameToTraceID.remove(pName);
+        }
+    }
+
+    /**
+     * Parses the next line of a streamed log, without keeping the parsed event
+     * in this parser. Returns null if the line is not an event (e.g., if it is
+     * a partition separator, or if it only captures a state).
+     * 
+     * @throws ParseException
+     *             when user supplied expressions are the problem
+     * @throws InternalSynopticException
+     *             when Synoptic code is the problem
+     */
+    public EventNode parseStreamedLine(LogStream stream, String line)
+            throws ParseException, InternalSynopticException {
+        stream.lineNum++;
+        AbstractResource savedLastTime = lastTime;
+        lastTime = stream.lastTime;
+        retainEvents = false;
+        EventNode node;
+        try {
+            node = parseLine(line, stream.traceName, stream.context,
+                    stream.lineNum);
+        } finally {
+            stream.lastTime = lastTime;
+            lastTime = savedLastTime;
+            retainEvents = true;
+        }
+        if (node == null
+                || node.getEType().getETypeLabel().equals(dummyEtypeLabel)) {
+            return null;
+        }
+        return node;
+    }
+
+    /**
+     * Returns a new incrementor context, in which all the incremented fields
+     * are 0.
+     */
+    private Map<String, Integer> newIncrementorContext() {
+        Map<String, Integer> context = new LinkedHashMap<String, Integer>();
+        for (Map<String, Boolean> incs : incrementors) {
+            for (String incField : incs.keySet()) {
+                context.put(incField, 0);
+            }
+        }
+        return context;
+    }
+
     /**
      * Parses strings generated by traceReader as event instances.
      * 
@@ -670,12 +856,7 @@ public class TraceParser {
         BufferedReader br = new BufferedReader(traceReader);
 
         // Initialize incrementor context.
-        Map<String, Integer> context = new LinkedHashMap<String, Integer>();
-        for (Map<String, Boolean> incs : incrementors) {
-            for (String incField : incs.keySet()) {
-                context.put(incField, 0);
-            }
-        }
+        Map<String, Integer> context = newIncrementorContext();
 
         ArrayList<EventNode> results = new ArrayList<EventNode>();
         String strLine = null;
@@ -983,7 +1164,10 @@ public class TraceParser {
                 }
                 event = new Event(eType, line, fileName, lineNum);
             } else {
-                eType = new StringEventType(eTypeLabel);
+                // All events of a type share the interned event type, and so
+                // its alphabet ID. Distributed event types are not interned
+                // here, as they may still be changed (see DistEventType).
+                eType = alphabet.intern(new StringEventType(eTypeLabel));
                 event = new Event(eType, line, fileName, lineNum);
             }
 
@@ -1063,7 +1247,8 @@ public class TraceParser {
                             || selectedTimeGroup.equals("DTIME")) {
                         nextTime = new DTotalResource(timeField.trim());
                     } else if (selectedTimeGroup.equals("VTIME")) {
-                        nextTime = new VectorTime(timeField.trim());
+                        nextTime = vtimeArena.newVectorTime(timeField
+                                .trim());
                     } else if (selectedTimeGroup.equals("DATETIME")) {
                         if (dateFormatter == null) {
                             String error = "Date formatter is not initialized with a format, cannot continue";
@@ -1180,7 +1365,9 @@ public class TraceParser {
             // We want to add eventNode->eventRelations to allEventRelations
             // ONLY IF eventNode actually represents an event, not a dummy
             // for state.
-            if (!eventNode.getEType().getETypeLabel().equals(dummyEtypeLabel)) {
+            if (retainEvents
+                    && !eventNode.getEType().getETypeLabel()
+                            .equals(dummyEtypeLabel)) {
                 if (!allEventRelations.containsKey(eventNode)) {
                     allEventRelations.put(eventNode, new HashSet<Relation>());
                 }
@@ -1252,6 +1439,18 @@ public class TraceParser {
      */
     private EventNode addEventNodeToPartition(Event event, String pName) {
         EventNode eventNode = new EventNode(event);
+        if (!retainEvents) {
+            // A streamed event: only its trace ID is needed.
+            Integer traceID = partitionNameToTraceID.get(pName);
+            if (traceID == null) {
+                traceID = nextTraceID++;
+                partitionNameToTraceID.put(pName, traceID);
+                streamedPartitionNames.put(traceID, pName);
+            }
+            eventNode.setTraceID(traceID);
+            return eventNode;
+        }
+
         ArrayList<EventNode> events = partitions.get(pName);
         if (events == null) {
             events = new ArrayList<EventNode>();
@@ -1295,13 +1494,51 @@ public class TraceParser {
 
         assert logTimeTypeIsTotallyOrdered();
 
-        ChainsTraceGraph graph = new ChainsTraceGraph(allEvents);
+        ChainsTraceGraph graph = new ChainsTraceGraph(allEvents, alphabet);
         for (String partition : partitions.keySet()) {
             graph.addTrace(partitions.get(partition), allEventRelations);
         }
         return graph;
     }
 
+    /**
+     * Adds the traces of newly parsed events to an existing trace graph, which
+     * was generated with generateDirectTORelation, so that a model of the
+     * graph can be updated with the new traces (see
+     * Bisimulation.updateModel). The events are grouped into traces by their
+     * trace ID, so they must not belong to the traces already in the graph.
+     * 
+     * @param graph
+     *            The trace graph to extend.
+     * @param newEvents
+     *            The events to add, which were parsed by this parser.
+     * @return The new traces, each in trace order.
+     * @throws ParseException
+     */
+    public List<List<EventNode>> addTracesToTORelation(ChainsTraceGraph graph,
+            List<EventNode> newEvents) throws ParseException {
+
+        assert logTimeTypeIsTotallyOrdered();
+
+        Map<Integer, List<EventNode>> traces = new LinkedHashMap<Integer, List<EventNode>>();
+        for (EventNode node : newEvents) {
+            if (node.getEType().getETypeLabel().equals(dummyEtypeLabel)) {
+                continue;
+            }
+            graph.add(node);
+            List<EventNode> trace = traces.get(node.getTraceID());
+            if (trace == null) {
+                trace = new ArrayList<EventNode>();
+                traces.put(node.getTraceID(), trace);
+            }
+            trace.add(node);
+        }
+        for (List<EventNode> trace : traces.values()) {
+            graph.addTrace(trace, allEventRelations);
+        }
+        return new ArrayList<List<EventNode>>(traces.values());
+    }
+
     /**
      * Given a list of log events that can be only partially ordered,
      * manipulates the builder to construct the corresponding trace graph.
@@ -1320,30 +1557,29 @@ public class TraceParser {
         // Maintains nodes without predecessors.
         Set<EventNode> noPredecessor = new LinkedHashSet<EventNode>(allEvents);
 
-        Set<EventNode> directSuccessors;
         for (String partition : partitions.keySet()) {
             List<EventNode> group = partitions.get(partition);
 
-            for (EventNode e1 : group) {
-
-                // In the partially ordered case there may be multiple direct
-                // successors.
-                try {
-                    directSuccessors = EventNode.getDirectPOSuccessors(e1,
-                            group);
-                } catch (EqualVectorTimestampsException e) {
-                    String error = "Found two events with identical timestamps: (1) "
-                            + e.e1.toString() + " (2) " + e.e2.toString();
-                    logger.severe(error);
-                    throw new ParseException(error);
+            // In the partially ordered case there may be multiple direct
+            // successors. These are computed for the whole group at once.
+            Map<EventNode, Set<EventNode>> groupSuccessors;
+            try {
+                groupSuccessors = EventNode.getDirectPOSuccessors(group);
+            } catch (EqualVectorTimestampsException e) {
+                String error = "Found two events with identical timestamps: (1) "
+                        + e.e1.toString() + " (2) " + e.e2.toString();
+                logger.severe(error);
+                throw new ParseException(error);
 
-                } catch (NotComparableVectorsException e) {
-                    String error = "Found two events with different length vector timestamps: (1) "
-                            + e.e1.toString() + " (2) " + e.e2.toString();
-                    logger.severe(error);
-                    throw new ParseException(error);
-                }
+            } catch (NotComparableVectorsException e) {
+                String error = "Found two events with different length vector timestamps: (1) "
+                        + e.e1.toString() + " (2) " + e.e2.toString();
+                logger.severe(error);
+                throw new ParseException(error);
+            }
 
+            for (EventNode e1 : group) {
+                Set<EventNode> directSuccessors = groupSuccessors.get(e1);
                 if (directSuccessors.size() == 0) {
                     // Tag messages without successor as terminal.
                     assert allEventRelations.get(e1).size() == 1;
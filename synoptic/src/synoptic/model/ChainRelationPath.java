@@ -2,8 +2,6 @@ package synoptic.model;
 
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -29,27 +27,8 @@ public class ChainRelationPath implements IRelationPath {
      */
     private boolean counted;
 
-    /** The set of nodes seen prior to some point in the trace. */
-    private Set<EventType> seen;
-    /** Maintains the current event count in the path. */
-    private Map<EventType, Integer> eventCounts;
-    /**
-     * Maintains the current FollowedBy count for the path.
-     * followedByCounts[a][b] = count iff the number of a's that appeared before
-     * this b is count.
-     */
-    private Map<EventType, Map<EventType, Integer>> followedByCounts;
-    /**
-     * Maintains the current precedes count for the path. precedesCounts[a][b] =
-     * count iff the number of b's that appeared after this a is count.
-     */
-    private Map<EventType, Map<EventType, Integer>> precedesCounts;
-
-    /**
-     * Maintains for every event type the types that interrupts it across every
-     * relation path.
-     */
-    private LinkedHashMap<EventType, Set<EventType>> possibleInterrupts;
+    /** The counts of the events in this path. */
+    private final RelationPathCounts counts;
 
     /**
      * @param eNode
@@ -65,11 +44,20 @@ public class ChainRelationPath implements IRelationPath {
         this.eFinal = eFinal;
         this.relation = relation;
         this.counted = false;
-        this.seen = new HashSet<EventType>();
-        this.eventCounts = new LinkedHashMap<EventType, Integer>();
-        this.followedByCounts = new LinkedHashMap<EventType, Map<EventType, Integer>>();
-        this.precedesCounts = new LinkedHashMap<EventType, Map<EventType, Integer>>();
-        this.possibleInterrupts = new LinkedHashMap<EventType, Set<EventType>>();
+        this.counts = new RelationPathCounts();
+    }
+
+    /**
+     * Creates a path whose events were already counted, in counts, by a walk
+     * of the trace (see Trace.getRelationPaths).
+     */
+    ChainRelationPath(EventNode eNode, EventNode eFinal, String relation,
+            RelationPathCounts counts) {
+        this.eNode = eNode;
+        this.eFinal = eFinal;
+        this.relation = relation;
+        this.counted = true;
+        this.counts = counts;
     }
 
     /**
@@ -84,9 +72,6 @@ public class ChainRelationPath implements IRelationPath {
             return;
         }
 
-        // Used for IntrBy, which needs to record order
-        LinkedList<EventType> history = new LinkedList<EventType>();
-
         Set<String> relationSet = new HashSet<String>();
         relationSet.add(relation);
 
@@ -117,84 +102,7 @@ public class ChainRelationPath implements IRelationPath {
                                         relationSet).size());
             }
 
-            // The current event is 'b', and all prior events are 'a' --
-            // this notation indicates that an 'a' always occur prior to a
-            // 'b' in the path.
-            EventType b = curNode.getEType();
-
-            // Update the precedes counts based on the a events that
-            // preceded the current b event in this path.
-            for (EventType a : seen) {
-                Map<EventType, Integer> bValues;
-                if (!precedesCounts.containsKey(a)) {
-                    precedesCounts.put(a,
-                            new LinkedHashMap<EventType, Integer>());
-                }
-
-                bValues = precedesCounts.get(a);
-
-                if (!bValues.containsKey(b)) {
-                    bValues.put(b, 0);
-                }
-
-                bValues.put(b, bValues.get(b) + 1);
-
-            }
-
-            // Update the followed by counts for this path: the number of a
-            // FollowedBy b at this point in this trace is exactly the
-            // number of a's that we've seen so far.
-            for (EventType a : seen) {
-                Map<EventType, Integer> bValues;
-
-                if (!followedByCounts.containsKey(a)) {
-                    followedByCounts.put(a,
-                            new LinkedHashMap<EventType, Integer>());
-                }
-
-                bValues = followedByCounts.get(a);
-
-                bValues.put(b, eventCounts.get(a));
-            }
-
-            // For the InterruptedBy invariant, event type b must have occurred
-            // at least once beforehand
-            if (eventCounts.get(b) != null) {
-                Set<EventType> typesInBetween = new HashSet<EventType>();
-
-                // All event types in between b and the last occurrence of b are
-                // possible IntrBy invariants
-                for (EventType a : history) {
-                    if (a.equals(b)) {
-                        break;
-                    }
-
-                    typesInBetween.add(a);
-                }
-
-                // The recently found typesInBetween get intersected with the
-                // already found typesInBetween of earlier pairs of b, until
-                // there are only Interrupted by invariants which hold for all
-                // pairs of b.
-
-                if (!possibleInterrupts.containsKey(b)) {
-                    possibleInterrupts.put(b, new HashSet<EventType>(
-                            typesInBetween));
-                } else {
-                    possibleInterrupts.get(b).retainAll(typesInBetween);
-                }
-            }
-
-            seen.add(b);
-
-            history.addFirst(b);
-
-            // Update the trace event counts.
-            if (!eventCounts.containsKey(b)) {
-                eventCounts.put(b, 1);
-            } else {
-                eventCounts.put(b, eventCounts.get(b) + 1);
-            }
+            counts.add(curNode.getEType());
 
             // Move on to the next node in the trace.
             List<? extends ITransition<EventNode>> searchTransitions = curNode
@@ -216,12 +124,12 @@ public class ChainRelationPath implements IRelationPath {
 
     public Set<EventType> getSeen() {
         count();
-        return Collections.unmodifiableSet(seen);
+        return Collections.unmodifiableSet(counts.getSeen());
     }
 
     public Map<EventType, Integer> getEventCounts() {
         count();
-        return Collections.unmodifiableMap(eventCounts);
+        return Collections.unmodifiableMap(counts.getEventCounts());
     }
 
     /**
@@ -231,7 +139,7 @@ public class ChainRelationPath implements IRelationPath {
     public Map<EventType, Map<EventType, Integer>> getFollowedByCounts() {
         count();
         // TODO: Make the return type deeply unmodifiable
-        return Collections.unmodifiableMap(followedByCounts);
+        return Collections.unmodifiableMap(counts.getFollowedByCounts());
     }
 
     /**
@@ -241,7 +149,7 @@ public class ChainRelationPath implements IRelationPath {
     public Map<EventType, Map<EventType, Integer>> getPrecedesCounts() {
         count();
         // TODO: Make the return type deeply unmodifiable
-        return Collections.unmodifiableMap(precedesCounts);
+        return Collections.unmodifiableMap(counts.getPrecedesCounts());
     }
 
     /**
@@ -250,7 +158,7 @@ public class ChainRelationPath implements IRelationPath {
     public Map<EventType, Set<EventType>> getPossibleInterrupts() {
         count();
         // TODO: Make the return type deeply unmodifiable
-        return Collections.unmodifiableMap(possibleInterrupts);
+        return Collections.unmodifiableMap(counts.getPossibleInterrupts());
     }
 
     public EventNode getFirstNode() {
@@ -17,6 +17,7 @@ import synoptic.algorithms.TransitiveClosure;
 import synoptic.main.AbstractMain;
 import synoptic.main.parser.ParseException;
 import synoptic.model.event.Event;
+import synoptic.model.event.EventTypeAlphabet;
 import synoptic.model.event.StringEventType;
 
 /**
@@ -41,12 +42,26 @@ public class ChainsTraceGraph extends TraceGraph<StringEventType> {
 
     private final List<Trace> traces = new ArrayList<Trace>();
 
-    public ChainsTraceGraph(Collection<EventNode> nodes) {
+    /** The alphabet of the event types of this graph's traces. */
+    private final EventTypeAlphabet alphabet;
+
+    /**
+     * Creates a graph of nodes, whose event types were interned in alphabet
+     * (see TraceParser.getAlphabet).
+     */
+    public ChainsTraceGraph(Collection<EventNode> nodes,
+            EventTypeAlphabet alphabet) {
         super(nodes, initEvent, termEvent);
+        this.alphabet = alphabet;
+    }
+
+    public ChainsTraceGraph(Collection<EventNode> nodes) {
+        this(nodes, new EventTypeAlphabet());
     }
 
     public ChainsTraceGraph() {
         super(initEvent, termEvent);
+        this.alphabet = new EventTypeAlphabet();
     }
 
     @Override
@@ -107,7 +122,7 @@ public class ChainsTraceGraph extends TraceGraph<StringEventType> {
         Map<String, EventNode> lastSeenNodeForRelation = new HashMap<String, EventNode>();
         EventNode prevNode = null;
 
-        Trace trace = new Trace();
+        Trace trace = new Trace(alphabet);
         traces.add(trace);
 
         // Create transitions to connect the nodes in the sorted trace.
@@ -251,8 +266,24 @@ public class ChainsTraceGraph extends TraceGraph<StringEventType> {
         return map;
     }
 
+    /**
+     * Adds a trace whose nodes and transitions are already in this graph (for
+     * example, a trace restored from a checkpoint).
+     */
+    public void addTrace(Trace trace) {
+        traces.add(trace);
+    }
+
     public List<Trace> getTraces() {
         return Collections.unmodifiableList(traces);
     }
 
+    /**
+     * Returns the alphabet that the traces of this graph use to count the
+     * events of their relation paths.
+     */
+    public EventTypeAlphabet getAlphabet() {
+        return alphabet;
+    }
+
 }
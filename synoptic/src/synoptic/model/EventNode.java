@@ -4,9 +4,12 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import synoptic.main.AbstractMain;
@@ -18,6 +21,8 @@ import synoptic.model.interfaces.ITransition;
 import synoptic.model.state.State;
 import synoptic.util.resource.AbstractResource;
 import synoptic.util.resource.EqualVectorTimestampsException;
+import synoptic.util.resource.NotComparableVectorsException;
+import synoptic.util.resource.VectorTime;
 
 /**
  * The event node class -- a node in a graph that contains an event.
@@ -251,6 +256,160 @@ public class EventNode implements INode<EventNode> {
 		return e1DirectSuccessors;
 	}
 
+	/**
+	 * Computes the _direct_ successors of every event node in allNodes -- the
+	 * same successors as getDirectPOSuccessors(e1, allNodes) computes for a
+	 * single e1 -- and sets the process-local successor of every node.
+	 * <p>
+	 * Rather than comparing all pairs of nodes, the nodes are sorted by the
+	 * sums of their vector times (a topological order) and are greedily split
+	 * into chains of totally ordered nodes. The nodes in a chain that precede
+	 * a node e form a prefix of the chain, so the last of them is found with a
+	 * binary search. The direct predecessors of e are then the maximal nodes
+	 * among these (at most one per chain) candidates. The number of chains is
+	 * typically close to the number of processes, k, and so this takes about
+	 * O(n * k * (log(n) + k)) vector comparisons, rather than O(n^2).
+	 * </p>
+	 * 
+	 * @param allNodes
+	 *            the nodes, which must have vector times
+	 * @return a map from each node in allNodes to its direct successors, which
+	 *         are listed in the order of allNodes
+	 * @throws EqualVectorTimestampsException
+	 *             if two nodes have equal vector times
+	 * @throws NotComparableVectorsException
+	 *             if two nodes have vector times of different lengths
+	 */
+	public static Map<EventNode, Set<EventNode>> getDirectPOSuccessors(
+			List<EventNode> allNodes) {
+		Map<EventNode, Set<EventNode>> successors = new LinkedHashMap<EventNode, Set<EventNode>>();
+		for (EventNode e : allNodes) {
+			successors.put(e, new LinkedHashSet<EventNode>());
+		}
+
+		// Check that all the vector times have the same length, and that no
+		// two of them are equal.
+		Map<AbstractResource, EventNode> timeToNode = new HashMap<AbstractResource, EventNode>();
+		EventNode first = allNodes.isEmpty() ? null : allNodes.get(0);
+		for (EventNode e : allNodes) {
+			AbstractResource time = e.getTime();
+			if (!(time instanceof VectorTime)) {
+				// Fall back to comparing all pairs of nodes.
+				for (EventNode e1 : allNodes) {
+					successors.put(e1, getDirectPOSuccessors(e1, allNodes));
+				}
+				return successors;
+			}
+			if (((VectorTime) time).size() != ((VectorTime) first.getTime())
+					.size()) {
+				throw new NotComparableVectorsException(first.getTime(), time);
+			}
+			EventNode other = timeToNode.put(time, e);
+			if (other != null) {
+				throw new EqualVectorTimestampsException(other.getTime(), time);
+			}
+		}
+
+		// Sort the nodes topologically, by the sums of their vector times.
+		final Map<EventNode, Long> sums = new HashMap<EventNode, Long>();
+		for (EventNode e : allNodes) {
+			sums.put(e, ((VectorTime) e.getTime()).sum());
+		}
+		List<EventNode> sorted = new ArrayList<EventNode>(allNodes);
+		Collections.sort(sorted, new Comparator<EventNode>() {
+			@Override
+			public int compare(EventNode e1, EventNode e2) {
+				return sums.get(e1).compareTo(sums.get(e2));
+			}
+		});
+
+		// Split the nodes into chains: add each node to the first chain whose
+		// last node precedes it, or start a new chain.
+		List<List<EventNode>> chains = new ArrayList<List<EventNode>>();
+		for (EventNode e : sorted) {
+			List<EventNode> chain = null;
+			for (List<EventNode> c : chains) {
+				if (c.get(c.size() - 1).getTime().lessThan(e.getTime())) {
+					chain = c;
+					break;
+				}
+			}
+			if (chain == null) {
+				chain = new ArrayList<EventNode>();
+				chains.add(chain);
+			}
+			chain.add(e);
+		}
+
+		List<EventNode> candidates = new ArrayList<EventNode>(chains.size());
+		for (EventNode e : allNodes) {
+			// The last node in each chain that precedes e.
+			candidates.clear();
+			for (List<EventNode> c : chains) {
+				int lo = 0;
+				int hi = c.size();
+				while (lo < hi) {
+					int mid = (lo + hi) >>> 1;
+					if (c.get(mid).getTime().lessThan(e.getTime())) {
+						lo = mid + 1;
+					} else {
+						hi = mid;
+					}
+				}
+				if (lo > 0) {
+					candidates.add(c.get(lo - 1));
+				}
+			}
+
+			// The direct predecessors of e are the maximal candidates.
+			for (EventNode pred : candidates) {
+				boolean directPredecessor = true;
+				for (EventNode pred2 : candidates) {
+					if (pred != pred2
+							&& pred.getTime().lessThan(pred2.getTime())) {
+						directPredecessor = false;
+						break;
+					}
+				}
+				if (directPredecessor) {
+					successors.get(pred).add(e);
+				}
+			}
+		}
+
+		// ///////////////// CSight-related:
+		// The process-local successor of a node is the first node of the same
+		// process that succeeds it in the topological order. When the nodes of
+		// a process are totally ordered (as they are in CSight), this is the
+		// next node of the process.
+		Map<Integer, List<EventNode>> pidNodes = new LinkedHashMap<Integer, List<EventNode>>();
+		for (EventNode e : sorted) {
+			int pid = ((DistEventType) e.getEType()).getPid();
+			List<EventNode> nodes = pidNodes.get(pid);
+			if (nodes == null) {
+				nodes = new ArrayList<EventNode>();
+				pidNodes.put(pid, nodes);
+			}
+			nodes.add(e);
+		}
+		for (List<EventNode> nodes : pidNodes.values()) {
+			for (int i = 0; i < nodes.size(); i++) {
+				EventNode e = nodes.get(i);
+				EventNode processLocalSucc = null;
+				for (int j = i + 1; j < nodes.size(); j++) {
+					if (e.getTime().lessThan(nodes.get(j).getTime())) {
+						processLocalSucc = nodes.get(j);
+						break;
+					}
+				}
+				e.setProcessLocalSuccessor(processLocalSucc);
+			}
+		}
+		// /////////////////
+
+		return successors;
+	}
+
 	/**
 	 * Adds a new transition to the event node.
 	 */
@@ -1,6 +1,7 @@
 package synoptic.model;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -19,7 +20,6 @@ import synoptic.model.event.EventType;
 import synoptic.model.interfaces.INode;
 import synoptic.model.interfaces.ITransition;
 import synoptic.model.state.State;
-import synoptic.model.state.SynDaikonizer;
 import synoptic.util.NotImplementedException;
 import synoptic.util.resource.AbstractResource;
 
@@ -62,6 +62,26 @@ public class Partition implements INode<Partition> {
      */
     private final List<Transition<Partition>> cachedTransitionsWithInvs;
 
+    /**
+     * Incremented whenever the events of this partition change. The cached
+     * transitions of this partition, and of the partitions with transitions
+     * to it, are valid only for the version they were computed with.
+     */
+    private int version = 0;
+
+    /**
+     * Cached outgoing transitions of this partition (see TransitionTable), or
+     * null if they have not been computed yet.
+     */
+    private TransitionTable transitionTable = null;
+
+    /**
+     * The IDs of the traces of the events of this partition, as of
+     * traceIDsVersion, or null if they have not been computed yet.
+     */
+    private BitSet traceIDs = null;
+    private int traceIDsVersion;
+
     /**
      * Creates a new partition that will contain a set of event nodes.
      * 
@@ -85,6 +105,27 @@ public class Partition implements INode<Partition> {
         cachedTransitionsWithInvs = new ArrayList<Transition<Partition>>();
     }
 
+    /**
+     * Creates a new partition of eNodes that, unlike the other constructors,
+     * does not become the parent of the event nodes. It represents a partition
+     * that an operation would create, without applying the operation to the
+     * graph (see PartitionGraphOverlay).
+     * 
+     * @param eNodes
+     * @return the detached partition
+     */
+    public static Partition newDetachedPartition(Set<EventNode> eNodes) {
+        assert eNodes.size() > 0;
+        return new Partition(eNodes.iterator().next().getEType(), eNodes);
+    }
+
+    private Partition(EventType eType, Set<EventNode> eNodes) {
+        events = new LinkedHashSet<EventNode>(eNodes);
+        this.eType = eType;
+        initialized = true;
+        cachedTransitionsWithInvs = new ArrayList<Transition<Partition>>();
+    }
+
     public void initialize(EventNode eNode) {
         eType = eNode.getEType();
         initialized = true;
@@ -103,6 +144,7 @@ public class Partition implements INode<Partition> {
         }
 
         events.addAll(eNodes);
+        version++;
         for (final EventNode e : eNodes) {
             e.setParent(this);
             // A Partition is allowed to contain only EventNode instances of the
@@ -125,6 +167,7 @@ public class Partition implements INode<Partition> {
         }
         eNode.setParent(this);
         events.add(eNode);
+        version++;
     }
 
     /**
@@ -143,6 +186,7 @@ public class Partition implements INode<Partition> {
      */
     public void removeEventNodes(Set<EventNode> eventNodes) {
         events.removeAll(eventNodes);
+        version++;
         assert events.size() > 0;
     }
 
@@ -151,6 +195,7 @@ public class Partition implements INode<Partition> {
      */
     public void removeAllEventNodes() {
         events.clear();
+        version++;
         initialized = false;
     }
 
@@ -181,6 +226,25 @@ public class Partition implements INode<Partition> {
         return eType;
     }
 
+    /**
+     * Returns the IDs of the traces that have an event in this partition, as a
+     * bitmap indexed by trace ID. The bitmap is cached until the events of
+     * this partition change (e.g., by a split or merge), and must not be
+     * modified by the caller.
+     */
+    public BitSet getTraceIDs() {
+        if (traceIDs == null || traceIDsVersion != version) {
+            traceIDs = new BitSet();
+            for (EventNode e : events) {
+                if (e.getTraceID() >= 0) {
+                    traceIDs.set(e.getTraceID());
+                }
+            }
+            traceIDsVersion = version;
+        }
+        return traceIDs;
+    }
+
     /**
      * Returns the number of event nodes this partition contains.
      */
@@ -322,73 +386,13 @@ public class Partition implements INode<Partition> {
     @Override
     public List<? extends ITransition<Partition>> getWeightedTransitions() {
         assert initialized;
+        // We handle INITIAL partitions differently (see TransitionTable)
+        // because we optimized the code by including just a single EventNode
+        // with type INITIAL for all traces.
+        assert !isInitial() || events.size() == 1;
 
-        List<? extends ITransition<Partition>> transitions = getAllTransitions();
-
-        // TODO: Cache whether or not the fractions/counts have already been set
-        // on the transitions.
-
-        if (this.isInitial()) {
-            // We handle INITIAL partitions differently because we optimized the
-            // code by including just a single EventNode with type INITIAL for
-            // all traces (instead of one maintaining one per trace). This one
-            // INITIAL EventNode contains transitions to all first nodes of
-            // traces.
-            assert (this.getEventNodes().size() == 1);
-
-            // The _EventNode_ (child) instances that the one EventNode
-            // in this partition contains transitions to.
-            Set<EventNode> children = this.getEventNodes().iterator().next()
-                    .getAllSuccessors();
-
-            int totalChildren = children.size();
-
-            // Iterate through all children, building up the map of number of
-            // transitions per (child) partition.
-            Map<Partition, Integer> transitionsPerChildPartition = new LinkedHashMap<Partition, Integer>();
-            for (EventNode child : children) {
-                Partition childP = child.getParent();
-                if (transitionsPerChildPartition.containsKey(childP)) {
-                    transitionsPerChildPartition.put(childP,
-                            transitionsPerChildPartition.get(childP) + 1);
-                } else {
-                    transitionsPerChildPartition.put(childP, 1);
-
-                }
-            }
-
-            // Now, use the map to determine transition probabilities.
-            for (ITransition<Partition> tr : transitions) {
-                int numOutgoing = transitionsPerChildPartition.get(tr
-                        .getTarget());
-                double probability = (double) numOutgoing
-                        / (double) totalChildren;
-
-                tr.setProbability(probability);
-                tr.setCount(numOutgoing);
-            }
-
-        } else {
-            // Non-INITIAL partition case.
-
-            int totalAtSource = events.size();
-            for (ITransition<Partition> tr : transitions) {
-                int numOutgoing = 0;
-                for (final EventNode event : events) {
-                    if (fulfillsStrong(event, tr)) {
-                        numOutgoing += 1;
-                    }
-                }
-
-                double probability = (double) numOutgoing
-                        / (double) totalAtSource;
-
-                tr.setProbability(probability);
-                tr.setCount(numOutgoing);
-
-            }
-        }
-        return transitions;
+        return new ArrayList<Transition<Partition>>(getTransitionTable()
+                .getWeightedTransitions());
     }
 
     public ITransition<Partition> getTransitionWithExactRelation(Partition p,
@@ -515,37 +519,151 @@ public class Partition implements INode<Partition> {
 
     @Override
     public List<? extends ITransition<Partition>> getAllTransitions() {
-        // TODO: implement a transition cache optimization.
-        Map<Partition, Transition<Partition>> transitions = new HashMap<Partition, Transition<Partition>>();
+        return new ArrayList<Transition<Partition>>(
+                getTransitionTable().transitions);
+    }
 
-        for (EventNode e : events) {
-            for (ITransition<EventNode> tr : e.getAllTransitions()) {
-                Partition childP = tr.getTarget().getParent();
-                Transition<Partition> tx;
+    /**
+     * Returns the transition table of this partition, which is recomputed if
+     * the events of this partition, or of one of the partitions that it has
+     * transitions to, changed since it was last computed. So, a split or a
+     * merge only invalidates the tables of the partitions that it changes, and
+     * of their predecessors.
+     */
+    private TransitionTable getTransitionTable() {
+        boolean withDeltas = AbstractMain.getInstance().options.usePerformanceInfo;
+        if (transitionTable == null
+                || !transitionTable.isValid(this, withDeltas)) {
+            transitionTable = new TransitionTable(this, withDeltas);
+        }
+        return transitionTable;
+    }
 
-                // Create the transition if it doesn't exist, or retrieve it if
-                // it does
-                if (transitions.containsKey(childP)) {
-                    tx = transitions.get(childP);
-                } else {
-                    tx = new Transition<Partition>(this, childP,
-                            tr.getRelation());
-                    transitions.put(childP, tx);
+    /**
+     * Discards the cached transitions of this partition. This must be called
+     * when transitions are added to the events of this partition (rather than
+     * when events are added to or removed from partitions, which is tracked
+     * automatically).
+     */
+    public void clearTransitionTable() {
+        transitionTable = null;
+    }
+
+    /**
+     * The outgoing transitions of a partition, one to each partition that
+     * some event of the partition has a transition to, with the number of
+     * events that have such a transition, the probabilities, and the time
+     * delta series of the transitions. The table is computed in one pass over
+     * the events of the partition, and remembers the versions of the
+     * partitions it was computed from.
+     */
+    private static final class TransitionTable {
+        private final int version;
+        private final boolean withDeltas;
+        private final Partition[] targets;
+        private final int[] targetVersions;
+        private final int[] counts;
+        private final int total;
+
+        /** The transitions, without counts and probabilities. */
+        final List<Transition<Partition>> transitions;
+
+        /** The weighted transitions, created on first use. */
+        private List<Transition<Partition>> weighted = null;
+
+        TransitionTable(Partition p, boolean withDeltas) {
+            this.version = p.version;
+            this.withDeltas = withDeltas;
+
+            Map<Partition, Integer> index = new LinkedHashMap<Partition, Integer>();
+            List<Transition<Partition>> txs = new ArrayList<Transition<Partition>>();
+            List<Integer> countsList = new ArrayList<Integer>();
+            // The last event counted for each transition, which counts each
+            // event once per transition.
+            List<EventNode> lastCounted = new ArrayList<EventNode>();
+            Set<EventNode> successors = new HashSet<EventNode>();
+            boolean isInitial = p.initialized && p.isInitial();
+
+            for (EventNode e : p.events) {
+                for (ITransition<EventNode> tr : e.getAllTransitions()) {
+                    Partition childP = tr.getTarget().getParent();
+                    Integer i = index.get(childP);
+                    if (i == null) {
+                        i = txs.size();
+                        index.put(childP, i);
+                        txs.add(new Transition<Partition>(p, childP, tr
+                                .getRelation()));
+                        countsList.add(0);
+                        lastCounted.add(null);
+                    }
+                    Transition<Partition> tx = txs.get(i);
+                    if (withDeltas) {
+                        updateTransitionDeltas(e, tr.getTarget(), tx);
+                    }
+
+                    if (isInitial) {
+                        // The single INITIAL event has a transition to the
+                        // first event of each trace: count these events.
+                        if (successors.add(tr.getTarget())) {
+                            countsList.set(i, countsList.get(i) + 1);
+                        }
+                    } else if (lastCounted.get(i) != e
+                            && tr.getRelation().equals(tx.getRelation())) {
+                        // Count the events that have a transition with the
+                        // relation of the partition transition.
+                        lastCounted.set(i, e);
+                        countsList.set(i, countsList.get(i) + 1);
+                    }
                 }
+            }
 
-                // TODO: calling updateTransitionDeltas() is a fragile kind of
-                // initialization -- we have to remember to call this method
-                // whenever creating a new ITransition<Partition> instance.
-                // Refactor this into a new kind of Transition constructor? Or a
-                // helper method.
-                updateTransitionDeltas(e, tr.getTarget(), tx);
+            transitions = txs;
+            targets = new Partition[txs.size()];
+            targetVersions = new int[txs.size()];
+            counts = new int[txs.size()];
+            for (int i = 0; i < txs.size(); i++) {
+                targets[i] = txs.get(i).getTarget();
+                targetVersions[i] = targets[i].version;
+                counts[i] = countsList.get(i);
             }
+            total = isInitial ? successors.size() : p.events.size();
         }
 
-        // Return final list of transitions
-        List<Transition<Partition>> ret = new ArrayList<Transition<Partition>>(
-                transitions.values());
-        return ret;
+        /**
+         * Whether or not this table is up to date for p.
+         */
+        boolean isValid(Partition p, boolean withDeltas) {
+            if (p.version != version || this.withDeltas != withDeltas) {
+                return false;
+            }
+            for (int i = 0; i < targets.length; i++) {
+                if (targets[i].version != targetVersions[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        List<Transition<Partition>> getWeightedTransitions() {
+            if (weighted != null) {
+                return weighted;
+            }
+            weighted = new ArrayList<Transition<Partition>>(transitions.size());
+            for (int i = 0; i < transitions.size(); i++) {
+                Transition<Partition> tx = transitions.get(i);
+                Transition<Partition> wtx = new Transition<Partition>(
+                        tx.getSource(), tx.getTarget(), tx.getRelation());
+                if (tx.labels.getTimeDeltaSeries() != null) {
+                    wtx.labels.setLabel(
+                            TransitionLabelType.TIME_DELTA_SERIES_LABEL,
+                            tx.labels.getTimeDeltaSeries());
+                }
+                wtx.setProbability((double) counts[i] / (double) total);
+                wtx.setCount(counts[i]);
+                weighted.add(wtx);
+            }
+            return weighted;
+        }
     }
 
     @Override
@@ -616,17 +734,57 @@ public class Partition implements INode<Partition> {
      * @return transitions with Daikon invariants
      * @throws Exception
      */
-    @SuppressWarnings("null")
     public List<? extends ITransition<Partition>> getTransitionsWithDaikonInvariants() {
         assert (AbstractMain.getInstance().options.stateProcessing);
 
-        if (!cachedTransitionsWithInvs.isEmpty() || isTerminal()) {
-            return cachedTransitionsWithInvs;
+        computeTransitionsWithDaikonInvariants(Collections.singleton(this));
+        return cachedTransitionsWithInvs;
+    }
+
+    /**
+     * Generates and caches the outgoing transitions with Daikon invariants of
+     * each of partitions (see getTransitionsWithDaikonInvariants). The
+     * invariants of all the transitions are inferred in one batch by a
+     * DaikonInferenceService, which infers transitions with the same states
+     * once.
+     */
+    public static void computeTransitionsWithDaikonInvariants(
+            Collection<Partition> partitions) {
+        assert (AbstractMain.getInstance().options.stateProcessing);
+
+        List<Transition<Partition>> transitions = new ArrayList<Transition<Partition>>();
+        List<List<State>> states = new ArrayList<List<State>>();
+        for (Partition partition : partitions) {
+            if (!partition.cachedTransitionsWithInvs.isEmpty()
+                    || partition.isTerminal()) {
+                continue;
+            }
+            partition.addTransitionsWithStates(transitions, states);
+        }
+        if (transitions.isEmpty()) {
+            return;
         }
 
+        List<DaikonInvariants> invs = AbstractMain.getInstance()
+                .getDaikonInferenceService().inferAll(states);
+        for (int i = 0; i < transitions.size(); i++) {
+            // Label the transition with Daikon invariants.
+            transitions.get(i).labels.setLabel(
+                    TransitionLabelType.DAIKON_INVARIANTS_LABEL, invs.get(i));
+        }
+    }
+
+    /**
+     * Creates an outgoing transition of this partition to each successor,
+     * which is cached in cachedTransitionsWithInvs and added to transitions,
+     * and adds the states on the transition to states.
+     */
+    @SuppressWarnings("null")
+    private void addTransitionsWithStates(
+            List<Transition<Partition>> transitions, List<List<State>> states) {
         for (Partition childP : getAllSuccessors()) {
             Transition<Partition> tx = null;
-            SynDaikonizer daikonizer = new SynDaikonizer();
+            List<State> txStates = new ArrayList<State>();
 
             if (isInitial()) {
                 // This is a dummy initial partition and its dummy event node
@@ -638,10 +796,9 @@ public class Partition implements INode<Partition> {
 
                 for (ITransition<EventNode> tr : dummyInitEvent
                         .getAllTransitions()) {
-                    // Add only states that are on transitions to childP
-                    // to daikonizer.
-                    boolean stateAdded = addStateToDaikonizer(tr, childP,
-                            daikonizer, false);
+                    // Add only states that are on transitions to childP.
+                    boolean stateAdded = addStateOnTransition(tr, childP,
+                            txStates, false);
                     // Create transition to childP iff it doesn't already exist
                     // and tr's destination is childP.
                     if (stateAdded && tx == null) {
@@ -653,13 +810,14 @@ public class Partition implements INode<Partition> {
                 // This is NOT a dummy initial partition. Its event nodes have
                 // post-event states.
                 for (EventNode event : events) {
-                    List<Transition<EventNode>> transitions = event
+                    List<Transition<EventNode>> eventTransitions = event
                             .getAllTransitions();
                     // Events are totally ordered.
-                    assert transitions.size() == 1;
-                    ITransition<EventNode> tr = transitions.iterator().next();
-                    boolean stateAdded = addStateToDaikonizer(tr, childP,
-                            daikonizer, true);
+                    assert eventTransitions.size() == 1;
+                    ITransition<EventNode> tr = eventTransitions.iterator()
+                            .next();
+                    boolean stateAdded = addStateOnTransition(tr, childP,
+                            txStates, true);
                     if (stateAdded && tx == null) {
                         tx = createDaikonInvTransition(tr);
                         cachedTransitionsWithInvs.add(tx);
@@ -667,25 +825,20 @@ public class Partition implements INode<Partition> {
                 }
             }
             assert (tx != null);
-            // Generate invariants of tx.
-            DaikonInvariants daikonInvs = daikonizer.getDaikonEnterInvariants();
-            // Label tx with Daikon invariants.
-            tx.labels.setLabel(TransitionLabelType.DAIKON_INVARIANTS_LABEL,
-                    daikonInvs);
+            transitions.add(tx);
+            states.add(txStates);
         }
-        return cachedTransitionsWithInvs;
     }
 
     /**
-     * Adds a state that is on eventTrans to daikonizer iff the target of
-     * eventTrans is in targetPartition.
+     * Adds the state that is on eventTrans to states iff the target of
+     * eventTrans is in targetPartition. A null state is not added.
      * 
-     * @return true iff the state is added to daikonizer.
-     * @throws Exception
+     * @return true iff the target of eventTrans is in targetPartition.
      */
-    private static boolean addStateToDaikonizer(
+    private static boolean addStateOnTransition(
             ITransition<EventNode> eventTrans, Partition targetPartition,
-            SynDaikonizer daikonizer, boolean post) {
+            List<State> states, boolean post) {
         EventNode srcEvent = eventTrans.getSource();
         EventNode dstEvent = eventTrans.getTarget();
         Partition dstPartition = dstEvent.getParent();
@@ -693,7 +846,9 @@ public class Partition implements INode<Partition> {
         if (dstPartition.compareTo(targetPartition) == 0) {
             State state = post ? srcEvent.getPostEventState() : dstEvent
                     .getPreEventState();
-            daikonizer.addInstance(state);
+            if (state != null) {
+                states.add(state);
+            }
             return true;
         }
         return false;
@@ -1,6 +1,7 @@
 package synoptic.model;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -74,11 +75,19 @@ public class PartitionGraph implements IGraph<Partition> {
      * The limit of how many times a partition can appear in a path.
      */
     private static final int repeatLimit = 3;
+
     /**
-     * Maps each partition to the number of times it appears in the current
-     * path.
+     * The partitions by ID (see getNodeByID), or null if the index has not
+     * been built yet. Once built, it is maintained by add and removePartition.
      */
-    private final Map<Partition, Integer> numAppearInPath = new HashMap<Partition, Integer>();
+    private Map<Integer, Partition> partitionsByID = null;
+
+    /**
+     * The first event of each trace, by trace ID, or null if the index has not
+     * been built yet. The partitions of a trace are found by following its
+     * events (see getInitialLogTraceFromEventNode).
+     */
+    private Map<Integer, EventNode> traceStarts = null;
 
     // /////////////////////////////////////////////////////////////////////////
 
@@ -112,6 +121,28 @@ public class PartitionGraph implements IGraph<Partition> {
         partitionByIndexSetsAndLabels(g.getNodes(), partitioningIndexSets);
     }
 
+    /**
+     * Construct a PartitionGraph with the given partitioning of the nodes of
+     * {@code g} -- for example, one that is restored from a checkpoint.
+     * 
+     * @param g
+     *            The initial graph
+     * @param invariants
+     * @param partitioning
+     *            the sets of event nodes of the partitions, which must cover
+     *            all the nodes of {@code g}
+     */
+    public PartitionGraph(ChainsTraceGraph g, TemporalInvariantSet invariants,
+            Collection<? extends Set<EventNode>> partitioning) {
+        this(g, invariants);
+
+        partitions = new LinkedHashSet<Partition>();
+        for (Set<EventNode> eNodes : partitioning) {
+            partitions.add(new Partition(eNodes));
+        }
+        transitionCache.clear();
+    }
+
     /**
      * Creates a partition graph without any partitions. Takes care of setting
      * up the internal initialEvents, invariants, and traceGraph data
@@ -170,6 +201,96 @@ public class PartitionGraph implements IGraph<Partition> {
         return adjPartitions;
     }
 
+    /**
+     * Maps the events of new traces, which were added to the trace graph of
+     * this partition graph (see TraceParser.addTracesToTORelation), into the
+     * partitions of this graph, and replaces the invariants of this graph with
+     * those mined from all the traces. Each trace is walked through the
+     * graph from INITIAL: an event is added to a successor partition of the
+     * previous event's partition that has the event's type, if there is one.
+     * Otherwise, it is added to some partition of its type (which creates a
+     * new partition transition), or to a new partition if its type is new.
+     * This takes time proportional to the number of new events (times the
+     * degree of the partitions) rather than to the size of the graph.
+     * 
+     * @param traces
+     *            The new traces, each in trace order.
+     * @param newInvariants
+     *            The invariants of all the traces, including the new ones.
+     * @return The affected partitions: those that were created, and those
+     *         that have new transitions to other partitions. The paths of the
+     *         graph only changed through these partitions.
+     */
+    public Set<Partition> addTraces(List<List<EventNode>> traces,
+            TemporalInvariantSet newInvariants) {
+        Map<EventType, Partition> partitionsByType = new HashMap<EventType, Partition>();
+        for (Partition p : partitions) {
+            if (!partitionsByType.containsKey(p.getEType())) {
+                partitionsByType.put(p.getEType(), p);
+            }
+        }
+
+        // The partitions with new events. Their cached transitions may include
+        // a null partition, for a successor event that was not mapped yet.
+        Set<Partition> extended = new HashSet<Partition>();
+        extended.add(getDummyInitialNode());
+
+        Set<Partition> affected = new LinkedHashSet<Partition>();
+        for (List<EventNode> trace : traces) {
+            Partition prev = getDummyInitialNode();
+            for (EventNode e : trace) {
+                relations.addAll(e.getNodeRelations());
+                Partition next = null;
+                for (Partition succ : getAdjacentNodes(prev)) {
+                    if (succ != null && succ.getEType().equals(e.getEType())) {
+                        next = succ;
+                        break;
+                    }
+                }
+
+                if (next != null) {
+                    next.addOneEventNode(e);
+                } else {
+                    next = partitionsByType.get(e.getEType());
+                    if (next == null) {
+                        next = new Partition(e);
+                        partitionsByType.put(e.getEType(), next);
+                        add(next);
+                        affected.add(next);
+                    } else {
+                        next.addOneEventNode(e);
+                    }
+                    // The events of prev have a transition to a new partition.
+                    transitionCache.remove(prev);
+                    affected.add(prev);
+                }
+                extended.add(next);
+                prev = next;
+            }
+
+            // The last event transitions to TERMINAL.
+            EventNode last = trace.get(trace.size() - 1);
+            for (EventNode terminal : last.getAllSuccessors()) {
+                if (!getAdjacentNodes(prev).contains(terminal.getParent())) {
+                    transitionCache.remove(prev);
+                    affected.add(prev);
+                }
+            }
+        }
+
+        for (Partition p : extended) {
+            transitionCache.remove(p);
+        }
+        // The INITIAL event has new transitions, to the new traces.
+        getDummyInitialNode().clearTransitionTable();
+        traceStarts = null;
+
+        if (newInvariants != null) {
+            invariants = newInvariants;
+        }
+        return affected;
+    }
+
     /**
      * All messages with identical labels are mapped to the same partition.
      * 
@@ -365,6 +486,9 @@ public class PartitionGraph implements IGraph<Partition> {
             relations.addAll(m.getNodeRelations());
         }
         partitions.add(node);
+        if (partitionsByID != null) {
+            partitionsByID.put(node.hashCode(), node);
+        }
 
         clearNodeAdjacentsCache(node);
     }
@@ -399,6 +523,10 @@ public class PartitionGraph implements IGraph<Partition> {
 
     public void removePartition(Partition node) {
         partitions.remove(node);
+        if (partitionsByID != null
+                && partitionsByID.get(node.hashCode()) == node) {
+            partitionsByID.remove(node.hashCode());
+        }
     }
 
     /**
@@ -543,7 +671,11 @@ public class PartitionGraph implements IGraph<Partition> {
     /**
      * Returns paths through a set of partition nodes in the form of a map. The
      * returned map maps a traceID to a path (list of partitions) that passes
-     * through ALL of the input set of partitions.
+     * through ALL of the input set of partitions. The trace IDs of each
+     * partition are kept as a bitmap (see Partition.getTraceIDs), so this
+     * takes time proportional to the number of partitions and traces, and to
+     * the size of the returned paths, rather than to the number of events in
+     * the partitions.
      * 
      * @param parts
      * @return A mapping of trace IDs to a set of transitions that make up a
@@ -557,45 +689,34 @@ public class PartitionGraph implements IGraph<Partition> {
                     "Expected a non-null and non-empty set of partition nodes.");
         }
 
-        // The list of trace IDs that go through the selected partitions.
-        List<Set<Integer>> traceIDs = new ArrayList<Set<Integer>>();
-
-        // Loop over all the partitions, and collect the trace IDs of the events
-        // in the partitions into a list.
+        // Intersect the trace IDs of the partitions (ignoring partitions
+        // without events).
+        BitSet intersectionOfIDs = null;
         for (INode<Partition> p : parts) {
-            // Temporary trace IDs to be added to the overall list.
-            Set<Integer> tempIDs = new HashSet<Integer>();
-            for (EventNode e : ((Partition) p).getEventNodes()) {
-                tempIDs.add(e.getTraceID());
+            if (((Partition) p).getEventNodes().isEmpty()) {
+                continue;
             }
-
-            if (!tempIDs.isEmpty()) {
-                traceIDs.add(tempIDs);
+            BitSet ids = ((Partition) p).getTraceIDs();
+            if (intersectionOfIDs == null) {
+                intersectionOfIDs = (BitSet) ids.clone();
+            } else {
+                intersectionOfIDs.and(ids);
             }
         }
 
-        if (traceIDs.isEmpty()) {
-            return Collections.emptyMap();
-        }
-
-        // Filter through all of the IDs and keep only
-        // the ones that intersect with the selected nodes.
-        Set<Integer> intersectionOfIDs = traceIDs.get(0);
-        for (int i = 1; i < traceIDs.size(); i++) {
-            intersectionOfIDs.retainAll(traceIDs.get(i));
-        }
-
         // If there are no traces through the selected partitions.
-        if (intersectionOfIDs.isEmpty()) {
+        if (intersectionOfIDs == null || intersectionOfIDs.isEmpty()) {
             return Collections.emptyMap();
         }
 
         final Map<Integer, List<Partition>> paths = new HashMap<Integer, List<Partition>>();
 
-        // For each initial event, add the entire trace that it belongs to.
-        for (EventNode initE : dummyInitialNode.getAllSuccessors()) {
-            int traceID = initE.getTraceID();
-            if (intersectionOfIDs.contains(traceID)) {
+        // For each trace, add the entire trace.
+        Map<Integer, EventNode> starts = getTraceStarts();
+        for (int traceID = intersectionOfIDs.nextSetBit(0); traceID >= 0; traceID = intersectionOfIDs
+                .nextSetBit(traceID + 1)) {
+            EventNode initE = starts.get(traceID);
+            if (initE != null) {
                 paths.put(traceID, getInitialLogTraceFromEventNode(initE));
             }
         }
@@ -603,17 +724,33 @@ public class PartitionGraph implements IGraph<Partition> {
         return paths;
     }
 
+    /**
+     * Returns the first event of each trace, by trace ID.
+     */
+    private Map<Integer, EventNode> getTraceStarts() {
+        if (traceStarts == null) {
+            traceStarts = new HashMap<Integer, EventNode>();
+            for (EventNode initE : dummyInitialNode.getAllSuccessors()) {
+                traceStarts.put(initE.getTraceID(), initE);
+            }
+        }
+        return traceStarts;
+    }
+
     /**
      * Returns a reference to a partition node based on the ID of the node
      * passed. If the node is not found within the graph, null is returned.
      */
     public Partition getNodeByID(int id) {
-        for (Partition p : this.getNodes()) {
-            if (p.hashCode() == id)
-                return p;
+        if (partitionsByID == null) {
+            partitionsByID = new HashMap<Integer, Partition>();
+            for (Partition p : partitions) {
+                if (!partitionsByID.containsKey(p.hashCode())) {
+                    partitionsByID.put(p.hashCode(), p);
+                }
+            }
         }
-
-        return null;
+        return partitionsByID.get(id);
     }
 
     /** Returns the initial trace graph. */
@@ -629,49 +766,27 @@ public class PartitionGraph implements IGraph<Partition> {
      * @return a set of all bounded paths in this partition graph.
      */
     public Set<List<Partition>> getAllBoundedPredictedPaths() {
-        List<Partition> currPath = new ArrayList<Partition>();
-        Set<List<Partition>> pathsSoFar = new LinkedHashSet<List<Partition>>();
-        for (Partition partition : partitions) {
-            // NOTE: numAppearInPath is a hash map but Partition doesn't
-            // override
-            // hashCode(), but this is OK because every node is distinct from
-            // the rest of the nodes in graph.
-            numAppearInPath.put(partition, 0);
+        Set<List<Partition>> paths = new LinkedHashSet<List<Partition>>();
+        for (List<Partition> path : getBoundedPredictedPaths(
+                PredictedPaths.UNBOUNDED, PredictedPaths.UNBOUNDED)) {
+            paths.add(path);
         }
-        getAllBoundedPredictedPathsHelper(getDummyInitialNode(), currPath,
-                pathsSoFar);
-        return pathsSoFar;
+        return paths;
     }
 
     /**
-     * Helper method of getAllBoundedPredictedPaths.
+     * Returns the predicted paths, from initial node to terminal node, in
+     * which a partition appears no more than some limited number of times,
+     * as a PredictedPaths that enumerates them lazily.
      * 
-     * @param p
-     *            - the partition which we are processing.
-     * @param currPath
-     *            - the path which we are constructing.
-     * @param pathsSoFar
-     *            - the paths we have constructed so far.
+     * @param maxPaths
+     *            the number of paths to enumerate, or PredictedPaths.UNBOUNDED
+     * @param maxLength
+     *            the number of partitions in a path, or
+     *            PredictedPaths.UNBOUNDED
      */
-    private void getAllBoundedPredictedPathsHelper(Partition p,
-            List<Partition> currPath, Set<List<Partition>> pathsSoFar) {
-        int pCount = numAppearInPath.get(p);
-        if (pCount >= repeatLimit) {
-            return;
-        }
-        pCount++;
-        numAppearInPath.put(p, pCount);
-        currPath.add(p);
-        for (Partition succ : getAdjacentNodes(p)) {
-            getAllBoundedPredictedPathsHelper(succ, currPath, pathsSoFar);
-        }
-        if (p.isTerminal() && isPredictedPath(currPath)) {
-            List<Partition> newPath = new ArrayList<Partition>(currPath);
-            pathsSoFar.add(newPath);
-        }
-        currPath.remove(currPath.size() - 1);
-        pCount--;
-        numAppearInPath.put(p, pCount);
+    public PredictedPaths getBoundedPredictedPaths(int maxPaths, int maxLength) {
+        return new PredictedPaths(this, repeatLimit, maxPaths, maxLength);
     }
 
     /**
@@ -0,0 +1,229 @@
+package synoptic.model;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import synoptic.algorithms.graphops.PartitionMerge;
+import synoptic.algorithms.graphops.PartitionSplit;
+import synoptic.model.interfaces.IGraph;
+import synoptic.model.interfaces.ITransition;
+
+/**
+ * A read-only view of a partition graph with a pending split or merge applied
+ * to it. The overlay is a delta over an immutable Snapshot of the graph: only
+ * the partitions that the operation changes, and their predecessors, have
+ * different adjacency in the overlay. The model checker can run on the
+ * overlay directly, which answers whether a candidate split or merge would
+ * make the graph satisfy an invariant without applying the operation to the
+ * partition graph and rewinding it afterwards. Neither the overlay nor the
+ * snapshot modify the partition graph, so the overlays of many candidates can
+ * be checked concurrently.
+ * <p>
+ * In the overlay of a split, the split-out events are represented by a
+ * detached partition (see Partition.newDetachedPartition), and the partition
+ * being split represents the events that remain in it. In the overlay of a
+ * merge, the retained partition represents the events of both partitions, and
+ * the removed partition is not in the overlay.
+ * </p>
+ * <p>
+ * The successors of the event nodes are used for adjacency, so the overlay
+ * cannot be used with the model checkers of constrained invariants, which use
+ * the transitions of the partitions.
+ * </p>
+ */
+public class PartitionGraphOverlay implements IGraph<Partition> {
+
+    /**
+     * An immutable copy of the partitions of a partition graph and of their
+     * adjacency, which overlays share. A snapshot is valid until the
+     * partitions of the graph change.
+     */
+    public static class Snapshot {
+        private final Set<Partition> nodes;
+        private final Map<Partition, Set<Partition>> adjacent;
+        private final Partition initial;
+        private final Set<String> relations;
+
+        /**
+         * Creates a snapshot of pGraph. This uses (and populates) the
+         * adjacency cache of pGraph, so it must not run concurrently with
+         * other uses of pGraph.
+         */
+        public Snapshot(PartitionGraph pGraph) {
+            nodes = Collections
+                    .unmodifiableSet(new LinkedHashSet<Partition>(pGraph
+                            .getNodes()));
+            adjacent = new HashMap<Partition, Set<Partition>>();
+            for (Partition p : nodes) {
+                adjacent.put(p, Collections
+                        .unmodifiableSet(new LinkedHashSet<Partition>(pGraph
+                                .getAdjacentNodes(p))));
+            }
+            initial = pGraph.getDummyInitialNode();
+            relations = Collections.unmodifiableSet(new LinkedHashSet<String>(
+                    pGraph.getRelations()));
+        }
+    }
+
+    private final Snapshot base;
+
+    // For a split: the partition being split, the events split out of it,
+    // and the partition that holds these events. These are null for a merge.
+    private final Partition splitPartition;
+    private final Set<EventNode> splitEvents;
+    private final Partition newPartition;
+
+    // For a merge: the partition that holds the events of both partitions,
+    // and the partition that is removed. These are null for a split.
+    private final Partition retained;
+    private final Partition removed;
+
+    private Set<Partition> nodes = null;
+    private final Map<Partition, Set<Partition>> adjacent = new LinkedHashMap<Partition, Set<Partition>>();
+
+    /**
+     * Creates an overlay of base with split applied to it. An overlay is not
+     * thread-safe, but overlays of the same snapshot can be used concurrently.
+     */
+    public PartitionGraphOverlay(Snapshot base, PartitionSplit split) {
+        assert split.isValid();
+        this.base = base;
+        splitPartition = split.getPartition();
+        splitEvents = split.getSplitEvents();
+        newPartition = Partition.newDetachedPartition(splitEvents);
+        retained = null;
+        removed = null;
+    }
+
+    /**
+     * Creates an overlay of base with merge applied to it. An overlay is not
+     * thread-safe, but overlays of the same snapshot can be used concurrently.
+     */
+    public PartitionGraphOverlay(Snapshot base, PartitionMerge merge) {
+        this.base = base;
+        splitPartition = null;
+        splitEvents = null;
+        newPartition = null;
+        retained = merge.getRetained();
+        removed = merge.getRemoved();
+    }
+
+    private boolean isSplit() {
+        return splitPartition != null;
+    }
+
+    /**
+     * Returns the partition of eNode in this overlay.
+     */
+    private Partition partitionOf(EventNode eNode) {
+        if (isSplit()) {
+            if (splitEvents.contains(eNode)) {
+                return newPartition;
+            }
+            return eNode.getParent();
+        }
+        Partition parent = eNode.getParent();
+        return parent == removed ? retained : parent;
+    }
+
+    /**
+     * Adds the partitions of the successors of events to successors,
+     * skipping the split-out events if skipSplitEvents is true.
+     */
+    private void addSuccessors(Set<EventNode> events,
+            boolean skipSplitEvents, Set<Partition> successors) {
+        for (EventNode e : events) {
+            if (skipSplitEvents && splitEvents.contains(e)) {
+                continue;
+            }
+            for (ITransition<EventNode> tr : e.getAllTransitions()) {
+                successors.add(partitionOf(tr.getTarget()));
+            }
+        }
+    }
+
+    @Override
+    public Set<Partition> getNodes() {
+        if (nodes == null) {
+            nodes = new LinkedHashSet<Partition>(base.nodes);
+            if (isSplit()) {
+                nodes.add(newPartition);
+            } else {
+                nodes.remove(removed);
+            }
+        }
+        return nodes;
+    }
+
+    @Override
+    public Set<String> getRelations() {
+        return base.relations;
+    }
+
+    @Override
+    public Partition getDummyInitialNode() {
+        if (base.initial == removed) {
+            return retained;
+        }
+        return base.initial;
+    }
+
+    @Override
+    public Set<Partition> getAdjacentNodes(Partition node) {
+        Set<Partition> adj = adjacent.get(node);
+        if (adj != null) {
+            return adj;
+        }
+
+        adj = new LinkedHashSet<Partition>();
+        Set<Partition> baseAdj = base.adjacent.get(node);
+        if (isSplit()) {
+            if (node == newPartition) {
+                addSuccessors(splitEvents, false, adj);
+            } else if (node == splitPartition) {
+                addSuccessors(node.getEventNodes(), true, adj);
+            } else if (baseAdj != null && !baseAdj.contains(splitPartition)) {
+                // Only the predecessors of the split partition have
+                // different successors in the overlay.
+                return baseAdj;
+            } else {
+                addSuccessors(node.getEventNodes(), false, adj);
+            }
+        } else {
+            if (node == retained || node == removed) {
+                addSuccessors(retained.getEventNodes(), false, adj);
+                addSuccessors(removed.getEventNodes(), false, adj);
+            } else if (baseAdj != null && !baseAdj.contains(removed)) {
+                return baseAdj;
+            } else if (baseAdj != null) {
+                // The predecessors of the removed partition are predecessors
+                // of the retained partition instead.
+                for (Partition p : baseAdj) {
+                    adj.add(p == removed ? retained : p);
+                }
+            } else {
+                addSuccessors(node.getEventNodes(), false, adj);
+            }
+        }
+        adjacent.put(node, adj);
+        return adj;
+    }
+
+    /**
+     * Returns the partition that holds the split-out events in the overlay of
+     * a split, and null in the overlay of a merge.
+     */
+    public Partition getNewPartition() {
+        return newPartition;
+    }
+
+    @Override
+    public void add(Partition node) {
+        throw new UnsupportedOperationException(
+                "A PartitionGraphOverlay is read-only.");
+    }
+}
@@ -0,0 +1,419 @@
+package synoptic.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The bounded, predicted paths of a partition graph: the paths from the
+ * initial partition to the terminal partition in which no partition appears
+ * more than repeatLimit times, and that were not observed in the log (see
+ * PartitionGraph.isPredictedPath). The paths are enumerated lazily by a depth
+ * first search, so they are never all held in memory (see iterator), or by a
+ * fork-join pool that explores the subtrees of the search in parallel (see
+ * collect). The number of paths and their length can be capped.
+ * <p>
+ * The search carries the events of the last partition of the path that are
+ * reachable along the path, so each extension of a path is checked against
+ * the log in time proportional to these events, instead of replaying the whole
+ * path. Once no events are reachable, the path and all of its extensions are
+ * predicted, and the events are no longer tracked. Partitions from which the
+ * terminal partition cannot be reached within the length cap are never
+ * explored.
+ * </p>
+ * <p>
+ * The adjacency of the graph is copied when PredictedPaths is created, so the
+ * graph must not change while the paths are enumerated.
+ * </p>
+ */
+public class PredictedPaths implements Iterable<List<Partition>> {
+    /**
+     * The value of a cap that does not limit the number or length of paths.
+     */
+    public static final int UNBOUNDED = 0;
+
+    /**
+     * The paths shorter than this are split into a fork-join task per
+     * successor by collect, and the longer ones are explored sequentially.
+     */
+    private static final int forkDepth = 4;
+
+    private final Partition initial;
+    private final int repeatLimit;
+    private final int maxPaths;
+    private final int maxLength;
+
+    /** The successors of each partition of the graph. */
+    private final Map<Partition, List<Partition>> adjacent = new HashMap<Partition, List<Partition>>();
+
+    /**
+     * The least number of partitions on a path from each partition to the
+     * terminal partition (inclusive). Partitions that cannot reach the
+     * terminal partition are not in the map.
+     */
+    private final Map<Partition, Integer> lengthToTerminal = new HashMap<Partition, Integer>();
+
+    /**
+     * Creates the bounded, predicted paths of pGraph.
+     *
+     * @param repeatLimit
+     *            the number of times a partition can appear in a path
+     * @param maxPaths
+     *            the number of paths to enumerate, or UNBOUNDED
+     * @param maxLength
+     *            the number of partitions in a path (including the initial
+     *            and terminal partitions), or UNBOUNDED
+     */
+    public PredictedPaths(PartitionGraph pGraph, int repeatLimit,
+            int maxPaths, int maxLength) {
+        assert repeatLimit > 0;
+        assert maxPaths >= 0 && maxLength >= 0;
+        this.initial = pGraph.getDummyInitialNode();
+        this.repeatLimit = repeatLimit;
+        this.maxPaths = maxPaths;
+        this.maxLength = maxLength;
+
+        Map<Partition, List<Partition>> predecessors = new HashMap<Partition, List<Partition>>();
+        Queue<Partition> workList = new LinkedList<Partition>();
+        for (Partition p : pGraph.getNodes()) {
+            List<Partition> succs = new ArrayList<Partition>(
+                    pGraph.getAdjacentNodes(p));
+            adjacent.put(p, succs);
+            for (Partition q : succs) {
+                if (!predecessors.containsKey(q)) {
+                    predecessors.put(q, new ArrayList<Partition>());
+                }
+                predecessors.get(q).add(p);
+            }
+            if (p.isTerminal()) {
+                lengthToTerminal.put(p, 1);
+                workList.add(p);
+            }
+        }
+        while (!workList.isEmpty()) {
+            Partition q = workList.remove();
+            if (!predecessors.containsKey(q)) {
+                continue;
+            }
+            int length = lengthToTerminal.get(q) + 1;
+            for (Partition p : predecessors.get(q)) {
+                if (!lengthToTerminal.containsKey(p)) {
+                    lengthToTerminal.put(p, length);
+                    workList.add(p);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns an iterator that enumerates the paths one at a time, in depth
+     * first order. The iterator holds only the current path.
+     */
+    @Override
+    public Iterator<List<Partition>> iterator() {
+        Search root = new Search();
+        if (!root.canExtend(initial)) {
+            return Collections.<List<Partition>> emptyList().iterator();
+        }
+        root.push(initial, new LinkedHashSet<EventNode>(
+                initial.getEventNodes()));
+        return new PathIterator(root, new AtomicInteger());
+    }
+
+    /**
+     * Returns the paths, enumerated by numThreads threads of a fork-join
+     * pool. The paths are in the order of iterator, but if the number of paths
+     * is capped, which paths are returned depends on the scheduling of the
+     * threads.
+     */
+    public List<List<Partition>> collect(int numThreads) {
+        List<List<Partition>> paths = new ArrayList<List<Partition>>();
+        if (numThreads <= 1) {
+            for (List<Partition> path : this) {
+                paths.add(path);
+            }
+            return paths;
+        }
+
+        Search root = new Search();
+        if (!root.canExtend(initial)) {
+            return paths;
+        }
+        root.push(initial, new LinkedHashSet<EventNode>(
+                initial.getEventNodes()));
+        ForkJoinPool pool = new ForkJoinPool(numThreads);
+        try {
+            paths = pool.invoke(new SubtreeTask(root, new AtomicInteger()));
+        } finally {
+            pool.shutdown();
+        }
+        if (maxPaths != UNBOUNDED && paths.size() > maxPaths) {
+            paths = new ArrayList<List<Partition>>(paths.subList(0, maxPaths));
+        }
+        return paths;
+    }
+
+    /**
+     * Claims one of the maxPaths paths from numPaths, which counts the paths
+     * enumerated so far. Returns false if all the paths have been claimed.
+     */
+    private boolean claimPath(AtomicInteger numPaths) {
+        if (maxPaths == UNBOUNDED) {
+            return true;
+        }
+        if (numPaths.get() >= maxPaths) {
+            return false;
+        }
+        return numPaths.incrementAndGet() <= maxPaths;
+    }
+
+    /**
+     * The state of a depth first search: the current path, the number of
+     * times each partition appears in it, and a frame for each partition of
+     * the path that the search can backtrack to.
+     */
+    private final class Search {
+        final List<Partition> path;
+        final Map<Partition, Integer> counts;
+        final List<Frame> frames;
+
+        Search() {
+            path = new ArrayList<Partition>();
+            counts = new HashMap<Partition, Integer>();
+            frames = new ArrayList<Frame>();
+        }
+
+        /**
+         * Creates a search whose path is the path of other extended with
+         * next. Only the frame of next is kept, so the search never
+         * backtracks into the path of other.
+         */
+        Search(Search other, Partition next) {
+            path = new ArrayList<Partition>(other.path);
+            counts = new HashMap<Partition, Integer>(other.counts);
+            frames = new ArrayList<Frame>();
+            push(next, other.top().reachableIn(next));
+        }
+
+        Frame top() {
+            return frames.get(frames.size() - 1);
+        }
+
+        /**
+         * Whether or not the path can be extended with next without exceeding
+         * the repeat limit, and without exceeding the length cap before
+         * reaching the terminal partition.
+         */
+        boolean canExtend(Partition next) {
+            Integer toTerminal = lengthToTerminal.get(next);
+            if (toTerminal == null) {
+                return false;
+            }
+            if (maxLength != UNBOUNDED
+                    && path.size() + toTerminal > maxLength) {
+                return false;
+            }
+            Integer count = counts.get(next);
+            return count == null || count < repeatLimit;
+        }
+
+        /**
+         * Extends the path with next, in which the events reachable along the
+         * path are reachable (null if the path is predicted).
+         */
+        void push(Partition next, Set<EventNode> reachable) {
+            Integer count = counts.get(next);
+            counts.put(next, count == null ? 1 : count + 1);
+            path.add(next);
+            frames.add(new Frame(next, reachable));
+        }
+
+        void pop() {
+            frames.remove(frames.size() - 1);
+            Partition last = path.remove(path.size() - 1);
+            counts.put(last, counts.get(last) - 1);
+        }
+
+        /** Whether or not the path is a predicted path. */
+        boolean isPredictedPath() {
+            Frame top = top();
+            return top.partition.isTerminal() && top.reachable == null;
+        }
+    }
+
+    /**
+     * A partition of the path of a search, the events of the partition that
+     * are reachable along the path, and the successors of the partition that
+     * are left to explore.
+     */
+    private final class Frame {
+        final Partition partition;
+        /** Null once no events are reachable, i.e., the path is predicted. */
+        final Set<EventNode> reachable;
+        final Iterator<Partition> successors;
+        /**
+         * The reachable events grouped by partition, computed when the first
+         * successor is explored.
+         */
+        Map<Partition, Set<EventNode>> reachableSuccessors = null;
+
+        Frame(Partition partition, Set<EventNode> reachable) {
+            this.partition = partition;
+            this.reachable = reachable;
+            this.successors = adjacent.get(partition).iterator();
+        }
+
+        /**
+         * Returns the events of next that are reachable along the path
+         * extended with next, or null if there are none.
+         */
+        Set<EventNode> reachableIn(Partition next) {
+            if (reachable == null) {
+                return null;
+            }
+            if (reachableSuccessors == null) {
+                reachableSuccessors = new LinkedHashMap<Partition, Set<EventNode>>();
+                for (EventNode node : reachable) {
+                    for (EventNode succ : node.getAllSuccessors()) {
+                        Set<EventNode> events = reachableSuccessors.get(succ
+                                .getParent());
+                        if (events == null) {
+                            events = new LinkedHashSet<EventNode>();
+                            reachableSuccessors.put(succ.getParent(), events);
+                        }
+                        events.add(succ);
+                    }
+                }
+            }
+            return reachableSuccessors.get(next);
+        }
+    }
+
+    /**
+     * Enumerates the predicted paths that extend the path of a search, in
+     * depth first order.
+     */
+    private final class PathIterator implements Iterator<List<Partition>> {
+        private final Search search;
+        /** The number of frames of the search that are never popped. */
+        private final int rootDepth;
+        private final AtomicInteger numPaths;
+        private List<Partition> next = null;
+
+        PathIterator(Search search, AtomicInteger numPaths) {
+            this.search = search;
+            this.rootDepth = search.frames.size();
+            this.numPaths = numPaths;
+        }
+
+        /** Returns the next predicted path, or null if there are none. */
+        private List<Partition> advance() {
+            while (true) {
+                Frame top = search.top();
+                if (!top.successors.hasNext()) {
+                    if (search.frames.size() == rootDepth) {
+                        return null;
+                    }
+                    search.pop();
+                    continue;
+                }
+                Partition succ = top.successors.next();
+                if (!search.canExtend(succ)) {
+                    continue;
+                }
+                search.push(succ, top.reachableIn(succ));
+                if (search.isPredictedPath()) {
+                    if (!claimPath(numPaths)) {
+                        return null;
+                    }
+                    return new ArrayList<Partition>(search.path);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                next = advance();
+            }
+            return next != null;
+        }
+
+        @Override
+        public List<Partition> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            List<Partition> ret = next;
+            next = null;
+            return ret;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Enumerates the predicted paths that extend the path of a search (and
+     * the path itself, if it is predicted). Short paths are split into a task
+     * per successor.
+     */
+    private final class SubtreeTask extends RecursiveTask<List<List<Partition>>> {
+        private static final long serialVersionUID = 1L;
+
+        private final Search search;
+        private final AtomicInteger numPaths;
+
+        SubtreeTask(Search search, AtomicInteger numPaths) {
+            this.search = search;
+            this.numPaths = numPaths;
+        }
+
+        @Override
+        protected List<List<Partition>> compute() {
+            List<List<Partition>> paths = new ArrayList<List<Partition>>();
+            if (search.isPredictedPath()) {
+                if (!claimPath(numPaths)) {
+                    return paths;
+                }
+                paths.add(new ArrayList<Partition>(search.path));
+            }
+
+            if (search.path.size() >= forkDepth) {
+                PathIterator iter = new PathIterator(search, numPaths);
+                while (iter.hasNext()) {
+                    paths.add(iter.next());
+                }
+                return paths;
+            }
+
+            List<SubtreeTask> subtasks = new ArrayList<SubtreeTask>();
+            while (search.top().successors.hasNext()) {
+                Partition succ = search.top().successors.next();
+                if (search.canExtend(succ)) {
+                    subtasks.add(new SubtreeTask(new Search(search, succ),
+                            numPaths));
+                }
+            }
+            invokeAll(subtasks);
+            for (SubtreeTask subtask : subtasks) {
+                paths.addAll(subtask.join());
+            }
+            return paths;
+        }
+    }
+}
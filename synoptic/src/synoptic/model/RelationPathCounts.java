@@ -0,0 +1,268 @@
+package synoptic.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import synoptic.model.event.EventType;
+import synoptic.model.event.EventTypeAlphabet;
+
+/**
+ * The event counts of a relation path, which are used to mine invariants from
+ * the path: the occurrence, followed-by, precedes and interrupted-by counts of
+ * the event types in the path. The events of the path are added in order (see
+ * add), and the counts are kept in arrays and bitsets indexed by the position
+ * of the first occurrence of each event type in the path. The counts are
+ * converted to the maps of IRelationPath once, on the first call to a getter,
+ * after which no more events can be added.
+ */
+public class RelationPathCounts {
+    private final EventTypeAlphabet alphabet;
+
+    /** The event types of the path, by index. */
+    private final List<EventType> types = new ArrayList<EventType>();
+    /** The index of each event type, by alphabet ID, or -1. */
+    private int[] indexOf = new int[0];
+    private int capacity = 8;
+
+    /** The number of events of each type. */
+    private int[] counts = new int[capacity];
+    /** The position in the path of the last occurrence of each type. */
+    private int[] lastPos = new int[capacity];
+    /** precedes[a][b] and followedBy[a][b], as in the maps below. */
+    private int[][] precedes = new int[capacity][capacity];
+    private int[][] followedBy = new int[capacity][capacity];
+    /**
+     * The types that occurred between every two consecutive occurrences of
+     * each type, or null for types that occurred at most once.
+     */
+    private BitSet[] interrupts = new BitSet[capacity];
+    /** The number of events in the path. */
+    private int numEvents = 0;
+
+    /** The set of nodes seen prior to some point in the trace. */
+    private Set<EventType> seen = null;
+    /** Maintains the current event count in the path. */
+    private Map<EventType, Integer> eventCounts;
+    /**
+     * Maintains the current FollowedBy count for the path.
+     * followedByCounts[a][b] = count iff the number of a's that appeared before
+     * this b is count.
+     */
+    private Map<EventType, Map<EventType, Integer>> followedByCounts;
+    /**
+     * Maintains the current precedes count for the path. precedesCounts[a][b] =
+     * count iff the number of b's that appeared after this a is count.
+     */
+    private Map<EventType, Map<EventType, Integer>> precedesCounts;
+    /**
+     * Maintains for every event type the types that interrupts it across every
+     * relation path.
+     */
+    private Map<EventType, Set<EventType>> possibleInterrupts;
+
+    /**
+     * Creates counts that index the event types of the path through alphabet,
+     * which should be the alphabet of the trace graph (see
+     * ChainsTraceGraph.getAlphabet), so that indexOf is bounded by the number
+     * of event types in the graph.
+     */
+    public RelationPathCounts(EventTypeAlphabet alphabet) {
+        this.alphabet = alphabet;
+    }
+
+    /**
+     * Creates counts with an alphabet of their own, for a path that is not
+     * counted as part of a trace graph.
+     */
+    public RelationPathCounts() {
+        this(new EventTypeAlphabet());
+    }
+
+    /**
+     * Adds an event of type bType to the end of the path.
+     */
+    public void add(EventType bType) {
+        assert seen == null : "Adding to counts that were converted to maps";
+
+        int id = alphabet.getID(bType);
+        if (id >= indexOf.length) {
+            int oldLength = indexOf.length;
+            indexOf = Arrays.copyOf(indexOf, Math.max(id + 1, oldLength * 2));
+            Arrays.fill(indexOf, oldLength, indexOf.length, -1);
+        }
+        // The number of types seen prior to b.
+        int numSeen = types.size();
+        int b = indexOf[id];
+        if (b == -1) {
+            b = numSeen;
+            if (b == capacity) {
+                capacity *= 2;
+                counts = Arrays.copyOf(counts, capacity);
+                lastPos = Arrays.copyOf(lastPos, capacity);
+                precedes = growCounts(precedes, capacity);
+                followedBy = growCounts(followedBy, capacity);
+                interrupts = Arrays.copyOf(interrupts, capacity);
+            }
+            indexOf[id] = b;
+            types.add(bType);
+        }
+
+        // The current event is 'b', and all prior events are 'a' -- this
+        // notation indicates that an 'a' always occur prior to a 'b' in the
+        // path. Update the precedes counts based on the a events that
+        // preceded the current b event in this path. And update the followed
+        // by counts for this path: the number of a FollowedBy b at this point
+        // in this trace is exactly the number of a's that we've seen so far.
+        for (int a = 0; a < numSeen; a++) {
+            precedes[a][b]++;
+            followedBy[a][b] = counts[a];
+        }
+
+        // For the InterruptedBy invariant, event type b must have occurred at
+        // least once beforehand
+        if (counts[b] > 0) {
+            // All event types in between b and the last occurrence of b are
+            // possible IntrBy invariants
+            BitSet typesInBetween = new BitSet(numSeen);
+            for (int a = 0; a < numSeen; a++) {
+                if (lastPos[a] > lastPos[b]) {
+                    typesInBetween.set(a);
+                }
+            }
+
+            // The recently found typesInBetween get intersected with the
+            // already found typesInBetween of earlier pairs of b, until there
+            // are only Interrupted by invariants which hold for all pairs of b.
+            if (interrupts[b] == null) {
+                interrupts[b] = typesInBetween;
+            } else {
+                interrupts[b].and(typesInBetween);
+            }
+        }
+
+        // Update the trace event counts.
+        counts[b]++;
+        lastPos[b] = numEvents++;
+    }
+
+    /**
+     * Returns the number of events in the path.
+     */
+    public int getNumEvents() {
+        return numEvents;
+    }
+
+    public Set<EventType> getSeen() {
+        toMaps();
+        return seen;
+    }
+
+    public Map<EventType, Integer> getEventCounts() {
+        toMaps();
+        return eventCounts;
+    }
+
+    /**
+     * Map<a, Map<b, count>> iff the number of a's that appeared before this b
+     * is count.
+     */
+    public Map<EventType, Map<EventType, Integer>> getFollowedByCounts() {
+        toMaps();
+        return followedByCounts;
+    }
+
+    /**
+     * Map<a, Map<b, count>> iff the number of b's that appeared after this a is
+     * count.
+     */
+    public Map<EventType, Map<EventType, Integer>> getPrecedesCounts() {
+        toMaps();
+        return precedesCounts;
+    }
+
+    /**
+     * Map<a, Set<b>> iff a gets interrupted by b.
+     */
+    public Map<EventType, Set<EventType>> getPossibleInterrupts() {
+        toMaps();
+        return possibleInterrupts;
+    }
+
+    /**
+     * Returns counts, a square matrix of counts, grown to capacity rows and
+     * columns.
+     */
+    private static int[][] growCounts(int[][] counts, int capacity) {
+        int[][] ret = new int[capacity][];
+        for (int i = 0; i < capacity; i++) {
+            ret[i] = i < counts.length ? Arrays.copyOf(counts[i], capacity)
+                    : new int[capacity];
+        }
+        return ret;
+    }
+
+    /**
+     * Populates seen, eventCounts, followedByCounts, precedesCounts and
+     * possibleInterrupts from the arrays, unless this was already done, and
+     * releases the arrays.
+     */
+    private void toMaps() {
+        if (seen != null) {
+            return;
+        }
+        seen = new HashSet<EventType>(types);
+        eventCounts = new LinkedHashMap<EventType, Integer>();
+        followedByCounts = new LinkedHashMap<EventType, Map<EventType, Integer>>();
+        precedesCounts = new LinkedHashMap<EventType, Map<EventType, Integer>>();
+        possibleInterrupts = new LinkedHashMap<EventType, Set<EventType>>();
+
+        int numTypes = types.size();
+        for (int a = 0; a < numTypes; a++) {
+            eventCounts.put(types.get(a), counts[a]);
+        }
+
+        for (int a = 0; a < numTypes; a++) {
+            Map<EventType, Integer> precedesBValues = null;
+            Map<EventType, Integer> followedByBValues = null;
+            for (int b = 0; b < numTypes; b++) {
+                // There is a b after an a iff it was counted in precedes.
+                if (precedes[a][b] == 0) {
+                    continue;
+                }
+                if (precedesBValues == null) {
+                    precedesBValues = new LinkedHashMap<EventType, Integer>();
+                    followedByBValues = new LinkedHashMap<EventType, Integer>();
+                    precedesCounts.put(types.get(a), precedesBValues);
+                    followedByCounts.put(types.get(a), followedByBValues);
+                }
+                precedesBValues.put(types.get(b), precedes[a][b]);
+                followedByBValues.put(types.get(b), followedBy[a][b]);
+            }
+        }
+
+        for (int b = 0; b < numTypes; b++) {
+            if (interrupts[b] == null) {
+                continue;
+            }
+            Set<EventType> typesInBetween = new HashSet<EventType>();
+            for (int a = interrupts[b].nextSetBit(0); a >= 0; a = interrupts[b]
+                    .nextSetBit(a + 1)) {
+                typesInBetween.add(types.get(a));
+            }
+            possibleInterrupts.put(types.get(b), typesInBetween);
+        }
+
+        indexOf = null;
+        counts = null;
+        lastPos = null;
+        precedes = null;
+        followedBy = null;
+        interrupts = null;
+    }
+}
@@ -1,12 +1,17 @@
 package synoptic.model;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import synoptic.model.event.Event;
+import synoptic.model.event.EventTypeAlphabet;
 import synoptic.model.interfaces.IRelationPath;
 import synoptic.model.interfaces.ITransition;
 import synoptic.util.InternalSynopticException;
@@ -21,8 +26,16 @@ public class Trace {
     /** Relations -> First non-INITIAL node for each relation in this trace */
     private Map<String, EventNode> relationToInitialNodes;
 
-    public Trace() {
+    /** The alphabet with which the relation paths count their events. */
+    private final EventTypeAlphabet alphabet;
+
+    public Trace(EventTypeAlphabet alphabet) {
         this.relationToInitialNodes = new HashMap<String, EventNode>();
+        this.alphabet = alphabet;
+    }
+
+    public Trace() {
+        this(new EventTypeAlphabet());
     }
 
     public void addInitialNode(String relation, EventNode eNode) {
@@ -196,6 +209,212 @@ public class Trace {
         return null;
     }
 
+    /**
+     * Returns the relation paths of each of relations in this trace, with
+     * their events counted, from a single walk of the trace. The paths of a
+     * relation are those of getBiRelationalPath if multipleRelations is set
+     * and the relation is not the time relation, and those of
+     * getSingleRelationPaths otherwise. Unlike getBiRelationalPath, there is
+     * no bi-relational path for a relation that does not occur in this trace.
+     * 
+     * @param relations
+     * @param multipleRelations
+     * @return
+     */
+    public Map<String, List<IRelationPath>> getRelationPaths(
+            Collection<String> relations, boolean multipleRelations) {
+        EventNode firstNode = relationToInitialNodes
+                .get(Event.defTimeRelationStr);
+
+        List<RelationWalk> walks = new ArrayList<RelationWalk>(
+                relations.size());
+        for (String relation : relations) {
+            boolean biRelational = multipleRelations
+                    && !relation.equals(Event.defTimeRelationStr);
+            walks.add(new RelationWalk(relation, biRelational, firstNode,
+                    relationToInitialNodes.get(relation), alphabet));
+        }
+
+        // Each walk follows the nodes of its relation paths, which are a
+        // subsequence of the trace, so all walks advance along the time
+        // relation together and visit the nodes they expect next.
+        EventNode curNode = firstNode;
+        while (!curNode.isTerminal()) {
+            List<? extends ITransition<EventNode>> timeTransitions = curNode
+                    .getTransitionsWithIntersectingRelations(Event.defTimeRelationSet);
+            if (timeTransitions.size() != 1) {
+                throw new InternalSynopticException(
+                        "There should be exactly one transition with an ordering relation.");
+            }
+            EventNode timeNext = timeTransitions.get(0).getTarget();
+
+            for (RelationWalk walk : walks) {
+                if (walk.next == curNode) {
+                    walk.visit(curNode, timeNext);
+                }
+            }
+            curNode = timeNext;
+        }
+
+        Map<String, List<IRelationPath>> ret = new LinkedHashMap<String, List<IRelationPath>>();
+        for (RelationWalk walk : walks) {
+            walk.endPath();
+            ret.put(walk.relation, walk.paths);
+        }
+        return ret;
+    }
+
+    /**
+     * The walk of the relation paths of one relation in getRelationPaths,
+     * which counts the events of the paths as they are visited. A walk visits
+     * the nodes that getSingleRelationPaths and ChainRelationPath, or
+     * TransitiveRelationPath, visit for the relation.
+     */
+    private static final class RelationWalk {
+        final String relation;
+        final Set<String> relationSet;
+        final boolean biRelational;
+        final boolean initialTransitivelyConnected;
+
+        /** The node to visit next. */
+        EventNode next;
+        /**
+         * For single relation paths, whether a path is being counted. For a
+         * bi-relational path, whether the last counted node has a transition
+         * with the relation.
+         */
+        boolean inPath;
+
+        /** The first node, the last counted node and counts of the path. */
+        EventNode pathFirst;
+        EventNode pathLast;
+        RelationPathCounts counts;
+
+        final List<IRelationPath> paths = new ArrayList<IRelationPath>();
+
+        /** The alphabet of the trace, with which the paths are counted. */
+        final EventTypeAlphabet alphabet;
+
+        RelationWalk(String relation, boolean biRelational,
+                EventNode firstNode, EventNode relationInitialNode,
+                EventTypeAlphabet alphabet) {
+            this.alphabet = alphabet;
+            this.relation = relation;
+            this.relationSet = Collections.singleton(relation);
+            this.biRelational = biRelational;
+            this.initialTransitivelyConnected = relationInitialNode == null;
+            if (relationInitialNode != null) {
+                next = relationInitialNode;
+                inPath = true;
+                startPath(relationInitialNode);
+            } else {
+                next = firstNode;
+                inPath = false;
+                if (biRelational) {
+                    startPath(firstNode);
+                }
+            }
+        }
+
+        /**
+         * Visits curNode, whose successor by the time relation is timeNext.
+         */
+        void visit(EventNode curNode, EventNode timeNext) {
+            if (biRelational) {
+                visitBiRelational(curNode, timeNext);
+            } else {
+                visitSingleRelation(curNode, timeNext);
+            }
+        }
+
+        private void visitSingleRelation(EventNode curNode, EventNode timeNext) {
+            List<? extends ITransition<EventNode>> relationTransitions = curNode
+                    .getTransitionsWithIntersectingRelations(relationSet);
+            if (relationTransitions.size() > 1) {
+                throw new InternalSynopticException(
+                        "Multiple transitions exist for relation: " + relation);
+            }
+
+            // A path starts at a node with a transition with the relation, and
+            // ends at the first node without one.
+            if (!inPath && !relationTransitions.isEmpty()) {
+                inPath = true;
+                startPath(curNode);
+            }
+            if (inPath) {
+                count(curNode);
+                if (relationTransitions.isEmpty()) {
+                    endPath();
+                    inPath = false;
+                }
+            }
+
+            next = relationTransitions.isEmpty() ? timeNext
+                    : relationTransitions.get(0).getTarget();
+        }
+
+        private void visitBiRelational(EventNode curNode, EventNode timeNext) {
+            List<? extends ITransition<EventNode>> relationTransitions = curNode
+                    .getTransitionsWithIntersectingRelations(relationSet);
+            List<? extends ITransition<EventNode>> exactTransitions = curNode
+                    .getTransitionsWithExactRelations(relationSet);
+            if (relationTransitions.size() > 1 || exactTransitions.size() > 1) {
+                throw new InternalSynopticException(
+                        "Multiple transitions exist for relation: " + relation);
+            }
+
+            // Nodes without a transition with the relation, either in or out,
+            // are not counted.
+            boolean hasOutgoingRelation = !relationTransitions.isEmpty();
+            if (!hasOutgoingRelation && !inPath) {
+                next = timeNext;
+                return;
+            }
+            inPath = hasOutgoingRelation;
+            count(curNode);
+
+            next = exactTransitions.isEmpty() ? timeNext : exactTransitions
+                    .get(0).getTarget();
+        }
+
+        private void startPath(EventNode first) {
+            pathFirst = first;
+            pathLast = null;
+            counts = new RelationPathCounts(alphabet);
+        }
+
+        private void count(EventNode curNode) {
+            counts.add(curNode.getEType());
+            pathLast = curNode;
+        }
+
+        /**
+         * Adds the path being counted, if any, to paths.
+         */
+        void endPath() {
+            if (counts == null || counts.getNumEvents() == 0) {
+                counts = null;
+                return;
+            }
+            if (biRelational) {
+                paths.add(new TransitiveRelationPath(pathFirst, pathLast,
+                        relation, initialTransitivelyConnected, counts));
+            } else {
+                paths.add(new ChainRelationPath(pathFirst, pathLast, relation,
+                        counts));
+            }
+            counts = null;
+        }
+    }
+
+    /**
+     * Returns an unmodifiable view of the first non-INITIAL node of this trace
+     * for each relation.
+     */
+    public Map<String, EventNode> getInitialNodes() {
+        return Collections.unmodifiableMap(relationToInitialNodes);
+    }
+
     public boolean containsRelation(String relation) {
         return relationToInitialNodes.containsKey(relation);
     }
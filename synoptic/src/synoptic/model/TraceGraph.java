@@ -79,6 +79,13 @@ public abstract class TraceGraph<EType extends EventType> implements
         return dummyInitialNode;
     }
 
+    /**
+     * Returns the TERMINAL node for this graph.
+     */
+    public EventNode getDummyTerminalNode() {
+        return dummyTerminalNode;
+    }
+
     /**
      * Returns the set of relations that are present in this graph.
      */
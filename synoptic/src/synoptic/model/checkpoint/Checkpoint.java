@@ -0,0 +1,178 @@
+package synoptic.model.checkpoint;
+
+import java.io.File;
+import java.io.IOException;
+
+import synoptic.invariants.TemporalInvariantSet;
+import synoptic.model.ChainsTraceGraph;
+import synoptic.model.PartitionGraph;
+import synoptic.model.TraceGraph;
+
+/**
+ * A stage of the Synoptic pipeline that can be written to a file and read back
+ * by a later run: the trace graph of the log, the invariants mined from it,
+ * and (after refinement or coarsening) the partition graph over it.
+ * <p>
+ * The file format is, in order (all numbers are big-endian, and every id is an
+ * int index into the corresponding table):
+ * <ul>
+ * <li>a header: MAGIC, VERSION, the kind of trace graph (GRAPH_*), the stage,
+ * and the HAS_* flags</li>
+ * <li>the string table: the number of strings, then each string as the length
+ * of its UTF-8 encoding followed by the encoding</li>
+ * <li>the event types: each as an ETYPE_* kind, the string id of its label
+ * and the string id of its process name (or -1)</li>
+ * <li>the event nodes, where node 0 is the dummy INITIAL node and node 1 is
+ * the dummy TERMINAL node: each other node as its event type id, the string
+ * ids of its log line and file name (or -1), its line number, its trace id,
+ * its time (a TIME_* kind and the value) and its resources (a count, and the
+ * string id of each type followed by the resource)</li>
+ * <li>the transitions of each node: a count, then each transition as the
+ * target node id and the string ids of its relations</li>
+ * <li>for a ChainsTraceGraph, the traces: each as a count of the relations
+ * of the trace, and the string id of each relation followed by the id of the
+ * first node of the trace for the relation</li>
+ * <li>if HAS_INVARIANTS, the invariants: each as an INV_* kind, the ids of
+ * its two event types, the string ids of its relation and ordering relation
+ * (or -1), and its support count (or -1)</li>
+ * <li>if HAS_PARTITIONS, the partitions: each as a count, and the ids of its
+ * nodes</li>
+ * </ul>
+ * </p>
+ */
+public class Checkpoint {
+
+    /** The stage of the pipeline at which a checkpoint is taken. */
+    public enum Stage {
+        /** After the invariants have been mined. */
+        MINED,
+        /** After refinement. */
+        REFINED,
+        /** After coarsening. */
+        COARSENED
+    }
+
+    /** The first int of every checkpoint file ("SYNC"). */
+    static final int MAGIC = 0x53594e43;
+    /** The version of the format, which is bumped by incompatible changes. */
+    static final int VERSION = 1;
+
+    static final byte GRAPH_CHAINS = 0;
+    static final byte GRAPH_DAGS = 1;
+
+    static final byte HAS_INVARIANTS = 1;
+    static final byte HAS_PARTITIONS = 2;
+
+    static final byte ETYPE_STRING = 0;
+    static final byte ETYPE_STRING_INITIAL = 1;
+    static final byte ETYPE_STRING_TERMINAL = 2;
+    static final byte ETYPE_DIST = 3;
+    static final byte ETYPE_DIST_INITIAL = 4;
+    static final byte ETYPE_DIST_TERMINAL = 5;
+
+    static final byte TIME_NONE = 0;
+    static final byte TIME_INT = 1;
+    static final byte TIME_LONG = 2;
+    static final byte TIME_DECIMAL = 3;
+    static final byte TIME_VECTOR = 4;
+
+    static final byte INV_AFBY = 0;
+    static final byte INV_AP = 1;
+    static final byte INV_NFBY = 2;
+    static final byte INV_INTRBY = 3;
+    static final byte INV_NIFBY = 4;
+    static final byte INV_INITIAL_TERMINAL = 5;
+    static final byte INV_ALWAYS_CONCURRENT = 6;
+    static final byte INV_NEVER_CONCURRENT = 7;
+    static final byte INV_AFBY_BI = 8;
+    static final byte INV_AP_BI = 9;
+    static final byte INV_NFBY_BI = 10;
+
+    private final TraceGraph<?> traceGraph;
+    private final TemporalInvariantSet invariants;
+    private final PartitionGraph pGraph;
+    private final Stage stage;
+
+    /**
+     * A checkpoint of a trace graph and the invariants mined from it, without
+     * a partition graph.
+     *
+     * @param traceGraph
+     *            a ChainsTraceGraph or a DAGsTraceGraph
+     * @param invariants
+     *            the mined invariants, or null
+     */
+    public Checkpoint(TraceGraph<?> traceGraph,
+            TemporalInvariantSet invariants) {
+        this.traceGraph = traceGraph;
+        this.invariants = invariants;
+        this.pGraph = null;
+        this.stage = Stage.MINED;
+    }
+
+    /**
+     * A checkpoint of a partition graph, together with its trace graph and
+     * invariants.
+     */
+    public Checkpoint(PartitionGraph pGraph, Stage stage) {
+        this.traceGraph = pGraph.getTraceGraph();
+        this.invariants = pGraph.getInvariants();
+        this.pGraph = pGraph;
+        this.stage = stage;
+    }
+
+    /** A checkpoint that has been read back. */
+    Checkpoint(TraceGraph<?> traceGraph, TemporalInvariantSet invariants,
+            PartitionGraph pGraph, Stage stage) {
+        this.traceGraph = traceGraph;
+        this.invariants = invariants;
+        this.pGraph = pGraph;
+        this.stage = stage;
+    }
+
+    /**
+     * Reads the checkpoint in file.
+     *
+     * @throws IOException
+     *             if the file cannot be read, or is not a checkpoint of this
+     *             version
+     */
+    public static Checkpoint read(File file) throws IOException {
+        return new CheckpointReader(file).read();
+    }
+
+    /**
+     * Writes this checkpoint to file, replacing the file if it exists.
+     */
+    public void write(File file) throws IOException {
+        new CheckpointWriter(file).write(this);
+    }
+
+    public TraceGraph<?> getTraceGraph() {
+        return traceGraph;
+    }
+
+    /**
+     * Returns the trace graph if it is a ChainsTraceGraph, and null otherwise.
+     */
+    public ChainsTraceGraph getChainsTraceGraph() {
+        if (traceGraph instanceof ChainsTraceGraph) {
+            return (ChainsTraceGraph) traceGraph;
+        }
+        return null;
+    }
+
+    /** Returns the invariants, or null if the checkpoint has none. */
+    public TemporalInvariantSet getInvariants() {
+        return invariants;
+    }
+
+    /** Returns the partition graph, or null if the checkpoint has none. */
+    public PartitionGraph getPartitionGraph() {
+        return pGraph;
+    }
+
+    public Stage getStage() {
+        return stage;
+    }
+}
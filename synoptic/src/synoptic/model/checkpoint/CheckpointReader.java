@@ -0,0 +1,410 @@
+package synoptic.model.checkpoint;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import synoptic.invariants.AlwaysFollowedInvariant;
+import synoptic.invariants.AlwaysPrecedesInvariant;
+import synoptic.invariants.BinaryInvariant;
+import synoptic.invariants.InterruptedByInvariant;
+import synoptic.invariants.NeverFollowedInvariant;
+import synoptic.invariants.NeverImmediatelyFollowedInvariant;
+import synoptic.invariants.TOInitialTerminalInvariant;
+import synoptic.invariants.TemporalInvariantSet;
+import synoptic.invariants.birelational.AFBiRelationInvariant;
+import synoptic.invariants.birelational.APBiRelationInvariant;
+import synoptic.invariants.birelational.NFBiRelationInvariant;
+import synoptic.invariants.concurrency.AlwaysConcurrentInvariant;
+import synoptic.invariants.concurrency.NeverConcurrentInvariant;
+import synoptic.model.ChainsTraceGraph;
+import synoptic.model.DAGsTraceGraph;
+import synoptic.model.EventNode;
+import synoptic.model.PartitionGraph;
+import synoptic.model.Trace;
+import synoptic.model.TraceGraph;
+import synoptic.model.event.DistEventType;
+import synoptic.model.event.Event;
+import synoptic.model.event.EventType;
+import synoptic.model.event.StringEventType;
+import synoptic.util.InvariantStatistics;
+import synoptic.util.resource.AbstractResource;
+import synoptic.util.resource.DTotalResource;
+import synoptic.util.resource.ITotalResource;
+import synoptic.util.resource.LTotalResource;
+import synoptic.util.resource.VectorTime;
+
+/**
+ * Reads a Checkpoint in the binary format described in {@link Checkpoint}.
+ * The file is memory-mapped rather than read through a stream. Since a single
+ * mapping is limited to 2 GB, the file is mapped in windows of at most
+ * WINDOW_SIZE bytes, and the window is moved forward whenever fewer bytes are
+ * left in it than the next read needs.
+ */
+public class CheckpointReader {
+
+    /** The largest number of bytes mapped at a time. */
+    static final int WINDOW_SIZE = 1 << 30;
+
+    private final File file;
+
+    private FileChannel channel;
+    private long fileSize;
+    // The offset in the file of the current window.
+    private long windowStart;
+    private MappedByteBuffer window;
+
+    private String[] strings;
+    private EventType[] eTypes;
+    private EventNode[] nodes;
+
+    public CheckpointReader(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Reads the checkpoint in the file of this reader.
+     *
+     * @throws IOException
+     *             if the file cannot be read, or is not a checkpoint of this
+     *             version
+     */
+    public Checkpoint read() throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            channel = raf.getChannel();
+            fileSize = channel.size();
+            windowStart = 0;
+            window = null;
+            mapWindow(0);
+            return readCheckpoint();
+        } finally {
+            channel = null;
+            window = null;
+            raf.close();
+        }
+    }
+
+    private Checkpoint readCheckpoint() throws IOException {
+        if (readInt() != Checkpoint.MAGIC) {
+            throw new IOException("Not a checkpoint: " + file);
+        }
+        int version = readInt();
+        if (version != Checkpoint.VERSION) {
+            throw new IOException("Checkpoint " + file + " has version "
+                    + version + ", expected " + Checkpoint.VERSION);
+        }
+        byte graphKind = readByte();
+        Checkpoint.Stage stage = Checkpoint.Stage.values()[readByte()];
+        byte flags = readByte();
+
+        readStrings();
+        readETypes();
+
+        TraceGraph<?> g;
+        if (graphKind == Checkpoint.GRAPH_CHAINS) {
+            g = new ChainsTraceGraph();
+        } else if (graphKind == Checkpoint.GRAPH_DAGS) {
+            g = new DAGsTraceGraph();
+        } else {
+            throw new IOException("Unknown trace graph kind " + graphKind
+                    + " in checkpoint " + file);
+        }
+        readNodes(g);
+        readTransitions(g);
+        if (g instanceof ChainsTraceGraph) {
+            readTraces((ChainsTraceGraph) g);
+        }
+
+        TemporalInvariantSet invariants = null;
+        if ((flags & Checkpoint.HAS_INVARIANTS) != 0) {
+            invariants = readInvariants();
+        }
+
+        PartitionGraph pGraph = null;
+        if ((flags & Checkpoint.HAS_PARTITIONS) != 0) {
+            if (!(g instanceof ChainsTraceGraph)) {
+                throw new IOException("Checkpoint " + file
+                        + " has partitions of a DAGsTraceGraph");
+            }
+            pGraph = new PartitionGraph((ChainsTraceGraph) g, invariants,
+                    readPartitions());
+        }
+
+        return new Checkpoint(g, invariants, pGraph, stage);
+    }
+
+    // //////////////////////////////////////////////////////////////////////
+    // Records.
+
+    private void readStrings() throws IOException {
+        strings = new String[readInt()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = readUTF8();
+        }
+    }
+
+    private String readUTF8() throws IOException {
+        int length = readInt();
+        byte[] bytes = new byte[length];
+        ensure(length);
+        window.get(bytes);
+        return new String(bytes, CheckpointWriter.UTF8);
+    }
+
+    private String readString() throws IOException {
+        int id = readInt();
+        return id == -1 ? null : strings[id];
+    }
+
+    private void readETypes() throws IOException {
+        eTypes = new EventType[readInt()];
+        for (int i = 0; i < eTypes.length; i++) {
+            byte kind = readByte();
+            String label = readString();
+            String pName = readString();
+            switch (kind) {
+            case Checkpoint.ETYPE_STRING:
+                eTypes[i] = new StringEventType(label);
+                break;
+            case Checkpoint.ETYPE_STRING_INITIAL:
+                eTypes[i] = StringEventType.newInitialStringEventType();
+                break;
+            case Checkpoint.ETYPE_STRING_TERMINAL:
+                eTypes[i] = StringEventType.newTerminalStringEventType();
+                break;
+            case Checkpoint.ETYPE_DIST:
+                eTypes[i] = new DistEventType(label, pName);
+                break;
+            case Checkpoint.ETYPE_DIST_INITIAL:
+                eTypes[i] = DistEventType.newInitialDistEventType();
+                break;
+            case Checkpoint.ETYPE_DIST_TERMINAL:
+                eTypes[i] = DistEventType.newTerminalDistEventType();
+                break;
+            default:
+                throw new IOException("Unknown event type kind " + kind
+                        + " in checkpoint " + file);
+            }
+        }
+    }
+
+    private void readNodes(TraceGraph<?> g) throws IOException {
+        nodes = new EventNode[readInt()];
+        nodes[0] = g.getDummyInitialNode();
+        nodes[1] = g.getDummyTerminalNode();
+        for (int i = 2; i < nodes.length; i++) {
+            EventType eType = eTypes[readInt()];
+            String line = readString();
+            String fileName = readString();
+            int lineNum = readInt();
+            Event event = new Event(eType, line, fileName, lineNum);
+            EventNode node = new EventNode(event);
+            node.setTraceID(readInt());
+            event.setTime(readResource());
+
+            int numResources = readInt();
+            for (int r = 0; r < numResources; r++) {
+                String type = readString();
+                event.addResource(type, readResource());
+            }
+
+            g.add(node);
+            nodes[i] = node;
+        }
+    }
+
+    private AbstractResource readResource() throws IOException {
+        byte kind = readByte();
+        switch (kind) {
+        case Checkpoint.TIME_NONE:
+            return null;
+        case Checkpoint.TIME_INT: {
+            int value = readInt();
+            return new ITotalResource(value, readString());
+        }
+        case Checkpoint.TIME_LONG: {
+            long value = readLong();
+            return new LTotalResource(value, readString());
+        }
+        case Checkpoint.TIME_DECIMAL: {
+            String value = readUTF8();
+            return new DTotalResource(value, readString());
+        }
+        case Checkpoint.TIME_VECTOR: {
+            int[] clocks = new int[readInt()];
+            for (int i = 0; i < clocks.length; i++) {
+                clocks[i] = readInt();
+            }
+            return new VectorTime(clocks);
+        }
+        default:
+            throw new IOException("Unknown resource kind " + kind
+                    + " in checkpoint " + file);
+        }
+    }
+
+    private void readTransitions(TraceGraph<?> g) throws IOException {
+        for (int i = 0; i < nodes.length; i++) {
+            EventNode src = nodes[i];
+            int numTransitions = readInt();
+            for (int t = 0; t < numTransitions; t++) {
+                EventNode target = nodes[readInt()];
+                Set<String> relations = new LinkedHashSet<String>();
+                int numRelations = readInt();
+                for (int r = 0; r < numRelations; r++) {
+                    relations.add(readString());
+                }
+
+                // The trace graph keeps track of its initial nodes.
+                if (i == 0) {
+                    g.tagInitial(target, relations);
+                } else if (target == nodes[1]) {
+                    g.tagTerminal(src, relations);
+                } else {
+                    src.addTransition(target, relations);
+                }
+            }
+        }
+    }
+
+    private void readTraces(ChainsTraceGraph g) throws IOException {
+        int numTraces = readInt();
+        for (int i = 0; i < numTraces; i++) {
+            Trace trace = new Trace();
+            int numRelations = readInt();
+            for (int r = 0; r < numRelations; r++) {
+                String relation = readString();
+                trace.addInitialNode(relation, nodes[readInt()]);
+            }
+            g.addTrace(trace);
+        }
+    }
+
+    private TemporalInvariantSet readInvariants() throws IOException {
+        TemporalInvariantSet invariants = new TemporalInvariantSet();
+        int numInvariants = readInt();
+        for (int i = 0; i < numInvariants; i++) {
+            byte kind = readByte();
+            EventType first = eTypes[readInt()];
+            EventType second = eTypes[readInt()];
+            String relation = readString();
+            String orderingRelation = readString();
+            int supportCount = readInt();
+
+            BinaryInvariant inv;
+            switch (kind) {
+            case Checkpoint.INV_AFBY:
+                inv = new AlwaysFollowedInvariant(first, second, relation);
+                break;
+            case Checkpoint.INV_AP:
+                inv = new AlwaysPrecedesInvariant(first, second, relation);
+                break;
+            case Checkpoint.INV_NFBY:
+                inv = new NeverFollowedInvariant(first, second, relation);
+                break;
+            case Checkpoint.INV_INTRBY:
+                inv = new InterruptedByInvariant(first, second, relation);
+                break;
+            case Checkpoint.INV_NIFBY:
+                inv = new NeverImmediatelyFollowedInvariant(first, second,
+                        relation);
+                break;
+            case Checkpoint.INV_INITIAL_TERMINAL:
+                inv = new TOInitialTerminalInvariant(first, second, relation);
+                break;
+            case Checkpoint.INV_ALWAYS_CONCURRENT:
+                inv = new AlwaysConcurrentInvariant((DistEventType) first,
+                        (DistEventType) second, relation);
+                break;
+            case Checkpoint.INV_NEVER_CONCURRENT:
+                inv = new NeverConcurrentInvariant((DistEventType) first,
+                        (DistEventType) second, relation);
+                break;
+            case Checkpoint.INV_AFBY_BI:
+                inv = new AFBiRelationInvariant(first, second, relation,
+                        orderingRelation);
+                break;
+            case Checkpoint.INV_AP_BI:
+                inv = new APBiRelationInvariant(first, second, relation,
+                        orderingRelation);
+                break;
+            case Checkpoint.INV_NFBY_BI:
+                inv = new NFBiRelationInvariant(first, second, relation,
+                        orderingRelation);
+                break;
+            default:
+                throw new IOException("Unknown invariant kind " + kind
+                        + " in checkpoint " + file);
+            }
+            if (supportCount != -1) {
+                inv.setStatistics(new InvariantStatistics(supportCount));
+            }
+            invariants.add(inv);
+        }
+        return invariants;
+    }
+
+    private List<Set<EventNode>> readPartitions() throws IOException {
+        int numPartitions = readInt();
+        List<Set<EventNode>> partitions = new ArrayList<Set<EventNode>>(
+                numPartitions);
+        for (int i = 0; i < numPartitions; i++) {
+            int size = readInt();
+            Set<EventNode> events = new LinkedHashSet<EventNode>();
+            for (int e = 0; e < size; e++) {
+                events.add(nodes[readInt()]);
+            }
+            partitions.add(events);
+        }
+        return partitions;
+    }
+
+    // //////////////////////////////////////////////////////////////////////
+    // Primitives, over the mapped window.
+
+    private byte readByte() throws IOException {
+        ensure(1);
+        return window.get();
+    }
+
+    private int readInt() throws IOException {
+        ensure(4);
+        return window.getInt();
+    }
+
+    private long readLong() throws IOException {
+        ensure(8);
+        return window.getLong();
+    }
+
+    /**
+     * Moves the window forward, if needed, so that the next n bytes are in it.
+     */
+    private void ensure(int n) throws IOException {
+        if (window.remaining() >= n) {
+            return;
+        }
+        long pos = windowStart + window.position();
+        if (fileSize - pos < n) {
+            throw new IOException("Truncated checkpoint: " + file);
+        }
+        if (n > WINDOW_SIZE) {
+            throw new IOException("Record of " + n
+                    + " bytes is too large in checkpoint " + file);
+        }
+        mapWindow(pos);
+    }
+
+    private void mapWindow(long pos) throws IOException {
+        windowStart = pos;
+        long size = Math.min(WINDOW_SIZE, fileSize - pos);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, pos, size);
+    }
+}
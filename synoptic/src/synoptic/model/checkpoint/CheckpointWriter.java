@@ -0,0 +1,376 @@
+package synoptic.model.checkpoint;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import synoptic.invariants.AlwaysFollowedInvariant;
+import synoptic.invariants.AlwaysPrecedesInvariant;
+import synoptic.invariants.BinaryInvariant;
+import synoptic.invariants.ITemporalInvariant;
+import synoptic.invariants.InterruptedByInvariant;
+import synoptic.invariants.NeverFollowedInvariant;
+import synoptic.invariants.NeverImmediatelyFollowedInvariant;
+import synoptic.invariants.TOInitialTerminalInvariant;
+import synoptic.invariants.birelational.AFBiRelationInvariant;
+import synoptic.invariants.birelational.APBiRelationInvariant;
+import synoptic.invariants.birelational.BiRelationalInvariant;
+import synoptic.invariants.birelational.NFBiRelationInvariant;
+import synoptic.invariants.concurrency.AlwaysConcurrentInvariant;
+import synoptic.invariants.concurrency.NeverConcurrentInvariant;
+import synoptic.model.ChainsTraceGraph;
+import synoptic.model.EventNode;
+import synoptic.model.Partition;
+import synoptic.model.Trace;
+import synoptic.model.TraceGraph;
+import synoptic.model.Transition;
+import synoptic.model.event.DistEventType;
+import synoptic.model.event.Event;
+import synoptic.model.event.EventType;
+import synoptic.model.event.StringEventType;
+import synoptic.util.resource.AbstractResource;
+import synoptic.util.resource.DTotalResource;
+import synoptic.util.resource.ITotalResource;
+import synoptic.util.resource.LTotalResource;
+import synoptic.util.resource.VectorTime;
+
+/**
+ * Writes a Checkpoint in the binary format described in {@link Checkpoint}.
+ * The strings, event types and event nodes of the checkpoint are assigned ids
+ * in a first pass, so that the tables can be written before the records that
+ * refer to them.
+ */
+public class CheckpointWriter {
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File file;
+
+    private final Map<String, Integer> stringIds = new LinkedHashMap<String, Integer>();
+    private final Map<EventType, Integer> eTypeIds = new LinkedHashMap<EventType, Integer>();
+    private final Map<EventNode, Integer> nodeIds = new LinkedHashMap<EventNode, Integer>();
+
+    private DataOutputStream out;
+
+    public CheckpointWriter(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Writes checkpoint to the file of this writer.
+     *
+     * @throws IllegalArgumentException
+     *             if the checkpoint contains an invariant or event type that
+     *             cannot be checkpointed
+     */
+    public void write(Checkpoint checkpoint) throws IOException {
+        TraceGraph<?> g = checkpoint.getTraceGraph();
+        assignIds(checkpoint);
+
+        out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file), 1 << 16));
+        try {
+            out.writeInt(Checkpoint.MAGIC);
+            out.writeInt(Checkpoint.VERSION);
+            out.writeByte(g instanceof ChainsTraceGraph ? Checkpoint.GRAPH_CHAINS
+                    : Checkpoint.GRAPH_DAGS);
+            out.writeByte(checkpoint.getStage().ordinal());
+            int flags = 0;
+            if (checkpoint.getInvariants() != null) {
+                flags |= Checkpoint.HAS_INVARIANTS;
+            }
+            if (checkpoint.getPartitionGraph() != null) {
+                flags |= Checkpoint.HAS_PARTITIONS;
+            }
+            out.writeByte(flags);
+
+            writeStrings();
+            writeETypes();
+            writeNodes();
+            writeTransitions();
+            if (g instanceof ChainsTraceGraph) {
+                writeTraces((ChainsTraceGraph) g);
+            }
+            if (checkpoint.getInvariants() != null) {
+                writeInvariants(checkpoint.getInvariants().getSet());
+            }
+            if (checkpoint.getPartitionGraph() != null) {
+                writePartitions(checkpoint.getPartitionGraph().getNodes());
+            }
+        } finally {
+            out.close();
+            out = null;
+        }
+    }
+
+    // //////////////////////////////////////////////////////////////////////
+    // First pass: ids.
+
+    private void assignIds(Checkpoint checkpoint) {
+        TraceGraph<?> g = checkpoint.getTraceGraph();
+
+        // The dummy nodes come first, so that the reader can map them to the
+        // dummy nodes of the graph that it creates.
+        nodeIds.put(g.getDummyInitialNode(), 0);
+        nodeIds.put(g.getDummyTerminalNode(), 1);
+        for (EventNode node : g.getNodes()) {
+            if (!nodeIds.containsKey(node)) {
+                nodeIds.put(node, nodeIds.size());
+            }
+        }
+
+        for (EventNode node : nodeIds.keySet()) {
+            Event event = node.getEvent();
+            eTypeId(event.getEType());
+            stringId(event.getLine());
+            stringId(event.getFileName());
+            if (event.getTime() != null) {
+                stringId(event.getTime().getKey());
+            }
+            for (Map.Entry<String, AbstractResource> entry : event
+                    .getResources().entrySet()) {
+                stringId(entry.getKey());
+                stringId(entry.getValue().getKey());
+            }
+            for (Transition<EventNode> tr : node.getAllTransitions()) {
+                for (String relation : tr.getRelation()) {
+                    stringId(relation);
+                }
+            }
+        }
+
+        if (checkpoint.getInvariants() != null) {
+            for (ITemporalInvariant inv : checkpoint.getInvariants()) {
+                // Fails early on invariants that cannot be checkpointed.
+                invariantKind(inv);
+                BinaryInvariant binv = (BinaryInvariant) inv;
+                eTypeId(binv.getFirst());
+                eTypeId(binv.getSecond());
+                stringId(binv.getRelation());
+                if (binv instanceof BiRelationalInvariant) {
+                    stringId(((BiRelationalInvariant) binv)
+                            .getOrderingRelation());
+                }
+            }
+        }
+    }
+
+    /** Returns the id of s, or -1 if s is null. */
+    private int stringId(String s) {
+        if (s == null) {
+            return -1;
+        }
+        Integer id = stringIds.get(s);
+        if (id == null) {
+            id = stringIds.size();
+            stringIds.put(s, id);
+        }
+        return id;
+    }
+
+    private int eTypeId(EventType eType) {
+        Integer id = eTypeIds.get(eType);
+        if (id == null) {
+            if (eType instanceof DistEventType) {
+                DistEventType dType = (DistEventType) eType;
+                if (dType.getPid() != -1) {
+                    throw new IllegalArgumentException(
+                            "Cannot checkpoint CSight event type " + eType);
+                }
+                stringId(dType.getEType());
+                stringId(dType.getProcessName());
+            } else if (eType instanceof StringEventType) {
+                stringId(eType.getETypeLabel());
+            } else {
+                throw new IllegalArgumentException(
+                        "Cannot checkpoint event type " + eType);
+            }
+            id = eTypeIds.size();
+            eTypeIds.put(eType, id);
+        }
+        return id;
+    }
+
+    // //////////////////////////////////////////////////////////////////////
+    // Second pass: records.
+
+    private void writeStrings() throws IOException {
+        out.writeInt(stringIds.size());
+        for (String s : stringIds.keySet()) {
+            byte[] bytes = s.getBytes(UTF8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private void writeETypes() throws IOException {
+        out.writeInt(eTypeIds.size());
+        for (EventType eType : eTypeIds.keySet()) {
+            if (eType instanceof DistEventType) {
+                DistEventType dType = (DistEventType) eType;
+                out.writeByte(eType.isInitialEventType() ? Checkpoint.ETYPE_DIST_INITIAL
+                        : eType.isTerminalEventType() ? Checkpoint.ETYPE_DIST_TERMINAL
+                                : Checkpoint.ETYPE_DIST);
+                out.writeInt(stringId(dType.getEType()));
+                out.writeInt(stringId(dType.getProcessName()));
+            } else {
+                out.writeByte(eType.isInitialEventType() ? Checkpoint.ETYPE_STRING_INITIAL
+                        : eType.isTerminalEventType() ? Checkpoint.ETYPE_STRING_TERMINAL
+                                : Checkpoint.ETYPE_STRING);
+                out.writeInt(stringId(eType.getETypeLabel()));
+                out.writeInt(-1);
+            }
+        }
+    }
+
+    private void writeNodes() throws IOException {
+        out.writeInt(nodeIds.size());
+        for (EventNode node : nodeIds.keySet()) {
+            if (nodeIds.get(node) < 2) {
+                continue;
+            }
+            Event event = node.getEvent();
+            out.writeInt(eTypeIds.get(event.getEType()));
+            out.writeInt(stringId(event.getLine()));
+            out.writeInt(stringId(event.getFileName()));
+            out.writeInt(event.getLineNum());
+            out.writeInt(node.getTraceID());
+            writeResource(event.getTime());
+
+            Map<String, AbstractResource> resources = event.getResources();
+            out.writeInt(resources.size());
+            for (Map.Entry<String, AbstractResource> entry : resources
+                    .entrySet()) {
+                out.writeInt(stringId(entry.getKey()));
+                writeResource(entry.getValue());
+            }
+        }
+    }
+
+    private void writeResource(AbstractResource res) throws IOException {
+        if (res == null) {
+            out.writeByte(Checkpoint.TIME_NONE);
+        } else if (res instanceof ITotalResource) {
+            out.writeByte(Checkpoint.TIME_INT);
+            out.writeInt(((ITotalResource) res).value);
+            out.writeInt(stringId(res.getKey()));
+        } else if (res instanceof LTotalResource) {
+            out.writeByte(Checkpoint.TIME_LONG);
+            out.writeLong(((LTotalResource) res).value);
+            out.writeInt(stringId(res.getKey()));
+        } else if (res instanceof DTotalResource) {
+            out.writeByte(Checkpoint.TIME_DECIMAL);
+            // Written as its exact decimal string.
+            byte[] bytes = res.toString().getBytes(UTF8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            out.writeInt(stringId(res.getKey()));
+        } else if (res instanceof VectorTime) {
+            VectorTime vtime = (VectorTime) res;
+            out.writeByte(Checkpoint.TIME_VECTOR);
+            out.writeInt(vtime.size());
+            for (int i = 0; i < vtime.size(); i++) {
+                out.writeInt(vtime.get(i));
+            }
+        } else {
+            throw new IllegalArgumentException("Cannot checkpoint resource "
+                    + res);
+        }
+    }
+
+    private void writeTransitions() throws IOException {
+        for (EventNode node : nodeIds.keySet()) {
+            List<Transition<EventNode>> transitions = node.getAllTransitions();
+            out.writeInt(transitions.size());
+            for (Transition<EventNode> tr : transitions) {
+                out.writeInt(nodeIds.get(tr.getTarget()));
+                Set<String> relations = tr.getRelation();
+                out.writeInt(relations.size());
+                for (String relation : relations) {
+                    out.writeInt(stringId(relation));
+                }
+            }
+        }
+    }
+
+    private void writeTraces(ChainsTraceGraph g) throws IOException {
+        List<Trace> traces = g.getTraces();
+        out.writeInt(traces.size());
+        for (Trace trace : traces) {
+            Map<String, EventNode> initialNodes = trace.getInitialNodes();
+            out.writeInt(initialNodes.size());
+            for (Map.Entry<String, EventNode> entry : initialNodes.entrySet()) {
+                out.writeInt(stringId(entry.getKey()));
+                out.writeInt(nodeIds.get(entry.getValue()));
+            }
+        }
+    }
+
+    private void writeInvariants(Set<ITemporalInvariant> invs)
+            throws IOException {
+        out.writeInt(invs.size());
+        for (ITemporalInvariant inv : invs) {
+            BinaryInvariant binv = (BinaryInvariant) inv;
+            out.writeByte(invariantKind(binv));
+            out.writeInt(eTypeIds.get(binv.getFirst()));
+            out.writeInt(eTypeIds.get(binv.getSecond()));
+            out.writeInt(stringId(binv.getRelation()));
+            if (binv instanceof BiRelationalInvariant) {
+                out.writeInt(stringId(((BiRelationalInvariant) binv)
+                        .getOrderingRelation()));
+            } else {
+                out.writeInt(-1);
+            }
+            out.writeInt(binv.getStatistics() == null ? -1 : binv
+                    .getStatistics().supportCount);
+        }
+    }
+
+    private static byte invariantKind(ITemporalInvariant inv) {
+        // Exact classes, since the constrained invariants extend these.
+        Class<?> cls = inv.getClass();
+        if (cls == AlwaysFollowedInvariant.class) {
+            return Checkpoint.INV_AFBY;
+        } else if (cls == AlwaysPrecedesInvariant.class) {
+            return Checkpoint.INV_AP;
+        } else if (cls == NeverFollowedInvariant.class) {
+            return Checkpoint.INV_NFBY;
+        } else if (cls == InterruptedByInvariant.class) {
+            return Checkpoint.INV_INTRBY;
+        } else if (cls == NeverImmediatelyFollowedInvariant.class) {
+            return Checkpoint.INV_NIFBY;
+        } else if (cls == TOInitialTerminalInvariant.class) {
+            return Checkpoint.INV_INITIAL_TERMINAL;
+        } else if (cls == AlwaysConcurrentInvariant.class) {
+            return Checkpoint.INV_ALWAYS_CONCURRENT;
+        } else if (cls == NeverConcurrentInvariant.class) {
+            return Checkpoint.INV_NEVER_CONCURRENT;
+        } else if (cls == AFBiRelationInvariant.class) {
+            return Checkpoint.INV_AFBY_BI;
+        } else if (cls == APBiRelationInvariant.class) {
+            return Checkpoint.INV_AP_BI;
+        } else if (cls == NFBiRelationInvariant.class) {
+            return Checkpoint.INV_NFBY_BI;
+        }
+        throw new IllegalArgumentException("Cannot checkpoint invariant "
+                + inv);
+    }
+
+    private void writePartitions(Set<Partition> partitions) throws IOException {
+        out.writeInt(partitions.size());
+        for (Partition p : partitions) {
+            Set<EventNode> events = p.getEventNodes();
+            out.writeInt(events.size());
+            for (EventNode node : events) {
+                out.writeInt(nodeIds.get(node));
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package synoptic.model.checkpoint;
+
+/**
+ * <p>
+ * Provides checkpointing of the stages of the Synoptic pipeline, so that a
+ * later run can resume from a stage instead of parsing and mining the log (and
+ * refining the model) again.
+ * </p>
+ * <p>
+ * A <code>Checkpoint</code> holds a trace graph (a
+ * <code>ChainsTraceGraph</code> or a <code>DAGsTraceGraph</code>), the
+ * invariants mined from it, and optionally a <code>PartitionGraph</code> over
+ * it, as it was after refinement or coarsening. The
+ * <code>CheckpointWriter</code> writes a checkpoint in a compact, versioned
+ * binary format, in which strings, event types and event nodes are referred to
+ * by integer ids. The <code>CheckpointReader</code> reads this format through
+ * memory-mapped windows of the file.
+ * </p>
+ */
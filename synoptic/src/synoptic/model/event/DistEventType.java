@@ -87,6 +87,7 @@ public class DistEventType extends EventType implements IDistEventType {
      * @return
      */
     public String interpretEType(List<ChannelId> channelIds) {
+        assert alphabetKey == EventTypeAlphabet.NO_KEY : "Interpreting an event type that has an alphabet ID";
         if (channelIds == null)
             return "Empty set of channelIds";
         if (channelId != null)
@@ -321,6 +322,7 @@ public class DistEventType extends EventType implements IDistEventType {
     }
 
     public String setProcessName(String pName) {
+        assert alphabetKey == EventTypeAlphabet.NO_KEY : "Changing an event type that has an alphabet ID";
         return processName = pName;
     }
 
@@ -345,6 +347,9 @@ public class DistEventType extends EventType implements IDistEventType {
 
     @Override
     public boolean equals(Object other) {
+        if (other == this) {
+            return true;
+        }
         if (!super.equals(other)) {
             return false;
         }
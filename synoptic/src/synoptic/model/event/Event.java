@@ -1,7 +1,9 @@
 package synoptic.model.event;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
 
 import synoptic.util.resource.AbstractResource;
@@ -224,6 +226,13 @@ public class Event {
         resources.put(type, res);
     }
 
+    /**
+     * Returns an unmodifiable view of the resources of this event, by type.
+     */
+    public Map<String, AbstractResource> getResources() {
+        return Collections.unmodifiableMap(resources);
+    }
+
     public String getLine() {
         return logLine;
     }
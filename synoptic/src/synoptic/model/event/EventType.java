@@ -29,6 +29,13 @@ public abstract class EventType implements Comparable<EventType> {
      */
     protected final boolean isTerminalEventType;
 
+    /**
+     * The serial number of the first EventTypeAlphabet that looked up this
+     * instance (upper 32 bits) and the ID of this event type in it (lower 32
+     * bits), or EventTypeAlphabet.NO_KEY.
+     */
+    volatile long alphabetKey = EventTypeAlphabet.NO_KEY;
+
     /**
      * Instantiates a new EventType that can be an INITIAL, a TERMINAL, or
      * neither. It cannot be both an INITIAL and a TERMINAL.
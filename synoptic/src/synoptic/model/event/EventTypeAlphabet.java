@@ -0,0 +1,118 @@
+package synoptic.model.event;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An alphabet of event types, which assigns each distinct event type a dense
+ * int ID, starting at 0. Equal event types have the same ID, so data indexed
+ * by event type can be kept in arrays and bitsets indexed by ID instead of in
+ * maps keyed by EventType, which hash and compare the type strings.
+ * <p>
+ * An alphabet belongs to a single run: TraceParser creates one per parser, and
+ * interns the types of the events it parses (see intern), so that all the
+ * events of a type share one instance. The alphabet is passed on to the graphs
+ * the parser generates (see ChainsTraceGraph.getAlphabet), and becomes garbage
+ * with them, so a long-running process (e.g., SynopticService) does not
+ * accumulate the event types of earlier runs. Other users of IDs that are not
+ * given an alphabet create their own.
+ * </p>
+ * <p>
+ * The first alphabet that looks up an EventType instance caches the ID in the
+ * instance, so getID is a field read for that alphabet; other alphabets look
+ * the instance up in their map. A DistEventType must not be changed (e.g.,
+ * interpreted by CSight) once it has a cached ID. The alphabet is thread-safe.
+ * </p>
+ */
+public class EventTypeAlphabet {
+    /**
+     * The alphabetKey of an event type whose ID is not cached by any alphabet.
+     */
+    static final long NO_KEY = 0;
+
+    /** The number of alphabets created, which numbers the alphabets from 1. */
+    private static final AtomicInteger numAlphabets = new AtomicInteger();
+
+    /** The number of this alphabet, in the upper half of the cached keys. */
+    private final long serial = numAlphabets.incrementAndGet();
+
+    /** The event types in the alphabet, by ID. */
+    private final List<EventType> eTypes = new ArrayList<EventType>();
+    private final Map<EventType, Integer> ids = new HashMap<EventType, Integer>();
+
+    /**
+     * Returns the ID of eType, adding eType to the alphabet if it is not in
+     * the alphabet yet.
+     */
+    public int getID(EventType eType) {
+        // The serial and the ID are cached in one volatile long, so that a
+        // concurrent reader never pairs the serial of one alphabet with an ID
+        // of another.
+        long key = eType.alphabetKey;
+        if (key >>> 32 == serial) {
+            return (int) key;
+        }
+        synchronized (this) {
+            Integer existing = ids.get(eType);
+            if (existing == null) {
+                existing = eTypes.size();
+                eTypes.add(eType);
+                ids.put(eType, existing);
+            }
+            if (eType.alphabetKey == NO_KEY) {
+                eType.alphabetKey = serial << 32 | existing;
+            }
+            return existing;
+        }
+    }
+
+    /**
+     * Returns the instance of the event type equal to eType that is in the
+     * alphabet, which is eType if it is the first such instance, adding eType
+     * to the alphabet if it is not in the alphabet yet.
+     */
+    public EventType intern(EventType eType) {
+        return getEventType(getID(eType));
+    }
+
+    /**
+     * Returns the event type with the given ID.
+     */
+    public synchronized EventType getEventType(int id) {
+        return eTypes.get(id);
+    }
+
+    /**
+     * Returns the number of event types in the alphabet, which bounds their
+     * IDs.
+     */
+    public synchronized int size() {
+        return eTypes.size();
+    }
+
+    /**
+     * Returns the set of the IDs of eTypes.
+     */
+    public BitSet toBitSet(Iterable<? extends EventType> eTypes) {
+        BitSet ret = new BitSet();
+        for (EventType eType : eTypes) {
+            ret.set(getID(eType));
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the event types whose IDs are in ids, in the order of IDs.
+     */
+    public List<EventType> toEventTypes(BitSet ids) {
+        List<EventType> ret = new ArrayList<EventType>(ids.cardinality());
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            ret.add(getEventType(id));
+        }
+        return ret;
+    }
+}
@@ -55,6 +55,10 @@ public class StringEventType extends EventType {
 
     @Override
     public boolean equals(Object other) {
+        if (other == this) {
+            // The common case for event types interned by the parser.
+            return true;
+        }
         if (!super.equals(other)) {
             return false;
         }
@@ -195,6 +195,17 @@ public class GraphExporter {
 
             // /////////////////////
             // EXPORT EDGES:
+            if (main.options.stateProcessing) {
+                // Infer the Daikon invariants of all the edges in one batch.
+                List<Partition> partitions = new ArrayList<Partition>();
+                for (INode<T> node : nodes) {
+                    if (node instanceof Partition) {
+                        partitions.add((Partition) node);
+                    }
+                }
+                Partition.computeTransitionsWithDaikonInvariants(partitions);
+            }
+
             // Export all the edges corresponding to the nodes in the graph.
             for (INode<T> node : nodes) {
                 List<? extends ITransition<T>> transitions;
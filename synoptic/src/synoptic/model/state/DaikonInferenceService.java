@@ -0,0 +1,109 @@
+package synoptic.model.state;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import daikonizer.DaikonInvariants;
+
+import synoptic.benchmarks.Metrics;
+
+/**
+ * Infers the Daikon invariants of the states on the edges of a model. The
+ * edges are inferred in batches (see inferAll), and edges with identical
+ * states are inferred once.
+ * <p>
+ * The invariants are memoised by the list of states they were inferred from,
+ * across the batches of a service, so identical edges skip inference. The
+ * memo holds at most memoCapacity lists, and evicts the least recently used
+ * list first. It lives as long as the service: AbstractMain keeps one service
+ * per run (see AbstractMain.getDaikonInferenceService).
+ * </p>
+ * <p>
+ * Daikon runs one at a time (see SynDaikonizer), so the jobs of a batch are
+ * run one after another on the calling thread.
+ * </p>
+ */
+public class DaikonInferenceService {
+    /** The number of lists of states whose invariants are memoised. */
+    private static final int memoCapacity = 4096;
+
+    /** The invariants of the lists of states inferred so far. */
+    private final Map<List<State>, DaikonInvariants> memo = Collections
+            .synchronizedMap(new LinkedHashMap<List<State>, DaikonInvariants>(
+                    16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(
+                        Entry<List<State>, DaikonInvariants> eldest) {
+                    return size() > memoCapacity;
+                }
+            });
+
+    /**
+     * Returns the invariants of the states on each edge, in the order of
+     * edges, which holds the states on each edge. The states that are null
+     * are ignored.
+     */
+    public List<DaikonInvariants> inferAll(List<List<State>> edges) {
+        // The invariants of the distinct lists of states in this batch. Each
+        // list that is not memoised is one Daikon job.
+        Map<List<State>, DaikonInvariants> inferred = new LinkedHashMap<List<State>, DaikonInvariants>();
+        List<DaikonInvariants> ret = new ArrayList<DaikonInvariants>(
+                edges.size());
+        for (List<State> states : edges) {
+            List<State> key = toKey(states);
+            DaikonInvariants invs = inferred.get(key);
+            if (invs == null) {
+                invs = memo.get(key);
+                if (invs != null) {
+                    Metrics.get().counter("daikon.memoHits").inc();
+                } else {
+                    invs = run(key);
+                }
+                inferred.put(key, invs);
+            }
+            ret.add(invs);
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the invariants of states, which are memoised.
+     */
+    public DaikonInvariants infer(List<State> states) {
+        return inferAll(Collections.singletonList(states)).get(0);
+    }
+
+    /**
+     * Returns the memo key of states: an immutable copy of the states that
+     * are not null.
+     */
+    private static List<State> toKey(List<State> states) {
+        List<State> key = new ArrayList<State>(states.size());
+        for (State state : states) {
+            if (state != null) {
+                key.add(state);
+            }
+        }
+        return Collections.unmodifiableList(key);
+    }
+
+    /**
+     * Runs Daikon on states, and memoises the resulting invariants.
+     */
+    private DaikonInvariants run(List<State> states) {
+        Metrics.get().counter("daikon.invocations").inc();
+        SynDaikonizer daikonizer = new SynDaikonizer();
+        for (State state : states) {
+            daikonizer.addInstance(state);
+        }
+        DaikonInvariants invs = daikonizer.getDaikonEnterInvariants();
+        memo.put(states, invs);
+        return invs;
+    }
+}
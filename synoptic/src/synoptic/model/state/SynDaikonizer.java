@@ -16,6 +16,13 @@ import daikonizer.Daikonizer;
  *
  */
 public class SynDaikonizer {
+    /**
+     * Daikon keeps its program points in static fields, and redirects
+     * System.out while it runs, so only one Daikon invocation can run at a
+     * time.
+     */
+    private static final Object daikonLock = new Object();
+
     private List<DaikonVar> vars;
     private Daikonizer daikonizer;
     
@@ -83,7 +90,9 @@ public class SynDaikonizer {
         
         // Only run Daikon when there are state instances.
         if (daikonizer != null) {
-            printedInvs = daikonizer.genDaikonInvariants(enterInvs, exitInvs, flow, false);
+            synchronized (daikonLock) {
+                printedInvs = daikonizer.genDaikonInvariants(enterInvs, exitInvs, flow, false);
+            }
         }
         DaikonInvariants invs = new DaikonInvariants(enterInvs, printedInvs);
         return invs;
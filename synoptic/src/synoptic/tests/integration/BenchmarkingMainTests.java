@@ -0,0 +1,97 @@
+package synoptic.tests.integration;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import synoptic.main.AbstractMain;
+import synoptic.main.ExtPerfumeMain;
+import synoptic.main.PerfumeMain;
+import synoptic.main.SynopticMain;
+import synoptic.main.parser.ParseException;
+import synoptic.tests.SynopticTest;
+
+/**
+ * Tests that every main reports the metrics of the run with --doBenchmarking.
+ */
+@RunWith(value = Parameterized.class)
+public class BenchmarkingMainTests extends SynopticTest {
+    Class<? extends AbstractMain> mainClass;
+
+    @Override
+    public void setUp() throws ParseException {
+        // Do not call to super, so that a new Synoptic Main is not allocated.
+        return;
+    }
+
+    @Parameters
+    public static Collection<Object[]> data() {
+        return Arrays.asList(new Object[][] { { SynopticMain.class },
+                { PerfumeMain.class }, { ExtPerfumeMain.class } });
+    }
+
+    public BenchmarkingMainTests(Class<? extends AbstractMain> mainClass) {
+        this.mainClass = mainClass;
+    }
+
+    @Test
+    public void doBenchmarkingTest() throws Exception {
+        File log = new File(testOutputDir + "benchmarking-"
+                + mainClass.getSimpleName() + ".txt");
+        log.getParentFile().mkdirs();
+        FileWriter writer = new FileWriter(log);
+        writer.write("1 a\n2 b\n4 c\n--\n1 a\n3 b\n4 c\n");
+        writer.close();
+
+        final List<String> messages = new ArrayList<String>();
+        Handler handler = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                messages.add(record.getMessage());
+            }
+
+            @Override
+            public void flush() {
+                return;
+            }
+
+            @Override
+            public void close() {
+                return;
+            }
+        };
+
+        Logger.getLogger("").addHandler(handler);
+        try {
+            AbstractMain.instance = null;
+            mainClass.getMethod("main", String[].class).invoke(
+                    null,
+                    (Object) new String[] { "--doBenchmarking", "-r",
+                            "^(?<TIME>)(?<TYPE>)$", "-s", "^--$",
+                            log.getPath() });
+        } finally {
+            Logger.getLogger("").removeHandler(handler);
+            log.delete();
+        }
+
+        boolean reported = false;
+        for (String message : messages) {
+            reported |= message.startsWith("BENCHM:");
+        }
+        assertTrue(mainClass.getSimpleName() + " reported no metrics",
+                reported);
+    }
+}
@@ -0,0 +1,105 @@
+package synoptic.tests.integration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import synoptic.main.AbstractMain;
+import synoptic.main.SynopticMain;
+import synoptic.main.options.AbstractOptions;
+import synoptic.main.parser.ParseException;
+import synoptic.tests.SynopticTest;
+
+/**
+ * Tests that SynopticMain outputs the same invariants in live mining as in
+ * batch mining, with the options that filter the mined invariants.
+ */
+public class LiveMiningMainTests extends SynopticTest {
+
+    private static final String log = "1 a\n2 b\n3 c\n4 d\n--\n"
+            + "1 a\n2 c\n3 b\n4 d\n--\n" + "1 a\n2 b\n3 d\n--\n"
+            + "1 a\n2 b\n3 c\n4 c\n5 d\n";
+
+    @Override
+    public void setUp() throws ParseException {
+        // Do not call to super, so that a new Synoptic Main is not allocated.
+        return;
+    }
+
+    /**
+     * Runs SynopticMain on the log with the filter options, and returns the
+     * lines of the invariants file it outputs.
+     */
+    private List<String> mineInvariants(String name, String... modeArgs)
+            throws Exception {
+        String outputPrefix = testOutputDir + name;
+        File invariantsFile = new File(outputPrefix + ".invariants.txt");
+        invariantsFile.getParentFile().mkdirs();
+        invariantsFile.delete();
+
+        List<String> args = new ArrayList<String>(Arrays.asList("-o",
+                outputPrefix, "--outputInvariantsToFile",
+                "--outputSupportCount", "--supportCountThreshold", "1",
+                "--ignoreNFbyInvs", "--ignoreInvsOverETypeSet", "b;c", "-r",
+                "^(?<TIME>)(?<TYPE>)$", "-s", "^--$"));
+        args.addAll(Arrays.asList(modeArgs));
+        try {
+            AbstractMain.instance = null;
+            SynopticMain.main(args.toArray(new String[args.size()]));
+        } finally {
+            AbstractOptions.ignoreInvsOverETypeSet = null;
+        }
+
+        List<String> invariants = Files.readAllLines(invariantsFile.toPath(),
+                Charset.forName("UTF-8"));
+        invariantsFile.delete();
+        return invariants;
+    }
+
+    /**
+     * Tests that live mining applies the supportCountThreshold,
+     * ignoreNFbyInvs and ignoreInvsOverETypeSet filters of batch mining.
+     */
+    @Test
+    public void liveMatchesBatchTest() throws Exception {
+        File logFile = new File(testOutputDir + "live-mining-log.txt");
+        logFile.getParentFile().mkdirs();
+        FileWriter writer = new FileWriter(logFile);
+        writer.write(log);
+        writer.close();
+        List<String> batch;
+        try {
+            batch = mineInvariants("live-mining-batch", "--onlyMineInvariants",
+                    logFile.getPath());
+        } finally {
+            logFile.delete();
+        }
+
+        List<String> live;
+        InputStream stdin = System.in;
+        System.setIn(new ByteArrayInputStream(log.getBytes("UTF-8")));
+        try {
+            live = mineInvariants("live-mining-live", "--liveMiningInterval",
+                    "50", "-");
+        } finally {
+            System.setIn(stdin);
+        }
+
+        assertFalse(batch.isEmpty());
+        for (String inv : batch) {
+            assertFalse(inv, inv.contains("NeverFollowedBy"));
+        }
+        assertEquals(batch, live);
+    }
+}
@@ -80,11 +80,16 @@ public class BiRelationInvariantMiningTests extends SynopticTest {
     @Override
     public void setUp() throws ParseException {
         super.setUp();
-        parser = new TraceParser();
+        parser = newParser();
+    }
+
+    private static TraceParser newParser() throws ParseException {
+        TraceParser parser = new TraceParser();
         parser.addRegex("^(?<TIME>)(?<TYPE>)$");
         parser.addRegex("^(?<TIME>)(?<RELATION>)(?<TYPE>)$");
         parser.addRegex("^(?<TIME>)(?<RELATION*>)cl(?<TYPE>)$");
         parser.addPartitionsSeparator("^--$");
+        return parser;
     }
 
     /**
@@ -1019,4 +1024,67 @@ public class BiRelationInvariantMiningTests extends SynopticTest {
         assertTrue(trueInvs.sameInvariants(minedInvs));
     }
 
+    /**
+     * Returns the graph of the log of traces, which are separated by "--",
+     * parsed by a new parser.
+     */
+    private ChainsTraceGraph genGraph(String[]... traces) throws Exception {
+        String traceStr = "";
+        for (String[] trace : traces) {
+            if (!traceStr.isEmpty()) {
+                traceStr += "\n--";
+            }
+            for (String line : trace) {
+                traceStr += (traceStr.isEmpty() ? "" : "\n") + line;
+            }
+        }
+        TraceParser graphParser = newParser();
+        List<EventNode> events = graphParser.parseTraceString(traceStr, "test",
+                -1);
+        return graphParser.generateDirectTORelation(events);
+    }
+
+    /**
+     * Tests that mining all relations in one walk of the traces yields the
+     * invariants of mining each relation in turn.
+     */
+    @Test
+    public void allRelationsInOneWalk() throws Exception {
+        ChainWalkingTOInvMiner chainMiner = (ChainWalkingTOInvMiner) miner;
+        String[][] logs = { multipleIsolatedRelationSubgraphs,
+                multipleIsolatedEventPairSubgraphs, doubleNonTimeClosure,
+                closureIntoAndOutOfRegular,
+                disjointClosureAndEventPairSubgraphs };
+        for (String[] log : logs) {
+            for (String[][] traces : new String[][][] { { log },
+                    { log, closureIntoAndOutOfRegular } }) {
+                ChainsTraceGraph graph = genGraph(traces);
+                TemporalInvariantSet perRelation = new TemporalInvariantSet();
+                for (String relation : graph.getRelations()) {
+                    perRelation.add(chainMiner.computeInvariants(graph,
+                            relation, true, false));
+                }
+                assertTrue(perRelation.sameInvariants(chainMiner
+                        .computeInvariants(graph, true, false)));
+            }
+        }
+    }
+
+    /**
+     * Tests that a trace without the relation does not contribute a relation
+     * path to the invariants of the relation.
+     */
+    @Test
+    public void traceWithoutRelation() throws Exception {
+        ChainsTraceGraph graph = genGraph(relationSubgraphIsolatedFromTerminal,
+                new String[] { "1 w", "2 x" });
+        TemporalInvariantSet minedInvs = miner.computeInvariants(graph, true,
+                false);
+
+        assertTrue(minedInvs.getSet().contains(
+                new AFBiRelationInvariant(StringEventType
+                        .newInitialStringEventType(), "w", r)));
+        assertTrue(minedInvs.getSet().contains(
+                new NFBiRelationInvariant("w", "w", r)));
+    }
 }
@@ -1,12 +1,17 @@
 package synoptic.tests.units;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import org.junit.Test;
 
 import synoptic.algorithms.Bisimulation;
+import synoptic.invariants.CExamplePath;
 import synoptic.invariants.TemporalInvariantSet;
 import synoptic.invariants.miners.ChainWalkingTOInvMiner;
 import synoptic.invariants.miners.ITOInvariantMiner;
@@ -134,6 +139,91 @@ public class BisimulationTests extends SynopticTest {
         assertTrue(parsedEvents.size() == 0);
     }
 
+    /**
+     * Builds the model of a log, the way SynopticMain does, and returns the
+     * invariants mined from the trace graph.
+     */
+    private static TemporalInvariantSet mineInvariants(ChainsTraceGraph g) {
+        return filterIntrByInvariants(new ChainWalkingTOInvMiner()
+                .computeInvariants(g, false, false));
+    }
+
+    /**
+     * Tests that updating the model of random logs with new random traces
+     * results in a model of all the traces that satisfies all their
+     * invariants.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void updateModelTest() throws Exception {
+        String[] eventTypes = new String[] { "--", "a", "b", "c", "d" };
+        for (int i = 0; i < 20; i++) {
+            TraceParser defParser = genDefParser();
+            ArrayList<EventNode> oldEvents = defParser.parseTraceString(
+                    concatinateWithNewlines(TOLogInvariantMiningTests
+                            .genRandomLog(eventTypes)), "old", -1);
+            ChainsTraceGraph inputGraph = defParser
+                    .generateDirectTORelation(oldEvents);
+            PartitionGraph pGraph = new PartitionGraph(inputGraph, true,
+                    mineInvariants(inputGraph));
+            Bisimulation.splitUntilAllInvsSatisfied(pGraph);
+            Bisimulation.mergePartitions(pGraph);
+
+            ArrayList<EventNode> newEvents = defParser.parseTraceString(
+                    concatinateWithNewlines(TOLogInvariantMiningTests
+                            .genRandomLog(eventTypes)), "new", -1);
+            List<List<EventNode>> newTraces = defParser.addTracesToTORelation(
+                    inputGraph, newEvents);
+            TemporalInvariantSet invariants = mineInvariants(inputGraph);
+            Bisimulation.updateModel(pGraph, newTraces, invariants);
+
+            pGraph.checkSanity();
+            assertTrue(pGraph.getInvariants() == invariants);
+            List<CExamplePath<Partition>> cExamples = invariants
+                    .getAllCounterExamples(pGraph);
+            assertTrue(cExamples == null || cExamples.isEmpty());
+            for (EventNode e : inputGraph.getNodes()) {
+                assertTrue(pGraph.getNodes().contains(e.getParent()));
+            }
+        }
+    }
+
+    /**
+     * Tests that updating a model with traces that it already accepts, and
+     * that do not change the invariants, does not change the model.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void updateModelWithAcceptedTracesTest() throws Exception {
+        TraceParser defParser = genDefParser();
+        ArrayList<EventNode> oldEvents = defParser.parseTraceString(
+                concatinateWithNewlines(new String[] { "a", "b", "c", "--",
+                        "a", "c" }), "old", -1);
+        ChainsTraceGraph inputGraph = defParser
+                .generateDirectTORelation(oldEvents);
+        PartitionGraph pGraph = new PartitionGraph(inputGraph, true,
+                mineInvariants(inputGraph));
+        Bisimulation.splitUntilAllInvsSatisfied(pGraph);
+        Bisimulation.mergePartitions(pGraph);
+        Set<Partition> partitions = new HashSet<Partition>(pGraph.getNodes());
+
+        ArrayList<EventNode> newEvents = defParser.parseTraceString(
+                concatinateWithNewlines(new String[] { "a", "b", "c" }), "new",
+                -1);
+        List<List<EventNode>> newTraces = defParser.addTracesToTORelation(
+                inputGraph, newEvents);
+        TemporalInvariantSet invariants = mineInvariants(inputGraph);
+        assertTrue(invariants.sameInvariants(pGraph.getInvariants()));
+
+        assertTrue(pGraph.addTraces(newTraces, invariants).isEmpty());
+        assertEquals(partitions, pGraph.getNodes());
+        for (EventNode e : newEvents) {
+            assertTrue(partitions.contains(e.getParent()));
+        }
+    }
+
     // TODO: test the single step splitPartitions version.
 
     // TODO: change mergePartitionsTest to use total order, since a partially
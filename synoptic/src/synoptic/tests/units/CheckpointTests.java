@@ -0,0 +1,162 @@
+package synoptic.tests.units;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import synoptic.algorithms.Bisimulation;
+import synoptic.invariants.BinaryInvariant;
+import synoptic.invariants.CExamplePath;
+import synoptic.invariants.ITemporalInvariant;
+import synoptic.invariants.TemporalInvariantSet;
+import synoptic.invariants.miners.ChainWalkingTOInvMiner;
+import synoptic.invariants.miners.DAGWalkingPOInvMiner;
+import synoptic.main.parser.TraceParser;
+import synoptic.model.ChainsTraceGraph;
+import synoptic.model.DAGsTraceGraph;
+import synoptic.model.EventNode;
+import synoptic.model.Partition;
+import synoptic.model.PartitionGraph;
+import synoptic.model.checkpoint.Checkpoint;
+import synoptic.tests.SynopticTest;
+
+/**
+ * Tests for Checkpoint, which write trace graphs, invariants and partition
+ * graphs to checkpoint files and compare them to what is read back.
+ */
+public class CheckpointTests extends SynopticTest {
+
+    private static File newCheckpointFile() throws IOException {
+        File file = File.createTempFile("checkpoint", ".ckpt");
+        file.deleteOnExit();
+        return file;
+    }
+
+    /** Returns the partitions of pGraph, as sets of event line numbers. */
+    private static Set<Set<Integer>> lineNumPartitions(PartitionGraph pGraph) {
+        Set<Set<Integer>> ret = new HashSet<Set<Integer>>();
+        for (Partition p : pGraph.getNodes()) {
+            Set<Integer> lineNums = new HashSet<Integer>();
+            for (EventNode e : p.getEventNodes()) {
+                lineNums.add(e.isInitial() ? -1 : e.isTerminal() ? -2 : e
+                        .getLineNum());
+            }
+            ret.add(lineNums);
+        }
+        return ret;
+    }
+
+    /** Returns the support count of each invariant, by its string. */
+    private static Map<String, Integer> supportCounts(TemporalInvariantSet invs) {
+        Map<String, Integer> ret = new HashMap<String, Integer>();
+        for (ITemporalInvariant inv : invs) {
+            ret.put(inv.toString(),
+                    ((BinaryInvariant) inv).getStatistics().supportCount);
+        }
+        return ret;
+    }
+
+    /**
+     * Tests that the refined and coarsened models of random logs are read
+     * back with the same trace graph, invariants and partitions.
+     */
+    @Test
+    public void chainsRoundTripTest() throws Exception {
+        String[] eventTypes = new String[] { "--", "a", "b", "c", "d" };
+        for (int i = 0; i < 10; i++) {
+            TraceParser parser = genDefParser();
+            ArrayList<EventNode> events = parser.parseTraceString(
+                    concatinateWithNewlines(TOLogInvariantMiningTests
+                            .genRandomLog(eventTypes)), "log", -1);
+            ChainsTraceGraph g = parser.generateDirectTORelation(events);
+            TemporalInvariantSet invs = filterIntrByInvariants(new ChainWalkingTOInvMiner()
+                    .computeInvariants(g, false, true));
+            PartitionGraph pGraph = new PartitionGraph(g, true, invs);
+            Bisimulation.splitUntilAllInvsSatisfied(pGraph);
+            Bisimulation.mergePartitions(pGraph);
+
+            File file = newCheckpointFile();
+            new Checkpoint(pGraph, Checkpoint.Stage.COARSENED).write(file);
+            Checkpoint checkpoint = Checkpoint.read(file);
+
+            assertEquals(Checkpoint.Stage.COARSENED, checkpoint.getStage());
+            ChainsTraceGraph g2 = checkpoint.getChainsTraceGraph();
+            assertEquals(g.getNodes().size(), g2.getNodes().size());
+            assertEquals(g.getNumTraces(), g2.getNumTraces());
+            assertEquals(g.getTraces().size(), g2.getTraces().size());
+            assertTrue(checkpoint.getInvariants().sameInvariants(invs));
+            assertEquals(supportCounts(invs),
+                    supportCounts(checkpoint.getInvariants()));
+
+            // The restored trace graph has the same invariants.
+            assertTrue(filterIntrByInvariants(
+                    new ChainWalkingTOInvMiner().computeInvariants(g2, false,
+                            true)).sameInvariants(invs));
+
+            PartitionGraph pGraph2 = checkpoint.getPartitionGraph();
+            pGraph2.checkSanity();
+            assertEquals(lineNumPartitions(pGraph), lineNumPartitions(pGraph2));
+            List<CExamplePath<Partition>> cExamples = pGraph2.getInvariants()
+                    .getAllCounterExamples(pGraph2);
+            assertTrue(cExamples == null || cExamples.isEmpty());
+        }
+    }
+
+    /**
+     * Tests that a PO trace graph and its invariants are read back with the
+     * same invariants.
+     */
+    @Test
+    public void dagsRoundTripTest() throws Exception {
+        TraceParser parser = new TraceParser();
+        parser.addRegex("^(?<VTIME>)(?<PID>)(?<TYPE>)$");
+        parser.addPartitionsSeparator("^--$");
+        String[] log = new String[] { "1,0 0 a", "1,1 1 b", "2,1 0 c", "--",
+                "0,1 1 b", "1,1 0 a" };
+        DAGsTraceGraph g = genDAGsTraceGraph(log, parser);
+        TemporalInvariantSet invs = new DAGWalkingPOInvMiner(true)
+                .computeInvariants(g);
+
+        File file = newCheckpointFile();
+        new Checkpoint(g, invs).write(file);
+        Checkpoint checkpoint = Checkpoint.read(file);
+
+        assertEquals(Checkpoint.Stage.MINED, checkpoint.getStage());
+        assertTrue(checkpoint.getPartitionGraph() == null);
+        assertTrue(checkpoint.getInvariants().sameInvariants(invs));
+        DAGsTraceGraph g2 = (DAGsTraceGraph) checkpoint.getTraceGraph();
+        assertEquals(g.getNodes().size(), g2.getNodes().size());
+        assertEquals(g.getNumTraces(), g2.getNumTraces());
+        assertTrue(new DAGWalkingPOInvMiner(true).computeInvariants(g2)
+                .sameInvariants(invs));
+    }
+
+    /**
+     * Tests that a checkpoint of another version is not read.
+     */
+    @Test(expected = IOException.class)
+    public void versionMismatchTest() throws Exception {
+        File file = newCheckpointFile();
+        new Checkpoint(genInitialLinearGraph(new String[] { "a", "b" }), null)
+                .write(file);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(4);
+            raf.writeInt(Integer.MAX_VALUE);
+        } finally {
+            raf.close();
+        }
+        Checkpoint.read(file);
+    }
+}
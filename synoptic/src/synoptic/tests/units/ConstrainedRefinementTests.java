@@ -1,8 +1,11 @@
 package synoptic.tests.units;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -11,8 +14,12 @@ import java.util.Set;
 import org.junit.Test;
 
 import synoptic.algorithms.Bisimulation;
+import synoptic.algorithms.ViolationSubgraph;
+import synoptic.algorithms.graphops.PartitionMultiSplit;
 import synoptic.algorithms.graphops.PartitionSplit;
 import synoptic.invariants.CExamplePath;
+import synoptic.invariants.fsmcheck.AFbyUpperTracingSet;
+import synoptic.invariants.fsmcheck.FsmModelChecker;
 import synoptic.invariants.fsmcheck.TracingStateSet;
 import synoptic.model.EventNode;
 import synoptic.model.Partition;
@@ -589,4 +596,102 @@ public class ConstrainedRefinementTests extends PynopticTest {
         graph = genConstrainedPartitionGraph(events, TracingSet.IntrByLower);
         Bisimulation.splitUntilAllInvsSatisfied(graph);
     }
+
+    /**
+     * Check that the bounded model checker, which starts at a given partition
+     * and stops at another, finds exactly the violations within the subgraph
+     * between these partitions
+     */
+    @Test
+    public void boundedCheckerTest() throws Exception {
+        // Same events as in stitchDetectionTest(): the max time of each
+        // transition adds up to a -> d taking 8, above the bound of 6
+        String[] events = { "a 0", "b 3", "c 5", "d 6", "--", "a 10", "b 11",
+                "c 14", "d 16" };
+        graph = genConstrainedPartitionGraph(events, null);
+        inv = getConstrainedInv(graph.getInvariants(), "a AFby d upper");
+
+        // Partition graph looks like (INIT -> a -> b -> c -> d -> TERM)
+        Map<String, Partition> parts = new HashMap<String, Partition>();
+        Partition terminal = null;
+        for (Partition part : graph.getNodes()) {
+            parts.put(part.getEType().toString(), part);
+            if (part.isTerminal()) {
+                terminal = part;
+            }
+        }
+        Partition d = parts.get("d");
+        Set<Partition> stopAtD = Collections.singleton(d);
+
+        // The unbounded check finds the violation at d and TERM
+        Map<Partition, TracingStateSet<Partition>> states = FsmModelChecker
+                .runChecker(new AFbyUpperTracingSet<Partition>(inv), graph,
+                        false);
+        assertTrue(states.get(d).isFail());
+        assertTrue(states.get(terminal).isFail());
+
+        // The bounded check from INIT finds it at d, but does not propagate
+        // states past d
+        states = FsmModelChecker.runChecker(
+                new AFbyUpperTracingSet<Partition>(inv), graph,
+                Collections.singleton(graph.getDummyInitialNode()), stopAtD,
+                false);
+        assertTrue(states.get(d).isFail());
+        assertFalse(states.get(terminal).isFail());
+
+        // The bounded check from b never sees a, so there is no violation
+        states = FsmModelChecker.runChecker(
+                new AFbyUpperTracingSet<Partition>(inv), graph,
+                Collections.singleton(parts.get("b")), stopAtD, false);
+        assertFalse(states.get(d).isFail());
+    }
+
+    /**
+     * Returns the split of part that moves the events of one trace into a new
+     * partition.
+     */
+    private PartitionMultiSplit splitOffOneTrace(Partition part) {
+        PartitionSplit split = new PartitionSplit(part);
+        int traceID = part.getEventNodes().iterator().next().getTraceID();
+        for (EventNode event : part.getEventNodes()) {
+            if (event.getTraceID() == traceID) {
+                split.addEventToSplit(event);
+            }
+        }
+        return new PartitionMultiSplit(split);
+    }
+
+    /**
+     * Check that the local check of a split on the subgraph of a violation
+     * accepts a split that removes the violation, and rejects a split that
+     * does not
+     */
+    @Test
+    public void violationSubgraphSplitTest() throws Exception {
+        // a -> c takes 5 in both traces, but a -> b takes up to 4 and b -> c
+        // takes up to 4, so the stitch at b allows a path that takes 8
+        String[] events = { "a 0", "b 1", "c 5", "--", "a 10", "b 14", "c 15" };
+        graph = genConstrainedPartitionGraph(events, null);
+        inv = getConstrainedInv(graph.getInvariants(), "a AFby c upper");
+
+        // Partition graph looks like (INIT -> a -> b -> c -> TERM)
+        Map<String, Partition> parts = new HashMap<String, Partition>();
+        for (Partition part : graph.getNodes()) {
+            parts.put(part.getEType().toString(), part);
+        }
+        int numParts = graph.getNodes().size();
+        ViolationSubgraph subgraph = new ViolationSubgraph(graph,
+                graph.getDummyInitialNode(), parts.get("a"), parts.get("c"));
+
+        // Splitting b by trace removes the stitch
+        assertTrue(subgraph.satisfiedAfter(inv,
+                splitOffOneTrace(parts.get("b"))));
+
+        // Splitting a does not, since both parts of a still reach the stitch
+        assertFalse(subgraph.satisfiedAfter(inv,
+                splitOffOneTrace(parts.get("a"))));
+
+        // Each split is rewound after its check
+        assertEquals(numParts, graph.getNodes().size());
+    }
 }
@@ -1,5 +1,6 @@
 package synoptic.tests.units;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -17,6 +18,7 @@ import synoptic.invariants.fsmcheck.TracingStateSet;
 import synoptic.model.EventNode;
 import synoptic.model.Partition;
 import synoptic.model.event.Event;
+import synoptic.model.interfaces.ITransition;
 import synoptic.tests.PynopticTest;
 import synoptic.util.resource.AbstractResource;
 import synoptic.util.resource.ITotalResource;
@@ -389,4 +391,43 @@ public class ConstrainedTracingSetTests extends PynopticTest {
         assertTrue(cTSubset.isSubset(cTSet));
         assertFalse(cTSet.isSubset(cTSubset));
     }
+
+    /**
+     * Tests that the failing path of a tracing set whose states were set from
+     * ConstrainedHistoryNodes keeps the nodes, transitions, time deltas and
+     * violation subpath of those nodes, and that copies of the set share the
+     * path
+     */
+    @Test
+    public void setStatesFailpathTest() throws Exception {
+        Partition part = new Partition(new EventNode(new Event("")));
+        ConstrainedHistoryNode<Partition> start = new ConstrainedHistoryNode<Partition>(
+                part, new ITotalResource(0));
+        start.startViolationHere();
+        List<ITransition<EventNode>> transitions = new ArrayList<ITransition<EventNode>>();
+        ConstrainedHistoryNode<Partition> end = new ConstrainedHistoryNode<Partition>(
+                part, start, 1, transitions, new ITotalResource(7));
+        end.endViolationHere();
+
+        // State4 is the failing state of AFbyLower
+        List<ConstrainedHistoryNode<Partition>> states = new ArrayList<ConstrainedHistoryNode<Partition>>();
+        states.add(null);
+        states.add(null);
+        states.add(null);
+        states.add(null);
+        states.add(end);
+        ConstrainedTracingSet<Partition> cTSet = new AFbyLowerTracingSet<Partition>();
+        cTSet.setStates(states);
+
+        assertTrue(cTSet.isFail());
+        assertTrue(cTSet.copy().failpath() == cTSet.failpath());
+        CExamplePath<Partition> cExPath = cTSet.failpath().toCounterexample(
+                null);
+        assertEquals(2, cExPath.path.size());
+        assertTrue(cExPath.transitionsList.get(1) == transitions);
+        assertTrue(cExPath.tDeltas.get(0).compareTo(new ITotalResource(0)) == 0);
+        assertTrue(cExPath.tDeltas.get(1).compareTo(new ITotalResource(7)) == 0);
+        assertEquals(0, cExPath.violationStart);
+        assertEquals(1, cExPath.violationEnd);
+    }
 }
@@ -0,0 +1,68 @@
+package synoptic.tests.units;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import daikonizer.DaikonInvariants;
+
+import synoptic.benchmarks.Metrics;
+import synoptic.main.parser.ParseException;
+import synoptic.model.state.DaikonInferenceService;
+import synoptic.model.state.State;
+import synoptic.tests.SynopticTest;
+
+/**
+ * Tests for the batching and memoisation of Daikon invocations by
+ * DaikonInferenceService.
+ */
+public class DaikonInferenceServiceTests extends SynopticTest {
+
+    /** Returns the states x=i,y=i+1 for i from 0 to n - 1. */
+    private static List<State> genStates(int n) throws ParseException {
+        List<State> states = new ArrayList<State>();
+        for (int i = 0; i < n; i++) {
+            states.add(new State("x=" + i + ",y=" + (i + 1)));
+        }
+        return states;
+    }
+
+    /**
+     * Tests that edges with the same states are inferred once in a batch,
+     * that the invariants are memoised across the batches of a service, and
+     * that a new service has an empty memo.
+     */
+    @Test
+    public void memoisedEdgesTest() throws ParseException {
+        long invocations = Metrics.get().counter("daikon.invocations")
+                .getCount();
+
+        List<State> states = genStates(10);
+        List<State> statesWithNull = new ArrayList<State>(states);
+        statesWithNull.add(null);
+        List<State> otherStates = genStates(5);
+
+        DaikonInferenceService service = new DaikonInferenceService();
+        List<DaikonInvariants> invs = service.inferAll(Arrays.asList(states,
+                otherStates, genStates(10), statesWithNull));
+        assertEquals(4, invs.size());
+        assertSame(invs.get(0), invs.get(2));
+        assertSame(invs.get(0), invs.get(3));
+        assertEquals(invocations + 2,
+                Metrics.get().counter("daikon.invocations").getCount());
+
+        assertSame(invs.get(1), service.infer(genStates(5)));
+        assertSame(invs.get(0), service.infer(states));
+        assertEquals(invocations + 2,
+                Metrics.get().counter("daikon.invocations").getCount());
+
+        new DaikonInferenceService().infer(states);
+        assertEquals(invocations + 3,
+                Metrics.get().counter("daikon.invocations").getCount());
+    }
+}
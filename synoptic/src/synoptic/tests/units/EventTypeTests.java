@@ -1,11 +1,17 @@
 package synoptic.tests.units;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
+import java.util.BitSet;
+
 import org.junit.Test;
 
 import synoptic.model.event.DistEventType;
+import synoptic.model.event.EventTypeAlphabet;
 import synoptic.model.event.StringEventType;
 import synoptic.tests.SynopticTest;
 
@@ -175,4 +181,53 @@ public class EventTypeTests extends SynopticTest {
         assertTrue(e1.compareTo(e2) == 0);
         assertTrue(e2.compareTo(e1) == 0);
     }
+
+    /**
+     * Tests that the EventTypeAlphabet assigns equal event types the same
+     * dense ID, and interns them.
+     */
+    @Test
+    public void alphabetTest() {
+        EventTypeAlphabet alphabet = new EventTypeAlphabet();
+        StringEventType a1 = new StringEventType("alphabetTest-a");
+        StringEventType a2 = new StringEventType("alphabetTest-a");
+        StringEventType b = new StringEventType("alphabetTest-b");
+        DistEventType d = new DistEventType("alphabetTest-a", "0");
+
+        int aID = alphabet.getID(a1);
+        assertEquals(aID, alphabet.getID(a2));
+        assertTrue(aID != alphabet.getID(b));
+        assertTrue(aID != alphabet.getID(d));
+        assertTrue(alphabet.getID(b) < alphabet.size());
+        assertSame(a1, alphabet.intern(a2));
+        assertSame(a1, alphabet.getEventType(aID));
+
+        BitSet ids = alphabet.toBitSet(Arrays.asList(b, a2, a1));
+        assertEquals(2, ids.cardinality());
+        assertTrue(ids.get(aID));
+        assertEquals(
+                aID < alphabet.getID(b) ? Arrays.asList(a1, b) : Arrays
+                        .asList(b, a1), alphabet.toEventTypes(ids));
+    }
+
+    /**
+     * Tests that each EventTypeAlphabet assigns its own dense IDs, starting at
+     * 0, including to event types whose IDs are cached by another alphabet.
+     */
+    @Test
+    public void separateAlphabetsTest() {
+        EventTypeAlphabet first = new EventTypeAlphabet();
+        EventTypeAlphabet second = new EventTypeAlphabet();
+        StringEventType a = new StringEventType("separateAlphabetsTest-a");
+        StringEventType b = new StringEventType("separateAlphabetsTest-b");
+
+        assertEquals(0, first.getID(a));
+        assertEquals(1, first.getID(b));
+        assertEquals(0, second.getID(b));
+        assertEquals(1, second.getID(a));
+        assertEquals(0, first.getID(a));
+        assertEquals(1, second.getID(a));
+        assertEquals(2, first.size());
+        assertSame(a, second.getEventType(1));
+    }
 }
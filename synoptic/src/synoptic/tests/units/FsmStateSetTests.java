@@ -13,9 +13,11 @@ import synoptic.invariants.AlwaysPrecedesInvariant;
 import synoptic.invariants.BinaryInvariant;
 import synoptic.invariants.NeverFollowedInvariant;
 import synoptic.invariants.fsmcheck.AFbyInvFsms;
+import synoptic.invariants.fsmcheck.AFbyTracingSet;
 import synoptic.invariants.fsmcheck.APInvFsms;
 import synoptic.invariants.fsmcheck.FsmStateSet;
 import synoptic.invariants.fsmcheck.NFbyInvFsms;
+import synoptic.invariants.fsmcheck.TracingStateSet;
 import synoptic.model.EventNode;
 import synoptic.model.event.Event;
 import synoptic.model.event.EventType;
@@ -469,4 +471,56 @@ public class FsmStateSetTests extends SynopticTest {
 
         // TODO: test multiple simultaneous AP machines
     }
+
+    /**
+     * Tests that setTo makes a tracing state set inhabit the states of
+     * another, as a copy of it would, without sharing its states.
+     */
+    @Test
+    public void setToTest() {
+        BinaryInvariant inv = new AlwaysFollowedInvariant("a", "b",
+                Event.defTimeRelationStr);
+        TracingStateSet<EventNode> s1 = new AFbyTracingSet<EventNode>(inv);
+        s1.setInitial(msgZ);
+        TracingStateSet<EventNode> s2 = s1.copy();
+        s2.transition(msgA);
+        assertTrue(!s2.isSubset(s1));
+
+        TracingStateSet<EventNode> scratch = s1.copy();
+        scratch.transition(msgB);
+        scratch.setTo(s2);
+        assertTrue(scratch.isSubset(s2) && s2.isSubset(scratch));
+        assertTrue(scratch.failpath() == s2.failpath());
+
+        // Transitioning the scratch set leaves s2 as it was.
+        scratch.transition(msgB);
+        assertTrue(!scratch.isFail());
+        assertTrue(s2.isFail());
+        scratch.setTo(s1);
+        assertTrue(scratch.isSubset(s1) && s1.isSubset(scratch));
+    }
+
+    /**
+     * Tests that copies of a tracing set that trace the same path share it,
+     * rather than building the path once per copy.
+     */
+    @Test
+    public void sharedPathsTest() {
+        BinaryInvariant inv = new AlwaysFollowedInvariant("a", "b",
+                Event.defTimeRelationStr);
+        TracingStateSet<EventNode> s1 = new AFbyTracingSet<EventNode>(inv);
+        s1.setInitial(msgZ);
+        TracingStateSet<EventNode> s2 = s1.copy();
+        s1.transition(msgA);
+        s1.transition(msgZ);
+        s2.transition(msgA);
+        s2.transition(msgZ);
+        assertTrue(s1.isFail() && s2.isFail());
+        assertTrue(s1.failpath() == s2.failpath());
+
+        // Extending one of the copies leaves the other's path as it was.
+        s2.transition(msgA);
+        assertTrue(s2.failpath() != s1.failpath());
+        assertTrue(s2.failpath().compareTo(s1.failpath()) == 1);
+    }
 }
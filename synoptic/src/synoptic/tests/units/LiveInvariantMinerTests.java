@@ -0,0 +1,190 @@
+package synoptic.tests.units;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import synoptic.invariants.TemporalInvariantSet;
+import synoptic.invariants.miners.ChainWalkingTOInvMiner;
+import synoptic.main.ILiveInvariantsListener;
+import synoptic.main.LiveInvariantMiner;
+import synoptic.main.parser.ParseException;
+import synoptic.tests.SynopticTest;
+
+/**
+ * Tests for LiveInvariantMiner (and the IncrementalTOInvMiner that it mines
+ * with), which compare the invariants mined from a log as it grows to those
+ * mined from the complete log.
+ */
+public class LiveInvariantMinerTests extends SynopticTest {
+
+    private static final long TIMEOUT = 10000;
+
+    /** Collects the published invariants. */
+    private static class Publications implements ILiveInvariantsListener {
+        final List<TemporalInvariantSet> invariants = new ArrayList<TemporalInvariantSet>();
+        final List<Integer> numTraces = new ArrayList<Integer>();
+
+        @Override
+        public synchronized void invariantsPublished(
+                TemporalInvariantSet invs, int n) {
+            invariants.add(invs);
+            numTraces.add(n);
+        }
+
+        synchronized int lastNumTraces() {
+            return numTraces.isEmpty() ? 0 : numTraces
+                    .get(numTraces.size() - 1);
+        }
+    }
+
+    private LiveInvariantMiner newMiner(long publishInterval) {
+        return new LiveInvariantMiner(genDefParser(), publishInterval,
+                TIMEOUT, false, false);
+    }
+
+    private TemporalInvariantSet batchInvariants(String[] events)
+            throws Exception {
+        return new ChainWalkingTOInvMiner().computeInvariants(
+                genInitialLinearGraph(events), false, false);
+    }
+
+    private static File writeLog(String log) throws IOException {
+        File file = File.createTempFile("live-mining", ".txt");
+        file.deleteOnExit();
+        appendToLog(file, log);
+        return file;
+    }
+
+    private static void appendToLog(File file, String log) throws IOException {
+        FileWriter writer = new FileWriter(file, true);
+        try {
+            writer.write(log);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Tests that the invariants mined from random logs, line by line, are
+     * those that ChainWalkingTOInvMiner mines from the complete logs.
+     */
+    @Test
+    public void randomLogsTest() throws Exception {
+        String[] eventTypes = new String[] { "--", "a", "b", "c", "d" };
+        for (int i = 0; i < 30; i++) {
+            String[] log = TOLogInvariantMiningTests.genRandomLog(eventTypes);
+            LiveInvariantMiner liveMiner = newMiner(TIMEOUT);
+            liveMiner.addLog("log");
+            for (String line : log) {
+                liveMiner.parseLine("log", line);
+            }
+            liveMiner.endLog("log");
+
+            TemporalInvariantSet expected = batchInvariants(log);
+            TemporalInvariantSet live = liveMiner.getInvariants();
+            assertTrue(live.toPrettyString() + " vs "
+                    + expected.toPrettyString(), live.sameInvariants(expected));
+        }
+    }
+
+    /**
+     * Tests that a trace without a separator is complete once it has had no
+     * new events for the trace timeout, or when its log ends.
+     */
+    @Test
+    public void traceCompletionTest() throws ParseException {
+        LiveInvariantMiner liveMiner = newMiner(TIMEOUT);
+        liveMiner.addLog("log");
+        liveMiner.parseLine("log", "a");
+        liveMiner.parseLine("log", "b");
+
+        liveMiner.completeIdleTraces(System.currentTimeMillis());
+        assertEquals(0, liveMiner.getNumTraces());
+        liveMiner.completeIdleTraces(System.currentTimeMillis() + TIMEOUT);
+        assertEquals(1, liveMiner.getNumTraces());
+
+        // A later event of the same partition starts a new trace.
+        liveMiner.parseLine("log", "a");
+        assertEquals(1, liveMiner.getNumTraces());
+        liveMiner.endLog("log");
+        assertEquals(2, liveMiner.getNumTraces());
+    }
+
+    /**
+     * Tests that a stream is mined until it ends, including a last line
+     * without a newline, and that the invariants are published once at the
+     * end.
+     */
+    @Test
+    public void readStreamTest() throws Exception {
+        LiveInvariantMiner liveMiner = newMiner(TIMEOUT);
+        Publications publications = new Publications();
+        liveMiner.addListener(publications);
+        liveMiner.readStream("stdin", new ByteArrayInputStream(
+                "a\r\nb\n--\na\nc".getBytes("UTF-8")));
+        liveMiner.run();
+
+        assertEquals(1, publications.invariants.size());
+        assertEquals(2, publications.lastNumTraces());
+        assertTrue(publications.invariants.get(0).sameInvariants(
+                batchInvariants(new String[] { "a", "b", "--", "a", "c" })));
+    }
+
+    /**
+     * Tests that the lines appended to a tailed file are mined, and published.
+     */
+    @Test
+    public void tailFileTest() throws Exception {
+        File file = writeLog("a\nb\n--\n");
+        final LiveInvariantMiner liveMiner = newMiner(10);
+        Publications publications = new Publications();
+        liveMiner.addListener(publications);
+        liveMiner.tailFile(file);
+
+        final Exception[] failure = new Exception[1];
+        Thread runner = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    liveMiner.run();
+                } catch (Exception e) {
+                    failure[0] = e;
+                }
+            }
+        });
+        runner.start();
+        try {
+            waitForTraces(publications, 1);
+            appendToLog(file, "a\nc\n--\n");
+            waitForTraces(publications, 2);
+        } finally {
+            liveMiner.stop();
+            runner.join();
+        }
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+
+        assertTrue(liveMiner.getInvariants().sameInvariants(
+                batchInvariants(new String[] { "a", "b", "--", "a", "c", "--" })));
+    }
+
+    private static void waitForTraces(Publications publications, int numTraces)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (publications.lastNumTraces() < numTraces) {
+            assertTrue("Timed out waiting for " + numTraces + " traces",
+                    System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package synoptic.tests.units;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import synoptic.algorithms.Bisimulation;
+import synoptic.algorithms.KTails;
+import synoptic.algorithms.graphops.IOperation;
+import synoptic.algorithms.graphops.PartitionMerge;
+import synoptic.benchmarks.Counter;
+import synoptic.benchmarks.Metrics;
+import synoptic.invariants.CExamplePath;
+import synoptic.invariants.ITemporalInvariant;
+import synoptic.invariants.TemporalInvariantSet;
+import synoptic.invariants.miners.ChainWalkingTOInvMiner;
+import synoptic.main.AbstractMain;
+import synoptic.main.parser.TraceParser;
+import synoptic.model.ChainsTraceGraph;
+import synoptic.model.EventNode;
+import synoptic.model.Partition;
+import synoptic.model.PartitionGraph;
+import synoptic.model.PartitionGraphOverlay;
+import synoptic.tests.SynopticTest;
+
+/**
+ * Tests for the evaluation of candidate coarsening merges on a
+ * PartitionGraphOverlay.
+ */
+public class MergeEvaluationTests extends SynopticTest {
+
+    private static final String[] eventTypes = new String[] { "--", "a", "b",
+            "c", "d" };
+
+    /** Returns the refined partition graph of log. */
+    private PartitionGraph genRefinedGraph(String[] log) throws Exception {
+        TraceParser parser = genDefParser();
+        ArrayList<EventNode> events = parser.parseTraceString(
+                concatinateWithNewlines(log), "log", -1);
+        ChainsTraceGraph g = parser.generateDirectTORelation(events);
+        TemporalInvariantSet invs = filterIntrByInvariants(new ChainWalkingTOInvMiner()
+                .computeInvariants(g, false, false));
+        PartitionGraph pGraph = new PartitionGraph(g, true, invs);
+        Bisimulation.splitUntilAllInvsSatisfied(pGraph);
+        return pGraph;
+    }
+
+    /**
+     * Tests that checking an invariant on the overlay of a merge agrees with
+     * applying the merge to the graph, checking the graph, and rewinding it.
+     */
+    @Test
+    public void overlayMatchesAppliedMergeTest() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            PartitionGraph pGraph = genRefinedGraph(TOLogInvariantMiningTests
+                    .genRandomLog(eventTypes));
+            PartitionGraphOverlay.Snapshot snapshot = new PartitionGraphOverlay.Snapshot(
+                    pGraph);
+            List<Partition> partitions = new ArrayList<Partition>(
+                    pGraph.getNodes());
+            for (Partition p : partitions) {
+                for (Partition q : partitions) {
+                    if (p == q || !KTails.kEquals(p, q, 1)) {
+                        continue;
+                    }
+                    PartitionGraphOverlay overlay = new PartitionGraphOverlay(
+                            snapshot, new PartitionMerge(p, q));
+                    assertEquals(partitions.size() - 1, overlay.getNodes()
+                            .size());
+                    for (ITemporalInvariant inv : pGraph.getInvariants()) {
+                        IOperation rewind = pGraph.apply(new PartitionMerge(
+                                p, q));
+                        boolean expected = TemporalInvariantSet
+                                .getCounterExample(inv, pGraph) == null;
+                        pGraph.apply(rewind);
+                        boolean actual = TemporalInvariantSet
+                                .getCounterExample(inv, overlay) == null;
+                        assertEquals(expected, actual);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests that coarsening with parallel merge evaluation maintains all the
+     * invariants.
+     */
+    @Test
+    public void parallelCoarseningSatisfiesInvariantsTest() throws Exception {
+        AbstractMain.getInstance().options.mergeEvaluationThreads = 4;
+        for (int i = 0; i < 10; i++) {
+            PartitionGraph pGraph = genRefinedGraph(TOLogInvariantMiningTests
+                    .genRandomLog(eventTypes));
+            int numPartitions = pGraph.getNodes().size();
+            Bisimulation.mergePartitions(pGraph);
+            assertTrue(pGraph.getNodes().size() <= numPartitions);
+            List<CExamplePath<Partition>> cExamples = pGraph.getInvariants()
+                    .getAllCounterExamples(pGraph);
+            assertTrue(cExamples == null || cExamples.isEmpty());
+        }
+    }
+
+    /**
+     * Refines log with random choices seeded by seed, and coarsens the
+     * refined graph with numThreads merge evaluation threads. Returns the
+     * number of merges that coarsening evaluated and the number it applied.
+     */
+    private long[] coarsen(String[] log, long seed, int numThreads)
+            throws Exception {
+        AbstractMain main = AbstractMain.getInstance();
+        main.random = new Random(seed);
+        PartitionGraph pGraph = genRefinedGraph(log);
+        int numPartitions = pGraph.getNodes().size();
+
+        main.options.mergeEvaluationThreads = numThreads;
+        Counter attempts = Metrics.get().counter("coarsening.attempts");
+        long before = attempts.getCount();
+        Bisimulation.mergePartitions(pGraph);
+        return new long[] { attempts.getCount() - before,
+                numPartitions - pGraph.getNodes().size() };
+    }
+
+    /**
+     * Tests that parallel merge evaluation evaluates each pair of partitions
+     * in one order only, like sequential evaluation. The only merges it
+     * evaluates in addition to the sequential ones are those that follow the
+     * applied merge in its batch of 4.
+     */
+    @Test
+    public void parallelCoarseningAttemptsTest() throws Exception {
+        try {
+            for (int i = 0; i < 10; i++) {
+                String[] log = TOLogInvariantMiningTests
+                        .genRandomLog(eventTypes);
+                long[] sequential = coarsen(log, i, 1);
+                long[] parallel = coarsen(log, i, 4);
+                assertEquals(sequential[1], parallel[1]);
+                assertTrue(parallel[0] <= sequential[0] + 3 * parallel[1]);
+            }
+        } finally {
+            AbstractMain.getInstance().options.mergeEvaluationThreads = 1;
+        }
+    }
+}
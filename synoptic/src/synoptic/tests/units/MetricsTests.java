@@ -0,0 +1,122 @@
+package synoptic.tests.units;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.json.simple.JSONValue;
+import org.junit.Test;
+
+import synoptic.benchmarks.Histogram;
+import synoptic.benchmarks.Metrics;
+import synoptic.benchmarks.Timer;
+import synoptic.tests.SynopticTest;
+
+/**
+ * Tests for synoptic.benchmarks.Metrics and its counters, histograms and
+ * timers.
+ */
+public class MetricsTests extends SynopticTest {
+
+    /**
+     * Runs r in numThreads threads, and waits for all of them to finish.
+     */
+    private static void runInThreads(int numThreads, Runnable r)
+            throws InterruptedException {
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < numThreads; i++) {
+            threads.add(new Thread(r));
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+    }
+
+    /**
+     * Tests that counters and histograms updated concurrently lose no updates.
+     */
+    @Test
+    public void concurrentUpdatesTest() throws InterruptedException {
+        final Metrics metrics = new Metrics();
+        runInThreads(8, new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 1; i <= 1000; i++) {
+                    metrics.counter("c").inc();
+                    metrics.histogram("h").record(i);
+                    metrics.timer("t").start().stop();
+                }
+            }
+        });
+
+        assertEquals(8000, metrics.counter("c").getCount());
+        Histogram h = metrics.histogram("h");
+        assertEquals(8000, h.getCount());
+        assertEquals(8 * 500500, h.getSum());
+        assertEquals(1, h.getMin());
+        assertEquals(1000, h.getMax());
+        assertEquals(8000, metrics.timer("t").getWallNanos().getCount());
+    }
+
+    /**
+     * Tests the histogram percentiles, which are accurate to a power of two.
+     */
+    @Test
+    public void histogramPercentileTest() {
+        Histogram h = new Histogram();
+        for (int i = 1; i <= 100; i++) {
+            h.record(i);
+        }
+        assertEquals(50.5, h.getMean(), 1e-9);
+        long p50 = h.getPercentile(0.5);
+        assertTrue(p50 >= 32 && p50 <= 64);
+        long p99 = h.getPercentile(0.99);
+        assertTrue(p99 >= 64 && p99 <= 100);
+    }
+
+    /**
+     * Tests that stopping a timing context again is not recorded.
+     */
+    @Test
+    public void timerStopTwiceTest() {
+        Timer t = new Timer();
+        Timer.Context ctx = t.start();
+        ctx.stop();
+        assertEquals(0, ctx.stop());
+        assertEquals(1, t.getWallNanos().getCount());
+    }
+
+    /**
+     * Tests the JSON and CSV output of the metrics.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void outputTest() {
+        Metrics metrics = new Metrics();
+        metrics.counter("mine.invariants").add(3);
+        metrics.histogram("len").record(7);
+        metrics.timer("parse").start().stop();
+
+        Map<String, Object> json = (Map<String, Object>) JSONValue
+                .parse(metrics.toJson());
+        assertEquals(3L, ((Map<String, Object>) json.get("counters"))
+                .get("mine.invariants"));
+        Map<String, Object> len = (Map<String, Object>) ((Map<String, Object>) json
+                .get("histograms")).get("len");
+        assertEquals(7L, len.get("max"));
+        Map<String, Object> parse = (Map<String, Object>) ((Map<String, Object>) json
+                .get("timers")).get("parse");
+        assertEquals(1L, parse.get("wallUs.count"));
+
+        String csv = metrics.toCsv();
+        assertTrue(csv.startsWith("kind,name,field,value\n"));
+        assertTrue(csv.contains("counter,mine.invariants,count,3\n"));
+        assertTrue(csv.contains("histogram,len,max,7\n"));
+    }
+}
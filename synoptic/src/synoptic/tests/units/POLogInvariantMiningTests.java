@@ -5,6 +5,8 @@ import static org.junit.Assert.assertTrue;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
+import java.util.Random;
 import java.util.Set;
 
 import org.junit.Test;
@@ -500,6 +502,54 @@ public class POLogInvariantMiningTests extends SynopticTest {
         }
     }
 
+    /**
+     * Tests that the DAGWalkingPOInvMiner mines the same invariants when the
+     * traces are walked by several threads as when they are walked by one
+     * thread, for randomly generated logs of processes that exchange their
+     * clocks.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void mineInParallelTest() throws Exception {
+        if (!(miner instanceof DAGWalkingPOInvMiner)) {
+            return;
+        }
+
+        Random r = new Random(3);
+        int numProcs = 3;
+        for (int iter = 0; iter < 20; iter++) {
+            List<String> events = new ArrayList<String>();
+            int numTraces = 1 + r.nextInt(8);
+            for (int t = 0; t < numTraces; t++) {
+                if (t > 0) {
+                    events.add("--");
+                }
+                int[][] clocks = new int[numProcs][numProcs];
+                int numEvents = 1 + r.nextInt(20);
+                for (int i = 0; i < numEvents; i++) {
+                    int p = r.nextInt(numProcs);
+                    int q = r.nextInt(numProcs);
+                    for (int j = 0; j < numProcs; j++) {
+                        clocks[p][j] = Math.max(clocks[p][j], clocks[q][j]);
+                    }
+                    clocks[p][p] += 1;
+                    String vtime = clocks[p][0] + "," + clocks[p][1] + ","
+                            + clocks[p][2];
+                    events.add(vtime + " " + p + " e" + r.nextInt(3));
+                }
+            }
+
+            DAGsTraceGraph inputGraph = genDAGsTraceGraph(
+                    events.toArray(new String[0]), newTraceParser());
+            TemporalInvariantSet seqInvs = new DAGWalkingPOInvMiner(
+                    mineNCWith, 1).computeInvariants(inputGraph);
+            TemporalInvariantSet parInvs = new DAGWalkingPOInvMiner(
+                    mineNCWith, 4).computeInvariants(inputGraph);
+            assertTrue(seqInvs.sameInvariants(parInvs));
+        }
+    }
+
     /**
      * Tests a randomly generated trace.
      * 
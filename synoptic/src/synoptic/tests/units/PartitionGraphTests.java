@@ -1,6 +1,8 @@
 package synoptic.tests.units;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
@@ -25,6 +27,7 @@ import synoptic.model.event.EventType;
 import synoptic.model.event.StringEventType;
 import synoptic.model.interfaces.IGraph;
 import synoptic.model.interfaces.INode;
+import synoptic.model.interfaces.ITransition;
 import synoptic.tests.SynopticTest;
 
 public class PartitionGraphTests extends SynopticTest {
@@ -110,6 +113,64 @@ public class PartitionGraphTests extends SynopticTest {
      * TODO: Test for cycles (when cycle functionality has been properly implemented).
      * </pre>
      */
+    /**
+     * Tests that the transitions of a partition are cached, and that a split
+     * recomputes them only for the split partition and its predecessors.
+     */
+    @Test
+    public void transitionTableTest() throws Exception {
+        String[] events = new String[] { "a", "b", "--", "a", "b", "--", "c",
+                "b" };
+        TraceParser parser = genDefParser();
+        ArrayList<EventNode> parsedEvents = parser.parseTraceString(
+                concatinateWithNewlines(events), testName.getMethodName(), -1);
+        ChainsTraceGraph inputGraph = parser
+                .generateDirectTORelation(parsedEvents);
+        PartitionGraph pGraph = new PartitionGraph(inputGraph, true,
+                new ChainWalkingTOInvMiner().computeInvariants(inputGraph,
+                        false, false));
+
+        Partition pInitial = pGraph.getDummyInitialNode();
+        Partition pA = getNodeByName(pGraph, new StringEventType("a"));
+        Partition pB = getNodeByName(pGraph, new StringEventType("b"));
+        Partition pC = getNodeByName(pGraph, new StringEventType("c"));
+
+        // Repeated calls return the cached transitions.
+        ITransition<Partition> aToB = pA.getAllTransitions().get(0);
+        assertSame(aToB, pA.getAllTransitions().get(0));
+        ITransition<Partition> initToA = pInitial.getAllTransitions().get(0);
+        assertSame(pA, initToA.getTarget());
+
+        List<? extends ITransition<Partition>> weighted = pInitial
+                .getWeightedTransitions();
+        assertEquals(2, weighted.size());
+        assertEquals(2, (int) weighted.get(0).getCount());
+        assertEquals(2.0 / 3.0, weighted.get(0).getProbability(), 1e-9);
+        assertEquals(1, (int) weighted.get(1).getCount());
+
+        // Split the b of the first trace out of pB.
+        PartitionSplit split = new PartitionSplit(pB);
+        split.addEventToSplit(parsedEvents.get(1));
+        IOperation rewind = pGraph.apply(split);
+
+        // The predecessors of pB have new transitions, while the transitions
+        // of INITIAL (which are to a and c) are still cached.
+        assertEquals(2, pA.getAllTransitions().size());
+        for (ITransition<Partition> tr : pA.getWeightedTransitions()) {
+            assertEquals(1, (int) tr.getCount());
+            assertEquals(0.5, tr.getProbability(), 1e-9);
+        }
+        assertEquals(1, pC.getAllTransitions().size());
+        assertSame(pB, pC.getAllTransitions().get(0).getTarget());
+        assertSame(initToA, pInitial.getAllTransitions().get(0));
+
+        // Rewinding the split restores a single transition from pA to pB.
+        pGraph.apply(rewind);
+        assertEquals(1, pA.getWeightedTransitions().size());
+        assertEquals(2, (int) pA.getWeightedTransitions().get(0).getCount());
+        assertSame(pB, pA.getAllTransitions().get(0).getTarget());
+    }
+
     @Test
     public void exportSyntheticTracesTest() throws Exception {
         // This creates two synthetic traces:
@@ -250,4 +311,47 @@ public class PartitionGraphTests extends SynopticTest {
         assertEquals("There should be exactly one trace",
                 paths.keySet().size(), 1);
     }
+
+    /**
+     * Tests that the partition IDs and the trace IDs of partitions are kept up
+     * to date by splits and merges.
+     */
+    @Test
+    public void pathsThroughSplitPartitionsTest() throws Exception {
+        PartitionGraph pGraph = getPGraphTemplate();
+        Partition bPartition = null;
+        for (Partition p : pGraph.getNodes()) {
+            assertSame(p, pGraph.getNodeByID(p.hashCode()));
+            if (p.getEType().toString().equals("b")) {
+                bPartition = p;
+            }
+        }
+        assertTrue(bPartition != null);
+        Set<INode<Partition>> selectedNodes = new HashSet<INode<Partition>>();
+        selectedNodes.add(bPartition);
+        assertEquals(2, pGraph.getPathsThroughPartitions(selectedNodes).size());
+
+        // Split the b of one of the traces out of bPartition.
+        EventNode splitEvent = bPartition.getEventNodes().iterator().next();
+        PartitionSplit split = new PartitionSplit(bPartition);
+        split.addEventToSplit(splitEvent);
+        IOperation rewind = pGraph.apply(split);
+        Partition newPartition = splitEvent.getParent();
+        assertSame(newPartition, pGraph.getNodeByID(newPartition.hashCode()));
+
+        Map<Integer, List<Partition>> paths = pGraph
+                .getPathsThroughPartitions(selectedNodes);
+        assertEquals(1, paths.size());
+        assertFalse(paths.containsKey(splitEvent.getTraceID()));
+        selectedNodes.add(newPartition);
+        assertTrue(pGraph.getPathsThroughPartitions(selectedNodes).isEmpty());
+
+        // Merge the partitions back.
+        pGraph.apply(rewind);
+        assertTrue(pGraph.getNodeByID(newPartition.hashCode()) == null);
+        selectedNodes.remove(newPartition);
+        paths = pGraph.getPathsThroughPartitions(selectedNodes);
+        assertEquals(2, paths.size());
+        assertTrue(paths.get(splitEvent.getTraceID()).contains(bPartition));
+    }
 }
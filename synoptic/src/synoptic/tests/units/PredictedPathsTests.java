@@ -0,0 +1,129 @@
+package synoptic.tests.units;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import synoptic.invariants.TemporalInvariantSet;
+import synoptic.invariants.miners.ChainWalkingTOInvMiner;
+import synoptic.main.parser.TraceParser;
+import synoptic.model.ChainsTraceGraph;
+import synoptic.model.EventNode;
+import synoptic.model.Partition;
+import synoptic.model.PartitionGraph;
+import synoptic.model.PredictedPaths;
+import synoptic.tests.SynopticTest;
+
+/**
+ * Tests for the enumeration of the bounded, predicted paths of a partition
+ * graph by PredictedPaths.
+ */
+public class PredictedPathsTests extends SynopticTest {
+
+    private static final String[] eventTypes = new String[] { "--", "a", "b",
+            "c" };
+
+    /** The repeat limit of PartitionGraph. */
+    private static final int repeatLimit = 3;
+
+    /** Returns the initial partition graph of log. */
+    private PartitionGraph genPartitionGraph(String[] log) throws Exception {
+        TraceParser parser = genDefParser();
+        ArrayList<EventNode> events = parser.parseTraceString(
+                concatinateWithNewlines(log), "log", -1);
+        ChainsTraceGraph g = parser.generateDirectTORelation(events);
+        TemporalInvariantSet invs = filterIntrByInvariants(new ChainWalkingTOInvMiner()
+                .computeInvariants(g, false, false));
+        return new PartitionGraph(g, true, invs);
+    }
+
+    /**
+     * Enumerates the bounded, predicted paths of pGraph by replaying each
+     * bounded path against the log, as a reference for PredictedPaths.
+     */
+    private static void enumeratePaths(PartitionGraph pGraph, Partition p,
+            List<Partition> path, Map<Partition, Integer> counts,
+            Set<List<Partition>> paths) {
+        Integer count = counts.get(p);
+        if (count != null && count >= repeatLimit) {
+            return;
+        }
+        counts.put(p, count == null ? 1 : count + 1);
+        path.add(p);
+        for (Partition succ : pGraph.getAdjacentNodes(p)) {
+            enumeratePaths(pGraph, succ, path, counts, paths);
+        }
+        if (p.isTerminal() && PartitionGraph.isPredictedPath(path)) {
+            paths.add(new ArrayList<Partition>(path));
+        }
+        path.remove(path.size() - 1);
+        counts.put(p, counts.get(p) - 1);
+    }
+
+    /**
+     * Tests that the paths enumerated by the iterator, sequentially and in
+     * parallel, are the bounded, predicted paths of the graph.
+     */
+    @Test
+    public void allPredictedPathsTest() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            PartitionGraph pGraph = genPartitionGraph(TOLogInvariantMiningTests
+                    .genRandomLog(eventTypes));
+            Set<List<Partition>> expected = new LinkedHashSet<List<Partition>>();
+            enumeratePaths(pGraph, pGraph.getDummyInitialNode(),
+                    new ArrayList<Partition>(),
+                    new HashMap<Partition, Integer>(), expected);
+
+            assertEquals(expected, pGraph.getAllBoundedPredictedPaths());
+            PredictedPaths paths = pGraph.getBoundedPredictedPaths(
+                    PredictedPaths.UNBOUNDED, PredictedPaths.UNBOUNDED);
+            List<List<Partition>> sequential = paths.collect(1);
+            assertEquals(new ArrayList<List<Partition>>(expected), sequential);
+            assertEquals(sequential, paths.collect(4));
+        }
+    }
+
+    /**
+     * Tests that the number and length of the enumerated paths are capped.
+     */
+    @Test
+    public void cappedPredictedPathsTest() throws Exception {
+        int maxLength = 5;
+        int maxPaths = 3;
+        for (int i = 0; i < 10; i++) {
+            PartitionGraph pGraph = genPartitionGraph(TOLogInvariantMiningTests
+                    .genRandomLog(eventTypes));
+            List<List<Partition>> shortPaths = new ArrayList<List<Partition>>();
+            for (List<Partition> path : pGraph.getAllBoundedPredictedPaths()) {
+                if (path.size() <= maxLength) {
+                    shortPaths.add(path);
+                }
+            }
+
+            assertEquals(shortPaths,
+                    pGraph.getBoundedPredictedPaths(PredictedPaths.UNBOUNDED,
+                            maxLength).collect(1));
+            assertEquals(shortPaths,
+                    pGraph.getBoundedPredictedPaths(PredictedPaths.UNBOUNDED,
+                            maxLength).collect(4));
+
+            List<List<Partition>> firstPaths = pGraph.getBoundedPredictedPaths(
+                    maxPaths, maxLength).collect(1);
+            assertEquals(
+                    shortPaths.subList(0, Math.min(maxPaths, shortPaths.size())),
+                    firstPaths);
+            List<List<Partition>> parallelPaths = pGraph
+                    .getBoundedPredictedPaths(maxPaths, maxLength).collect(4);
+            assertEquals(firstPaths.size(), parallelPaths.size());
+            assertTrue(shortPaths.containsAll(parallelPaths));
+        }
+    }
+}
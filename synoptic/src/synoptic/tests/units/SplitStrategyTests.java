@@ -0,0 +1,159 @@
+package synoptic.tests.units;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import synoptic.algorithms.Bisimulation;
+import synoptic.algorithms.graphops.IOperation;
+import synoptic.algorithms.graphops.PartitionMultiSplit;
+import synoptic.algorithms.graphops.PartitionSplit;
+import synoptic.algorithms.splitstrategies.SplitEvaluator;
+import synoptic.algorithms.splitstrategies.SplitStrategies;
+import synoptic.invariants.CExamplePath;
+import synoptic.invariants.ITemporalInvariant;
+import synoptic.invariants.TemporalInvariantSet;
+import synoptic.invariants.miners.ChainWalkingTOInvMiner;
+import synoptic.main.AbstractMain;
+import synoptic.main.parser.TraceParser;
+import synoptic.model.ChainsTraceGraph;
+import synoptic.model.EventNode;
+import synoptic.model.Partition;
+import synoptic.model.PartitionGraph;
+import synoptic.model.PartitionGraphOverlay;
+import synoptic.tests.SynopticTest;
+
+/**
+ * Tests for the split strategies of refinement, and for the evaluation of
+ * candidate splits on a PartitionGraphOverlay.
+ */
+public class SplitStrategyTests extends SynopticTest {
+
+    private static final String[] eventTypes = new String[] { "--", "a", "b",
+            "c", "d" };
+
+    /** Returns the initial partition graph of log. */
+    private PartitionGraph genPartitionGraph(String[] log) throws Exception {
+        TraceParser parser = genDefParser();
+        ArrayList<EventNode> events = parser.parseTraceString(
+                concatinateWithNewlines(log), "log", -1);
+        ChainsTraceGraph g = parser.generateDirectTORelation(events);
+        TemporalInvariantSet invs = filterIntrByInvariants(new ChainWalkingTOInvMiner()
+                .computeInvariants(g, false, false));
+        return new PartitionGraph(g, true, invs);
+    }
+
+    /**
+     * Tests that checking an invariant on the overlay of a split agrees with
+     * applying the split to the graph, checking the graph, and rewinding it.
+     */
+    @Test
+    public void overlayMatchesAppliedSplitTest() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            PartitionGraph pGraph = genPartitionGraph(TOLogInvariantMiningTests
+                    .genRandomLog(eventTypes));
+            List<CExamplePath<Partition>> cExamples = pGraph.getInvariants()
+                    .getAllCounterExamples(pGraph);
+            if (cExamples == null) {
+                continue;
+            }
+            PartitionGraphOverlay.Snapshot snapshot = new PartitionGraphOverlay.Snapshot(
+                    pGraph);
+            for (CExamplePath<Partition> cExample : cExamples) {
+                for (PartitionSplit split : Bisimulation.getSplits(cExample,
+                        pGraph)) {
+                    PartitionGraphOverlay overlay = new PartitionGraphOverlay(
+                            snapshot, split);
+                    assertEquals(pGraph.getNodes().size() + 1, overlay
+                            .getNodes().size());
+                    for (ITemporalInvariant inv : pGraph.getInvariants()) {
+                        IOperation rewind = pGraph
+                                .apply(new PartitionMultiSplit(split));
+                        boolean expected = TemporalInvariantSet
+                                .getCounterExample(inv, pGraph) == null;
+                        pGraph.apply(rewind);
+                        boolean actual = TemporalInvariantSet
+                                .getCounterExample(inv, overlay) == null;
+                        assertEquals(expected, actual);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests that refinement with each strategy, with and without parallel
+     * evaluation, satisfies all the invariants.
+     */
+    @Test
+    public void strategiesSatisfyInvariantsTest() throws Exception {
+        AbstractMain main = AbstractMain.getInstance();
+        for (String name : SplitStrategies.NAMES) {
+            assertNotNull(SplitStrategies.forName(name));
+            assertEquals(name, SplitStrategies.forName(name).getName());
+            main.options.splitStrategy = name;
+            for (int numThreads : new int[] { 1, 4 }) {
+                main.options.splitEvaluationThreads = numThreads;
+                for (int i = 0; i < 5; i++) {
+                    PartitionGraph pGraph = genPartitionGraph(TOLogInvariantMiningTests
+                            .genRandomLog(eventTypes));
+                    Bisimulation.splitUntilAllInvsSatisfied(pGraph);
+                    List<CExamplePath<Partition>> cExamples = pGraph
+                            .getInvariants().getAllCounterExamples(pGraph);
+                    assertTrue(cExamples == null || cExamples.isEmpty());
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests that evaluating candidate splits in parallel gives the same
+     * results as evaluating them sequentially.
+     */
+    @Test
+    public void parallelEvaluationMatchesSequentialTest() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            PartitionGraph pGraph = genPartitionGraph(TOLogInvariantMiningTests
+                    .genRandomLog(eventTypes));
+            List<CExamplePath<Partition>> cExamples = pGraph.getInvariants()
+                    .getAllCounterExamples(pGraph);
+            if (cExamples == null) {
+                continue;
+            }
+            List<ITemporalInvariant> invs = new ArrayList<ITemporalInvariant>();
+            List<List<PartitionSplit>> candidates = new ArrayList<List<PartitionSplit>>();
+            for (CExamplePath<Partition> cExample : cExamples) {
+                invs.add(cExample.invariant);
+                candidates.add(Bisimulation.getSplits(cExample, pGraph));
+            }
+
+            SplitEvaluator sequential = new SplitEvaluator(pGraph, 1);
+            SplitEvaluator parallel = new SplitEvaluator(pGraph, 4);
+            try {
+                assertArrayEquals(
+                        sequential.findFirstSatisfying(invs, candidates),
+                        parallel.findFirstSatisfying(invs, candidates));
+                for (List<PartitionSplit> splits : candidates) {
+                    assertArrayEquals(sequential.countSatisfied(splits, invs),
+                            parallel.countSatisfied(splits, invs));
+                }
+            } finally {
+                parallel.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Tests that an unknown strategy name is not accepted.
+     */
+    @Test
+    public void unknownStrategyTest() {
+        assertTrue(SplitStrategies.forName("fastest") == null);
+    }
+}
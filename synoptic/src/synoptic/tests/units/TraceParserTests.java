@@ -14,7 +14,9 @@ import java.util.Comparator;
 import java.util.Date;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 
 import org.junit.Test;
 
@@ -24,6 +26,7 @@ import synoptic.main.parser.ParseException;
 import synoptic.main.parser.TraceParser;
 import synoptic.model.ChainsTraceGraph;
 import synoptic.model.EventNode;
+import synoptic.model.event.DistEventType;
 import synoptic.model.event.Event;
 import synoptic.model.event.EventType;
 import synoptic.model.event.StringEventType;
@@ -33,6 +36,7 @@ import synoptic.util.InternalSynopticException;
 import synoptic.util.Predicate.IBoolBinary;
 import synoptic.util.resource.AbstractResource;
 import synoptic.util.resource.DTotalResource;
+import synoptic.util.resource.EqualVectorTimestampsException;
 import synoptic.util.resource.ITotalResource;
 import synoptic.util.resource.LTotalResource;
 import synoptic.util.resource.VectorTime;
@@ -497,6 +501,104 @@ public class TraceParserTests extends SynopticTest {
         parser.generateDirectPORelation(events);
     }
 
+    /**
+     * Creates an event node at process pid with vector time vtime.
+     */
+    private static EventNode newVTimeEventNode(String label, int pid,
+            List<Integer> vtime) {
+        EventNode e = new EventNode(new Event(DistEventType.LocalEvent(label,
+                pid)));
+        e.getEvent().setTime(new VectorTime(vtime));
+        return e;
+    }
+
+    /**
+     * Generates random message-passing executions of a few processes, and
+     * checks that the direct successors and process-local successors
+     * computed for all the events at once are the same as those computed for
+     * each event separately.
+     */
+    @Test
+    public void directPOSuccessorsOfAllEventsTest() {
+        Random r = new Random(7);
+        for (int iter = 0; iter < 20; iter++) {
+            int numProcs = 1 + r.nextInt(4);
+            int numEvents = 1 + r.nextInt(60);
+
+            // The current vector clock at each process, and the clocks of the
+            // messages in transit to each process.
+            List<List<Integer>> clocks = new ArrayList<List<Integer>>();
+            List<List<List<Integer>>> inTransit = new ArrayList<List<List<Integer>>>();
+            for (int p = 0; p < numProcs; p++) {
+                clocks.add(new ArrayList<Integer>(Collections.nCopies(
+                        numProcs, 0)));
+                inTransit.add(new ArrayList<List<Integer>>());
+            }
+
+            List<EventNode> events = new ArrayList<EventNode>();
+            List<EventNode> eventsCopy = new ArrayList<EventNode>();
+            for (int i = 0; i < numEvents; i++) {
+                int p = r.nextInt(numProcs);
+                List<Integer> clock = clocks.get(p);
+                if (!inTransit.get(p).isEmpty() && r.nextBoolean()) {
+                    // Receive a message.
+                    List<Integer> msg = inTransit.get(p).remove(0);
+                    for (int j = 0; j < numProcs; j++) {
+                        clock.set(j, Math.max(clock.get(j), msg.get(j)));
+                    }
+                }
+                clock.set(p, clock.get(p) + 1);
+                if (numProcs > 1 && r.nextBoolean()) {
+                    // Send a message.
+                    int q = r.nextInt(numProcs);
+                    if (q != p) {
+                        inTransit.get(q).add(new ArrayList<Integer>(clock));
+                    }
+                }
+                events.add(newVTimeEventNode("e" + i, p, clock));
+                eventsCopy.add(newVTimeEventNode("e" + i, p, clock));
+            }
+
+            // Shuffle both lists in the same way.
+            long seed = r.nextLong();
+            Collections.shuffle(events, new Random(seed));
+            Collections.shuffle(eventsCopy, new Random(seed));
+
+            Map<EventNode, Set<EventNode>> successors = EventNode
+                    .getDirectPOSuccessors(events);
+            for (int i = 0; i < events.size(); i++) {
+                Set<EventNode> expected = EventNode.getDirectPOSuccessors(
+                        eventsCopy.get(i), eventsCopy);
+                List<Integer> expectedIndices = new ArrayList<Integer>();
+                for (EventNode e : expected) {
+                    expectedIndices.add(eventsCopy.indexOf(e));
+                }
+                List<Integer> indices = new ArrayList<Integer>();
+                for (EventNode e : successors.get(events.get(i))) {
+                    indices.add(events.indexOf(e));
+                }
+                assertEquals(expectedIndices, indices);
+
+                assertEquals(eventsCopy.indexOf(eventsCopy.get(i)
+                        .getProcessLocalSuccessor()), events.indexOf(events
+                        .get(i).getProcessLocalSuccessor()));
+            }
+        }
+    }
+
+    /**
+     * Computing the direct successors of events with equal vector times --
+     * expect an EqualVectorTimestampsException.
+     */
+    @Test(expected = EqualVectorTimestampsException.class)
+    public void directPOSuccessorsSameVTimeExceptionTest() {
+        List<EventNode> events = new ArrayList<EventNode>();
+        events.add(newVTimeEventNode("a", 0, Arrays.asList(1, 0)));
+        events.add(newVTimeEventNode("b", 1, Arrays.asList(1, 1)));
+        events.add(newVTimeEventNode("c", 1, Arrays.asList(1, 0)));
+        EventNode.getDirectPOSuccessors(events);
+    }
+
     // TODO: Check setting of constants -- e.g. (?<NODETYPE=>master)
 
     /**
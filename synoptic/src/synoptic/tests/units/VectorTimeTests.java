@@ -4,9 +4,12 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Random;
 
 import org.junit.Test;
 
@@ -20,6 +23,7 @@ import synoptic.util.resource.DTotalResource;
 import synoptic.util.resource.NonComparableResourceException;
 import synoptic.util.resource.NotComparableVectorsException;
 import synoptic.util.resource.VectorTime;
+import synoptic.util.resource.VectorTimeArena;
 import synoptic.util.resource.WrongTimeTypeException;
 
 /**
@@ -300,4 +304,83 @@ public class VectorTimeTests extends SynopticTest {
                     .get(5 + i));
         }
     }
+
+    /**
+     * Vector times allocated in an arena, across several blocks, behave like
+     * vector times that are allocated separately.
+     */
+    @Test
+    public void arenaTest() {
+        VectorTimeArena arena = new VectorTimeArena(5);
+        List<VectorTime> arenaTimes = new ArrayList<VectorTime>();
+        List<VectorTime> times = new ArrayList<VectorTime>();
+        for (int i = 0; i < 10; i++) {
+            String timeStr = i + "," + (10 - i) + "," + (i % 3);
+            arenaTimes.add(arena.newVectorTime(timeStr));
+            times.add(new VectorTime(timeStr));
+        }
+
+        for (int i = 0; i < times.size(); i++) {
+            assertEquals(times.get(i), arenaTimes.get(i));
+            assertEquals(times.get(i).hashCode(), arenaTimes.get(i).hashCode());
+            assertEquals(times.get(i).toString(), arenaTimes.get(i).toString());
+            assertEquals(times.get(i).sum(), arenaTimes.get(i).sum());
+            assertEquals(times.get(i).step(1), arenaTimes.get(i).step(1));
+            for (int j = 0; j < times.size(); j++) {
+                assertEquals(times.get(i).lessThan(times.get(j)), arenaTimes
+                        .get(i).lessThan(arenaTimes.get(j)));
+                assertEquals(i == j, arenaTimes.get(i)
+                        .equals(arenaTimes.get(j)));
+            }
+        }
+    }
+
+    /**
+     * Accessing a clock beyond the length of an arena-allocated vector time
+     * fails, rather than reading the clocks of the next vector time.
+     */
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void arenaGetOutOfBoundsTest() {
+        VectorTimeArena arena = new VectorTimeArena();
+        VectorTime v = arena.newVectorTime("1,2");
+        arena.newVectorTime("3,4");
+        v.get(2);
+    }
+
+    /**
+     * Test that mapLogEventsToNodes() finds the same ith events as
+     * determineIthEvent(), for a randomly generated execution of several
+     * nodes that communicate their clocks.
+     */
+    @Test
+    public void mapLogEventsToNodesRandomTest() {
+        Random r = new Random(11);
+        int numNodes = 4;
+        int[][] clocks = new int[numNodes][numNodes];
+        List<EventNode> eventNodes = new ArrayList<EventNode>();
+        for (int i = 0; i < 200; i++) {
+            int node = r.nextInt(numNodes);
+            int from = r.nextInt(numNodes);
+            for (int j = 0; j < numNodes; j++) {
+                clocks[node][j] = Math.max(clocks[node][j], clocks[from][j]);
+            }
+            clocks[node][node] += 1;
+            EventNode e = new EventNode(new Event("e" + i));
+            e.getEvent().setTime(
+                    new VectorTime(Arrays.copyOf(clocks[node], numNodes)));
+            eventNodes.add(e);
+        }
+        Collections.shuffle(eventNodes, r);
+
+        List<List<EventNode>> map = VectorTime.mapLogEventsToNodes(eventNodes);
+        assertEquals(numNodes, map.size());
+        for (int node = 0; node < numNodes; node++) {
+            List<EventNode> nodeEvents = map.get(node);
+            assertEquals(clocks[node][node], nodeEvents.size());
+            for (int i = 0; i < nodeEvents.size(); i++) {
+                assertTrue(VectorTime.determineIthEvent(node, eventNodes,
+                        i + 1) == nodeEvents.get(i));
+            }
+        }
+    }
 }
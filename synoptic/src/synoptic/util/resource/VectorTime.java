@@ -1,6 +1,8 @@
 package synoptic.util.resource;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -12,9 +14,21 @@ import synoptic.model.EventNode;
  * system is distributed, then a process is a host. Therefore, the vector
  * represents a point in time in a multiprocess (or distributed) execution. A
  * vector time is a special resource itself and has no key identifying it.
+ * <p>
+ * The clocks are stored in a slice of a primitive int array, which may be
+ * shared with other vector times (see VectorTimeArena). Comparisons loop over
+ * the slices directly and do not allocate.
+ * </p>
  */
 public class VectorTime extends AbstractResource {
-    ArrayList<Integer> vector = new ArrayList<Integer>();
+    // The clocks of this vector time are clocks[offset, offset + length). The
+    // array may be shared with other vector times, and it is never modified.
+    private final int[] clocks;
+    private final int offset;
+    private final int length;
+
+    // The hash code, which is computed lazily (0 if not yet computed).
+    private int hash = 0;
 
     /**
      * Determines and returns the ith event for node identified by nodeIndex in
@@ -30,7 +44,7 @@ public class VectorTime extends AbstractResource {
             if (!(etime instanceof VectorTime)) {
                 throw new WrongTimeTypeException();
             }
-            if (((VectorTime) etime).vector.get(nodeIndex) != i) {
+            if (((VectorTime) etime).get(nodeIndex) != i) {
                 continue;
             }
             if (earliestEvent == null) {
@@ -54,6 +68,12 @@ public class VectorTime extends AbstractResource {
      * for all e' in events, e'.time[n] == i, e < e'
      * </pre>
      * 
+     * Rather than searching all the events for each i (as determineIthEvent()
+     * does), the events are sorted on their clock for the node, and then on
+     * the sums of their clocks (a topological order). The ith event for the
+     * node is then the first event in this order with clock i for the node.
+     * This takes O(n log n) time per node.
+     * 
      * @param events
      * @return A list in which an item a index j is a (totally ordered) list of
      *         events that occurred locally at node j.
@@ -65,27 +85,61 @@ public class VectorTime extends AbstractResource {
         }
         LinkedList<List<EventNode>> map = new LinkedList<List<EventNode>>();
 
-        AbstractResource e0time = events.get(0).getEvent().getTime();
-        if (!(e0time instanceof VectorTime)) {
-            throw new WrongTimeTypeException();
+        int n = events.size();
+        final VectorTime[] times = new VectorTime[n];
+        final long[] sums = new long[n];
+        for (int k = 0; k < n; k++) {
+            AbstractResource etime = events.get(k).getEvent().getTime();
+            if (!(etime instanceof VectorTime)) {
+                throw new WrongTimeTypeException();
+            }
+            times[k] = (VectorTime) etime;
+            sums[k] = times[k].sum();
+            if (times[k].size() != times[0].size()) {
+                // Two vectors are only comparable if they have the same
+                // length.
+                throw new NotComparableVectorsException(times[0], times[k]);
+            }
         }
 
         // The number of nodes is indicated by the length of the vector time.
-        int numNodes = ((VectorTime) e0time).vector.size();
+        int numNodes = times[0].size();
 
         // For each node, for all i determine the ith local event at the node.
-        EventNode e;
-        LinkedList<EventNode> eventList;
+        Integer[] order = new Integer[n];
         for (int nodeIndex = 0; nodeIndex < numNodes; nodeIndex++) {
+            final int node = nodeIndex;
+            for (int k = 0; k < n; k++) {
+                order[k] = k;
+            }
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer k1, Integer k2) {
+                    int c1 = times[k1].get(node);
+                    int c2 = times[k2].get(node);
+                    if (c1 != c2) {
+                        return c1 < c2 ? -1 : 1;
+                    }
+                    if (sums[k1] != sums[k2]) {
+                        return sums[k1] < sums[k2] ? -1 : 1;
+                    }
+                    return 0;
+                }
+            });
+
             int i = 1;
-            eventList = new LinkedList<EventNode>();
-            while (true) {
-                e = determineIthEvent(nodeIndex, events, i);
-                if (e == null) {
+            List<EventNode> eventList = new ArrayList<EventNode>();
+            for (int k : order) {
+                int c = times[k].get(node);
+                if (c < i) {
+                    // Not an ith event, or not the earliest ith event.
+                    continue;
+                }
+                if (c > i) {
                     // No ith event exists for nodeIndex.
                     break;
                 }
-                eventList.add(e);
+                eventList.add(events.get(k));
                 i += 1;
             }
             map.add(eventList);
@@ -93,6 +147,18 @@ public class VectorTime extends AbstractResource {
         return map;
     }
 
+    /**
+     * Parses a string that looks like "1,2,3" into an array of clocks.
+     */
+    static int[] parseClocks(String timeStr) throws NumberFormatException {
+        String[] times = timeStr.split(",");
+        int[] ret = new int[times.length];
+        for (int i = 0; i < times.length; i++) {
+            ret[i] = Integer.parseInt(times[i]);
+        }
+        return ret;
+    }
+
     /**
      * Builds a VectorTime from a string that looks like "1,2,3"
      * 
@@ -100,14 +166,7 @@ public class VectorTime extends AbstractResource {
      *            string input representing a vtime
      */
     public VectorTime(String timeStr) throws IllegalArgumentException {
-        // IB: Why is there no unique key to identify vector timestamps? Don't
-        // you want these to be incomparable with other kinds of resources?
-        super("");
-        String[] times = timeStr.split(",");
-        for (String t : times) {
-            Integer i = Integer.parseInt(t);
-            vector.add(i);
-        }
+        this(parseClocks(timeStr));
     }
 
     /**
@@ -117,8 +176,7 @@ public class VectorTime extends AbstractResource {
      *            input vector
      */
     public VectorTime(List<Integer> vector) throws IllegalArgumentException {
-        super("");
-        this.vector.addAll(vector);
+        this(toArray(vector));
     }
 
     /**
@@ -127,8 +185,41 @@ public class VectorTime extends AbstractResource {
      * @param i
      */
     public VectorTime(Integer i) {
+        this(new int[] { i });
+    }
+
+    /**
+     * Builds a VectorTime from an array of clocks. The array is not copied, so
+     * it must not be modified afterwards.
+     * 
+     * @param clocks
+     *            input clocks
+     */
+    public VectorTime(int[] clocks) {
+        this(clocks, 0, clocks.length);
+    }
+
+    /**
+     * Builds a VectorTime from the clocks in clocks[offset, offset + length).
+     * The array is not copied, so these clocks must not be modified
+     * afterwards.
+     */
+    VectorTime(int[] clocks, int offset, int length) {
+        // IB: Why is there no unique key to identify vector timestamps? Don't
+        // you want these to be incomparable with other kinds of resources?
         super("");
-        vector.add(i);
+        this.clocks = clocks;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    private static int[] toArray(List<Integer> vector) {
+        int[] ret = new int[vector.size()];
+        int i = 0;
+        for (Integer c : vector) {
+            ret[i++] = c;
+        }
+        return ret;
     }
 
     /*
@@ -143,36 +234,68 @@ public class VectorTime extends AbstractResource {
         }
         VectorTime vTime = (VectorTime) t;
 
-        boolean foundStrictlyLess = false;
-
-        if (vector.size() != vTime.vector.size()) {
+        if (length != vTime.length) {
             // Two vectors are only comparable if they have the same length.
             throw new NotComparableVectorsException(this, t);
         }
 
-        for (int i = 0; i < vector.size(); ++i) {
-            if (vector.get(i) < vTime.vector.get(i)) {
+        boolean foundStrictlyLess = false;
+        int[] other = vTime.clocks;
+        int j = vTime.offset;
+        for (int i = offset, end = offset + length; i < end; ++i, ++j) {
+            if (clocks[i] < other[j]) {
                 foundStrictlyLess = true;
-            } else if (vector.get(i) > vTime.vector.get(i)) {
+            } else if (clocks[i] > other[j]) {
                 return false;
             }
         }
         return foundStrictlyLess;
     }
 
+    /**
+     * @return The number of clocks in the vector
+     */
+    public int size() {
+        return length;
+    }
+
+    /**
+     * @return The clock at index i
+     */
+    public int get(int i) {
+        if (i < 0 || i >= length) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: "
+                    + length);
+        }
+        return clocks[offset + i];
+    }
+
+    /**
+     * Returns the sum of the clocks in the vector. If this &lt; t then
+     * this.sum() &lt; t.sum(), so sorting vector times by their sums produces a
+     * topological sort.
+     */
+    public long sum() {
+        long sum = 0;
+        for (int i = offset, end = offset + length; i < end; ++i) {
+            sum += clocks[i];
+        }
+        return sum;
+    }
+
     /**
      * @return Whether or not this is a unit vector
      */
     public boolean isUnitVector() {
         boolean sawOne = false;
-        for (int i = 0; i < vector.size(); ++i) {
-            if (sawOne && vector.get(i) == 1) {
+        for (int i = offset, end = offset + length; i < end; ++i) {
+            if (sawOne && clocks[i] == 1) {
                 return false;
             }
-            if (vector.get(i) == 1) {
+            if (clocks[i] == 1) {
                 sawOne = true;
             }
-            if (vector.get(i) > 1) {
+            if (clocks[i] > 1) {
                 return false;
             }
         }
@@ -183,7 +306,7 @@ public class VectorTime extends AbstractResource {
      * @return Whether or not the vector is of length 1
      */
     public boolean isSingular() {
-        return vector.size() == 1;
+        return length == 1;
     }
 
     /**
@@ -193,9 +316,8 @@ public class VectorTime extends AbstractResource {
      * @return the newly created, incremented vtime
      */
     public VectorTime step(int index) {
-        List<Integer> vec = new ArrayList<Integer>();
-        vec.addAll(this.vector);
-        vec.set(index, vec.get(index) + 1);
+        int[] vec = Arrays.copyOfRange(clocks, offset, offset + length);
+        vec[index] += 1;
         return new VectorTime(vec);
     }
 
@@ -206,13 +328,14 @@ public class VectorTime extends AbstractResource {
      */
     @Override
     public int hashCode() {
-        final int prime = 31;
-        int result = 1;
-        result = prime * result + (vector == null ? 0 : vector.hashCode());
-        if (vector != null) {
-            for (int i = 0; i < vector.size(); ++i) {
-                result += prime * result + vector.get(i).hashCode();
+        int result = hash;
+        if (result == 0) {
+            final int prime = 31;
+            result = 1;
+            for (int i = offset, end = offset + length; i < end; ++i) {
+                result = prime * result + clocks[i];
             }
+            hash = result;
         }
         return result;
     }
@@ -234,20 +357,16 @@ public class VectorTime extends AbstractResource {
             return false;
         }
         VectorTime other = (VectorTime) obj;
-        if (vector == null) {
-            if (other.vector != null) {
+        if (length != other.length) {
+            // Two vectors are only comparable if they have the same length.
+            throw new NotComparableVectorsException(this, other);
+        }
+        int[] otherClocks = other.clocks;
+        int j = other.offset;
+        for (int i = offset, end = offset + length; i < end; ++i, ++j) {
+            if (clocks[i] != otherClocks[j]) {
                 return false;
             }
-        } else {
-            if (vector.size() != other.vector.size()) {
-                // Two vectors are only comparable if they have the same length.
-                throw new NotComparableVectorsException(this, other);
-            }
-            for (int i = 0; i < vector.size(); ++i) {
-                if (vector.get(i) != other.vector.get(i)) {
-                    return false;
-                }
-            }
         }
         return true;
     }
@@ -259,7 +378,14 @@ public class VectorTime extends AbstractResource {
      */
     @Override
     public String toString() {
-        return vector.toString();
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = offset, end = offset + length; i < end; ++i) {
+            if (i != offset) {
+                sb.append(", ");
+            }
+            sb.append(clocks[i]);
+        }
+        return sb.append(']').toString();
     }
 
     /**
@@ -272,9 +398,8 @@ public class VectorTime extends AbstractResource {
         if (!(t instanceof VectorTime)) {
             throw new NonComparableResourceException(this, t);
         }
-        if (this.equals(t)) {
-            return 0;
-        }
+        // Equal vector times are not lessThan each other, so a single pass
+        // over the clocks suffices.
         if (this.lessThan(t)) {
             return -1;
         }
@@ -0,0 +1,55 @@
+package synoptic.util.resource;
+
+/**
+ * Allocates the clocks of many vector times (e.g., of all the events in a log)
+ * densely, in large shared int arrays, rather than in an array per vector time.
+ * Vector times that are created together are then also laid out together in
+ * memory. Clocks are never freed individually -- a block is garbage collected
+ * once none of its vector times is reachable. An arena is not thread-safe.
+ */
+public class VectorTimeArena {
+    // The default number of clocks in a block.
+    private static final int DEFAULT_BLOCK_SIZE = 1 << 14;
+
+    private final int blockSize;
+
+    // The block from which clocks are currently allocated, and the number of
+    // clocks that were allocated from it.
+    private int[] block = new int[0];
+    private int used = 0;
+
+    public VectorTimeArena() {
+        this(DEFAULT_BLOCK_SIZE);
+    }
+
+    public VectorTimeArena(int blockSize) {
+        assert blockSize > 0;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Builds a VectorTime, allocated in this arena, from a string that looks
+     * like "1,2,3"
+     * 
+     * @param timeStr
+     *            string input representing a vtime
+     */
+    public VectorTime newVectorTime(String timeStr)
+            throws IllegalArgumentException {
+        return newVectorTime(VectorTime.parseClocks(timeStr));
+    }
+
+    /**
+     * Builds a VectorTime, allocated in this arena, with a copy of clocks.
+     */
+    public VectorTime newVectorTime(int[] clocks) {
+        if (used + clocks.length > block.length) {
+            block = new int[Math.max(blockSize, clocks.length)];
+            used = 0;
+        }
+        int offset = used;
+        System.arraycopy(clocks, 0, block, offset, clocks.length);
+        used += clocks.length;
+        return new VectorTime(block, offset, clocks.length);
+    }
+}
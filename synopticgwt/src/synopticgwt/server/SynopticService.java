@@ -632,13 +632,7 @@ public class SynopticService extends RemoteServiceServlet implements
         retrieveSynopticSessionState();
 
         // Find partition
-        Partition requested = null;
-        for (Partition p : pGraph.getNodes()) {
-            if (p.hashCode() == nodeID) {
-                requested = p;
-                break;
-            }
-        }
+        Partition requested = pGraph.getNodeByID(nodeID);
 
         // Fetch log lines
         List<LogLine> validLines = new ArrayList<LogLine>();